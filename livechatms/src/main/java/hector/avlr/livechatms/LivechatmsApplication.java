@@ -2,8 +2,10 @@ package hector.avlr.livechatms;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class LivechatmsApplication {
 
 	public static void main(String[] args) {
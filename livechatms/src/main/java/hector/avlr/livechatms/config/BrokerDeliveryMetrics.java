@@ -0,0 +1,89 @@
+package hector.avlr.livechatms.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede a latência de entrega das mensagens do chat através do broker.
+ * Cada mensagem publicada recebe um cabeçalho STOMP com o instante de publicação, que o
+ * broker (local ou externo) repassa aos assinantes. No executor do canal de saída o cabeçalho
+ * é retirado do frame (o cliente não o recebe) e, depois que o frame é escrito no WebSocket,
+ * o tempo decorrido é registrado em livechat.broker.delivery.latency: inclui a espera na fila
+ * do canal de saída e a escrita. Se a sessão já estiver enviando em outra thread, o frame fica
+ * no buffer da sessão e a escrita em si não entra na medida. No modo relay, a mensagem pode ter
+ * sido publicada por outra instância: a medida inclui a diferença de relógio entre os nós.
+ */
+class BrokerDeliveryMetrics {
+
+    // Cabeçalho STOMP com o instante de publicação (epoch millis)
+    static final String PUBLISHED_AT_HEADER = "x-published-at";
+    // Cabeçalho interno (não enviado ao cliente) com o mesmo instante, entre beforeHandle e afterMessageHandled
+    private static final String PUBLISHED_AT_ATTRIBUTE = "livechat.publishedAt";
+
+    private final Timer deliveryLatency;
+
+    BrokerDeliveryMetrics(MeterRegistry meterRegistry, String brokerMode) {
+        this.deliveryLatency = Timer.builder("livechat.broker.delivery.latency")
+            .description("Tempo entre a publicação de uma mensagem e o envio ao cliente")
+            .tag("mode", brokerMode)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    /**
+     * Interceptor do canal do broker: marca mensagens publicadas com o instante atual.
+     */
+    ChannelInterceptor publishTimestamp() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+                    return message;
+                }
+                SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+                accessor.setNativeHeader(PUBLISHED_AT_HEADER, Long.toString(System.currentTimeMillis()));
+                return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+            }
+        };
+    }
+
+    /**
+     * Interceptor do executor do canal de saída para clientes: retira o cabeçalho de publicação
+     * do frame e registra a latência depois da entrega à sessão WebSocket.
+     */
+    ExecutorChannelInterceptor recordDelivery() {
+        return new ExecutorChannelInterceptor() {
+            @Override
+            public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+                SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+                String publishedAt = accessor.getFirstNativeHeader(PUBLISHED_AT_HEADER);
+                if (publishedAt == null) {
+                    return message;
+                }
+                accessor.removeNativeHeader(PUBLISHED_AT_HEADER);
+                accessor.setHeader(PUBLISHED_AT_ATTRIBUTE, Long.parseLong(publishedAt));
+                return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+            }
+
+            @Override
+            public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                            Exception ex) {
+                Long publishedAt = message.getHeaders().get(PUBLISHED_AT_ATTRIBUTE, Long.class);
+                if (ex == null && publishedAt != null) {
+                    long elapsed = System.currentTimeMillis() - publishedAt;
+                    deliveryLatency.record(Math.max(elapsed, 0), TimeUnit.MILLISECONDS);
+                }
+            }
+        };
+    }
+}
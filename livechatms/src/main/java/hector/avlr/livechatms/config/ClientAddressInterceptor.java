@@ -0,0 +1,40 @@
+package hector.avlr.livechatms.config;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Guarda nos atributos da sessão WebSocket o endereço do cliente no handshake, para que o
+ * limite de requisições do agente via STOMP use o mesmo cliente que o HTTP (e não a conexão,
+ * que o cliente troca ao reconectar). Atrás de um proxy reverso, o endereço já vem de
+ * X-Forwarded-For (server.forward-headers-strategy).
+ */
+public class ClientAddressInterceptor implements HandshakeInterceptor {
+
+    /**
+     * Atributo da sessão com o endereço do cliente.
+     */
+    public static final String ATTRIBUTE = "livechat.clientAddress";
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String address = request instanceof ServletServerHttpRequest servlet
+            ? servlet.getServletRequest().getRemoteAddr()
+            : request.getRemoteAddress() != null ? request.getRemoteAddress().getAddress().getHostAddress() : null;
+        if (address != null) {
+            attributes.put(ATTRIBUTE, address);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
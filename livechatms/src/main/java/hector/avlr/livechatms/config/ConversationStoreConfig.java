@@ -0,0 +1,44 @@
+package hector.avlr.livechatms.config;
+
+import hector.avlr.livechatms.service.store.ConversationStore;
+import hector.avlr.livechatms.service.store.MappedConversationStore;
+import hector.avlr.livechatms.service.store.TransientConversationStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Seleciona o armazenamento das conversações (conversation.store):
+ * - memory: somente o cache de sessões em memória (padrão)
+ * - mmap: log em disco mapeado em memória; sessões sobrevivem a reinícios e sessões ociosas
+ *   saem do heap
+ */
+@Configuration
+public class ConversationStoreConfig {
+
+    /**
+     * @param mode Tipo de armazenamento: memory ou mmap
+     * @param directory Diretório do log (mmap)
+     * @param segmentMb Tamanho de cada segmento do log (mmap)
+     * @param retentionHours Horas sem atividade até a sessão ser removida do log (mmap)
+     * @param compactionLiveRatio Fração mínima de dados vivos antes de compactar o log (mmap)
+     */
+    @Bean
+    public ConversationStore conversationStore(MeterRegistry meterRegistry,
+                                               @Value("${conversation.store}") String mode,
+                                               @Value("${conversation.store.dir}") Path directory,
+                                               @Value("${conversation.store.segment.mb}") int segmentMb,
+                                               @Value("${conversation.store.retention.hours}") long retentionHours,
+                                               @Value("${conversation.store.compaction.live.ratio}") double compactionLiveRatio) {
+        return switch (mode.toLowerCase(Locale.ROOT)) {
+            case "memory" -> new TransientConversationStore();
+            case "mmap" -> new MappedConversationStore(directory, segmentMb, retentionHours, compactionLiveRatio,
+                meterRegistry);
+            default -> throw new IllegalStateException("Armazenamento de conversas não suportado: " + mode);
+        };
+    }
+}
@@ -1,8 +1,16 @@
 package hector.avlr.livechatms.config;
 
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 /**
  * Configuração para integração com APIs de LLM (Large Language Models).
@@ -11,12 +19,75 @@ import org.springframework.web.reactive.function.client.WebClient;
 @Configuration
 public class LLMConfig {
 
+    /**
+     * Pool de conexões dedicado às chamadas de LLM.
+     * O pool padrão do Reactor Netty (~2 conexões por núcleo) limitaria o número de
+     * conversas simultâneas no caminho reativo, pois cada requisição HTTP/1.1 ocupa uma conexão.
+     * Conexões ociosas são fechadas em segundo plano e as estatísticas do pool são publicadas
+     * como métricas (reactor.netty.connection.provider.*, name=llm).
+     * @param maxConnections Máximo de conexões abertas simultaneamente
+     * @param pendingAcquireMax Máximo de requisições aguardando uma conexão livre
+     * @param pendingAcquireTimeoutSeconds Tempo máximo de espera por uma conexão livre
+     * @param maxIdleSeconds Tempo até uma conexão ociosa ser fechada
+     * @param maxLifeSeconds Tempo de vida máximo de uma conexão (renova DNS/balanceamento)
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider llmConnectionProvider(
+            @Value("${llm.http.max.connections}") int maxConnections,
+            @Value("${llm.http.pending.acquire.max}") int pendingAcquireMax,
+            @Value("${llm.http.pending.acquire.timeout.seconds}") long pendingAcquireTimeoutSeconds,
+            @Value("${llm.http.max.idle.seconds}") long maxIdleSeconds,
+            @Value("${llm.http.max.life.seconds}") long maxLifeSeconds) {
+        return ConnectionProvider.builder("llm")
+            .maxConnections(maxConnections)
+            .pendingAcquireMaxCount(pendingAcquireMax)
+            .pendingAcquireTimeout(Duration.ofSeconds(pendingAcquireTimeoutSeconds))
+            .maxIdleTime(Duration.ofSeconds(maxIdleSeconds))
+            .maxLifeTime(Duration.ofSeconds(maxLifeSeconds))
+            .evictInBackground(Duration.ofSeconds(maxIdleSeconds))
+            .metrics(true)
+            .build();
+    }
+
+    /**
+     * Cliente HTTP do Reactor Netty usado pelo WebClient.
+     * Reaproveita conexões (keep-alive HTTP e TCP), negocia HTTP/2 via ALPN em conexões TLS
+     * quando o provedor suporta (HTTP/1.1 caso contrário) e aceita respostas comprimidas (gzip).
+     * O timeout de resposta padrão pode ser sobrescrito por requisição (ver HttpLLMProvider).
+     * @param connectTimeoutMillis Timeout de conexão TCP
+     * @param responseTimeoutSeconds Tempo máximo sem receber dados da resposta
+     * @param http2Enabled Habilita HTTP/2 em conexões TLS
+     * @param compressionEnabled Solicita respostas comprimidas
+     */
+    @Bean
+    public HttpClient llmHttpClient(ConnectionProvider llmConnectionProvider,
+                                    @Value("${llm.http.connect.timeout.millis}") int connectTimeoutMillis,
+                                    @Value("${llm.http.response.timeout.seconds}") long responseTimeoutSeconds,
+                                    @Value("${llm.http.http2.enabled}") boolean http2Enabled,
+                                    @Value("${llm.http.compression.enabled}") boolean compressionEnabled) {
+        HttpProtocol[] protocols = http2Enabled
+            ? new HttpProtocol[] {HttpProtocol.H2, HttpProtocol.HTTP11}
+            : new HttpProtocol[] {HttpProtocol.HTTP11};
+        return HttpClient.create(llmConnectionProvider)
+            .protocol(protocols)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .responseTimeout(Duration.ofSeconds(responseTimeoutSeconds))
+            .compress(compressionEnabled)
+            .keepAlive(true);
+    }
+
     /**
      * Cria e configura o WebClient para chamadas HTTP não-bloqueantes.
      * Usado para comunicação com APIs externas (OpenAI, Gemini).
+     * @param maxInMemoryKb Limite de memória para decodificar uma resposta completa
      */
     @Bean
-    public WebClient webClient() {
-        return WebClient.builder().build();
+    public WebClient webClient(HttpClient llmHttpClient,
+                               @Value("${llm.http.max.in.memory.kb}") int maxInMemoryKb) {
+        return WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(llmHttpClient))
+            .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxInMemoryKb * 1024))
+            .build();
     }
 }
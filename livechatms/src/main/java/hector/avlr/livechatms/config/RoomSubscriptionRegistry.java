@@ -0,0 +1,142 @@
+package hector.avlr.livechatms.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.MultiValueMapAdapter;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de assinaturas do broker simples indexado por destino exato.
+ * O registro padrão do Spring mantém um cache de destinos limitado (1024 entradas); com mais
+ * salas ativas do que isso, cada mensagem para uma sala fora do cache percorre todas as
+ * assinaturas de todas as sessões. Aqui cada destino guarda um mapa concorrente das suas
+ * sessões, exposto ao broker por uma visão somente leitura: o roteamento é uma consulta ao
+ * mapa e o custo do fan-out depende apenas do tamanho da sala, não do total de conexões.
+ * Inscrever ou cancelar altera só a entrada da sessão (O(1)), inclusive em tópicos com
+ * milhares de assinantes como /topics/livechat; o fan-out percorre o mapa sem cópia e vê
+ * as alterações concorrentes de forma fracamente consistente.
+ * Assinaturas com padrão (ex.: /topics/livechat/*) são delegadas ao registro padrão e
+ * combinadas no resultado. Seletores (cabeçalho selector) não são suportados.
+ */
+public class RoomSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private static final MultiValueMap<String, String> EMPTY =
+        CollectionUtils.unmodifiableMultiValueMap(new LinkedMultiValueMap<>(0));
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    private final DefaultSubscriptionRegistry patternSubscriptions = new DefaultSubscriptionRegistry();
+
+    // Destino -> assinantes. Entradas vazias são removidas dentro de compute, para não
+    // descartar uma inscrição concorrente no mesmo destino
+    private final Map<String, Subscribers> byDestination = new ConcurrentHashMap<>();
+    // Sessão -> id de assinatura -> destino
+    private final Map<String, Map<String, String>> bySession = new ConcurrentHashMap<>();
+
+    private volatile boolean hasPatternSubscriptions;
+
+    /**
+     * Número de sessões inscritas no destino exato informado.
+     */
+    public int subscriberCount(String destination) {
+        Subscribers subscribers = byDestination.get(destination);
+        return subscribers != null ? subscribers.sessions.size() : 0;
+    }
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId, String destination,
+                                           Message<?> message) {
+        if (pathMatcher.isPattern(destination)) {
+            hasPatternSubscriptions = true;
+            patternSubscriptions.registerSubscription(message);
+            return;
+        }
+        bySession.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        byDestination.compute(destination, (key, current) -> {
+            Subscribers subscribers = current != null ? current : new Subscribers();
+            subscribers.sessions.merge(sessionId, List.of(subscriptionId), RoomSubscriptionRegistry::append);
+            return subscribers;
+        });
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        Map<String, String> subscriptions = bySession.get(sessionId);
+        String destination = subscriptions != null ? subscriptions.remove(subscriptionId) : null;
+        if (destination == null) {
+            patternSubscriptions.unregisterSubscription(message);
+            return;
+        }
+        removeFromDestination(destination, sessionId, subscriptionId);
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, String> subscriptions = bySession.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) ->
+                removeFromDestination(destination, sessionId, subscriptionId));
+        }
+        patternSubscriptions.unregisterAllSubscriptions(sessionId);
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        Subscribers subscribers = byDestination.get(destination);
+        MultiValueMap<String, String> exact = subscribers != null ? subscribers.view : EMPTY;
+        if (!hasPatternSubscriptions) {
+            return exact;
+        }
+        MultiValueMap<String, String> matched = patternSubscriptions.findSubscriptions(message);
+        if (matched.isEmpty()) {
+            return exact;
+        }
+        MultiValueMap<String, String> combined = new LinkedMultiValueMap<>(exact.size() + matched.size());
+        exact.forEach(combined::addAll);
+        matched.forEach(combined::addAll);
+        return combined;
+    }
+
+    private void removeFromDestination(String destination, String sessionId, String subscriptionId) {
+        byDestination.computeIfPresent(destination, (key, subscribers) -> {
+            subscribers.sessions.computeIfPresent(sessionId, (session, ids) -> remove(ids, subscriptionId));
+            return subscribers.sessions.isEmpty() ? null : subscribers;
+        });
+    }
+
+    // As listas de ids são imutáveis: o fan-out pode estar percorrendo a anterior
+    private static List<String> append(List<String> ids, List<String> added) {
+        List<String> appended = new ArrayList<>(ids.size() + added.size());
+        appended.addAll(ids);
+        appended.addAll(added);
+        return Collections.unmodifiableList(appended);
+    }
+
+    private static List<String> remove(List<String> ids, String subscriptionId) {
+        if (ids.size() == 1) {
+            return ids.get(0).equals(subscriptionId) ? null : ids;
+        }
+        List<String> remaining = ids.stream().filter(id -> !id.equals(subscriptionId)).toList();
+        return remaining.isEmpty() ? null : remaining;
+    }
+
+    /**
+     * Sessões inscritas em um destino (sessão -> ids de assinatura) e a visão somente leitura
+     * devolvida ao broker. A visão é criada uma vez e não aloca ao ser percorrida.
+     */
+    private static final class Subscribers {
+
+        final Map<String, List<String>> sessions = new ConcurrentHashMap<>();
+        final MultiValueMap<String, String> view = new MultiValueMapAdapter<>(Collections.unmodifiableMap(sessions));
+    }
+}
@@ -0,0 +1,209 @@
+package hector.avlr.livechatms.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.websocket.Session;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Protege o chat de clientes lentos (aba travada, rede ruim).
+ * Cada conexão tem uma fila de mensagens pendentes: entregues à sessão pelo executor do canal
+ * de saída e ainda não escritas no socket (buffer do ConcurrentWebSocketSessionDecorator do
+ * Spring). A espera na fila do executor, comum a todas as conexões, não conta.
+ * Ao atingir livechat.ws.max.queued.messages, a política configurada é aplicada:
+ * - drop: descarta as novas mensagens da conexão até a fila esvaziar
+ * - disconnect: fecha a conexão
+ * Uma escrita bloqueada no socket desiste após o limite de tempo de envio (timeout de envio
+ * bloqueante do Tomcat), liberando a thread de saída. Com a ordem de publicação preservada
+ * (WebSocketConfig), a sessão recebe uma mensagem por vez e as seguintes aguardam na fila
+ * ordenada da sessão: o atraso de um cliente travado fica limitado pelo tempo de envio, após o
+ * qual a conexão é encerrada. Métricas:
+ * livechat.ws.session.queue.depth{session} e livechat.ws.slow.consumer{action=dropped|disconnected}.
+ */
+class SlowConsumerGuard {
+
+    enum Policy { DROP, DISCONNECT }
+
+    // Propriedade do Tomcat com o timeout (ms) de uma escrita bloqueante
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private static final byte[] MESSAGE_COMMAND = "MESSAGE\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final MeterRegistry meterRegistry;
+    private final Policy policy;
+    private final int maxQueuedMessages;
+    private final long sendTimeLimitMillis;
+    private final Counter dropped;
+    private final Counter disconnected;
+
+    // Sessão WebSocket -> conexão acompanhada
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+
+    SlowConsumerGuard(MeterRegistry meterRegistry, Policy policy, int maxQueuedMessages, long sendTimeLimitMillis) {
+        this.meterRegistry = meterRegistry;
+        this.policy = policy;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.dropped = Counter.builder("livechat.ws.slow.consumer")
+            .description("Ações aplicadas a clientes lentos")
+            .tag("action", "dropped")
+            .register(meterRegistry);
+        this.disconnected = Counter.builder("livechat.ws.slow.consumer")
+            .description("Ações aplicadas a clientes lentos")
+            .tag("action", "disconnected")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Decorador do handler WebSocket: acompanha cada conexão e conta as mensagens escritas.
+     */
+    WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                limitBlockingSend(session);
+                AtomicInteger pending = new AtomicInteger();
+                Connection connection = new Connection(session, pending,
+                    Gauge.builder("livechat.ws.session.queue.depth", pending, AtomicInteger::get)
+                        .description("Mensagens pendentes de envio na conexão")
+                        .tag("session", session.getId())
+                        .register(meterRegistry));
+                connections.put(session.getId(), connection);
+                super.afterConnectionEstablished(new WebSocketSessionDecorator(session) {
+                    @Override
+                    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+                        try {
+                            super.sendMessage(message);
+                        } finally {
+                            if (isMessageFrame(message)) {
+                                connection.pending.decrementAndGet();
+                            }
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                Connection connection = connections.remove(session.getId());
+                if (connection != null) {
+                    meterRegistry.remove(connection.queueDepth);
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Interceptor do executor do canal de saída: aplica a política antes de entregar a
+     * mensagem à sessão, quando a fila da conexão está cheia.
+     */
+    ExecutorChannelInterceptor admission() {
+        return new ExecutorChannelInterceptor() {
+            @Override
+            public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+                Connection connection = tracked(message);
+                if (connection == null) {
+                    return message;
+                }
+                if (connection.pending.get() >= maxQueuedMessages) {
+                    if (policy == Policy.DROP) {
+                        dropped.increment();
+                    } else {
+                        disconnect(connection);
+                    }
+                    return null;
+                }
+                connection.pending.incrementAndGet();
+                return message;
+            }
+        };
+    }
+
+    private Connection tracked(Message<?> message) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return null;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        return sessionId != null ? connections.get(sessionId) : null;
+    }
+
+    private void disconnect(Connection connection) {
+        if (!connection.closing.compareAndSet(false, true)) {
+            return;
+        }
+        disconnected.increment();
+        // O fechamento pode bloquear enquanto o socket do cliente estiver cheio
+        Schedulers.boundedElastic().schedule(() -> {
+            try {
+                connection.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException | IllegalStateException ignored) {
+                // Conexão já encerrada
+            }
+        });
+    }
+
+    private void limitBlockingSend(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession nativeSession
+                && nativeSession.getNativeSession() instanceof Session standardSession) {
+            standardSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeLimitMillis);
+        }
+    }
+
+    private static boolean isMessageFrame(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            return text.getPayload().startsWith("MESSAGE\n");
+        }
+        if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload();
+            if (payload.remaining() < MESSAGE_COMMAND.length) {
+                return false;
+            }
+            for (int i = 0; i < MESSAGE_COMMAND.length; i++) {
+                if (payload.get(payload.position() + i) != MESSAGE_COMMAND[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static final class Connection {
+
+        final WebSocketSession session;
+        final AtomicInteger pending;
+        final Gauge queueDepth;
+        final AtomicBoolean closing = new AtomicBoolean();
+
+        Connection(WebSocketSession session, AtomicInteger pending, Gauge queueDepth) {
+            this.session = session;
+            this.pending = pending;
+            this.queueDepth = queueDepth;
+        }
+    }
+}
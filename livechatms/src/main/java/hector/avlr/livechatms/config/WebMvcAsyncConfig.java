@@ -0,0 +1,67 @@
+package hector.avlr.livechatms.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Executor do processamento assíncrono do Spring MVC. No streaming SSE do agente
+ * (Flux em /api/agent/chat/stream), cada lote de eventos é escrito na resposta por uma
+ * tarefa desse executor. Sem configuração, o MVC usaria um SimpleAsyncTaskExecutor, que cria
+ * uma thread de plataforma por tarefa: aqui o executor é um pool dimensionado
+ * (mvc.async.threads / queue.capacity) ou, com virtual threads ativas, uma virtual thread por tarefa.
+ * O executor não é registrado como bean: o Spring Boot usaria um único AsyncTaskExecutor do
+ * contexto também nos canais STOMP (ver WebSocketConfig).
+ */
+@Configuration
+public class WebMvcAsyncConfig implements WebMvcConfigurer, DisposableBean {
+
+    private final AsyncTaskExecutor executor;
+
+    /**
+     * Cria o executor; no modo pool, publica executor.*{name=mvcAsyncExecutor}.
+     * @param threads Threads do pool
+     * @param queueCapacity Tarefas enfileiradas antes de recusar novas
+     */
+    public WebMvcAsyncConfig(Environment environment, MeterRegistry meterRegistry,
+                             @Value("${mvc.async.threads}") int threads,
+                             @Value("${mvc.async.queue.capacity}") int queueCapacity) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            this.executor = WebSocketConfig.virtualThreadExecutor("mvc-async-");
+            return;
+        }
+        ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+        pool.setThreadNamePrefix("mvc-async-");
+        pool.setCorePoolSize(threads);
+        pool.setMaxPoolSize(threads);
+        pool.setQueueCapacity(queueCapacity);
+        pool.initialize();
+        new ExecutorServiceMetrics(pool.getThreadPoolExecutor(), "mvcAsyncExecutor", Tags.empty())
+            .bindTo(meterRegistry);
+        this.executor = pool;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(executor);
+    }
+
+    @Override
+    public void destroy() {
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        } else if (executor instanceof SimpleAsyncTaskExecutor simple) {
+            simple.close();
+        }
+    }
+}
@@ -1,36 +1,213 @@
 package hector.avlr.livechatms.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.Locale;
 
 /**
  * Configuração do WebSocket para chat em tempo real.
  * Define endpoints STOMP e message broker para comunicação bidirecional.
+ * O broker é configurável (livechat.broker.mode):
+ * - simple: broker em memória, restrito a uma instância (padrão), com assinaturas
+ *   indexadas por destino (ver RoomSubscriptionRegistry)
+ * - relay: repassa destinos /topics e /queue a um broker STOMP externo que aceite nomes de
+ *   destino livres (ActiveMQ Classic, Artemis), que distribui as mensagens entre todas as
+ *   instâncias da aplicação. O plugin STOMP do RabbitMQ só aceita /topic/, /queue/,
+ *   /exchange/ e /amq/queue/ e recusa os destinos /topics/... do chat
+ * Cada conexão tem buffer e tempo de envio limitados, e clientes lentos recebem a política
+ * livechat.ws.slow.consumer.policy (ver SlowConsumerGuard). Os canais STOMP de entrada e
+ * saída usam executores dimensionados (livechat.ws.*.threads / queue.capacity), preservando a
+ * ordem das mensagens de cada conexão nos dois sentidos; com virtual
+ * threads ativas (profile "virtual"), esta configuração os troca por uma virtual thread por
+ * mensagem.
  */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final String brokerMode;
+    private final boolean virtualThreads;
+    private final BrokerDeliveryMetrics deliveryMetrics;
+    private final SlowConsumerGuard slowConsumerGuard;
+
+    @Value("${livechat.broker.relay.host}")
+    private String relayHost;
+
+    @Value("${livechat.broker.relay.port}")
+    private int relayPort;
+
+    @Value("${livechat.broker.relay.login}")
+    private String relayLogin;
+
+    @Value("${livechat.broker.relay.passcode}")
+    private String relayPasscode;
+
+    @Value("${livechat.ws.send.buffer.kb}")
+    private int sendBufferKb;
+
+    @Value("${livechat.ws.send.time.limit.millis}")
+    private int sendTimeLimitMillis;
+
+    @Value("${livechat.ws.message.size.kb}")
+    private int messageSizeKb;
+
+    @Value("${livechat.ws.inbound.threads}")
+    private int inboundThreads;
+
+    @Value("${livechat.ws.inbound.queue.capacity}")
+    private int inboundQueueCapacity;
+
+    @Value("${livechat.ws.outbound.threads}")
+    private int outboundThreads;
+
+    @Value("${livechat.ws.outbound.queue.capacity}")
+    private int outboundQueueCapacity;
+
+    /**
+     * Construtor com registro de métricas (latência de entrega via broker e clientes lentos).
+     * @param slowConsumerPolicy Política para clientes lentos: drop ou disconnect
+     * @param maxQueuedMessages Mensagens pendentes por conexão antes de aplicar a política
+     * @param sendTimeLimitMillis Tempo máximo de uma escrita no socket
+     */
+    public WebSocketConfig(MeterRegistry meterRegistry, Environment environment,
+                           @Value("${livechat.broker.mode}") String brokerMode,
+                           @Value("${livechat.ws.slow.consumer.policy}") String slowConsumerPolicy,
+                           @Value("${livechat.ws.max.queued.messages}") int maxQueuedMessages,
+                           @Value("${livechat.ws.send.time.limit.millis}") long sendTimeLimitMillis) {
+        this.brokerMode = brokerMode.toLowerCase();
+        // Mesma condição do Spring Boot (spring.threads.virtual.enabled e Java 21+)
+        this.virtualThreads = Threading.VIRTUAL.isActive(environment);
+        this.deliveryMetrics = new BrokerDeliveryMetrics(meterRegistry, this.brokerMode);
+        this.slowConsumerGuard = new SlowConsumerGuard(meterRegistry,
+            SlowConsumerGuard.Policy.valueOf(slowConsumerPolicy.toUpperCase(Locale.ROOT)),
+            maxQueuedMessages, sendTimeLimitMillis);
+    }
+
     /**
      * Configura o message broker para roteamento de mensagens.
      * - /topics: Prefixo para mensagens broadcast (servidor -> clientes)
+     * - /queue: Filas por usuário, via /user/queue/... (ex.: respostas do agente)
      * - /livechatms: Prefixo para mensagens do cliente (cliente -> servidor)
+     * As mensagens para cada sessão são entregues na ordem de publicação, mesmo com várias
+     * threads no canal de saída (ex.: fragmentos de uma resposta do agente).
      */
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topics");
+        switch (brokerMode) {
+            case "simple" -> registry.enableSimpleBroker("/topics", "/queue");
+            case "relay" -> registry.enableStompBrokerRelay("/topics", "/queue")
+                .setRelayHost(relayHost)
+                .setRelayPort(relayPort)
+                .setClientLogin(relayLogin)
+                .setClientPasscode(relayPasscode)
+                .setSystemLogin(relayLogin)
+                .setSystemPasscode(relayPasscode);
+            default -> throw new IllegalStateException("Modo de broker não suportado: " + brokerMode);
+        }
         registry.setApplicationDestinationPrefixes("/livechatms");
+        registry.setPreservePublishOrder(true);
+        registry.configureBrokerChannel().interceptors(deliveryMetrics.publishTimestamp());
+    }
+
+    /**
+     * Substitui o registro de assinaturas do broker simples pelo registro indexado por
+     * destino, para que o roteamento de mensagens de uma sala não dependa do total de conexões.
+     * Estático para não antecipar a criação desta configuração.
+     */
+    @Bean
+    static BeanPostProcessor roomSubscriptionRegistryInstaller() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof SimpleBrokerMessageHandler brokerHandler) {
+                    brokerHandler.setSubscriptionRegistry(new RoomSubscriptionRegistry());
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Limites por conexão: buffer de envio, tempo de envio e tamanho de mensagem recebida.
+     * Ao exceder buffer ou tempo, o Spring encerra a conexão.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendBufferSizeLimit(sendBufferKb * 1024)
+            .setSendTimeLimit(sendTimeLimitMillis)
+            .setMessageSizeLimit(messageSizeKb * 1024)
+            .addDecoratorFactory(slowConsumerGuard::decorate);
+    }
+
+    /**
+     * Executor dedicado às mensagens recebidas dos clientes (virtual threads, se ativas).
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("clientInboundChannel-"));
+            return;
+        }
+        registration.taskExecutor()
+            .corePoolSize(inboundThreads)
+            .maxPoolSize(inboundThreads)
+            .queueCapacity(inboundQueueCapacity);
+    }
+
+    /**
+     * Executor dedicado às mensagens enviadas aos clientes, com a política de clientes lentos
+     * e o registro da latência de entrega.
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("clientOutboundChannel-"));
+        } else {
+            registration.taskExecutor()
+                .corePoolSize(outboundThreads)
+                .maxPoolSize(outboundThreads)
+                .queueCapacity(outboundQueueCapacity);
+        }
+        registration.interceptors(slowConsumerGuard.admission(), deliveryMetrics.recordDelivery());
+    }
+
+    /**
+     * Uma virtual thread por mensagem. O Spring Boot não aplica virtual threads aos canais
+     * STOMP por conta própria: o applicationTaskExecutor não é criado quando já existem
+     * executores (os dos próprios canais), então a troca é feita aqui.
+     */
+    static SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        return executor;
     }
 
     /**
      * Registra endpoint WebSocket para conexão inicial dos clientes.
      * Clientes conectam via: ws://host/hectoravlr-livechat-websocket
+     * As mensagens de uma mesma conexão são processadas na ordem em que chegaram: o cliente
+     * assina o tópico da sala e pede o histórico logo em seguida, e o histórico só pode ser
+     * lido depois que a assinatura estiver registrada, senão mensagens publicadas entre os
+     * dois ficariam de fora de ambos.
      */
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
-        registry.addEndpoint("/hectoravlr-livechat-websocket");
+        registry.addEndpoint("/hectoravlr-livechat-websocket")
+            .addInterceptors(new ClientAddressInterceptor());
+        registry.setPreserveReceiveOrder(true);
     }
 }
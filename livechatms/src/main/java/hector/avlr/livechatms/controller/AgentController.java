@@ -2,25 +2,37 @@ package hector.avlr.livechatms.controller;
 
 import hector.avlr.livechatms.domain.AgentRequest;
 import hector.avlr.livechatms.domain.AgentResponse;
+import hector.avlr.livechatms.domain.AgentStreamChunk;
 import hector.avlr.livechatms.service.LLMService;
+import hector.avlr.livechatms.service.admission.AgentAdmission;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * Controller REST para o agente de conversação inteligente.
- * Expõe endpoint para interação com o LLM via HTTP.
+ * Expõe endpoints para interação com o LLM via HTTP (resposta completa ou streaming SSE).
+ * Cada requisição passa pelo controle de admissão (limite por IP e limite global adaptativo):
+ * recusadas recebem 429 ou 503 com Retry-After, sem chegar ao LLM.
  */
 @RestController
 @RequestMapping("/api/agent")
 public class AgentController {
 
     private final LLMService llmService;
+    private final AgentAdmission admission;
 
     /**
-     * Construtor com injeção de dependência do serviço LLM.
+     * Construtor com injeção de dependência do serviço LLM e do controle de admissão.
      */
-    public AgentController(LLMService llmService) {
+    public AgentController(LLMService llmService, AgentAdmission admission) {
         this.llmService = llmService;
+        this.admission = admission;
     }
 
     /**
@@ -29,11 +41,14 @@ public class AgentController {
      * @return Resposta do agente com status de sucesso/erro
      */
     @PostMapping("/chat")
-    public ResponseEntity<AgentResponse> chat(@RequestBody AgentRequest request) {
+    public ResponseEntity<AgentResponse> chat(@RequestBody AgentRequest request, HttpServletRequest http) {
         try {
-            // Processa mensagem e gera resposta via LLM
-            String response = llmService.generateResponse(request.sessionId(), request.message());
-            return ResponseEntity.ok(new AgentResponse(request.sessionId(), response, "success"));
+            // Processa mensagem e gera resposta via LLM (bloqueia até a resposta)
+            return admission.admit(client(http),
+                    () -> llmService.generateResponseAsync(request.sessionId(), request.message())
+                        .map(response -> ResponseEntity.ok(new AgentResponse(request.sessionId(), response, "success"))),
+                    rejection -> rejected(request.sessionId(), rejection))
+                .block();
         } catch (Exception e) {
             // Retorna erro amigável sem expor detalhes internos
             return ResponseEntity.ok(new AgentResponse(
@@ -43,4 +58,74 @@ public class AgentController {
             ));
         }
     }
+
+    /**
+     * Endpoint não-bloqueante para enviar mensagem ao agente AI.
+     * A thread do servidor é liberada enquanto o LLM processa a requisição,
+     * permitindo milhares de conversas simultâneas com poucas threads.
+     * @param request Contém sessionId e mensagem do usuário
+     * @return Mono com a resposta do agente e status de sucesso/erro
+     */
+    @PostMapping("/chat/async")
+    public Mono<ResponseEntity<AgentResponse>> chatAsync(@RequestBody AgentRequest request, HttpServletRequest http) {
+        return admission.admit(client(http),
+                () -> llmService.generateResponseAsync(request.sessionId(), request.message())
+                    .map(response -> ResponseEntity.ok(new AgentResponse(request.sessionId(), response, "success"))),
+                rejection -> rejected(request.sessionId(), rejection))
+            // Retorna erro amigável sem expor detalhes internos
+            .onErrorReturn(ResponseEntity.ok(new AgentResponse(request.sessionId(), "Erro ao processar mensagem.", "error")));
+    }
+
+    /**
+     * Endpoint de streaming: envia fragmentos da resposta via Server-Sent Events
+     * à medida que são gerados pelo LLM, reduzindo o tempo até o primeiro token.
+     * Eventos "delta" carregam trechos parciais; o evento "done" encerra o stream.
+     * Recusada pelo controle de admissão, responde 429/503 com um único evento "error".
+     * @param request Contém sessionId e mensagem do usuário
+     * @return Fluxo de eventos SSE com os fragmentos da resposta
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<AgentStreamChunk>>> chatStream(@RequestBody AgentRequest request,
+                                                                             HttpServletRequest http) {
+        String sessionId = request.sessionId();
+        AgentAdmission.Rejection rejection = admission.tryAdmit(client(http));
+        if (rejection != null) {
+            AgentAdmission.Reason reason = rejection.reason();
+            return ResponseEntity.status(reason.httpStatus())
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(rejection.retryAfterSeconds()))
+                .body(Flux.just(event("error", new AgentStreamChunk(sessionId, reason.message(), reason.status()))));
+        }
+        return ResponseEntity.ok(llmService.streamResponse(sessionId, request.message())
+            .map(delta -> event("delta", new AgentStreamChunk(sessionId, delta, "streaming")))
+            .concatWith(Flux.just(event("done", new AgentStreamChunk(sessionId, "", "success"))))
+            // Retorna erro amigável sem expor detalhes internos
+            .onErrorResume(e -> Flux.just(event("error",
+                new AgentStreamChunk(sessionId, "Erro ao processar mensagem.", "error"))))
+            .doFinally(signal -> admission.release()));
+    }
+
+    /**
+     * Cliente para o limite de requisições: endereço de origem. Atrás de um proxy reverso,
+     * server.forward-headers-strategy=native faz o Tomcat usar o IP de X-Forwarded-For.
+     */
+    private static String client(HttpServletRequest http) {
+        return http.getRemoteAddr();
+    }
+
+    /**
+     * Resposta para a requisição recusada: 429 (limite do cliente) ou 503 (sobrecarga), com Retry-After.
+     */
+    private static ResponseEntity<AgentResponse> rejected(String sessionId, AgentAdmission.Rejection rejection) {
+        AgentAdmission.Reason reason = rejection.reason();
+        return ResponseEntity.status(reason.httpStatus())
+            .header(HttpHeaders.RETRY_AFTER, Long.toString(rejection.retryAfterSeconds()))
+            .body(new AgentResponse(sessionId, reason.message(), reason.status()));
+    }
+
+    /**
+     * Cria evento SSE nomeado com o fragmento informado.
+     */
+    private static ServerSentEvent<AgentStreamChunk> event(String name, AgentStreamChunk chunk) {
+        return ServerSentEvent.builder(chunk).event(name).build();
+    }
 }
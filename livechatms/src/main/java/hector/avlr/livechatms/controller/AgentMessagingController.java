@@ -0,0 +1,160 @@
+package hector.avlr.livechatms.controller;
+
+import hector.avlr.livechatms.config.ClientAddressInterceptor;
+import hector.avlr.livechatms.domain.AgentRequest;
+import hector.avlr.livechatms.domain.AgentResponse;
+import hector.avlr.livechatms.domain.AgentStreamChunk;
+import hector.avlr.livechatms.service.LLMService;
+import hector.avlr.livechatms.service.admission.AgentAdmission;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Controller STOMP para o agente de conversação: alternativa ao endpoint REST que reaproveita
+ * a conexão WebSocket do chat (sem uma requisição HTTP por turno).
+ * O cliente se inscreve em /user/queue/agent e envia AgentRequest para:
+ * - /livechatms/agent/chat: recebe um AgentResponse com a resposta completa
+ * - /livechatms/agent/chat/stream: recebe AgentStreamChunk à medida que o LLM gera a resposta
+ *   ("streaming"), seguidos de um fragmento final "success" ou "error"
+ * As respostas vão somente para a sessão STOMP que enviou a requisição, na ordem em que foram
+ * geradas (o broker preserva a ordem de publicação por sessão, ver WebSocketConfig).
+ * Streams em andamento são cancelados quando a sessão STOMP desconecta; requisições que chegam
+ * depois da desconexão não iniciam stream.
+ * Cada requisição passa pelo controle de admissão (limite por IP do cliente e limite global
+ * adaptativo): recusadas recebem de imediato uma resposta com status "rate_limited" ou "overloaded".
+ */
+@Controller
+public class AgentMessagingController {
+
+    static final String AGENT_QUEUE = "/queue/agent";
+
+    private final LLMService llmService;
+    private final AgentAdmission admission;
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    // Sessão STOMP conectada -> streams em andamento (criada ao conectar, removida ao desconectar)
+    private final Map<String, Disposable.Composite> streams = new ConcurrentHashMap<>();
+
+    /**
+     * Construtor com injeção de dependência do serviço LLM, do controle de admissão e do envio
+     * de mensagens ao broker.
+     */
+    public AgentMessagingController(LLMService llmService, AgentAdmission admission,
+                                    SimpMessageSendingOperations messagingTemplate) {
+        this.llmService = llmService;
+        this.admission = admission;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * Envia mensagem ao agente AI; a resposta completa é enviada à fila do usuário.
+     * @param request Contém sessionId e mensagem do usuário
+     * @param stompSessionId Sessão STOMP
+     * @param sessionAttributes Atributos da sessão WebSocket (endereço do cliente)
+     * @return Mono com a resposta do agente e status de sucesso/erro
+     */
+    @MessageMapping("/agent/chat")
+    @SendToUser(destinations = AGENT_QUEUE, broadcast = false)
+    public Mono<AgentResponse> chat(AgentRequest request,
+                                    @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String stompSessionId,
+                                    @Header(SimpMessageHeaderAccessor.SESSION_ATTRIBUTES) Map<String, Object> sessionAttributes) {
+        return admission.admit(client(stompSessionId, sessionAttributes),
+                () -> llmService.generateResponseAsync(request.sessionId(), request.message())
+                    .map(response -> new AgentResponse(request.sessionId(), response, "success")),
+                rejection -> new AgentResponse(request.sessionId(), rejection.reason().message(),
+                    rejection.reason().status()))
+            // Retorna erro amigável sem expor detalhes internos
+            .onErrorReturn(new AgentResponse(request.sessionId(), "Erro ao processar mensagem.", "error"));
+    }
+
+    /**
+     * Envia mensagem ao agente AI; os fragmentos da resposta são enviados à fila do usuário
+     * à medida que são gerados.
+     * @param request Contém sessionId e mensagem do usuário
+     * @param stompSessionId Sessão STOMP que receberá os fragmentos
+     * @param sessionAttributes Atributos da sessão WebSocket (endereço do cliente)
+     */
+    @MessageMapping("/agent/chat/stream")
+    public void chatStream(AgentRequest request,
+                           @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String stompSessionId,
+                           @Header(SimpMessageHeaderAccessor.SESSION_ATTRIBUTES) Map<String, Object> sessionAttributes) {
+        String sessionId = request.sessionId();
+        AgentAdmission.Rejection rejection = admission.tryAdmit(client(stompSessionId, sessionAttributes));
+        if (rejection != null) {
+            send(stompSessionId, new AgentStreamChunk(sessionId, rejection.reason().message(),
+                rejection.reason().status()));
+            return;
+        }
+        Disposable.Composite sessionStreams = streams.get(stompSessionId);
+        Disposable.Swap stream = Disposables.swap();
+        // Sessão já desconectada: ninguém cancelaria o stream
+        if (sessionStreams == null || !sessionStreams.add(stream)) {
+            admission.release();
+            return;
+        }
+        stream.update(llmService.streamResponse(sessionId, request.message())
+            .map(delta -> new AgentStreamChunk(sessionId, delta, "streaming"))
+            .concatWith(Mono.fromSupplier(() -> new AgentStreamChunk(sessionId, "", "success")))
+            // Retorna erro amigável sem expor detalhes internos
+            .onErrorResume(e -> Flux.just(new AgentStreamChunk(sessionId, "Erro ao processar mensagem.", "error")))
+            .doFinally(signal -> {
+                sessionStreams.remove(stream);
+                admission.release();
+            })
+            .subscribe(chunk -> send(stompSessionId, chunk)));
+    }
+
+    /**
+     * Acompanha os streams da sessão STOMP a partir da conexão.
+     */
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        String stompSessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (stompSessionId != null) {
+            streams.put(stompSessionId, Disposables.composite());
+        }
+    }
+
+    /**
+     * Cancela os streams da sessão STOMP encerrada.
+     */
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Disposable.Composite sessionStreams = streams.remove(event.getSessionId());
+        if (sessionStreams != null) {
+            sessionStreams.dispose();
+        }
+    }
+
+    /**
+     * Cliente para o limite de requisições: endereço registrado no handshake (o mesmo do HTTP),
+     * de modo que reconectar não renova o limite; sem ele, a própria sessão STOMP.
+     */
+    private static String client(String stompSessionId, Map<String, Object> sessionAttributes) {
+        Object address = sessionAttributes != null ? sessionAttributes.get(ClientAddressInterceptor.ATTRIBUTE) : null;
+        return address != null ? address.toString() : stompSessionId;
+    }
+
+    private void send(String stompSessionId, AgentStreamChunk chunk) {
+        // Destino de usuário resolvido pela sessão (clientes sem autenticação)
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(stompSessionId);
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(stompSessionId, AGENT_QUEUE, chunk, headers.getMessageHeaders());
+    }
+}
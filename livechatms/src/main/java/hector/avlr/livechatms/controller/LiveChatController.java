@@ -1,32 +1,123 @@
 package hector.avlr.livechatms.controller;
 
+import hector.avlr.livechatms.domain.ChatBatch;
 import hector.avlr.livechatms.domain.ChatInput;
 import hector.avlr.livechatms.domain.ChatOutput;
+import hector.avlr.livechatms.service.ChatAuditLog;
+import hector.avlr.livechatms.service.ChatReplayBuffer;
+import hector.avlr.livechatms.service.ChatRoomService;
+import hector.avlr.livechatms.service.LiveChatBroadcaster;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.util.HtmlUtils;
 
 /**
  * Controller WebSocket para chat em tempo real.
- * Gerencia mensagens enviadas via protocolo STOMP.
+ * Gerencia mensagens enviadas via protocolo STOMP, no tópico global ou em salas.
+ * A publicação no broker (imediata ou em lotes) fica a cargo do LiveChatBroadcaster e o
+ * registro das mensagens (assíncrono e amostrado) do ChatAuditLog.
+ * Cada mensagem recebe uma sequência no tópico e fica no ChatReplayBuffer: ao se inscrever,
+ * o cliente pede em /livechatms/history (ou /livechatms/history/{sala}) as mensagens
+ * posteriores à última que recebeu (cabeçalho last-seq).
+ * Métrica: livechat.messages.received{scope=global|room} (taxa de mensagens recebidas).
  */
 @Controller
 public class LiveChatController {
 
+    private static final String GLOBAL_TOPIC = "/topics/livechat";
+
+    private final ChatRoomService chatRoomService;
+    private final LiveChatBroadcaster broadcaster;
+    private final ChatAuditLog auditLog;
+    private final ChatReplayBuffer replayBuffer;
+    private final Counter globalMessages;
+    private final Counter roomMessages;
+
+    /**
+     * Construtor com injeção de dependência dos serviços de salas, publicação, registro e histórico.
+     */
+    public LiveChatController(ChatRoomService chatRoomService, LiveChatBroadcaster broadcaster,
+                              ChatAuditLog auditLog, ChatReplayBuffer replayBuffer, MeterRegistry meterRegistry) {
+        this.chatRoomService = chatRoomService;
+        this.broadcaster = broadcaster;
+        this.auditLog = auditLog;
+        this.replayBuffer = replayBuffer;
+        this.globalMessages = receivedMessages("global", meterRegistry);
+        this.roomMessages = receivedMessages("room", meterRegistry);
+    }
+
+    // Tag por escopo, não por sala: o número de salas não é limitado
+    private static Counter receivedMessages(String scope, MeterRegistry meterRegistry) {
+        return Counter.builder("livechat.messages.received")
+            .description("Mensagens recebidas dos clientes do chat")
+            .tag("scope", scope)
+            .register(meterRegistry);
+    }
+
     /**
  * Processa nova mensagem do chat e transmite para todos os clientes conectados.
      * Aplica escape HTML para prevenir ataques XSS.
      * @param input Mensagem recebida do cliente
-     * @return Mensagem formatada e sanitizada para broadcast
      */
     @MessageMapping("/new-message")
-    @SendTo("/topics/livechat")
-    public ChatOutput newMessage(ChatInput input) {
-        // Log da mensagem recebida
-        System.out.println("Received message from: " + input.user() + " - " + input.message());
-        
-        // Escapa HTML para segurança e retorna para broadcast
-        return new ChatOutput(HtmlUtils.htmlEscape(input.user() + ": " + input.message()));
+    public void newMessage(ChatInput input) {
+        globalMessages.increment();
+        // Log da mensagem recebida (fora da thread do handler)
+        auditLog.record(GLOBAL_TOPIC, input);
+
+        // Escapa HTML para segurança e publica para broadcast
+        publish(GLOBAL_TOPIC, input);
+    }
+
+    /**
+     * Processa nova mensagem de uma sala e transmite apenas aos membros dela.
+     * @param room Nome da sala (letras, dígitos, '-' e '_')
+     * @param input Mensagem recebida do cliente
+     */
+    @MessageMapping("/new-message/{room}")
+    public void newRoomMessage(@DestinationVariable String room, ChatInput input) {
+        chatRoomService.requireValidRoom(room);
+        roomMessages.increment();
+        String destination = ChatRoomService.ROOM_DESTINATION_PREFIX + room;
+        auditLog.record(destination, input);
+        publish(destination, input);
+    }
+
+    /**
+     * Reenvia ao cliente que se inscreve as mensagens do tópico global que ele ainda não recebeu.
+     * A resposta vai somente para essa inscrição, sem passar pelo broker.
+     * @param lastSeq Sequência da última mensagem recebida (ausente: todo o histórico)
+     * @return Mensagens posteriores, em ordem
+     */
+    @SubscribeMapping("/history")
+    public ChatBatch history(@Header(name = "last-seq", required = false) Long lastSeq) {
+        return new ChatBatch(replayBuffer.since(GLOBAL_TOPIC, lastSeq != null ? lastSeq : 0));
+    }
+
+    /**
+     * Reenvia ao cliente que se inscreve as mensagens da sala que ele ainda não recebeu.
+     * @param room Nome da sala
+     * @param lastSeq Sequência da última mensagem recebida (ausente: todo o histórico)
+     * @return Mensagens posteriores, em ordem
+     */
+    @SubscribeMapping("/history/{room}")
+    public ChatBatch roomHistory(@DestinationVariable String room,
+                                 @Header(name = "last-seq", required = false) Long lastSeq) {
+        chatRoomService.requireValidRoom(room);
+        return new ChatBatch(replayBuffer.since(ChatRoomService.ROOM_DESTINATION_PREFIX + room,
+            lastSeq != null ? lastSeq : 0));
+    }
+
+    /**
+     * Escapa HTML, sequencia a mensagem no histórico do tópico e a publica.
+     */
+    private void publish(String destination, ChatInput input) {
+        ChatOutput output = new ChatOutput(HtmlUtils.htmlEscape(input.user() + ": " + input.message()));
+        broadcaster.publish(destination, replayBuffer.record(destination, output));
     }
 }
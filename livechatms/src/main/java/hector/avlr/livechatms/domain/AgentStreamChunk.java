@@ -0,0 +1,9 @@
+package hector.avlr.livechatms.domain;
+
+/**
+ * Representa um fragmento da resposta do agente AI enviado em modo streaming.
+ * @param sessionId Identificador da sessão de conversação
+ * @param delta Trecho parcial da resposta (vazio no evento final)
+ * @param status Status do fragmento ("streaming", "success" ou "error")
+ */
+public record AgentStreamChunk(String sessionId, String delta, String status) {}
@@ -0,0 +1,10 @@
+package hector.avlr.livechatms.domain;
+
+import java.util.List;
+
+/**
+ * Lote de mensagens do chat entregue em um único frame STOMP por assinante.
+ * @param messages Mensagens na ordem de publicação
+ */
+public record ChatBatch(List<ChatOutput> messages) {
+}
@@ -3,6 +3,19 @@ package hector.avlr.livechatms.domain;
 /**
  * Representa uma mensagem a ser transmitida no chat em tempo real.
  * @param content Conteúdo formatado da mensagem (usuário + texto)
+ * @param seq Sequência da mensagem no tópico (0 se não sequenciada); usada pelo cliente para
+ *            pedir somente as mensagens que perdeu e descartar duplicadas
  */
-public record ChatOutput(String content) {
+public record ChatOutput(String content, long seq) {
+
+    /**
+     * Mensagem ainda não sequenciada.
+     */
+    public ChatOutput(String content) {
+        this(content, 0);
+    }
+
+    public ChatOutput withSeq(long seq) {
+        return new ChatOutput(content, seq);
+    }
 }
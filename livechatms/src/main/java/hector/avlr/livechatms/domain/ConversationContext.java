@@ -1,28 +1,75 @@
 package hector.avlr.livechatms.domain;
 
-import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Representa o contexto de uma conversação com o agente AI.
- * Mantém o histórico de mensagens e metadados da sessão.
+ * Mantém o histórico de mensagens, o resumo das mensagens antigas já compactadas
+ * e metadados da sessão.
+ * O histórico é publicado como snapshot imutável (copy-on-write com array compartilhado):
+ * leituras não copiam nem bloqueiam, e cada nova mensagem custa O(1) amortizado.
+ * Turnos da mesma sessão são enfileirados (ver {@link #enqueueTurn}) e executam em ordem.
+ * Alterações do histórico são informadas ao {@link Journal} da sessão (armazenamento durável).
  */
 public class ConversationContext {
+
+    // Prefixo da mensagem de sistema que carrega o resumo das mensagens compactadas
+    private static final String SUMMARY_PREFIX = "Resumo da conversa anterior: ";
+
     private final String sessionId;
-    private final List<Message> messages;
-    private final LocalDateTime createdAt;
-    private LocalDateTime lastActivity;
+    private final Journal journal;
+    private final Instant createdAt;
+    // volatile: lido pela varredura de expiração em outra thread
+    private volatile Instant lastActivity;
+    // Snapshot atual do histórico; substituído (nunca alterado) a cada escrita
+    private volatile History history = History.EMPTY;
+    // Evita mais de uma compactação simultânea para a mesma sessão
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // Fim do último turno enfileirado (mailbox da sessão)
+    private final AtomicReference<CompletableFuture<Void>> lastTurn =
+        new AtomicReference<>(CompletableFuture.completedFuture(null));
 
     /**
      * Cria um novo contexto de conversação.
      * @param sessionId Identificador único da sessão
      */
     public ConversationContext(String sessionId) {
+        this(sessionId, Journal.NONE);
+    }
+
+    /**
+     * Cria um novo contexto de conversação que registra suas alterações no journal.
+     * @param sessionId Identificador único da sessão
+     * @param journal Destino das alterações do histórico
+     */
+    public ConversationContext(String sessionId, Journal journal) {
         this.sessionId = sessionId;
-        this.messages = new ArrayList<>();
-        this.createdAt = LocalDateTime.now();
-        this.lastActivity = LocalDateTime.now();
+        this.journal = journal;
+        this.createdAt = Instant.now();
+        this.lastActivity = createdAt;
+    }
+
+    /**
+     * Recria o contexto de uma sessão a partir do histórico persistido.
+     * A carga conta como atividade (a sessão está sendo usada).
+     * @param sessionId Identificador da sessão
+     * @param journal Destino das próximas alterações do histórico
+     * @param messages Mensagens persistidas, da mais antiga à mais recente
+     * @param summary Mensagem de resumo persistida (null se não houver)
+     */
+    public static ConversationContext restore(String sessionId, Journal journal,
+                                              List<Message> messages, Message summary) {
+        ConversationContext context = new ConversationContext(sessionId, journal);
+        context.history = History.of(messages, summary);
+        return context;
     }
 
     /**
@@ -30,30 +77,256 @@ public class ConversationContext {
      * @param role Papel do emissor ("user" ou "assistant")
      * @param content Conteúdo da mensagem
      */
-    public void addMessage(String role, String content) {
-        messages.add(new Message(role, content));
-        this.lastActivity = LocalDateTime.now();
+    public synchronized void addMessage(String role, String content) {
+        Message message = new Message(role, content);
+        journal.appended(sessionId, message);
+        history = history.append(message);
+        this.lastActivity = Instant.now();
+    }
+
+    /**
+     * Retorna snapshot imutável do histórico de mensagens.
+     * O snapshot não é copiado: permanece válido e inalterado após novas mensagens.
+     */
+    public History getMessages() {
+        return history;
+    }
+
+    /**
+     * Substitui as {@code count} mensagens mais antigas pelo resumo informado.
+     * Novas mensagens só são adicionadas ao final, então as mais antigas continuam
+     * sendo as mesmas que foram resumidas.
+     * @param count Quantidade de mensagens antigas a remover
+     * @param summary Resumo que passa a representar essas mensagens (null mantém o atual)
+     */
+    public synchronized void compact(int count, String summary) {
+        Message summaryMessage = summary != null ? new Message("system", SUMMARY_PREFIX + summary) : null;
+        History compacted = history.dropFirst(count, summaryMessage);
+        journal.compacted(sessionId, compacted);
+        history = compacted;
+    }
+
+    /**
+     * Enfileira um turno na sessão, sem bloqueio: o turno passa a ser o último da fila.
+     * Quem enfileira deve iniciar o turno somente após o retorno ser concluído e
+     * completar {@code turnDone} ao terminar (com sucesso, erro ou cancelamento); se for
+     * cancelado antes de iniciar, somente depois que o turno anterior terminar.
+     * @param turnDone Futuro completado quando o novo turno terminar
+     * @return Futuro do turno anterior
+     */
+    public CompletableFuture<Void> enqueueTurn(CompletableFuture<Void> turnDone) {
+        return lastTurn.getAndSet(turnDone);
+    }
+
+    /**
+     * Indica se há um turno em andamento ou na fila desta sessão.
+     */
+    public boolean hasTurnInFlight() {
+        return !lastTurn.get().isDone();
     }
 
     /**
-     * Retorna cópia imutável do histórico de mensagens.
+     * Marca o início de uma compactação.
+     * @return false se já existe uma compactação em andamento para esta sessão
      */
-    public List<Message> getMessages() {
-        return new ArrayList<>(messages);
+    public boolean tryStartCompaction() {
+        return compacting.compareAndSet(false, true);
+    }
+
+    /**
+     * Marca o fim da compactação em andamento.
+     */
+    public void finishCompaction() {
+        compacting.set(false);
+    }
+
+    /**
+     * Resumo acumulado das mensagens compactadas (null se ainda não houve compactação).
+     */
+    public String getSummary() {
+        Message summary = history.summary();
+        return summary != null ? summary.content().substring(SUMMARY_PREFIX.length()) : null;
     }
 
     public String getSessionId() {
         return sessionId;
     }
 
-    public LocalDateTime getLastActivity() {
+    public Instant getLastActivity() {
         return lastActivity;
     }
 
+    /**
+     * Snapshot imutável do histórico.
+     * Snapshots sucessivos compartilham o mesmo array: uma nova mensagem ocupa a próxima
+     * posição livre, que nenhum snapshot anterior enxerga. O array só é copiado quando
+     * enche (crescimento geométrico) ou na compactação.
+     */
+    public static final class History extends AbstractList<Message> implements RandomAccess {
+
+        static final History EMPTY = new History(new Message[8], 0, null);
+
+        private final Message[] array;
+        private final int size;
+        private final Message summary;
+
+        private History(Message[] array, int size, Message summary) {
+            this.array = array;
+            this.size = size;
+            this.summary = summary;
+        }
+
+        private static History of(List<Message> messages, Message summary) {
+            Message[] array = new Message[Math.max(8, messages.size() * 2)];
+            for (int i = 0; i < messages.size(); i++) {
+                array[i] = messages.get(i);
+            }
+            return new History(array, messages.size(), summary);
+        }
+
+        /**
+         * Mensagem de sistema com o resumo das mensagens compactadas (null se não houver).
+         */
+        public Message summary() {
+            return summary;
+        }
+
+        @Override
+        public Message get(int index) {
+            Objects.checkIndex(index, size);
+            return array[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Deve ser chamado apenas sobre o snapshot mais recente (escritas serializadas).
+         */
+        private History append(Message message) {
+            Message[] target = array;
+            if (size == array.length || array[size] != null) {
+                target = Arrays.copyOf(array, Math.max(8, size * 2));
+                Arrays.fill(target, size, target.length, null);
+            }
+            target[size] = message;
+            return new History(target, size + 1, summary);
+        }
+
+        private History dropFirst(int count, Message newSummary) {
+            int dropped = Math.min(count, size);
+            Message[] remaining = new Message[Math.max(8, (size - dropped) * 2)];
+            System.arraycopy(array, dropped, remaining, 0, size - dropped);
+            return new History(remaining, size - dropped, newSummary != null ? newSummary : summary);
+        }
+    }
+
     /**
      * Representa uma mensagem individual na conversação.
-     * @param role Papel (user/assistant)
-     * @param content Conteúdo da mensagem
+     * Guarda a serialização da mensagem para cada codificador que já a processou,
+     * para que o histórico não seja re-serializado a cada turno.
+     */
+    public static final class Message {
+
+        private static final Encoded[] NONE = new Encoded[0];
+
+        private final String role;
+        private final String content;
+        // Cache copy-on-write: poucos codificadores (um por formato de provedor)
+        private volatile Encoded[] encoded = NONE;
+
+        /**
+         * @param role Papel (user/assistant/system)
+         * @param content Conteúdo da mensagem
+         */
+        public Message(String role, String content) {
+            this.role = role;
+            this.content = content;
+        }
+
+        public String role() {
+            return role;
+        }
+
+        public String content() {
+            return content;
+        }
+
+        /**
+         * Retorna a mensagem serializada pelo codificador, calculando-a apenas na primeira vez.
+         * Codificação concorrente da mesma mensagem é idempotente (no pior caso, repetida).
+         * @param encoder Codificador (deve ser uma instância compartilhada, comparada por identidade)
+         * @return Bytes da mensagem serializada (não devem ser alterados)
+         */
+        public byte[] encoded(Encoder encoder) {
+            Encoded[] current = encoded;
+            for (Encoded entry : current) {
+                if (entry.encoder() == encoder) {
+                    return entry.bytes();
+                }
+            }
+            byte[] bytes = encoder.encode(this);
+            Encoded[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = new Encoded(encoder, bytes);
+            encoded = updated;
+            return bytes;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Message message
+                && Objects.equals(role, message.role)
+                && Objects.equals(content, message.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(role, content);
+        }
+
+        @Override
+        public String toString() {
+            return "Message[role=" + role + ", content=" + content + "]";
+        }
+
+        private record Encoded(Encoder encoder, byte[] bytes) {}
+    }
+
+    /**
+     * Recebe as alterações do histórico de uma sessão, na ordem em que acontecem
+     * (chamado com o lock do contexto, antes de a alteração ficar visível).
      */
-    public record Message(String role, String content) {}
+    public interface Journal {
+
+        // Sem registro: o histórico existe apenas em memória
+        Journal NONE = new Journal() {
+            @Override
+            public void appended(String sessionId, Message message) {
+            }
+
+            @Override
+            public void compacted(String sessionId, History history) {
+            }
+        };
+
+        /**
+         * Nova mensagem adicionada ao final do histórico.
+         */
+        void appended(String sessionId, Message message);
+
+        /**
+         * Histórico substituído pela compactação (mensagens restantes e resumo).
+         */
+        void compacted(String sessionId, History history);
+    }
+
+    /**
+     * Serializa uma mensagem para o formato de um provedor.
+     */
+    @FunctionalInterface
+    public interface Encoder {
+        byte[] encode(Message message);
+    }
 }
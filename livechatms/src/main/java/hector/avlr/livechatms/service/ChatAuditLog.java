@@ -0,0 +1,262 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ChatInput;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registro assíncrono das mensagens do chat ao vivo.
+ * O handler STOMP apenas coloca a mensagem em um buffer circular limitado
+ * (livechat.audit.buffer.capacity); uma thread dedicada esvazia o buffer em lotes e:
+ * - registra no log uma amostra das mensagens (livechat.audit.sample.rate) no nível
+ *   livechat.audit.level
+ * - com livechat.audit.transcript.enabled, grava todas as mensagens em um arquivo de
+ *   transcrição somente-anexação, rotacionado por tamanho (arquivo.1 ... arquivo.N)
+ * Com o buffer cheio, a mensagem não é registrada (o chat nunca espera pelo log).
+ * Métricas: livechat.audit.entries{result=written|dropped}, livechat.audit.batch.size e
+ * livechat.audit.queue.depth.
+ */
+@Service
+public class ChatAuditLog {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatAuditLog.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    private final double sampleRate;
+    private final Level level;
+    private final int maxBatch;
+    private final boolean transcriptEnabled;
+    private final Path transcriptFile;
+    private final long transcriptMaxBytes;
+    private final int transcriptMaxFiles;
+
+    private final BlockingQueue<Entry> buffer;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final Counter written;
+    private final Counter dropped;
+    private final DistributionSummary batchSize;
+
+    // Acessados somente pela thread de escrita
+    private OutputStream transcript;
+    private long transcriptBytes;
+
+    /**
+     * Construtor com amostragem, buffer e transcrição configuráveis.
+     * @param meterRegistry Registro de métricas do log
+     * @param sampleRate Fração das mensagens registradas no log (0 a 1)
+     * @param level Nível do log das mensagens amostradas
+     * @param bufferCapacity Mensagens aguardando escrita antes de descartar
+     * @param maxBatch Mensagens escritas por lote
+     * @param transcriptEnabled Grava todas as mensagens no arquivo de transcrição
+     * @param transcriptFile Caminho do arquivo de transcrição
+     * @param transcriptMaxSizeKb Tamanho que dispara a rotação do arquivo
+     * @param transcriptMaxFiles Arquivos rotacionados mantidos
+     */
+    public ChatAuditLog(MeterRegistry meterRegistry,
+                        @Value("${livechat.audit.sample.rate}") double sampleRate,
+                        @Value("${livechat.audit.level}") Level level,
+                        @Value("${livechat.audit.buffer.capacity}") int bufferCapacity,
+                        @Value("${livechat.audit.batch.max}") int maxBatch,
+                        @Value("${livechat.audit.transcript.enabled}") boolean transcriptEnabled,
+                        @Value("${livechat.audit.transcript.file}") Path transcriptFile,
+                        @Value("${livechat.audit.transcript.max.size.kb}") long transcriptMaxSizeKb,
+                        @Value("${livechat.audit.transcript.max.files}") int transcriptMaxFiles) {
+        this.sampleRate = sampleRate;
+        this.level = level;
+        this.maxBatch = maxBatch;
+        this.transcriptEnabled = transcriptEnabled;
+        this.transcriptFile = transcriptFile;
+        this.transcriptMaxBytes = transcriptMaxSizeKb * 1024;
+        this.transcriptMaxFiles = transcriptMaxFiles;
+        this.buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        this.written = Counter.builder("livechat.audit.entries")
+            .description("Mensagens do chat registradas")
+            .tag("result", "written")
+            .register(meterRegistry);
+        this.dropped = Counter.builder("livechat.audit.entries")
+            .description("Mensagens do chat registradas")
+            .tag("result", "dropped")
+            .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("livechat.audit.batch.size")
+            .description("Mensagens por lote escrito")
+            .register(meterRegistry);
+        Gauge.builder("livechat.audit.queue.depth", buffer, BlockingQueue::size)
+            .description("Mensagens aguardando escrita")
+            .register(meterRegistry);
+        this.flusher = new Thread(this::drain, "livechat-audit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Registra uma mensagem recebida sem bloquear o chamador.
+     * @param destination Destino do broker em que a mensagem foi publicada
+     * @param input Mensagem recebida do cliente (sem escape)
+     */
+    public void record(String destination, ChatInput input) {
+        boolean sampled = sampleRate > 0 && log.isEnabledForLevel(level)
+            && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+        if (!sampled && !transcriptEnabled) {
+            return;
+        }
+        if (!buffer.offer(new Entry(System.currentTimeMillis(), destination, input.user(), input.message(), sampled))) {
+            dropped.increment();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // A thread esvazia o buffer antes de encerrar
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(maxBatch);
+        try {
+            while (running || !buffer.isEmpty()) {
+                Entry first = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, maxBatch - 1);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeTranscript();
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        batchSize.record(batch.size());
+        for (Entry entry : batch) {
+            if (entry.sampled) {
+                log.atLevel(level).log("Received message from: {} - {} ({})",
+                    escape(entry.user), escape(entry.message), entry.destination);
+            }
+        }
+        if (transcriptEnabled) {
+            writeTranscript(batch);
+        }
+        written.increment(batch.size());
+    }
+
+    // Uma linha por mensagem: instante, destino, usuário e texto separados por tabulação
+    private void writeTranscript(List<Entry> batch) {
+        try {
+            for (Entry entry : batch) {
+                if (transcript == null || transcriptBytes >= transcriptMaxBytes) {
+                    rotateTranscript();
+                }
+                byte[] line = (Instant.ofEpochMilli(entry.timestamp) + "\t" + entry.destination + "\t"
+                    + escape(entry.user) + "\t" + escape(entry.message) + "\n").getBytes(StandardCharsets.UTF_8);
+                transcript.write(line);
+                transcriptBytes += line.length;
+            }
+            // Um flush por lote
+            transcript.flush();
+        } catch (IOException e) {
+            log.warn("Falha ao gravar a transcrição do chat em {}", transcriptFile, e);
+            closeTranscript();
+        }
+    }
+
+    private void rotateTranscript() throws IOException {
+        if (transcript != null) {
+            closeTranscript();
+            for (int i = transcriptMaxFiles - 1; i >= 1; i--) {
+                Path source = rotated(i);
+                if (Files.exists(source)) {
+                    Files.move(source, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (transcriptMaxFiles > 0) {
+                Files.move(transcriptFile, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(transcriptFile);
+            }
+        }
+        Path parent = transcriptFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        transcript = new BufferedOutputStream(Files.newOutputStream(transcriptFile,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        transcriptBytes = Files.size(transcriptFile);
+    }
+
+    private Path rotated(int index) {
+        return transcriptFile.resolveSibling(transcriptFile.getFileName() + "." + index);
+    }
+
+    private void closeTranscript() {
+        if (transcript == null) {
+            return;
+        }
+        try {
+            transcript.close();
+        } catch (IOException e) {
+            log.warn("Falha ao fechar a transcrição do chat em {}", transcriptFile, e);
+        }
+        transcript = null;
+    }
+
+    // Quebras de linha e tabulações do cliente não podem forjar linhas no log ou na transcrição
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        int i = 0;
+        while (i < value.length() && value.charAt(i) != '\n' && value.charAt(i) != '\r' && value.charAt(i) != '\t') {
+            i++;
+        }
+        if (i == value.length()) {
+            return value;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8).append(value, 0, i);
+        for (; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private record Entry(long timestamp, String destination, String user, String message, boolean sampled) {
+    }
+}
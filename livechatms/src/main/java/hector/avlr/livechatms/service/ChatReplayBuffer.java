@@ -0,0 +1,150 @@
+package hector.avlr.livechatms.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import hector.avlr.livechatms.domain.ChatOutput;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Histórico recente do chat por tópico, para reenvio a quem se inscreve ou reconecta
+ * (livechat.replay.*).
+ * Cada tópico tem um buffer circular de tamanho fixo (livechat.replay.capacity, arredondado
+ * para potência de 2) e uma sequência crescente: publicar é um incremento atômico e uma escrita
+ * no slot, sem locks; a leitura do reenvio nunca bloqueia a publicação (uma posição ainda não
+ * escrita ou já sobrescrita é pulada, e a mensagem chega ao assinante pela entrega ao vivo).
+ * As sequências começam no relógio em microssegundos, então continuam crescendo após um
+ * reinício ou a recriação do tópico. Tópicos sem uso por livechat.replay.idle.minutes são
+ * descartados (no máximo livechat.replay.max.topics).
+ * Somente com o broker simples: no modo relay cada instância veria apenas as mensagens que
+ * ela publicou, com sequências próprias, e um cliente que reconecta em outra instância
+ * receberia um histórico parcial com sequências incompatíveis com as que já viu. Nesse modo
+ * as mensagens não são sequenciadas e o reenvio devolve sempre um histórico vazio.
+ * Métricas: livechat.replay.topics, livechat.replay.messages (mensagens por reenvio) e
+ * livechat.replay.gaps (reenvios que não cobriram tudo o que o cliente perdeu).
+ */
+@Service
+public class ChatReplayBuffer {
+
+    private final boolean enabled;
+    private final int capacity;
+    private final Cache<String, Topic> topics;
+    private final DistributionSummary replayed;
+    private final Counter gaps;
+
+    /**
+     * Construtor com capacidade e limites de tópicos configuráveis.
+     * @param brokerMode Modo do broker (livechat.broker.mode); o histórico só é mantido no modo simple
+     * @param enabled Mantém o histórico (false: mensagens não são sequenciadas nem reenviadas)
+     * @param capacity Mensagens mantidas por tópico
+     * @param maxTopics Tópicos com histórico mantidos simultaneamente
+     * @param idleMinutes Minutos sem uso até o histórico do tópico ser descartado
+     */
+    public ChatReplayBuffer(MeterRegistry meterRegistry,
+                            @Value("${livechat.broker.mode}") String brokerMode,
+                            @Value("${livechat.replay.enabled}") boolean enabled,
+                            @Value("${livechat.replay.capacity}") int capacity,
+                            @Value("${livechat.replay.max.topics}") long maxTopics,
+                            @Value("${livechat.replay.idle.minutes}") long idleMinutes) {
+        this.enabled = enabled && "simple".equals(brokerMode);
+        this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.topics = Caffeine.newBuilder()
+            .maximumSize(maxTopics)
+            .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+            .build();
+        Gauge.builder("livechat.replay.topics", topics, Cache::estimatedSize)
+            .description("Tópicos do chat com histórico para reenvio")
+            .register(meterRegistry);
+        this.replayed = DistributionSummary.builder("livechat.replay.messages")
+            .description("Mensagens reenviadas por inscrição")
+            .register(meterRegistry);
+        this.gaps = Counter.builder("livechat.replay.gaps")
+            .description("Reenvios em que parte das mensagens perdidas já havia saído do histórico")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Sequencia a mensagem e a guarda no histórico do tópico.
+     * @param destination Tópico do broker
+     * @param output Mensagem já sanitizada
+     * @return Mensagem com a sequência atribuída (a ser publicada)
+     */
+    public ChatOutput record(String destination, ChatOutput output) {
+        if (!enabled) {
+            return output;
+        }
+        return topics.get(destination, key -> new Topic(capacity)).append(output);
+    }
+
+    /**
+     * Mensagens do tópico com sequência maior que a informada, em ordem.
+     * @param destination Tópico do broker
+     * @param lastSeq Última sequência recebida pelo cliente (0 para todo o histórico)
+     */
+    public List<ChatOutput> since(String destination, long lastSeq) {
+        Topic topic = enabled ? topics.getIfPresent(destination) : null;
+        if (topic == null) {
+            replayed.record(0);
+            return List.of();
+        }
+        List<ChatOutput> messages = new ArrayList<>();
+        if (!topic.since(lastSeq, messages) && lastSeq > 0) {
+            gaps.increment();
+        }
+        replayed.record(messages.size());
+        return messages;
+    }
+
+    /**
+     * Buffer circular de um tópico.
+     */
+    private static final class Topic {
+
+        private final AtomicReferenceArray<ChatOutput> slots;
+        private final int mask;
+        // Última sequência atribuída; começa no relógio em microssegundos (não em milissegundos x 1000:
+        // um tópico recriado no mesmo milissegundo repetiria as sequências do anterior)
+        private final AtomicLong sequence = new AtomicLong(ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now()));
+        private final long first = sequence.get() + 1;
+
+        Topic(int capacity) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        ChatOutput append(ChatOutput output) {
+            long seq = sequence.incrementAndGet();
+            ChatOutput sequenced = output.withSeq(seq);
+            slots.set((int) (seq & mask), sequenced);
+            return sequenced;
+        }
+
+        /**
+         * @return false se mensagens posteriores a lastSeq já saíram do buffer
+         */
+        boolean since(long lastSeq, List<ChatOutput> target) {
+            long last = sequence.get();
+            long oldest = Math.max(first, last - slots.length() + 1);
+            for (long seq = Math.max(lastSeq + 1, oldest); seq <= last; seq++) {
+                ChatOutput output = slots.get((int) (seq & mask));
+                // Posição ainda em escrita ou já sobrescrita por uma volta posterior
+                if (output != null && output.seq() == seq) {
+                    target.add(output);
+                }
+            }
+            return lastSeq + 1 >= oldest;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package hector.avlr.livechatms.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Salas do chat ao vivo e seus membros.
+ * Cada sala é um destino próprio (/topics/livechat/{sala}): as mensagens chegam apenas
+ * aos clientes inscritos nela, em vez de a todos os clientes conectados.
+ * Os membros são acompanhados pelos eventos de inscrição, cancelamento e desconexão
+ * das sessões STOMP desta instância (em qualquer modo de broker).
+ */
+@Service
+public class ChatRoomService {
+
+    public static final String ROOM_DESTINATION_PREFIX = "/topics/livechat/";
+
+    // Nomes de sala aceitos: letras, dígitos, '-' e '_'
+    private static final Pattern ROOM_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    // Sala -> sessões inscritas
+    private final Map<String, Set<String>> members = new ConcurrentHashMap<>();
+
+    // Sessão -> id de assinatura -> sala
+    private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * Construtor com registro de métricas (salas com ao menos um membro).
+     */
+    public ChatRoomService(MeterRegistry meterRegistry) {
+        Gauge.builder("livechat.rooms.active", members, Map::size)
+            .description("Salas do chat com ao menos um membro")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Valida o nome da sala, que compõe o destino STOMP.
+     * @throws IllegalArgumentException se o nome for inválido
+     */
+    public String requireValidRoom(String room) {
+        if (room == null || !ROOM_NAME.matcher(room).matches()) {
+            throw new IllegalArgumentException("Nome de sala inválido: " + room);
+        }
+        return room;
+    }
+
+    /**
+     * Número de sessões inscritas na sala.
+     */
+    public int memberCount(String room) {
+        Set<String> sessions = members.get(room);
+        return sessions != null ? sessions.size() : 0;
+    }
+
+    /**
+     * Número de salas com ao menos um membro.
+     */
+    public int activeRooms() {
+        return members.size();
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor headers = headers(event);
+        String destination = headers.getDestination();
+        if (destination == null || !destination.startsWith(ROOM_DESTINATION_PREFIX)) {
+            return;
+        }
+        String room = destination.substring(ROOM_DESTINATION_PREFIX.length());
+        if (!ROOM_NAME.matcher(room).matches()) {
+            return;
+        }
+        subscriptions.computeIfAbsent(headers.getSessionId(), key -> new ConcurrentHashMap<>())
+            .put(headers.getSubscriptionId(), room);
+        members.compute(room, (key, sessions) -> {
+            Set<String> updated = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+            updated.add(headers.getSessionId());
+            return updated;
+        });
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor headers = headers(event);
+        Map<String, String> rooms = subscriptions.get(headers.getSessionId());
+        String room = rooms != null ? rooms.remove(headers.getSubscriptionId()) : null;
+        // A sessão continua na sala se ainda tiver outra assinatura nela
+        if (room != null && !rooms.containsValue(room)) {
+            leave(room, headers.getSessionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> rooms = subscriptions.remove(event.getSessionId());
+        if (rooms != null) {
+            rooms.values().forEach(room -> leave(room, event.getSessionId()));
+        }
+    }
+
+    private void leave(String room, String sessionId) {
+        members.computeIfPresent(room, (key, sessions) -> {
+            sessions.remove(sessionId);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    private static StompHeaderAccessor headers(AbstractSubProtocolEvent event) {
+        return StompHeaderAccessor.wrap(event.getMessage());
+    }
+}
@@ -0,0 +1,118 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Define a janela de contexto enviada ao LLM.
+ * Limita o histórico por número de mensagens e por orçamento estimado de tokens,
+ * mantendo sempre as mensagens mais recentes e o resumo das anteriores.
+ */
+@Service
+public class ContextWindowPolicy {
+
+    // Aproximação usual: ~4 caracteres por token em textos em inglês/português
+    private static final int CHARS_PER_TOKEN = 4;
+
+    // Custo fixo estimado por mensagem (papel e delimitadores)
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    private final int maxMessages;
+    private final int maxTokens;
+
+    /**
+     * Construtor com limites configuráveis da janela.
+     * @param maxMessages Máximo de mensagens recentes enviadas ao LLM
+     * @param maxTokens Orçamento estimado de tokens para resumo + mensagens
+     */
+    public ContextWindowPolicy(@Value("${conversation.window.max.messages}") int maxMessages,
+                               @Value("${conversation.window.max.tokens}") int maxTokens) {
+        this.maxMessages = maxMessages;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Monta a janela de mensagens a ser enviada ao LLM.
+     * O resumo (se houver) entra como mensagem de sistema antes das mensagens recentes.
+     * A mensagem mais recente é sempre incluída, mesmo que exceda o orçamento.
+     * @param context Contexto da conversação
+     * @return Mensagens da janela, em ordem cronológica
+     */
+    public List<ConversationContext.Message> window(ConversationContext context) {
+        ConversationContext.History messages = context.getMessages();
+        ConversationContext.Message summary = messages.summary();
+        int start = messages.size() - recentCount(messages, maxMessages, budgetAfter(summary));
+
+        // Sem resumo, a janela é apenas uma visão do snapshot (sem cópia)
+        List<ConversationContext.Message> recent = messages.subList(start, messages.size());
+        if (summary == null) {
+            return recent;
+        }
+        List<ConversationContext.Message> window = new ArrayList<>(recent.size() + 1);
+        window.add(summary);
+        window.addAll(recent);
+        return window;
+    }
+
+    /**
+     * Quantidade de mensagens mais antigas que devem ser compactadas.
+     * Só há compactação quando o histórico não cabe mais na janela; nesse caso o histórico
+     * é reduzido à metade da janela, para que a compactação não ocorra a cada turno.
+     * @param context Contexto da conversação
+     * @return Número de mensagens a compactar (0 se o histórico cabe na janela)
+     */
+    public int overflow(ConversationContext context) {
+        ConversationContext.History messages = context.getMessages();
+        int budget = budgetAfter(messages.summary());
+        if (recentCount(messages, maxMessages, budget) == messages.size()) {
+            return 0;
+        }
+        return messages.size() - recentCount(messages, maxMessages / 2, budget / 2);
+    }
+
+    /**
+     * Estimativa de tokens de uma lista de mensagens.
+     */
+    public static int estimateTokens(List<ConversationContext.Message> messages) {
+        int tokens = 0;
+        for (ConversationContext.Message message : messages) {
+            tokens += estimateTokens(message.content());
+        }
+        return tokens;
+    }
+
+    /**
+     * Estimativa de tokens de um texto (sem tokenizer do provedor).
+     */
+    public static int estimateTokens(String text) {
+        return TOKENS_PER_MESSAGE + (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * Orçamento de tokens restante para mensagens depois de descontar o resumo.
+     */
+    private int budgetAfter(ConversationContext.Message summary) {
+        return maxTokens - (summary != null ? estimateTokens(summary.content()) : 0);
+    }
+
+    /**
+     * Conta quantas mensagens do final cabem no limite de mensagens e no orçamento de tokens.
+     * A mensagem mais recente sempre conta, mesmo que sozinha exceda o orçamento.
+     */
+    private static int recentCount(List<ConversationContext.Message> messages, int limit, int budget) {
+        int count = 0;
+        int tokens = 0;
+        for (int i = messages.size() - 1; i >= 0 && count < Math.max(limit, 1); i--) {
+            tokens += estimateTokens(messages.get(i).content());
+            if (tokens > budget && count > 0) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+}
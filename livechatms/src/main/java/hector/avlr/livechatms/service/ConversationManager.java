@@ -1,25 +1,96 @@
 package hector.avlr.livechatms.service;
 
 import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.store.ConversationStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.time.LocalDateTime;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * Gerencia sessões de conversação e seus contextos.
- * Implementa limpeza automática de sessões inativas para otimizar memória.
+ * A expiração de sessões inativas roda em segundo plano sobre um índice ordenado por
+ * tempo de expiração, mantendo a busca de sessões O(1) no caminho da requisição.
+ * Turnos de uma mesma sessão executam em ordem (fila por sessão); sessões diferentes
+ * executam em paralelo, sem lock global.
+ * O mapa em memória é o cache das sessões em uso: as alterações do histórico são registradas no
+ * ConversationStore, e uma sessão fora do cache (expirada ou após reinício) é restaurada dele no
+ * próximo turno.
  */
 @Service
 public class ConversationManager {
-    
+
     // Armazena sessões ativas de forma thread-safe
     private final Map<String, ConversationContext> conversations = new ConcurrentHashMap<>();
-    
-    // Tempo máximo de inatividade antes da sessão ser removida (30 minutos)
-    private static final int MAX_INACTIVE_MINUTES = 30;
+
+    // Histórico persistido das sessões (também fora do cache)
+    private final ConversationStore store;
+
+    // Índice de expiração (timing wheel): intervalo de tempo -> sessões que expiram nele.
+    // Cada sessão aparece em um único intervalo; atividade não move a sessão, apenas a
+    // varredura a reposiciona quando encontra uma sessão que ainda está ativa.
+    private final ConcurrentSkipListMap<Long, Set<String>> expiryIndex = new ConcurrentSkipListMap<>();
+
+    // Tempo máximo de inatividade antes da sessão ser removida
+    private final Duration maxInactive;
+
+    // Número máximo de sessões mantidas em memória
+    private final int maxSessions;
+
+    // Granularidade do índice, igual ao intervalo entre varreduras
+    private final long sweepIntervalMillis;
+
+    private final Counter idleEvictions;
+    private final Counter capacityEvictions;
+    private final Counter restored;
+
+    /**
+     * Construtor com parâmetros de expiração configuráveis e registro de métricas.
+     * @param meterRegistry Registro de métricas (sessões ativas, remoções e restaurações)
+     * @param store Armazenamento do histórico das sessões
+     * @param maxInactiveMinutes Minutos de inatividade até a sessão expirar
+     * @param maxSessions Limite de sessões simultâneas em memória
+     * @param sweepIntervalSeconds Intervalo entre varreduras de expiração
+     */
+    public ConversationManager(MeterRegistry meterRegistry, ConversationStore store,
+                               @Value("${conversation.max.inactive.minutes}") long maxInactiveMinutes,
+                               @Value("${conversation.max.sessions}") int maxSessions,
+                               @Value("${conversation.sweep.interval.seconds}") long sweepIntervalSeconds) {
+        this.store = store;
+        this.maxInactive = Duration.ofMinutes(maxInactiveMinutes);
+        this.maxSessions = maxSessions;
+        this.sweepIntervalMillis = TimeUnit.SECONDS.toMillis(sweepIntervalSeconds);
+
+        Gauge.builder("conversation.sessions.active", conversations, Map::size)
+            .description("Sessões de conversação em memória")
+            .register(meterRegistry);
+        this.idleEvictions = Counter.builder("conversation.sessions.evicted")
+            .description("Sessões removidas")
+            .tag("reason", "idle")
+            .register(meterRegistry);
+        this.capacityEvictions = Counter.builder("conversation.sessions.evicted")
+            .description("Sessões removidas")
+            .tag("reason", "capacity")
+            .register(meterRegistry);
+        this.restored = Counter.builder("conversation.sessions.restored")
+            .description("Sessões carregadas do armazenamento de conversas")
+            .register(meterRegistry);
+    }
 
     /**
      * Cria uma nova sessão com ID único gerado automaticamente.
@@ -27,37 +98,226 @@ public class ConversationManager {
      */
     public String createSession() {
         String sessionId = UUID.randomUUID().toString();
-        conversations.put(sessionId, new ConversationContext(sessionId));
+        getOrCreateSession(sessionId);
         return sessionId;
     }
 
     /**
      * Recupera sessão existente ou cria nova se não existir.
-     * Executa limpeza de sessões inativas a cada chamada.
+     * A busca é O(1); a limpeza de sessões inativas acontece em segundo plano.
      * @param sessionId ID da sessão (pode ser null)
      * @return Contexto da conversação
      */
     public ConversationContext getOrCreateSession(String sessionId) {
         // Cria nova sessão se ID for inválido
         if (sessionId == null || sessionId.isBlank()) {
-            sessionId = createSession();
+            sessionId = UUID.randomUUID().toString();
+        }
+
+        // Caminho rápido: sessão já existente
+        ConversationContext context = conversations.get(sessionId);
+        if (context != null) {
+            return context;
         }
-        
-        // Remove sessões antigas para liberar memória
-        cleanupInactiveSessions();
-        
+
+        // Libera espaço antes de criar uma nova sessão (limite aproximado sob concorrência)
+        if (conversations.size() >= maxSessions) {
+            evictLeastRecentlyActiveSession();
+        }
+
         // Retorna sessão existente ou cria nova atomicamente
-        return conversations.computeIfAbsent(sessionId, ConversationContext::new);
+        return conversations.computeIfAbsent(sessionId, this::newSession);
     }
 
     /**
-     * Remove sessões que estão inativas há mais de MAX_INACTIVE_MINUTES.
-     * Previne vazamento de memória em produção.
+     * Executa um turno na sessão depois que os turnos anteriores da mesma sessão terminarem.
+     * A espera não ocupa threads: o turno é encadeado ao fim do turno anterior.
+     * @param sessionId ID da sessão (pode ser null)
+     * @param turn Turno a executar com o contexto da sessão
+     * @return Mono com o resultado do turno
      */
-    private void cleanupInactiveSessions() {
-        LocalDateTime threshold = LocalDateTime.now().minusMinutes(MAX_INACTIVE_MINUTES);
-        conversations.entrySet().removeIf(entry -> 
-            entry.getValue().getLastActivity().isBefore(threshold)
-        );
+    public <T> Mono<T> executeTurn(String sessionId, Function<ConversationContext, Mono<T>> turn) {
+        return Mono.defer(() -> {
+            ConversationContext context = getOrCreateSession(sessionId);
+            Turn queued = Turn.enqueue(context);
+            return queued.awaitPrevious()
+                .then(Mono.defer(() -> turn.apply(queued.start(context))))
+                .doFinally(signal -> queued.finish());
+        });
+    }
+
+    /**
+     * Versão de {@link #executeTurn} para turnos com resposta em streaming.
+     * O próximo turno da sessão só começa quando o stream termina.
+     * @param sessionId ID da sessão (pode ser null)
+     * @param turn Turno a executar com o contexto da sessão
+     * @return Fluxo com os elementos emitidos pelo turno
+     */
+    public <T> Flux<T> streamTurn(String sessionId, Function<ConversationContext, Flux<T>> turn) {
+        return Flux.defer(() -> {
+            ConversationContext context = getOrCreateSession(sessionId);
+            Turn queued = Turn.enqueue(context);
+            return queued.awaitPrevious()
+                .thenMany(Flux.defer(() -> turn.apply(queued.start(context))))
+                .doFinally(signal -> queued.finish());
+        });
+    }
+
+    /**
+     * Turno enfileirado na sessão (mailbox de {@link ConversationContext#enqueueTurn}).
+     * Um turno cancelado ainda na fila só libera a vez quando o anterior terminar: completar
+     * {@code done} antes disso deixaria o turno seguinte executar junto com o anterior.
+     */
+    private static final class Turn {
+
+        private final CompletableFuture<Void> previous;
+        private final CompletableFuture<Void> done;
+        private volatile boolean started;
+
+        private Turn(CompletableFuture<Void> previous, CompletableFuture<Void> done) {
+            this.previous = previous;
+            this.done = done;
+        }
+
+        static Turn enqueue(ConversationContext context) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            return new Turn(context.enqueueTurn(done), done);
+        }
+
+        /**
+         * Aguarda o término do turno anterior.
+         * O cancelamento da espera não cancela o turno anterior (que continua em andamento).
+         */
+        Mono<Void> awaitPrevious() {
+            return Mono.fromFuture(previous, true);
+        }
+
+        ConversationContext start(ConversationContext context) {
+            started = true;
+            return context;
+        }
+
+        void finish() {
+            if (started) {
+                done.complete(null);
+            } else {
+                previous.whenComplete((result, error) -> done.complete(null));
+            }
+        }
+    }
+
+    /**
+     * Número de sessões atualmente em memória.
+     */
+    public int activeSessions() {
+        return conversations.size();
+    }
+
+    /**
+     * Varredura periódica que remove sessões inativas há mais de maxInactive.
+     * Previne vazamento de memória em produção sem custo no caminho da requisição.
+     */
+    @Scheduled(fixedDelayString = "${conversation.sweep.interval.seconds}", timeUnit = TimeUnit.SECONDS)
+    public void evictInactiveSessions() {
+        evictInactiveSessions(Instant.now());
+    }
+
+    /**
+     * Processa apenas os intervalos do índice já vencidos em {@code now}.
+     * Sessões que tiveram atividade depois de indexadas são reposicionadas
+     * no intervalo da sua expiração real, então o custo é amortizado O(1) por sessão.
+     * @param now Instante de referência da varredura
+     */
+    void evictInactiveSessions(Instant now) {
+        long currentBucket = Math.floorDiv(now.toEpochMilli(), sweepIntervalMillis);
+        Map.Entry<Long, Set<String>> bucket;
+        while ((bucket = expiryIndex.firstEntry()) != null && bucket.getKey() <= currentBucket) {
+            expiryIndex.remove(bucket.getKey());
+            for (String sessionId : bucket.getValue()) {
+                ConversationContext context = conversations.get(sessionId);
+                if (context == null) {
+                    continue;
+                }
+                Instant expiresAt = context.getLastActivity().plus(maxInactive);
+                if (expiresAt.isAfter(now)) {
+                    // Sessão ativa desde a indexação: reposiciona no intervalo correto
+                    index(sessionId, expiresAt);
+                } else if (conversations.remove(sessionId, context)) {
+                    idleEvictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cria o contexto (com o histórico persistido, se houver) e o registra no índice de expiração.
+     */
+    private ConversationContext newSession(String sessionId) {
+        ConversationStore.Snapshot stored = store.load(sessionId);
+        ConversationContext context;
+        if (stored != null) {
+            context = ConversationContext.restore(sessionId, store, stored.messages(), stored.summary());
+            restored.increment();
+        } else {
+            context = new ConversationContext(sessionId, store);
+        }
+        index(sessionId, context.getLastActivity().plus(maxInactive));
+        return context;
+    }
+
+    /**
+     * Registra a sessão no intervalo que contém o instante de expiração.
+     */
+    private void index(String sessionId, Instant expiresAt) {
+        expiryIndex.computeIfAbsent(bucketOf(expiresAt), key -> ConcurrentHashMap.newKeySet()).add(sessionId);
+    }
+
+    /**
+     * Intervalo do índice que contém o instante de expiração, arredondado para cima:
+     * a sessão nunca expira antes do prazo.
+     */
+    private long bucketOf(Instant expiresAt) {
+        return Math.floorDiv(expiresAt.toEpochMilli() + sweepIntervalMillis - 1, sweepIntervalMillis);
+    }
+
+    /**
+     * Remove a sessão com a atividade mais antiga e sem turno em andamento quando o limite de
+     * sessões é atingido. O índice está ordenado pela expiração registrada (criação ou última
+     * varredura): sessões ativas desde então são reposicionadas no intervalo correto, como na
+     * varredura, e a busca continua; sessões com turno em andamento ou na fila são puladas
+     * (removê-las deixaria o turno escrevendo em um contexto desligado do mapa, enquanto a
+     * próxima requisição criaria outro contexto para a mesma sessão). Se todas estiverem
+     * ocupadas, nenhuma é removida e o limite é excedido temporariamente.
+     */
+    private void evictLeastRecentlyActiveSession() {
+        for (Map.Entry<Long, Set<String>> bucket : expiryIndex.entrySet()) {
+            for (String sessionId : bucket.getValue()) {
+                ConversationContext context = conversations.get(sessionId);
+                if (context == null) {
+                    bucket.getValue().remove(sessionId);
+                    continue;
+                }
+                if (context.hasTurnInFlight()) {
+                    continue;
+                }
+                Instant expiresAt = context.getLastActivity().plus(maxInactive);
+                if (bucketOf(expiresAt) > bucket.getKey()) {
+                    bucket.getValue().remove(sessionId);
+                    index(sessionId, expiresAt);
+                    continue;
+                }
+                // Confere o turno novamente sob o lock da entrada do mapa
+                boolean[] evicted = new boolean[1];
+                conversations.computeIfPresent(sessionId, (key, current) -> {
+                    evicted[0] = current == context && !current.hasTurnInFlight();
+                    return evicted[0] ? null : current;
+                });
+                if (evicted[0]) {
+                    bucket.getValue().remove(sessionId);
+                    capacityEvictions.increment();
+                    return;
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,160 @@
+package hector.avlr.livechatms.service;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import hector.avlr.livechatms.domain.ConversationContext;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Serializa os corpos de requisição dos provedores LLM diretamente em bytes.
+ * Cada mensagem do histórico é codificada uma única vez e reaproveitada nos turnos
+ * seguintes (cache em {@link ConversationContext.Message}); o envelope de cada provedor
+ * (modelo, parâmetros, system prompt) fica em um {@link Template} pré-codificado. Por turno,
+ * apenas as mensagens novas são codificadas e o corpo é montado por cópia de fragmentos.
+ */
+@Service
+public class LLMRequestEncoder {
+
+    private static final JsonStringEncoder JSON = JsonStringEncoder.getInstance();
+
+    // Mensagem no formato OpenAI: {"role":"...","content":"..."}
+    static final ConversationContext.Encoder OPENAI_MESSAGE = message -> concat(
+        ascii("{\"role\":\""), JSON.quoteAsUTF8(message.role()),
+        ascii("\",\"content\":\""), JSON.quoteAsUTF8(message.content()),
+        ascii("\"}"));
+
+    // Linha do prompt Gemini ("role: content\n"), já escapada para dentro de uma string JSON.
+    // O escape JSON é caractere a caractere, então linhas escapadas podem ser concatenadas.
+    static final ConversationContext.Encoder GEMINI_LINE = message ->
+        JSON.quoteAsUTF8(message.role() + ": " + message.content() + "\n");
+
+    private static final byte[] COMMA = ascii(",");
+
+    private final byte[] openAISystemMessage;
+    private final byte[] geminiSystemPrefix;
+
+    /**
+     * Pré-codifica o prompt de sistema, idêntico em todas as requisições.
+     */
+    public LLMRequestEncoder(PromptSanitizer sanitizer) {
+        String systemPrompt = sanitizer.buildSystemPrompt();
+        this.openAISystemMessage = OPENAI_MESSAGE.encode(new ConversationContext.Message("system", systemPrompt));
+        this.geminiSystemPrefix = JSON.quoteAsUTF8(systemPrompt + "\n\n");
+    }
+
+    /**
+     * Template de requisição no formato da API OpenAI (chat completions).
+     * Modelo e parâmetros de geração são fixos por provedor: o envelope é codificado uma vez
+     * e, por chamada, apenas as mensagens da janela são copiadas para o corpo.
+     * @param model Modelo a utilizar
+     * @param maxTokens Limite de tokens da resposta
+     * @param temperature Temperatura de amostragem
+     * @param stream true para solicitar resposta via SSE
+     * @return Template reutilizável entre requisições
+     */
+    public Template openAITemplate(String model, int maxTokens, double temperature, boolean stream) {
+        // Parâmetros depois das mensagens: o prefixo (modelo, system prompt, histórico) é o mesmo
+        // byte a byte em todos os turnos, com ou sem streaming (cache de prompt do provedor)
+        return new Template(
+            ascii("{\"model\":\"" + new String(JSON.quoteAsString(model)) + "\",\"messages\":["),
+            openAISystemMessage, OPENAI_MESSAGE, COMMA,
+            ascii("],\"max_tokens\":" + maxTokens + ",\"temperature\":" + temperature
+                // No streaming, o uso de tokens só é enviado (no último evento) quando solicitado
+                + (stream ? ",\"stream\":true,\"stream_options\":{\"include_usage\":true}}" : "}")));
+    }
+
+    /**
+     * Template de requisição no formato da API Gemini.
+     * Gemini usa formato de prompt único: system prompt seguido das mensagens, uma por linha.
+     * @param temperature Temperatura de amostragem
+     * @param maxTokens Limite de tokens da resposta
+     * @return Template reutilizável entre requisições
+     */
+    public Template geminiTemplate(double temperature, int maxTokens) {
+        return new Template(
+            ascii("{\"contents\":[{\"parts\":[{\"text\":\""),
+            geminiSystemPrefix, GEMINI_LINE, new byte[0],
+            ascii("\"}]}],\"generationConfig\":{\"temperature\":" + temperature
+                + ",\"maxOutputTokens\":" + maxTokens + "}}"));
+    }
+
+    /**
+     * Corpo de requisição pré-codificado: envelope e system prompt fixos, com as mensagens
+     * da janela (já codificadas no histórico) inseridas entre o prefixo e o final.
+     */
+    public static final class Template {
+        private final byte[] head;
+        private final byte[] system;
+        private final ConversationContext.Encoder messageEncoder;
+        private final byte[] separator;
+        private final byte[] tail;
+
+        private Template(byte[] head, byte[] system, ConversationContext.Encoder messageEncoder,
+                         byte[] separator, byte[] tail) {
+            this.head = head;
+            this.system = system;
+            this.messageEncoder = messageEncoder;
+            this.separator = separator;
+            this.tail = tail;
+        }
+
+        /**
+         * Monta o corpo da requisição para a janela de contexto.
+         * @param window Mensagens da janela de contexto
+         * @return Corpo JSON em UTF-8
+         */
+        public byte[] body(List<ConversationContext.Message> window) {
+            int length = head.length + system.length + tail.length;
+            for (ConversationContext.Message message : window) {
+                length += separator.length + message.encoded(messageEncoder).length;
+            }
+
+            Buffer body = new Buffer(length);
+            body.write(head);
+            // System prompt no início (define comportamento do modelo)
+            body.write(system);
+            for (ConversationContext.Message message : window) {
+                body.write(separator);
+                body.write(message.encoded(messageEncoder));
+            }
+            body.write(tail);
+            return body.bytes();
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Buffer de tamanho exato: o corpo é alocado uma única vez, sem realocações.
+     */
+    private static final class Buffer {
+        private final byte[] bytes;
+        private int position;
+
+        Buffer(int length) {
+            this.bytes = new byte[length];
+        }
+
+        void write(byte[] part) {
+            System.arraycopy(part, 0, bytes, position, part.length);
+            position += part.length;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package hector.avlr.livechatms.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import hector.avlr.livechatms.domain.ConversationContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Cache opcional de respostas do LLM para prompts repetidos.
+ * A chave é um hash do prompt normalizado (provedores e modelos do roteamento, temperatura,
+ * system prompt e janela de contexto); entradas expiram por tamanho (LRU aproximado) e por tempo.
+ * Requisições simultâneas com a mesma chave compartilham uma única chamada ao provedor.
+ * Métricas: cache.gets{result=hit|miss}, cache.evictions, cache.size (cache=llm.responses)
+ * e llm.cache.bypass.
+ */
+@Service
+public class LLMResponseCache {
+
+    private static final String CACHE_NAME = "llm.responses";
+
+    // Separador entre campos da chave
+    private static final byte FIELD_SEPARATOR = 0;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final AsyncCache<String, String> cache;
+    private final boolean enabled;
+    private final boolean allowNonZeroTemperature;
+    private final byte[] systemPromptDigest;
+    private final Counter bypass;
+
+    /**
+     * Construtor com limites configuráveis e registro de métricas.
+     * @param sanitizer Fonte do system prompt (parte da chave)
+     * @param meterRegistry Registro de métricas do cache
+     * @param enabled Ativa o cache
+     * @param maxEntries Número máximo de respostas mantidas
+     * @param ttlMinutes Minutos até a resposta expirar
+     * @param allowNonZeroTemperature Permite cachear respostas com temperatura > 0
+     */
+    public LLMResponseCache(PromptSanitizer sanitizer, MeterRegistry meterRegistry,
+                            @Value("${llm.cache.enabled}") boolean enabled,
+                            @Value("${llm.cache.max.entries}") long maxEntries,
+                            @Value("${llm.cache.ttl.minutes}") long ttlMinutes,
+                            @Value("${llm.cache.allow.nonzero.temperature}") boolean allowNonZeroTemperature) {
+        this.enabled = enabled;
+        this.allowNonZeroTemperature = allowNonZeroTemperature;
+        this.systemPromptDigest = sha256().digest(sanitizer.buildSystemPrompt().getBytes(StandardCharsets.UTF_8));
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+            .recordStats()
+            .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.bypass = Counter.builder("llm.cache.bypass")
+            .description("Chamadas ao LLM que não passaram pelo cache")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Indica se respostas geradas com a temperatura informada podem ser cacheadas.
+     * Com temperatura > 0 a resposta não é determinística, então o cache só é usado
+     * se explicitamente permitido.
+     */
+    public boolean isCacheable(double temperature) {
+        return enabled && (temperature <= 0 || allowNonZeroTemperature);
+    }
+
+    /**
+     * Calcula a chave do cache a partir do prompt normalizado.
+     * O conteúdo das mensagens é normalizado (espaços colapsados, sem espaços nas bordas,
+     * minúsculas), então variações triviais da mesma pergunta compartilham a resposta.
+     * @param routing Provedores e modelos que podem responder (LLMProviderRouter.identity())
+     * @param temperature Temperatura de amostragem
+     * @param window Mensagens da janela de contexto
+     * @return Hash SHA-256 em hexadecimal
+     */
+    public String key(String routing, double temperature, List<ConversationContext.Message> window) {
+        MessageDigest digest = sha256();
+        update(digest, routing);
+        update(digest, Double.toString(temperature));
+        digest.update(systemPromptDigest);
+        for (ConversationContext.Message message : window) {
+            update(digest, message.role());
+            update(digest, normalize(message.content()));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Retorna a resposta cacheada ou executa a chamada ao provedor.
+     * Falhas não são cacheadas. O cancelamento de um assinante não cancela a chamada
+     * compartilhada com as demais requisições da mesma chave.
+     * @param key Chave calculada por {@link #key}
+     * @param loader Chamada ao provedor em caso de ausência no cache
+     * @return Mono com a resposta
+     */
+    public Mono<String> get(String key, Supplier<Mono<String>> loader) {
+        return Mono.defer(() -> Mono.fromFuture(
+            cache.get(key, (k, executor) -> loader.get().toFuture()), true));
+    }
+
+    /**
+     * Chamada ao provedor sem consultar o cache (cache desativado ou resposta não determinística).
+     */
+    public Mono<String> bypass(Supplier<Mono<String>> loader) {
+        return Mono.defer(() -> {
+            bypass.increment();
+            return loader.get();
+        });
+    }
+
+    /**
+     * Remove uma resposta do cache (ex.: resposta inválida que não deve ser reutilizada).
+     */
+    public void invalidate(String key) {
+        cache.synchronous().invalidate(key);
+    }
+
+    private static String normalize(String content) {
+        return WHITESPACE.matcher(content.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update(FIELD_SEPARATOR);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+}
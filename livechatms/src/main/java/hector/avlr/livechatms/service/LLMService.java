@@ -1,198 +1,290 @@
 package hector.avlr.livechatms.service;
 
 import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.provider.LLMProvider;
+import hector.avlr.livechatms.service.provider.LLMProviderRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * Serviço principal de integração com Large Language Models (LLMs).
- * Suporta múltiplos provedores: OpenAI GPT e Google Gemini.
- * Orquestra chamadas à API, gerenciamento de contexto e sanitização.
+ * Orquestra sanitização, gerenciamento de contexto, cache e chamadas aos provedores
+ * (OpenAI GPT, Google Gemini), cuja escolha, failover e hedging ficam no LLMProviderRouter.
+ * Cada turno é uma observação llm.agent.turn{mode,outcome} com as etapas filhas
+ * llm.agent.session (espera pela vez na sessão), llm.agent.sanitize, llm.provider.call
+ * (no roteador) e llm.agent.response (histórico). Sem tracing, viram apenas timers; com um
+ * bridge de tracing no classpath, viram spans (ver perfil Maven "tracing").
+ * Turnos que falham são contados em llm.agent.turns{mode,outcome=error} e registrados no log.
  */
 @Service
 public class LLMService {
 
-    private final WebClient webClient;
+    private static final Logger log = LoggerFactory.getLogger(LLMService.class);
+
+    private final LLMProviderRouter router;
     private final PromptSanitizer sanitizer;
     private final ConversationManager conversationManager;
+    private final ContextWindowPolicy windowPolicy;
+    private final LLMResponseCache responseCache;
+    private final ObservationRegistry observationRegistry;
+    private final DistributionSummary historyTokens;
+    private final DistributionSummary windowTokens;
+    private final Counter completeErrors;
+    private final Counter streamErrors;
 
-    @Value("${llm.provider}")
-    private String provider;
-
-    @Value("${llm.api.key}")
-    private String apiKey;
-
-    @Value("${llm.api.url.openai}")
-    private String openaiUrl;
-
-    @Value("${llm.api.url.gemini}")
-    private String geminiUrl;
-
-    @Value("${llm.model.openai}")
-    private String openaiModel;
-
-    @Value("${llm.model.gemini}")
-    private String geminiModel;
-
-    @Value("${llm.max.tokens}")
-    private int maxTokens;
+    // Mensagem amigável retornada quando a chamada ao LLM falha
+    private static final String ERROR_MESSAGE =
+        "Desculpe, ocorreu um erro ao processar sua mensagem. Tente novamente.";
 
     @Value("${llm.temperature}")
     private double temperature;
 
+    @Value("${conversation.summary.enabled}")
+    private boolean summaryEnabled;
+
     /**
      * Construtor com injeção de dependências.
      */
-    public LLMService(WebClient webClient, PromptSanitizer sanitizer, ConversationManager conversationManager) {
-        this.webClient = webClient;
+    public LLMService(LLMProviderRouter router, PromptSanitizer sanitizer, ConversationManager conversationManager,
+                      ContextWindowPolicy windowPolicy, LLMResponseCache responseCache, MeterRegistry meterRegistry,
+                      ObservationRegistry observationRegistry) {
+        this.router = router;
         this.sanitizer = sanitizer;
         this.conversationManager = conversationManager;
+        this.windowPolicy = windowPolicy;
+        this.responseCache = responseCache;
+        this.observationRegistry = observationRegistry;
+        this.historyTokens = promptTokens("history", meterRegistry);
+        this.windowTokens = promptTokens("window", meterRegistry);
+        this.completeErrors = turnErrors("complete", meterRegistry);
+        this.streamErrors = turnErrors("stream", meterRegistry);
+    }
+
+    private static Counter turnErrors(String mode, MeterRegistry meterRegistry) {
+        return Counter.builder("llm.agent.turns")
+            .description("Turnos do agente encerrados com erro")
+            .tag("mode", mode)
+            .tag("outcome", "error")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Cria métrica de tamanho estimado do prompt (em tokens) por escopo.
+     * "history": histórico completo mantido na sessão; "window": janela enviada ao LLM.
+     */
+    private static DistributionSummary promptTokens(String scope, MeterRegistry meterRegistry) {
+        return DistributionSummary.builder("llm.prompt.tokens")
+            .description("Tamanho estimado do histórico por requisição")
+            .baseUnit("tokens")
+            .tag("scope", scope)
+            .register(meterRegistry);
     }
 
     /**
      * Gera resposta do agente AI para mensagem do usuário.
      * Aplica sanitização, gerencia contexto e chama API do LLM.
+     * Bloqueia a thread atual até a resposta (ver {@link #generateResponseAsync}).
      * @param sessionId ID da sessão de conversação
      * @param userMessage Mensagem do usuário
      * @return Resposta gerada pelo LLM
      */
     public String generateResponse(String sessionId, String userMessage) {
-        // Sanitiza entrada para prevenir ataques
-        String sanitizedMessage = sanitizer.sanitize(userMessage);
-        
-        // Recupera ou cria contexto da sessão
-        ConversationContext context = conversationManager.getOrCreateSession(sessionId);
-        
-        // Adiciona mensagem do usuário ao histórico
-        context.addMessage("user", sanitizedMessage);
-
-        try {
-            // Chama API do LLM e obtém resposta
-            String response = callLLM(context);
-            
-            // Adiciona resposta ao histórico para manter contexto
-            context.addMessage("assistant", response);
-            return response;
-        } catch (Exception e) {
-            // Retorna mensagem amigável em caso de erro
-            return "Desculpe, ocorreu um erro ao processar sua mensagem. Tente novamente.";
-        }
+        return generateResponseAsync(sessionId, userMessage).block();
     }
 
     /**
-     * Roteia chamada para o provedor LLM configurado.
-     * @param context Contexto da conversação
-     * @return Resposta do LLM
+     * Versão não-bloqueante de {@link #generateResponse(String, String)}.
+     * Sanitização, sessão, chamada ao provedor e atualização do histórico são
+     * encadeadas no pipeline reativo, sem ocupar uma thread durante a espera pelo LLM.
+     * Turnos da mesma sessão são executados em ordem, um de cada vez.
+     * @param sessionId ID da sessão de conversação
+     * @param userMessage Mensagem do usuário
+     * @return Mono com a resposta gerada pelo LLM (ou mensagem amigável em caso de erro)
      */
-    private String callLLM(ConversationContext context) {
-        return switch (provider.toLowerCase()) {
-            case "openai" -> callOpenAI(context);
-            case "gemini" -> callGemini(context);
-            default -> throw new IllegalStateException("Provider não suportado: " + provider);
-        };
+    public Mono<String> generateResponseAsync(String sessionId, String userMessage) {
+        return Mono.deferContextual(reactorContext -> {
+            Observation turn = startTurn("complete", reactorContext);
+            AtomicReference<Observation> session = new AtomicReference<>(start("llm.agent.session", turn));
+            return conversationManager.executeTurn(sessionId, context -> {
+                    stopSession(session);
+                    // Sanitiza entrada e registra mensagem do usuário no histórico
+                    start("llm.agent.sanitize", turn)
+                        .observe(() -> context.addMessage("user", sanitizer.sanitize(userMessage)));
+
+                    return callLLM(context)
+                        // Adiciona resposta ao histórico para manter contexto
+                        .doOnNext(response -> start("llm.agent.response", turn).observe(() -> {
+                            context.addMessage("assistant", response);
+                            compactHistory(context);
+                        }));
+                })
+                .doOnError(turn::error)
+                .doFinally(signal -> stopTurn(turn, session, signal))
+                .contextWrite(reactorContextWith(turn));
+        }).onErrorResume(e -> {
+            completeErrors.increment();
+            log.warn("Falha ao gerar resposta na sessão {}: {}", sessionId, e.toString());
+            return Mono.just(ERROR_MESSAGE);
+        });
     }
 
     /**
-     * Chama API da OpenAI (GPT) com histórico de conversação.
-     * @param context Contexto da conversação
-     * @return Resposta gerada pelo GPT
+     * Gera resposta do agente AI em modo streaming, token a token.
+     * Os fragmentos parciais são emitidos assim que chegam do provedor; o texto
+     * completo é adicionado ao histórico uma única vez, ao final do stream.
+     * O tempo até o primeiro token (llm.time.to.first.token) é medido pelo LLMProviderRouter.
+     * @param sessionId ID da sessão de conversação
+     * @param userMessage Mensagem do usuário
+     * @return Fluxo de fragmentos da resposta gerada pelo LLM
      */
-    private String callOpenAI(ConversationContext context) {
-        // Converte mensagens para formato esperado pela API OpenAI
-        List<Map<String, String>> messages = context.getMessages().stream()
-            .map(msg -> Map.of("role", msg.role(), "content", msg.content()))
-            .collect(Collectors.toList());
-        
-        // Adiciona system prompt no início (define comportamento do modelo)
-        messages.add(0, Map.of("role", "system", "content", sanitizer.buildSystemPrompt()));
-
-        // Monta corpo da requisição
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", openaiModel);
-        requestBody.put("messages", messages);
-        requestBody.put("max_tokens", maxTokens);
-        requestBody.put("temperature", temperature);
-
-        // Executa requisição HTTP POST de forma síncrona
-        Map<String, Object> response = webClient.post()
-            .uri(openaiUrl)
-            .header("Authorization", "Bearer " + apiKey)
-            .header("Content-Type", "application/json")
-            .bodyValue(requestBody)
-            .retrieve()
-            .bodyToMono(Map.class)
-            .block();
-
-        return extractOpenAIResponse(response);
+    public Flux<String> streamResponse(String sessionId, String userMessage) {
+        return Flux.deferContextual(reactorContext -> {
+            Observation turn = startTurn("stream", reactorContext);
+            AtomicReference<Observation> session = new AtomicReference<>(start("llm.agent.session", turn));
+            return conversationManager.streamTurn(sessionId, context -> {
+                    stopSession(session);
+                    // Sanitiza entrada e registra mensagem do usuário no histórico
+                    start("llm.agent.sanitize", turn)
+                        .observe(() -> context.addMessage("user", sanitizer.sanitize(userMessage)));
+
+                    StringBuilder fullResponse = new StringBuilder();
+                    return router.stream(promptMessages(context))
+                        .doOnNext(fullResponse::append)
+                        // Adiciona resposta completa ao histórico somente ao final
+                        .doOnComplete(() -> start("llm.agent.response", turn).observe(() -> {
+                            context.addMessage("assistant", fullResponse.toString());
+                            compactHistory(context);
+                        }));
+                })
+                .doOnError(e -> {
+                    streamErrors.increment();
+                    log.warn("Falha no streaming da sessão {}: {}", sessionId, e.toString());
+                    turn.error(e);
+                })
+                .doFinally(signal -> stopTurn(turn, session, signal))
+                .contextWrite(reactorContextWith(turn));
+        });
     }
 
     /**
-     * Chama API do Google Gemini com histórico de conversação.
-     * @param context Contexto da conversação
-     * @return Resposta gerada pelo Gemini
+     * Inicia a observação do turno, filha da observação da requisição HTTP (se houver).
      */
-    private String callGemini(ConversationContext context) {
-        // Gemini usa formato de prompt único (não suporta mensagens separadas)
-        StringBuilder prompt = new StringBuilder(sanitizer.buildSystemPrompt()).append("\n\n");
-        
-        // Concatena todas as mensagens em um único prompt
-        for (ConversationContext.Message msg : context.getMessages()) {
-            prompt.append(msg.role()).append(": ").append(msg.content()).append("\n");
+    private Observation startTurn(String mode, ContextView reactorContext) {
+        return Observation.createNotStarted("llm.agent.turn", observationRegistry)
+            .contextualName("agent " + mode)
+            .parentObservation(reactorContext.getOrDefault(ObservationThreadLocalAccessor.KEY, null))
+            .lowCardinalityKeyValue("mode", mode)
+            .start();
+    }
+
+    private Observation start(String name, Observation turn) {
+        return Observation.createNotStarted(name, observationRegistry).parentObservation(turn).start();
+    }
+
+    // Encerra a espera pela vez na sessão uma única vez (início do turno ou fim sem início)
+    private static void stopSession(AtomicReference<Observation> session) {
+        Observation waiting = session.getAndSet(null);
+        if (waiting != null) {
+            waiting.stop();
         }
+    }
 
-        // Monta corpo da requisição no formato Gemini
-        Map<String, Object> requestBody = Map.of(
-            "contents", List.of(Map.of("parts", List.of(Map.of("text", prompt.toString())))),
-            "generationConfig", Map.of(
-                "temperature", temperature,
-                "maxOutputTokens", maxTokens
-            )
-        );
-
-        // Executa requisição HTTP POST (API key via query param)
-        Map<String, Object> response = webClient.post()
-            .uri(geminiUrl + "?key=" + apiKey)
-            .header("Content-Type", "application/json")
-            .bodyValue(requestBody)
-            .retrieve()
-            .bodyToMono(Map.class)
-            .block();
-
-        return extractGeminiResponse(response);
+    private static void stopTurn(Observation turn, AtomicReference<Observation> session, SignalType signal) {
+        stopSession(session);
+        String outcome = switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+        turn.lowCardinalityKeyValue("outcome", outcome).stop();
+    }
+
+    private static Function<Context, Context> reactorContextWith(Observation turn) {
+        // Chamadas ao provedor (LLMProviderRouter) viram filhas do turno
+        return reactorContext -> reactorContext.put(ObservationThreadLocalAccessor.KEY, turn);
     }
 
     /**
-     * Extrai texto da resposta da API OpenAI.
-     * Navega pela estrutura JSON: choices[0].message.content
+     * Compacta o histórico quando ele não cabe mais na janela de contexto.
+     * As mensagens mais antigas são resumidas pelo LLM em segundo plano (fora do caminho
+     * da requisição) e substituídas pelo resumo acumulado; com o resumo desativado, ou se
+     * a sumarização falhar, são apenas descartadas. No máximo uma compactação por sessão.
+     * @param context Contexto da conversação
      */
-    private String extractOpenAIResponse(Map<String, Object> response) {
-        try {
-            List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
-            Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
-            return (String) message.get("content");
-        } catch (Exception e) {
-            return "Erro ao processar resposta da API.";
+    private void compactHistory(ConversationContext context) {
+        int overflow = windowPolicy.overflow(context);
+        if (overflow == 0 || !context.tryStartCompaction()) {
+            return;
         }
+        if (!summaryEnabled) {
+            context.compact(overflow, null);
+            context.finishCompaction();
+            return;
+        }
+
+        List<ConversationContext.Message> compacted = context.getMessages().subList(0, overflow);
+        List<ConversationContext.Message> summaryRequest = List.of(
+            new ConversationContext.Message("user", sanitizer.buildSummaryPrompt(context.getSummary(), compacted)));
+
+        // Direto no roteador: o pedido de resumo não entra em llm.prompt.tokens nem no cache de respostas
+        router.complete(summaryRequest)
+            .doFinally(signal -> context.finishCompaction())
+            .subscribe(
+                summary -> context.compact(overflow, summary),
+                error -> context.compact(overflow, null));
     }
 
     /**
-     * Extrai texto da resposta da API Gemini.
-     * Navega pela estrutura JSON: candidates[0].content.parts[0].text
+     * Retorna as mensagens da janela de contexto a enviar ao provedor e registra
+     * o tamanho estimado do histórico completo e da janela (llm.prompt.tokens).
+     * @param context Contexto da conversação
      */
-    private String extractGeminiResponse(Map<String, Object> response) {
-        try {
-            List<Map<String, Object>> candidates = (List<Map<String, Object>>) response.get("candidates");
-            Map<String, Object> content = (Map<String, Object>) candidates.get(0).get("content");
-            List<Map<String, Object>> parts = (List<Map<String, Object>>) content.get("parts");
-            return (String) parts.get(0).get("text");
-        } catch (Exception e) {
-            return "Erro ao processar resposta da API.";
-        }
+    private List<ConversationContext.Message> promptMessages(ConversationContext context) {
+        List<ConversationContext.Message> window = windowPolicy.window(context);
+        ConversationContext.History history = context.getMessages();
+        historyTokens.record(ContextWindowPolicy.estimateTokens(history)
+            + (history.summary() != null ? ContextWindowPolicy.estimateTokens(history.summary().content()) : 0));
+        windowTokens.record(ContextWindowPolicy.estimateTokens(window));
+        return window;
     }
+
+    /**
+     * Chama o provedor LLM escolhido pelo roteador, passando pelo cache de respostas quando permitido.
+     * Respostas inválidas do provedor são devolvidas, mas não permanecem no cache.
+     * @param context Contexto da conversação
+     * @return Mono com a resposta do LLM
+     */
+    private Mono<String> callLLM(ConversationContext context) {
+        return Mono.defer(() -> {
+            List<ConversationContext.Message> window = promptMessages(context);
+            if (!responseCache.isCacheable(temperature)) {
+                return responseCache.bypass(() -> router.complete(window));
+            }
+            String key = responseCache.key(router.identity(), temperature, window);
+            return responseCache.get(key, () -> router.complete(window))
+                .doOnNext(response -> {
+                    if (LLMProvider.PARSE_ERROR_MESSAGE.equals(response)) {
+                        responseCache.invalidate(key);
+                    }
+                });
+        });
+    }
+
 }
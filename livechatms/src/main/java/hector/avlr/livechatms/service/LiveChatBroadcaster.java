@@ -0,0 +1,144 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ChatBatch;
+import hector.avlr.livechatms.domain.ChatOutput;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publica as mensagens do chat ao vivo nos destinos do broker.
+ * Com o lote habilitado (livechat.batch.enabled), as mensagens de um destino são acumuladas
+ * por uma janela de tempo ou até um número máximo e publicadas como um único ChatBatch:
+ * o lote é serializado uma vez e cada assinante recebe um frame com várias mensagens,
+ * reduzindo frames e escritas no socket em rajadas de salas movimentadas.
+ * Os lotes são publicados em uma única thread, na ordem em que foram fechados.
+ * Métricas: livechat.batch.size e livechat.batch.flushed{reason=size|time}.
+ */
+@Service
+public class LiveChatBroadcaster {
+
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final boolean batchEnabled;
+    private final long windowMillis;
+    private final int maxMessages;
+
+    // Destino -> lote aberto
+    private final Map<String, Batch> openBatches = new ConcurrentHashMap<>();
+    private final Scheduler flusher = Schedulers.newSingle("livechat-batch");
+
+    private final DistributionSummary batchSize;
+    private final Counter sizeFlushes;
+    private final Counter timeFlushes;
+
+    /**
+     * Construtor com janela de lote configurável e registro de métricas.
+     * @param messagingTemplate Envio de mensagens ao broker
+     * @param meterRegistry Registro de métricas dos lotes
+     * @param batchEnabled Agrupa mensagens em lotes
+     * @param windowMillis Tempo máximo que uma mensagem aguarda no lote
+     * @param maxMessages Número de mensagens que fecha o lote antes da janela
+     */
+    public LiveChatBroadcaster(SimpMessageSendingOperations messagingTemplate, MeterRegistry meterRegistry,
+                               @Value("${livechat.batch.enabled}") boolean batchEnabled,
+                               @Value("${livechat.batch.window.millis}") long windowMillis,
+                               @Value("${livechat.batch.max.messages}") int maxMessages) {
+        this.messagingTemplate = messagingTemplate;
+        this.batchEnabled = batchEnabled;
+        this.windowMillis = windowMillis;
+        this.maxMessages = maxMessages;
+        this.batchSize = DistributionSummary.builder("livechat.batch.size")
+            .description("Mensagens por lote publicado")
+            .register(meterRegistry);
+        this.sizeFlushes = Counter.builder("livechat.batch.flushed")
+            .description("Lotes publicados")
+            .tag("reason", "size")
+            .register(meterRegistry);
+        this.timeFlushes = Counter.builder("livechat.batch.flushed")
+            .description("Lotes publicados")
+            .tag("reason", "time")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Publica uma mensagem no destino, imediatamente ou no próximo lote.
+     * @param destination Destino do broker (ex.: /topics/livechat/{sala})
+     * @param output Mensagem já sanitizada
+     */
+    public void publish(String destination, ChatOutput output) {
+        if (!batchEnabled) {
+            messagingTemplate.convertAndSend(destination, output);
+            return;
+        }
+        while (true) {
+            Batch batch = openBatches.computeIfAbsent(destination, this::openBatch);
+            synchronized (batch) {
+                // Lote fechado por outra thread entre a busca e o lock: tenta no próximo
+                if (batch.closed) {
+                    continue;
+                }
+                batch.messages.add(output);
+                if (batch.messages.size() >= maxMessages) {
+                    close(batch);
+                    flusher.schedule(() -> send(batch, sizeFlushes));
+                }
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.dispose();
+    }
+
+    private Batch openBatch(String destination) {
+        Batch batch = new Batch(destination, maxMessages);
+        flusher.schedule(() -> {
+            synchronized (batch) {
+                if (batch.closed) {
+                    return;
+                }
+                close(batch);
+            }
+            send(batch, timeFlushes);
+        }, windowMillis, TimeUnit.MILLISECONDS);
+        return batch;
+    }
+
+    // Chamado com o lock do lote
+    private void close(Batch batch) {
+        batch.closed = true;
+        openBatches.remove(batch.destination, batch);
+    }
+
+    private void send(Batch batch, Counter reason) {
+        reason.increment();
+        batchSize.record(batch.messages.size());
+        messagingTemplate.convertAndSend(batch.destination, new ChatBatch(batch.messages));
+    }
+
+    private static final class Batch {
+
+        final String destination;
+        final List<ChatOutput> messages;
+        boolean closed;
+
+        Batch(String destination, int capacity) {
+            this.destination = destination;
+            this.messages = new ArrayList<>(capacity);
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package hector.avlr.livechatms.service;
 
+import hector.avlr.livechatms.domain.ConversationContext;
 import org.springframework.stereotype.Service;
 import org.springframework.web.util.HtmlUtils;
 
-import java.util.regex.Pattern;
+import java.util.List;
 
 /**
  * Serviço responsável por sanitizar entradas do usuário e construir prompts seguros.
@@ -12,23 +13,22 @@ import java.util.regex.Pattern;
 @Service
 public class PromptSanitizer {
     
-    // Padrão para detectar e remover tags <script>
-    private static final Pattern SCRIPT_PATTERN = Pattern.compile(
-        "<script[^>]*>.*?</script>", 
-        Pattern.CASE_INSENSITIVE | Pattern.DOTALL
-    );
-    
-    // Padrão para detectar possíveis tentativas de SQL Injection
-    private static final Pattern SQL_INJECTION_PATTERN = Pattern.compile(
-        "('.*(--|;|\\bOR\\b|\\bAND\\b).*')", 
-        Pattern.CASE_INSENSITIVE
-    );
-    
     // Limite máximo de caracteres para prevenir ataques de negação de serviço
     private static final int MAX_LENGTH = 2000;
 
+    // Maior caractere com entidade HTML (tabela do HtmlUtils: Latin-1, grego, símbolos e pontuação)
+    private static final int ENTITY_TABLE_SIZE = 10000;
+
+    // Entidade HTML de cada caractere (null se o caractere não é escapado).
+    // Derivada do próprio HtmlUtils.htmlEscape para manter exatamente a mesma saída.
+    private static final String[] ENTITIES = buildEntityTable();
+
     /**
      * Sanitiza entrada do usuário aplicando múltiplas camadas de segurança.
+     * Limita o tamanho e escapa caracteres HTML especiais, inclusive aspas simples e duplas:
+     * tags (ex.: script) e literais SQL deixam de ser interpretáveis no texto resultante.
+     * Executa em tempo linear, sem expressões regulares; textos sem caracteres a escapar
+     * são retornados sem cópia.
      * @param input Texto fornecido pelo usuário
      * @return Texto sanitizado e seguro para processamento
      */
@@ -38,23 +38,64 @@ public class PromptSanitizer {
             return "";
         }
 
-        String sanitized = input.trim();
-        
+        // Equivalente a trim(): ignora caracteres de controle e espaços nas bordas
+        int start = 0;
+        int end = input.length();
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
         // Limita tamanho para prevenir ataques DoS
-        if (sanitized.length() > MAX_LENGTH) {
-            sanitized = sanitized.substring(0, MAX_LENGTH);
+        end = Math.min(end, start + MAX_LENGTH);
+
+        // Caminho rápido: nada a escapar
+        int first = start;
+        while (first < end && entity(input.charAt(first)) == null) {
+            first++;
+        }
+        if (first == end) {
+            return input.substring(start, end);
+        }
+
+        // Tamanho exato da saída: o buffer é alocado uma única vez, sem realocações
+        int length = end - start;
+        for (int i = first; i < end; i++) {
+            String entity = entity(input.charAt(i));
+            if (entity != null) {
+                length += entity.length() - 1;
+            }
+        }
+
+        // Escapa caracteres HTML especiais (proteção XSS), copiando em blocos os trechos limpos
+        StringBuilder sanitized = new StringBuilder(length);
+        int clean = start;
+        for (int i = first; i < end; i++) {
+            String entity = entity(input.charAt(i));
+            if (entity != null) {
+                sanitized.append(input, clean, i).append(entity);
+                clean = i + 1;
+            }
         }
+        return sanitized.append(input, clean, end).toString();
+    }
+
+    private static String entity(char character) {
+        return character < ENTITY_TABLE_SIZE ? ENTITIES[character] : null;
+    }
 
-        // Escapa caracteres HTML especiais (proteção XSS)
-        sanitized = HtmlUtils.htmlEscape(sanitized);
-        
-        // Remove tags de script (camada adicional de proteção XSS)
-        sanitized = SCRIPT_PATTERN.matcher(sanitized).replaceAll("");
-        
-        // Remove padrões suspeitos de SQL Injection
-        sanitized = SQL_INJECTION_PATTERN.matcher(sanitized).replaceAll("");
-        
-        return sanitized;
+    private static String[] buildEntityTable() {
+        String[] entities = new String[ENTITY_TABLE_SIZE];
+        for (char character = 0; character < ENTITY_TABLE_SIZE; character++) {
+            String text = String.valueOf(character);
+            String escaped = HtmlUtils.htmlEscape(text);
+            if (!escaped.equals(text)) {
+                entities[character] = escaped;
+            }
+        }
+        return entities;
     }
 
     /**
@@ -81,4 +122,27 @@ public class PromptSanitizer {
                 Remember: Safety and user privacy are paramount.
                 """;
     }
+
+    /**
+     * Constrói o prompt que pede ao LLM um resumo das mensagens antigas da conversa.
+     * O resumo anterior é incluído para que o novo resumo seja cumulativo.
+     * @param previousSummary Resumo atual da conversa (pode ser null)
+     * @param messages Mensagens antigas que serão removidas do histórico
+     * @return Prompt de sumarização
+     */
+    public String buildSummaryPrompt(String previousSummary, List<ConversationContext.Message> messages) {
+        StringBuilder prompt = new StringBuilder("""
+                Summarize the conversation below in a few sentences, in the same language as the user.
+                Keep facts, names, decisions and open questions needed to continue the conversation.
+                Reply with the summary only.
+                
+                """);
+        if (previousSummary != null) {
+            prompt.append("Previous summary: ").append(previousSummary).append("\n\n");
+        }
+        for (ConversationContext.Message msg : messages) {
+            prompt.append(msg.role()).append(": ").append(msg.content()).append("\n");
+        }
+        return prompt.toString();
+    }
 }
@@ -0,0 +1,127 @@
+package hector.avlr.livechatms.service.admission;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limite global de turnos do agente em andamento, ajustado pela latência dos provedores (AIMD):
+ * - cada chamada a um provedor informa sua latência (LLMProviderRouter): no streaming, o tempo
+ *   até o primeiro fragmento; na chamada completa, a latência por token de saída, para que
+ *   respostas longas não pareçam sobrecarga. Latência acima de
+ *   agent.admission.latency.tolerance × latência típica do modo (média móvel exponencial),
+ *   429/503 ou timeout do provedor contam como sobrecarga e reduzem o limite
+ *   multiplicativamente (agent.admission.backoff.ratio)
+ * - chamadas normais com pelo menos metade do limite em uso aumentam o limite em 1
+ * O limite fica entre agent.admission.concurrency.min e max. Todo o estado é atômico (CAS),
+ * sem locks no caminho da requisição.
+ * Métricas: agent.admission.limit e agent.admission.in.flight.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    // Peso de cada amostra na latência típica
+    private static final double SMOOTHING = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Limite fracionário (bits de um double) para que reduções sucessivas se acumulem
+    private final AtomicLong limit;
+    // Modo da chamada (complete, stream) -> latência típica por unidade em nanossegundos
+    private final Map<String, AtomicLong> typicalLatency = new ConcurrentHashMap<>();
+
+    /**
+     * Construtor com limites e sensibilidade configuráveis.
+     * @param initialLimit Limite inicial de turnos simultâneos
+     * @param minLimit Limite mínimo, mesmo sob sobrecarga
+     * @param maxLimit Limite máximo
+     * @param latencyTolerance Múltiplo da latência típica a partir do qual a chamada indica sobrecarga
+     * @param backoffRatio Fator aplicado ao limite a cada sobrecarga (entre 0 e 1)
+     */
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                      @Value("${agent.admission.concurrency.initial}") int initialLimit,
+                                      @Value("${agent.admission.concurrency.min}") int minLimit,
+                                      @Value("${agent.admission.concurrency.max}") int maxLimit,
+                                      @Value("${agent.admission.latency.tolerance}") double latencyTolerance,
+                                      @Value("${agent.admission.backoff.ratio}") double backoffRatio) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.backoffRatio = backoffRatio;
+        this.limit = new AtomicLong(Double.doubleToLongBits(Math.max(minLimit, Math.min(maxLimit, initialLimit))));
+        Gauge.builder("agent.admission.limit", this, AdaptiveConcurrencyLimiter::limit)
+            .description("Limite atual de turnos do agente simultâneos")
+            .register(meterRegistry);
+        Gauge.builder("agent.admission.in.flight", inFlight, AtomicInteger::get)
+            .description("Turnos do agente em andamento")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Reserva uma vaga se houver folga no limite atual.
+     * @return true se admitido (chamar {@link #release()} ao final)
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Ajusta o limite com o resultado de uma chamada ao provedor.
+     * @param mode Modo da chamada (latências de modos diferentes não são comparadas)
+     * @param latencyNanos Latência da chamada (no streaming, até o primeiro fragmento)
+     * @param units Unidades de trabalho medidas (tokens de saída na chamada completa, 1 no
+     *              streaming): a latência é comparada por unidade
+     * @param overloaded true se o provedor sinalizou sobrecarga (429, 503 ou timeout)
+     */
+    public void onSample(String mode, long latencyNanos, int units, boolean overloaded) {
+        if (!overloaded) {
+            long perUnit = latencyNanos / Math.max(1, units);
+            long typical = typicalLatency.computeIfAbsent(mode, key -> new AtomicLong())
+                .getAndUpdate(current -> current == 0
+                    ? perUnit
+                    : current + (long) ((perUnit - current) * SMOOTHING));
+            overloaded = typical > 0 && perUnit > latencyTolerance * typical;
+        }
+        boolean decrease = overloaded;
+        int current = inFlight.get();
+        limit.getAndUpdate(bits -> {
+            double value = Double.longBitsToDouble(bits);
+            if (decrease) {
+                value = Math.max(minLimit, value * backoffRatio);
+            } else if (current * 2 >= value) {
+                value = Math.min(maxLimit, value + 1);
+            }
+            return Double.doubleToLongBits(value);
+        });
+    }
+
+    public int limit() {
+        return (int) Double.longBitsToDouble(limit.get());
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
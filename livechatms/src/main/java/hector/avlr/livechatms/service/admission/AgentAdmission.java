@@ -0,0 +1,155 @@
+package hector.avlr.livechatms.service.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Controle de admissão das chamadas ao agente: limite de requisições por cliente
+ * (agent.admission.rate.per.second e burst; 0 desliga) seguido do limite global adaptativo de
+ * turnos simultâneos (AdaptiveConcurrencyLimiter). Requisições acima dos limites são recusadas
+ * imediatamente, com o motivo e o tempo sugerido para tentar de novo, em vez de aguardarem o
+ * provedor. Nenhum dos limites usa locks.
+ * Métricas: agent.admission.rejected{reason=rate_limited|overloaded} e agent.admission.clients.
+ */
+@Service
+public class AgentAdmission {
+
+    // Sugestão de nova tentativa quando o limite global está cheio
+    private static final Duration OVERLOADED_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final ClientRateLimiter rateLimiter;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final Counter rateLimited;
+    private final Counter overloaded;
+
+    /**
+     * Construtor com limite por cliente configurável.
+     * @param ratePerSecond Requisições por segundo por cliente (0 desliga o limite por cliente)
+     * @param burst Requisições aceitas em rajada por cliente
+     * @param maxClients Clientes acompanhados simultaneamente
+     */
+    public AgentAdmission(AdaptiveConcurrencyLimiter concurrencyLimiter, MeterRegistry meterRegistry,
+                          @Value("${agent.admission.rate.per.second}") double ratePerSecond,
+                          @Value("${agent.admission.burst}") int burst,
+                          @Value("${agent.admission.clients.max}") long maxClients) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.rateLimiter = ratePerSecond > 0
+            ? new ClientRateLimiter(ratePerSecond, burst, maxClients, System::nanoTime)
+            : null;
+        this.rateLimited = rejected("rate_limited", meterRegistry);
+        this.overloaded = rejected("overloaded", meterRegistry);
+        if (rateLimiter != null) {
+            Gauge.builder("agent.admission.clients", rateLimiter, ClientRateLimiter::clients)
+                .description("Clientes com limite de requisições acompanhado")
+                .register(meterRegistry);
+        }
+    }
+
+    private static Counter rejected(String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("agent.admission.rejected")
+            .description("Requisições ao agente recusadas pelo controle de admissão")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Tenta admitir uma requisição do cliente. Se admitida, o chamador deve chamar
+     * {@link #release()} ao final do turno.
+     * @param client Identificação do cliente (IP no HTTP, conexão no WebSocket)
+     * @return null se admitida; senão, o motivo da recusa
+     */
+    public Rejection tryAdmit(String client) {
+        if (rateLimiter != null) {
+            long waitNanos = rateLimiter.tryAcquire(client);
+            if (waitNanos > 0) {
+                rateLimited.increment();
+                return new Rejection(Reason.RATE_LIMITED, Duration.ofNanos(waitNanos));
+            }
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            overloaded.increment();
+            return new Rejection(Reason.OVERLOADED, OVERLOADED_RETRY_AFTER);
+        }
+        return null;
+    }
+
+    public void release() {
+        concurrencyLimiter.release();
+    }
+
+    /**
+     * Executa o turno se admitido, liberando a vaga ao final (sucesso, erro ou cancelamento).
+     * @param client Identificação do cliente
+     * @param turn Turno do agente (criado somente se admitido)
+     * @param rejected Resposta para a requisição recusada
+     */
+    public <T> Mono<T> admit(String client, Supplier<Mono<T>> turn, Function<Rejection, T> rejected) {
+        return Mono.defer(() -> {
+            Rejection rejection = tryAdmit(client);
+            if (rejection != null) {
+                return Mono.just(rejected.apply(rejection));
+            }
+            return turn.get().doFinally(signal -> release());
+        });
+    }
+
+    /**
+     * Motivo da recusa: limite do cliente (HTTP 429) ou limite global (HTTP 503).
+     */
+    public enum Reason {
+
+        RATE_LIMITED(429, "rate_limited", "Muitas mensagens em pouco tempo. Aguarde alguns segundos."),
+        OVERLOADED(503, "overloaded", "O agente está sobrecarregado no momento. Tente novamente em instantes.");
+
+        private final int httpStatus;
+        private final String status;
+        private final String message;
+
+        Reason(int httpStatus, String status, String message) {
+            this.httpStatus = httpStatus;
+            this.status = status;
+            this.message = message;
+        }
+
+        public int httpStatus() {
+            return httpStatus;
+        }
+
+        /**
+         * Status enviado ao cliente (AgentResponse.status / AgentStreamChunk.status).
+         */
+        public String status() {
+            return status;
+        }
+
+        /**
+         * Mensagem amigável exibida ao usuário.
+         */
+        public String message() {
+            return message;
+        }
+    }
+
+    /**
+     * Requisição recusada.
+     * @param reason Motivo da recusa
+     * @param retryAfter Tempo sugerido até uma nova tentativa
+     */
+    public record Rejection(Reason reason, Duration retryAfter) {
+
+        /**
+         * Valor do cabeçalho Retry-After (segundos inteiros, no mínimo 1).
+         */
+        public long retryAfterSeconds() {
+            return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package hector.avlr.livechatms.service.admission;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket por cliente, sem locks: cada balde é um único AtomicLong com o instante
+ * teórico da próxima requisição (GCRA, equivalente a um token bucket com reposição contínua).
+ * Uma requisição avança esse instante em 1/taxa; é recusada se ele passar de "agora" por mais
+ * que a rajada permitida. Baldes inativos expiram e o total de clientes é limitado.
+ */
+class ClientRateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier clock;
+    private final Cache<String, AtomicLong> buckets;
+
+    /**
+     * @param ratePerSecond Requisições por segundo por cliente (reposição do balde)
+     * @param burst Requisições aceitas de uma vez com o balde cheio
+     * @param maxClients Baldes mantidos (os menos usados são descartados)
+     * @param clock Relógio em nanossegundos
+     */
+    ClientRateLimiter(double ratePerSecond, int burst, long maxClients, LongSupplier clock) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.burstNanos = intervalNanos * Math.max(burst, 1);
+        this.clock = clock;
+        // Após burstNanos sem uso o balde está cheio de novo: descartá-lo não muda o resultado
+        this.buckets = Caffeine.newBuilder()
+            .maximumSize(maxClients)
+            .expireAfterAccess(Duration.ofNanos(Math.max(burstNanos, TimeUnit.SECONDS.toNanos(1))))
+            .build();
+    }
+
+    /**
+     * Consome uma requisição do balde do cliente.
+     * @param client Identificação do cliente (IP ou conexão)
+     * @return 0 se aceita; senão, nanossegundos até haver uma requisição disponível
+     */
+    long tryAcquire(String client) {
+        long now = clock.getAsLong();
+        AtomicLong theoreticalArrival = buckets.get(client, key -> new AtomicLong(now));
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long excess = next - now - burstNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    long clients() {
+        return buckets.estimatedSize();
+    }
+}
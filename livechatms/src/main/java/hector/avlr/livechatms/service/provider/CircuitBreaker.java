@@ -0,0 +1,100 @@
+package hector.avlr.livechatms.service.provider;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker de um provedor, por falhas consecutivas.
+ * - CLOSED: chamadas liberadas; failureThreshold falhas seguidas abrem o circuito
+ * - OPEN: chamadas recusadas por openNanos
+ * - HALF_OPEN: uma única chamada de teste; sucesso fecha o circuito, falha o reabre
+ * Chamadas canceladas (ex.: perdedora de um hedge) não contam como sucesso nem falha.
+ * Estado, falhas seguidas e a chamada de teste formam um valor imutável trocado por CAS, sem
+ * locks: com o circuito fechado e sem falhas, reservar e registrar sucesso apenas leem o estado.
+ */
+final class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private record Snapshot(State state, int consecutiveFailures, long openedAt, boolean trialInFlight) {
+    }
+
+    private static final Snapshot CLOSED = new Snapshot(State.CLOSED, 0, 0, false);
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(CLOSED);
+
+    CircuitBreaker(int failureThreshold, long openNanos, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Indica se uma chamada seria liberada agora, sem reservá-la.
+     */
+    boolean isCallPermitted() {
+        Snapshot current = snapshot.get();
+        return switch (current.state()) {
+            case CLOSED -> true;
+            case OPEN -> clock.getAsLong() - current.openedAt() >= openNanos;
+            case HALF_OPEN -> !current.trialInFlight();
+        };
+    }
+
+    /**
+     * Reserva uma chamada; no estado HALF_OPEN, somente a chamada de teste é liberada.
+     */
+    boolean tryAcquire() {
+        while (true) {
+            Snapshot current = snapshot.get();
+            switch (current.state()) {
+                case CLOSED -> {
+                    return true;
+                }
+                case OPEN -> {
+                    if (clock.getAsLong() - current.openedAt() < openNanos) {
+                        return false;
+                    }
+                }
+                case HALF_OPEN -> {
+                    if (current.trialInFlight()) {
+                        return false;
+                    }
+                }
+            }
+            // Quem vencer a troca é a chamada de teste
+            if (snapshot.compareAndSet(current, new Snapshot(State.HALF_OPEN, 0, current.openedAt(), true))) {
+                return true;
+            }
+        }
+    }
+
+    void onSuccess() {
+        if (snapshot.get() != CLOSED) {
+            snapshot.set(CLOSED);
+        }
+    }
+
+    void onFailure() {
+        snapshot.updateAndGet(current -> {
+            if (current.state() == State.HALF_OPEN || current.consecutiveFailures() + 1 >= failureThreshold) {
+                return new Snapshot(State.OPEN, 0, clock.getAsLong(), false);
+            }
+            return new Snapshot(current.state(), current.consecutiveFailures() + 1, current.openedAt(), false);
+        });
+    }
+
+    void onCancel() {
+        snapshot.updateAndGet(current -> current.trialInFlight()
+            ? new Snapshot(current.state(), current.consecutiveFailures(), current.openedAt(), false)
+            : current);
+    }
+
+    State state() {
+        return snapshot.get().state();
+    }
+}
@@ -0,0 +1,120 @@
+package hector.avlr.livechatms.service.provider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.LLMRequestEncoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Provedor Google Gemini (generateContent / streamGenerateContent).
+ */
+@Component
+public class GeminiProvider extends HttpLLMProvider {
+
+    private final ObjectReader eventReader;
+    // URIs com a API key já codificada: sem expansão de template por chamada
+    private final URI uri;
+    private final URI streamUri;
+    private final String model;
+    // Mesmo corpo nos modos completo e streaming
+    private final LLMRequestEncoder.Template request;
+
+    /**
+     * Construtor com endpoints, credencial e parâmetros de geração do Gemini.
+     */
+    public GeminiProvider(WebClient webClient, LLMRequestEncoder requestEncoder, ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry,
+                          @Value("${llm.api.url.gemini}") String url,
+                          @Value("${llm.api.url.gemini.stream}") String streamUrl,
+                          @Value("${llm.api.key.gemini}") String apiKey,
+                          @Value("${llm.model.gemini}") String model,
+                          @Value("${llm.max.tokens}") int maxTokens,
+                          @Value("${llm.temperature}") double temperature,
+                          @Value("${llm.http.timeout.gemini.seconds}") long timeoutSeconds) {
+        super("gemini", webClient, meterRegistry, timeoutSeconds);
+        this.eventReader = objectMapper.readerFor(GeminiResponse.class);
+        this.uri = UriComponentsBuilder.fromUriString(url)
+            .queryParam("key", apiKey)
+            .encode().build().toUri();
+        this.streamUri = UriComponentsBuilder.fromUriString(streamUrl)
+            .queryParam("alt", "sse")
+            .queryParam("key", apiKey)
+            .encode().build().toUri();
+        this.model = model;
+        this.request = requestEncoder.geminiTemplate(temperature, maxTokens);
+    }
+
+    @Override
+    public String model() {
+        return model;
+    }
+
+    /**
+     * Chama API do Google Gemini com histórico de conversação.
+     */
+    @Override
+    public Mono<String> complete(List<ConversationContext.Message> window) {
+        // Executa requisição HTTP POST (API key via query param, já na URI)
+        return webClient.post()
+            .uri(uri)
+            .httpRequest(this::responseTimeout)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(request.body(window))
+            .retrieve()
+            // Decodificação tipada: campos não lidos (safetyRatings, modelVersion...) são pulados
+            .bodyToMono(GeminiResponse.class)
+            .doOnNext(response -> recordUsage(response.usageMetadata()))
+            .mapNotNull(GeminiResponse::text)
+            // Resposta sem o texto no formato esperado
+            .defaultIfEmpty(PARSE_ERROR_MESSAGE);
+    }
+
+    /**
+     * Chama API do Google Gemini em modo streaming (streamGenerateContent com alt=sse).
+     * Cada evento traz um fragmento em candidates[0].content.parts[0].text.
+     * O uso de tokens é acumulado a cada evento; registra o último recebido ao fim do stream
+     * (inclusive se cancelado, pois os tokens já gerados são cobrados).
+     */
+    @Override
+    public Flux<String> stream(List<ConversationContext.Message> window) {
+        AtomicReference<GeminiResponse.UsageMetadata> usage = new AtomicReference<>();
+        return webClient.post()
+            .uri(streamUri)
+            .httpRequest(this::responseTimeout)
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.TEXT_EVENT_STREAM)
+            .bodyValue(request.body(window))
+            .retrieve()
+            .bodyToFlux(SSE_TYPE)
+            .mapNotNull(ServerSentEvent::data)
+            // Eventos sem texto (ex.: apenas metadados) resultam em string vazia
+            .map(data -> {
+                GeminiResponse event = readEvent(eventReader, data);
+                if (event.usageMetadata() != null) {
+                    usage.set(event.usageMetadata());
+                }
+                String text = event.text();
+                return text != null ? text : "";
+            })
+            .doFinally(signal -> recordUsage(usage.get()));
+    }
+
+    private void recordUsage(GeminiResponse.UsageMetadata usage) {
+        if (usage != null) {
+            recordUsage(usage.promptTokenCount(), usage.candidatesTokenCount());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package hector.avlr.livechatms.service.provider;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * Resposta da API Gemini (generateContent), completa ou evento de streaming.
+ * Somente os campos lidos (candidates e usageMetadata) são mapeados; os demais
+ * (safetyRatings, modelVersion...) são pulados pelo parser sem serem materializados.
+ * @param candidates Candidatos gerados (usamos o primeiro)
+ * @param usageMetadata Tokens consumidos (no streaming, acumulados até o evento)
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record GeminiResponse(List<Candidate> candidates, UsageMetadata usageMetadata) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Candidate(Content content) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Content(List<Part> parts) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Part(String text) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record UsageMetadata(int promptTokenCount, int candidatesTokenCount) {}
+
+    /**
+     * Texto gerado: candidates[0].content.parts[0].text, ou null se ausente.
+     */
+    public String text() {
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        Content content = candidates.get(0).content();
+        if (content == null || content.parts() == null || content.parts().isEmpty()) {
+            return null;
+        }
+        return content.parts().get(0).text();
+    }
+}
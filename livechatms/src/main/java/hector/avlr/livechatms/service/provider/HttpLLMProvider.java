@@ -0,0 +1,85 @@
+package hector.avlr.livechatms.service.provider;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClientRequest;
+
+import java.time.Duration;
+
+/**
+ * Base dos provedores acessados via HTTP pelo WebClient compartilhado (pool "llm").
+ * Registra os tokens informados pelo provedor em llm.token.usage{provider,type=input|output}.
+ */
+abstract class HttpLLMProvider implements LLMProvider {
+
+    // Tipo dos eventos SSE recebidos dos provedores em modo streaming
+    static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+        new ParameterizedTypeReference<>() {};
+
+    protected final WebClient webClient;
+    private final String name;
+    private final Duration timeout;
+    private final Counter inputTokens;
+    private final Counter outputTokens;
+
+    HttpLLMProvider(String name, WebClient webClient, MeterRegistry meterRegistry, long timeoutSeconds) {
+        this.name = name;
+        this.webClient = webClient;
+        this.timeout = Duration.ofSeconds(timeoutSeconds);
+        this.inputTokens = tokenCounter("input", meterRegistry);
+        this.outputTokens = tokenCounter("output", meterRegistry);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    private Counter tokenCounter(String type, MeterRegistry meterRegistry) {
+        return Counter.builder("llm.token.usage")
+            .description("Tokens consumidos, conforme informado pelo provedor")
+            .baseUnit("tokens")
+            .tag("provider", name)
+            .tag("type", type)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Registra o uso de tokens de uma chamada.
+     * @param input Tokens do prompt
+     * @param output Tokens gerados
+     */
+    protected void recordUsage(int input, int output) {
+        inputTokens.increment(input);
+        outputTokens.increment(output);
+    }
+
+    /**
+     * Aplica o timeout de resposta do provedor à requisição: tempo máximo sem receber
+     * dados (no streaming, vale entre eventos). Evita que um provedor travado prenda a
+     * conexão e, no caminho bloqueante, a thread indefinidamente.
+     */
+    protected void responseTimeout(ClientHttpRequest request) {
+        HttpClientRequest nativeRequest = request.getNativeRequest();
+        nativeRequest.responseTimeout(timeout);
+    }
+
+    /**
+     * Decodifica um evento de streaming no tipo do provedor com um leitor pré-configurado.
+     * @param reader Leitor do tipo do evento (campos não mapeados são pulados)
+     * @param json Payload JSON do evento SSE
+     */
+    protected static <T> T readEvent(ObjectReader reader, String json) {
+        try {
+            return reader.readValue(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Evento de streaming inválido", e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package hector.avlr.livechatms.service.provider;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Provedor de LLM (ex.: OpenAI, Gemini): monta a requisição no formato do fornecedor,
+ * chama a API e extrai o texto da resposta.
+ * Cada implementação é um bean; o LLMProviderRouter escolhe entre elas por requisição.
+ */
+public interface LLMProvider {
+
+    /**
+     * Texto retornado quando a resposta do provedor não tem o formato esperado.
+     */
+    String PARSE_ERROR_MESSAGE = "Erro ao processar resposta da API.";
+
+    /**
+     * Nome do provedor, usado na configuração (llm.provider, llm.router.weights) e nas métricas.
+     */
+    String name();
+
+    /**
+     * Modelo usado nas requisições.
+     */
+    String model();
+
+    /**
+     * Gera a resposta completa para a janela de contexto.
+     * @param window Mensagens da janela de contexto
+     * @return Mono com o texto da resposta
+     */
+    Mono<String> complete(List<ConversationContext.Message> window);
+
+    /**
+     * Gera a resposta em modo streaming.
+     * @param window Mensagens da janela de contexto
+     * @return Fluxo de fragmentos de texto (podem ser vazios em eventos só de metadados)
+     */
+    Flux<String> stream(List<ConversationContext.Message> window);
+}
@@ -0,0 +1,420 @@
+package hector.avlr.livechatms.service.provider;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.ContextWindowPolicy;
+import hector.avlr.livechatms.service.admission.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import io.netty.handler.timeout.ReadTimeoutException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Escolhe o provedor de LLM de cada requisição.
+ * - Roteamento ponderado (llm.router.weights, ex.: openai:3,gemini:1): o primeiro provedor é
+ *   sorteado pelo peso; os demais, em ordem de peso, ficam como alternativas (peso 0 = somente
+ *   alternativa). Sem pesos, usa apenas llm.provider, como antes.
+ * - Failover: se o provedor falha (antes do primeiro fragmento, no streaming), a requisição
+ *   segue para a próxima alternativa.
+ * - Hedging (llm.router.hedge.enabled): se o provedor não respondeu (ou não enviou o primeiro
+ *   fragmento) dentro do seu p95 recente, a próxima alternativa é chamada em paralelo e vale a
+ *   primeira resposta; a outra é cancelada. Até haver amostras suficientes, o atraso é
+ *   llm.router.hedge.initial.delay.millis.
+ * - Circuit breaker por provedor (llm.router.breaker.*): provedores com o circuito aberto são
+ *   pulados até o fim do intervalo.
+ * Métricas: llm.provider.latency{provider,mode} (p95 usado no hedge), llm.time.to.first.token,
+ * llm.router.hedged, llm.router.failover e llm.provider.circuit.state{provider}
+ * (0 fechado, 1 aberto, 2 meio-aberto).
+ * Cada chamada a um provedor é uma observação llm.provider.call{provider,mode,outcome}
+ * (timer e, com tracing, span filho da observação da requisição no contexto Reactor).
+ * A latência de cada chamada (e 429/503/timeouts do provedor) alimenta o limite adaptativo
+ * de turnos simultâneos (AdaptiveConcurrencyLimiter).
+ */
+@Service
+public class LLMProviderRouter {
+
+    // Amostras mínimas para usar o p95 observado como atraso do hedge
+    private static final long MIN_LATENCY_SAMPLES = 20;
+
+    private final List<Route> routes;
+    private final String identity;
+    private final boolean hedgeEnabled;
+    private final Duration initialHedgeDelay;
+    private final Duration minHedgeDelay;
+    private final Counter hedged;
+    private final Counter failover;
+    private final ObservationRegistry observationRegistry;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Construtor com pesos, hedging e circuit breakers configuráveis.
+     * @param providers Provedores disponíveis (um bean por fornecedor)
+     * @param meterRegistry Registro de métricas do roteamento
+     * @param observationRegistry Registro das observações (timers e spans) das chamadas
+     * @param concurrencyLimiter Limite de turnos simultâneos ajustado pela latência das chamadas
+     * @param defaultProvider Provedor usado quando não há pesos configurados
+     * @param weights Pesos por provedor (nome:peso separados por vírgula); vazio usa defaultProvider
+     * @param hedgeEnabled Chama a próxima alternativa quando o provedor demora além do p95
+     * @param initialHedgeDelayMillis Atraso do hedge antes de haver amostras de latência
+     * @param minHedgeDelayMillis Atraso mínimo do hedge
+     * @param failureThreshold Falhas consecutivas que abrem o circuito de um provedor
+     * @param openSeconds Tempo com o circuito aberto antes da chamada de teste
+     */
+    public LLMProviderRouter(List<LLMProvider> providers, MeterRegistry meterRegistry,
+                             ObservationRegistry observationRegistry, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                             @Value("${llm.provider}") String defaultProvider,
+                             @Value("${llm.router.weights}") String weights,
+                             @Value("${llm.router.hedge.enabled}") boolean hedgeEnabled,
+                             @Value("${llm.router.hedge.initial.delay.millis}") long initialHedgeDelayMillis,
+                             @Value("${llm.router.hedge.min.delay.millis}") long minHedgeDelayMillis,
+                             @Value("${llm.router.breaker.failure.threshold}") int failureThreshold,
+                             @Value("${llm.router.breaker.open.seconds}") long openSeconds) {
+        Map<String, LLMProvider> byName = providers.stream()
+            .collect(Collectors.toMap(LLMProvider::name, Function.identity()));
+        this.routes = parseWeights(weights, defaultProvider).entrySet().stream()
+            .map(entry -> {
+                LLMProvider provider = byName.get(entry.getKey());
+                if (provider == null) {
+                    throw new IllegalStateException("Provider não suportado: " + entry.getKey());
+                }
+                return new Route(provider, entry.getValue(),
+                    new CircuitBreaker(failureThreshold, TimeUnit.SECONDS.toNanos(openSeconds), System::nanoTime),
+                    meterRegistry);
+            })
+            .sorted(Comparator.comparingInt(Route::weight).reversed())
+            .toList();
+        this.identity = routes.stream()
+            .map(route -> route.provider.name().toLowerCase(Locale.ROOT) + "/" + route.provider.model())
+            .sorted()
+            .collect(Collectors.joining(","));
+        this.observationRegistry = observationRegistry;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.hedgeEnabled = hedgeEnabled;
+        this.initialHedgeDelay = Duration.ofMillis(initialHedgeDelayMillis);
+        this.minHedgeDelay = Duration.ofMillis(minHedgeDelayMillis);
+        this.hedged = Counter.builder("llm.router.hedged")
+            .description("Requisições enviadas a uma alternativa por demora do provedor")
+            .register(meterRegistry);
+        this.failover = Counter.builder("llm.router.failover")
+            .description("Requisições enviadas a uma alternativa por falha do provedor")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Provedores e modelos que o roteador pode usar (ex.: gemini/gemini-pro,openai/gpt-3.5-turbo).
+     * Com pesos, failover ou hedging, qualquer um deles pode ter gerado uma resposta: identifica
+     * o roteamento na chave do cache de respostas.
+     */
+    public String identity() {
+        return identity;
+    }
+
+    /**
+     * Gera a resposta completa no provedor escolhido, com failover e hedging.
+     * @param window Mensagens da janela de contexto
+     * @return Mono com o texto da resposta
+     */
+    public Mono<String> complete(List<ConversationContext.Message> window) {
+        return Mono.defer(() -> {
+            List<Route> order = order();
+            return order.isEmpty() ? Mono.error(unavailable()) : complete(order, 0, window);
+        });
+    }
+
+    /**
+     * Gera a resposta em modo streaming no provedor escolhido. Failover e hedging valem até o
+     * primeiro fragmento; depois dele, o stream segue no provedor que respondeu.
+     * Fragmentos vazios (eventos só de metadados) são descartados.
+     * @param window Mensagens da janela de contexto
+     * @return Fluxo de fragmentos da resposta
+     */
+    public Flux<String> stream(List<ConversationContext.Message> window) {
+        return Flux.defer(() -> {
+            List<Route> order = order();
+            return order.isEmpty() ? Flux.error(unavailable()) : stream(order, 0, window, System.nanoTime());
+        });
+    }
+
+    private Mono<String> complete(List<Route> order, int index, List<ConversationContext.Message> window) {
+        Route route = order.get(index);
+        if (index + 1 == order.size()) {
+            return route.complete(window);
+        }
+        Mono<String> next = Mono.defer(() -> complete(order, index + 1, window));
+        if (!hedgeEnabled) {
+            return route.complete(window).onErrorResume(e -> {
+                failover.increment();
+                return next;
+            });
+        }
+        Sinks.Empty<Void> failed = Sinks.empty();
+        Mono<String> primary = route.complete(window).doOnError(e -> failed.tryEmitEmpty());
+        return Mono.firstWithValue(primary, alternative(route.hedgeDelay(route.completeLatency), failed).then(next));
+    }
+
+    private Flux<String> stream(List<Route> order, int index, List<ConversationContext.Message> window,
+                                long requestStart) {
+        Route route = order.get(index);
+        if (index + 1 == order.size()) {
+            return route.stream(window, requestStart);
+        }
+        Flux<String> next = Flux.defer(() -> stream(order, index + 1, window, requestStart));
+        if (!hedgeEnabled) {
+            AtomicBoolean emitted = new AtomicBoolean();
+            return route.stream(window, requestStart)
+                .doOnNext(delta -> emitted.set(true))
+                .onErrorResume(e -> !emitted.get(), e -> {
+                    failover.increment();
+                    return next;
+                });
+        }
+        Sinks.Empty<Void> failed = Sinks.empty();
+        Flux<String> primary = route.stream(window, requestStart).doOnError(e -> failed.tryEmitEmpty());
+        return Flux.firstWithValue(primary, alternative(route.hedgeDelay(route.firstTokenLatency), failed).thenMany(next));
+    }
+
+    /**
+     * Sinal para chamar a alternativa: falha do provedor ou fim do atraso do hedge, o que
+     * vier primeiro. Cancelado se o provedor responder antes.
+     */
+    private Mono<Void> alternative(Duration hedgeDelay, Sinks.Empty<Void> failed) {
+        return Mono.firstWithSignal(
+            failed.asMono().doOnSuccess(signal -> failover.increment()),
+            Mono.delay(hedgeDelay).doOnNext(tick -> hedged.increment()).then());
+    }
+
+    /**
+     * Ordem de tentativa da requisição: provedor sorteado pelo peso, seguido das alternativas.
+     * Provedores com o circuito aberto ficam de fora.
+     */
+    private List<Route> order() {
+        List<Route> available = new ArrayList<>(routes.size());
+        int totalWeight = 0;
+        for (Route route : routes) {
+            if (route.breaker.isCallPermitted()) {
+                available.add(route);
+                totalWeight += route.weight;
+            }
+        }
+        if (available.size() > 1 && totalWeight > 0) {
+            int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (int i = 0; i < available.size(); i++) {
+                pick -= available.get(i).weight;
+                if (pick < 0) {
+                    available.add(0, available.remove(i));
+                    break;
+                }
+            }
+        }
+        return available;
+    }
+
+    private static IllegalStateException unavailable() {
+        return new IllegalStateException("Nenhum provedor LLM disponível");
+    }
+
+    /**
+     * Falhas que indicam sobrecarga do provedor: 429, 503 ou timeout (resposta ou pool de conexões).
+     */
+    static boolean isOverload(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status == 503;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof ReadTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, Integer> parseWeights(String weights, String defaultProvider) {
+        Map<String, Integer> parsed = new LinkedHashMap<>();
+        if (weights == null || weights.isBlank()) {
+            parsed.put(defaultProvider.trim().toLowerCase(Locale.ROOT), 1);
+            return parsed;
+        }
+        for (String entry : weights.split(",")) {
+            String[] nameAndWeight = entry.split(":");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalStateException("Peso inválido em llm.router.weights: " + entry);
+            }
+            int weight = Integer.parseInt(nameAndWeight[1].trim());
+            if (weight < 0) {
+                throw new IllegalStateException("Peso negativo em llm.router.weights: " + entry);
+            }
+            parsed.put(nameAndWeight[0].trim().toLowerCase(Locale.ROOT), weight);
+        }
+        return parsed;
+    }
+
+    /**
+     * Provedor com seu peso, circuit breaker e métricas de latência.
+     */
+    private final class Route {
+
+        final LLMProvider provider;
+        final int weight;
+        final CircuitBreaker breaker;
+        final Timer completeLatency;
+        final Timer firstTokenLatency;
+        final Timer timeToFirstToken;
+
+        Route(LLMProvider provider, int weight, CircuitBreaker breaker, MeterRegistry meterRegistry) {
+            this.provider = provider;
+            this.weight = weight;
+            this.breaker = breaker;
+            this.completeLatency = latencyTimer("complete", meterRegistry);
+            this.firstTokenLatency = latencyTimer("stream", meterRegistry);
+            this.timeToFirstToken = Timer.builder("llm.time.to.first.token")
+                .description("Tempo entre o envio da requisição e o primeiro token recebido")
+                .tag("provider", provider.name())
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+            Gauge.builder("llm.provider.circuit.state", breaker, b -> b.state().ordinal())
+                .description("Estado do circuit breaker do provedor (0 fechado, 1 aberto, 2 meio-aberto)")
+                .tag("provider", provider.name())
+                .register(meterRegistry);
+        }
+
+        int weight() {
+            return weight;
+        }
+
+        Mono<String> complete(List<ConversationContext.Message> window) {
+            return Mono.deferContextual(context -> {
+                if (!breaker.tryAcquire()) {
+                    return Mono.error(unavailable());
+                }
+                Observation call = startCall("complete", context);
+                long start = System.nanoTime();
+                return provider.complete(window)
+                    .doOnSuccess(response -> {
+                        long latency = System.nanoTime() - start;
+                        completeLatency.record(latency, TimeUnit.NANOSECONDS);
+                        concurrencyLimiter.onSample("complete", latency, ContextWindowPolicy.estimateTokens(response), false);
+                        breaker.onSuccess();
+                        stopCall(call, "success");
+                    })
+                    .doOnError(e -> {
+                        if (isOverload(e)) {
+                            concurrencyLimiter.onSample("complete", System.nanoTime() - start, 1, true);
+                        }
+                        breaker.onFailure();
+                        call.error(e);
+                        stopCall(call, "error");
+                    })
+                    .doOnCancel(() -> {
+                        breaker.onCancel();
+                        stopCall(call, "cancelled");
+                    });
+            });
+        }
+
+        Flux<String> stream(List<ConversationContext.Message> window, long requestStart) {
+            return Flux.deferContextual(context -> {
+                if (!breaker.tryAcquire()) {
+                    return Flux.error(unavailable());
+                }
+                Observation call = startCall("stream", context);
+                long start = System.nanoTime();
+                AtomicBoolean firstToken = new AtomicBoolean(true);
+                return provider.stream(window)
+                    .filter(delta -> !delta.isEmpty())
+                    .doOnNext(delta -> {
+                        // Mede o tempo até o primeiro token apenas uma vez por requisição
+                        if (firstToken.compareAndSet(true, false)) {
+                            long now = System.nanoTime();
+                            firstTokenLatency.record(now - start, TimeUnit.NANOSECONDS);
+                            timeToFirstToken.record(now - requestStart, TimeUnit.NANOSECONDS);
+                            concurrencyLimiter.onSample("stream", now - start, 1, false);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        breaker.onSuccess();
+                        stopCall(call, "success");
+                    })
+                    .doOnError(e -> {
+                        if (firstToken.get() && isOverload(e)) {
+                            concurrencyLimiter.onSample("stream", System.nanoTime() - start, 1, true);
+                        }
+                        breaker.onFailure();
+                        call.error(e);
+                        stopCall(call, "error");
+                    })
+                    .doOnCancel(() -> {
+                        breaker.onCancel();
+                        stopCall(call, "cancelled");
+                    });
+            });
+        }
+
+        /**
+         * Inicia a observação da chamada, filha da observação da requisição (se houver).
+         */
+        private Observation startCall(String mode, ContextView context) {
+            return Observation.createNotStarted("llm.provider.call", observationRegistry)
+                .contextualName(provider.name() + " " + mode)
+                .parentObservation(context.getOrDefault(ObservationThreadLocalAccessor.KEY, null))
+                .lowCardinalityKeyValue("provider", provider.name())
+                .lowCardinalityKeyValue("mode", mode)
+                .start();
+        }
+
+        private static void stopCall(Observation call, String outcome) {
+            call.lowCardinalityKeyValue("outcome", outcome).stop();
+        }
+
+        /**
+         * Atraso do hedge: p95 recente da latência do provedor (no mínimo minHedgeDelay).
+         */
+        Duration hedgeDelay(Timer latency) {
+            if (latency.count() < MIN_LATENCY_SAMPLES) {
+                return initialHedgeDelay;
+            }
+            ValueAtPercentile[] percentiles = latency.takeSnapshot().percentileValues();
+            double p95Nanos = percentiles.length > 0 ? percentiles[0].value(TimeUnit.NANOSECONDS) : 0;
+            if (!(p95Nanos > 0)) {
+                return initialHedgeDelay;
+            }
+            Duration p95 = Duration.ofNanos((long) p95Nanos);
+            return p95.compareTo(minHedgeDelay) < 0 ? minHedgeDelay : p95;
+        }
+
+        private Timer latencyTimer(String mode, MeterRegistry meterRegistry) {
+            return Timer.builder("llm.provider.latency")
+                .description("Latência por chamada ao provedor (no streaming, até o primeiro token)")
+                .tag("provider", provider.name())
+                .tag("mode", mode)
+                .publishPercentiles(0.95)
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .register(meterRegistry);
+        }
+    }
+}
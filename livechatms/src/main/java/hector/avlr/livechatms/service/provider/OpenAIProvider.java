@@ -0,0 +1,117 @@
+package hector.avlr.livechatms.service.provider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.LLMRequestEncoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Provedor OpenAI (Chat Completions), com resposta completa ou streaming SSE.
+ */
+@Component
+public class OpenAIProvider extends HttpLLMProvider {
+
+    // Marcador de fim de stream enviado pela OpenAI
+    private static final String DONE = "[DONE]";
+
+    private final ObjectReader eventReader;
+    // URI e cabeçalho de autorização montados uma vez: sem expansão de template por chamada
+    private final URI uri;
+    private final String authorization;
+    private final String model;
+    // Envelopes pré-codificados; por chamada, apenas as mensagens da janela são copiadas
+    private final LLMRequestEncoder.Template completeRequest;
+    private final LLMRequestEncoder.Template streamRequest;
+
+    /**
+     * Construtor com endpoint, credencial e parâmetros de geração da OpenAI.
+     */
+    public OpenAIProvider(WebClient webClient, LLMRequestEncoder requestEncoder, ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry,
+                          @Value("${llm.api.url.openai}") String url,
+                          @Value("${llm.api.key.openai}") String apiKey,
+                          @Value("${llm.model.openai}") String model,
+                          @Value("${llm.max.tokens}") int maxTokens,
+                          @Value("${llm.temperature}") double temperature,
+                          @Value("${llm.http.timeout.openai.seconds}") long timeoutSeconds) {
+        super("openai", webClient, meterRegistry, timeoutSeconds);
+        this.eventReader = objectMapper.readerFor(OpenAIResponse.class);
+        this.uri = UriComponentsBuilder.fromUriString(url).encode().build().toUri();
+        this.authorization = "Bearer " + apiKey;
+        this.model = model;
+        this.completeRequest = requestEncoder.openAITemplate(model, maxTokens, temperature, false);
+        this.streamRequest = requestEncoder.openAITemplate(model, maxTokens, temperature, true);
+    }
+
+    @Override
+    public String model() {
+        return model;
+    }
+
+    /**
+     * Chama API da OpenAI (GPT) com histórico de conversação.
+     */
+    @Override
+    public Mono<String> complete(List<ConversationContext.Message> window) {
+        // Executa requisição HTTP POST de forma não-bloqueante
+        return webClient.post()
+            .uri(uri)
+            .httpRequest(this::responseTimeout)
+            .header(HttpHeaders.AUTHORIZATION, authorization)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(completeRequest.body(window))
+            .retrieve()
+            // Decodificação tipada: campos não lidos (logprobs, fingerprint...) são pulados
+            .bodyToMono(OpenAIResponse.class)
+            .doOnNext(this::recordUsage)
+            .mapNotNull(OpenAIResponse::text)
+            // Resposta sem o texto no formato esperado
+            .defaultIfEmpty(PARSE_ERROR_MESSAGE);
+    }
+
+    /**
+     * Chama API da OpenAI em modo streaming (SSE, "stream": true).
+     * Cada evento traz um fragmento em choices[0].delta.content; o stream termina com [DONE].
+     * O uso de tokens vem em um evento próprio, sem choices, antes do [DONE].
+     */
+    @Override
+    public Flux<String> stream(List<ConversationContext.Message> window) {
+        return webClient.post()
+            .uri(uri)
+            .httpRequest(this::responseTimeout)
+            .header(HttpHeaders.AUTHORIZATION, authorization)
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.TEXT_EVENT_STREAM)
+            .bodyValue(streamRequest.body(window))
+            .retrieve()
+            .bodyToFlux(SSE_TYPE)
+            .mapNotNull(ServerSentEvent::data)
+            .takeWhile(data -> !DONE.equals(data.trim()))
+            // Eventos sem texto (ex.: apenas finish_reason ou usage) resultam em string vazia
+            .map(data -> {
+                OpenAIResponse event = readEvent(eventReader, data);
+                recordUsage(event);
+                String delta = event.deltaText();
+                return delta != null ? delta : "";
+            });
+    }
+
+    private void recordUsage(OpenAIResponse response) {
+        if (response.usage() != null) {
+            recordUsage(response.usage().promptTokens(), response.usage().completionTokens());
+        }
+    }
+}
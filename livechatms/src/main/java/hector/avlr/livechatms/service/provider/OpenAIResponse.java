@@ -0,0 +1,51 @@
+package hector.avlr.livechatms.service.provider;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Resposta da API OpenAI (chat completions), completa ou evento de streaming.
+ * Somente os campos lidos (choices e usage) são mapeados; os demais (id, logprobs...) são
+ * pulados pelo parser sem serem materializados.
+ * @param choices Alternativas geradas (usamos a primeira)
+ * @param usage Tokens consumidos (no streaming, apenas no último evento, sem choices)
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record OpenAIResponse(List<Choice> choices, Usage usage) {
+
+    /**
+     * @param message Mensagem completa (resposta sem streaming)
+     * @param delta Fragmento da mensagem (evento de streaming)
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Choice(Message message, Message delta) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Message(String content) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Usage(@JsonProperty("prompt_tokens") int promptTokens,
+                        @JsonProperty("completion_tokens") int completionTokens) {}
+
+    /**
+     * Texto da resposta completa: choices[0].message.content, ou null se ausente.
+     */
+    public String text() {
+        Choice choice = first();
+        return choice != null && choice.message() != null ? choice.message().content() : null;
+    }
+
+    /**
+     * Texto do evento de streaming: choices[0].delta.content, ou null se ausente.
+     */
+    public String deltaText() {
+        Choice choice = first();
+        return choice != null && choice.delta() != null ? choice.delta().content() : null;
+    }
+
+    private Choice first() {
+        return choices != null && !choices.isEmpty() ? choices.get(0) : null;
+    }
+}
@@ -0,0 +1,34 @@
+package hector.avlr.livechatms.service.store;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+
+import java.util.List;
+
+/**
+ * Armazenamento das conversações fora do cache de sessões em memória (ConversationManager).
+ * Recebe cada alteração do histórico como {@link ConversationContext.Journal} e devolve o
+ * histórico persistido quando uma sessão que não está em memória volta a ser usada.
+ * Implementações (conversation.store): memory (TransientConversationStore) e
+ * mmap (MappedConversationStore).
+ */
+public interface ConversationStore extends ConversationContext.Journal {
+
+    /**
+     * Carrega o histórico persistido da sessão.
+     * @param sessionId ID da sessão
+     * @return Histórico persistido, ou null se a sessão não existe no armazenamento
+     */
+    Snapshot load(String sessionId);
+
+    /**
+     * Número de sessões persistidas.
+     */
+    long sessions();
+
+    /**
+     * Histórico persistido de uma sessão.
+     * @param messages Mensagens, da mais antiga à mais recente
+     * @param summary Mensagem de resumo das mensagens compactadas (null se não houver)
+     */
+    record Snapshot(List<ConversationContext.Message> messages, ConversationContext.Message summary) {}
+}
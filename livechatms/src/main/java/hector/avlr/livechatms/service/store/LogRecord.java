@@ -0,0 +1,203 @@
+package hector.avlr.livechatms.service.store;
+
+import hector.avlr.livechatms.domain.ConversationContext.Message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Formato dos registros do log de conversações:
+ * [tamanho int][tipo byte][anterior long][instante long][sessão short+UTF-8][dados][CRC32C int]
+ * - anterior: posição do registro anterior da mesma sessão (-1 no início de uma cadeia)
+ * - dados: mensagem (papel, conteúdo), checkpoint (resumo, quantidade, mensagens) ou nada (remoção)
+ * Textos são gravados como tamanho int + UTF-8 (-1 para null). O CRC cobre do tipo ao fim dos
+ * dados, então um registro incompleto (queda durante a escrita) é detectado na leitura.
+ */
+final class LogRecord {
+
+    static final byte MESSAGE = 1;
+    static final byte CHECKPOINT = 2;
+    static final byte REMOVE = 3;
+
+    // Sem registro anterior (início de cadeia)
+    static final long NONE = -1;
+
+    private static final int TYPE = 4;
+    private static final int PREVIOUS = 5;
+    private static final int TIMESTAMP = 13;
+    private static final int SESSION = 21;
+    private static final int HEADER = 23;
+    private static final int TRAILER = 4;
+
+    private LogRecord() {
+    }
+
+    static byte[] message(String sessionId, long previous, long timestamp, Message message) {
+        byte[] role = utf8(message.role());
+        byte[] content = utf8(message.content());
+        Writer writer = new Writer(MESSAGE, sessionId, previous, timestamp, size(role) + size(content));
+        writer.string(role);
+        writer.string(content);
+        return writer.finish();
+    }
+
+    static byte[] checkpoint(String sessionId, long timestamp, Message summary, List<Message> messages) {
+        byte[] summaryContent = summary != null ? utf8(summary.content()) : null;
+        byte[][] fields = new byte[messages.size() * 2][];
+        int payload = size(summaryContent) + Integer.BYTES;
+        for (int i = 0; i < messages.size(); i++) {
+            fields[2 * i] = utf8(messages.get(i).role());
+            fields[2 * i + 1] = utf8(messages.get(i).content());
+            payload += size(fields[2 * i]) + size(fields[2 * i + 1]);
+        }
+        Writer writer = new Writer(CHECKPOINT, sessionId, NONE, timestamp, payload);
+        writer.string(summaryContent);
+        writer.buffer.putInt(messages.size());
+        for (byte[] field : fields) {
+            writer.string(field);
+        }
+        return writer.finish();
+    }
+
+    static byte[] remove(String sessionId, long timestamp) {
+        return new Writer(REMOVE, sessionId, NONE, timestamp, 0).finish();
+    }
+
+    /**
+     * Encadeia um registro já codificado ao registro anterior da sessão e recalcula o CRC.
+     * @param previous Posição do registro anterior da mesma sessão
+     */
+    static void link(byte[] record, long previous) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putLong(PREVIOUS, previous);
+        CRC32C crc = new CRC32C();
+        crc.update(record, TYPE, record.length - TYPE - TRAILER);
+        buffer.putInt(record.length - TRAILER, (int) crc.getValue());
+    }
+
+    /**
+     * Tamanho do registro em {@code offset}, se completo e íntegro.
+     * @return Tamanho em bytes, ou -1 se não há registro válido na posição
+     */
+    static int validLength(ByteBuffer buffer, int offset) {
+        if (offset + HEADER + TRAILER > buffer.capacity()) {
+            return -1;
+        }
+        int length = buffer.getInt(offset);
+        if (length < HEADER + TRAILER || length > buffer.capacity() - offset) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + TYPE, length - TYPE - TRAILER));
+        return (int) crc.getValue() == buffer.getInt(offset + length - TRAILER) ? length : -1;
+    }
+
+    static int length(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset);
+    }
+
+    static byte type(ByteBuffer buffer, int offset) {
+        return buffer.get(offset + TYPE);
+    }
+
+    static long previous(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + PREVIOUS);
+    }
+
+    static long timestamp(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + TIMESTAMP);
+    }
+
+    static String sessionId(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(offset + SESSION))];
+        buffer.get(offset + HEADER, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Aplica o registro (mensagem ou checkpoint) às mensagens da sessão.
+     * @return Resumo vigente após o registro
+     */
+    static Message apply(ByteBuffer buffer, int offset, List<Message> messages, Message summary) {
+        Reader reader = new Reader(buffer, offset + HEADER + Short.toUnsignedInt(buffer.getShort(offset + SESSION)));
+        if (type(buffer, offset) == MESSAGE) {
+            messages.add(new Message(reader.string(), reader.string()));
+            return summary;
+        }
+        String summaryContent = reader.string();
+        int count = reader.buffer.getInt(reader.position);
+        reader.position += Integer.BYTES;
+        messages.clear();
+        for (int i = 0; i < count; i++) {
+            messages.add(new Message(reader.string(), reader.string()));
+        }
+        return summaryContent != null ? new Message("system", summaryContent) : null;
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int size(byte[] value) {
+        return Integer.BYTES + (value != null ? value.length : 0);
+    }
+
+    private static final class Writer {
+
+        private final ByteBuffer buffer;
+
+        Writer(byte type, String sessionId, long previous, long timestamp, int payload) {
+            byte[] session = sessionId.getBytes(StandardCharsets.UTF_8);
+            if (session.length > 0xFFFF) {
+                throw new IllegalArgumentException("ID de sessão muito longo: " + session.length + " bytes");
+            }
+            buffer = ByteBuffer.allocate(HEADER + session.length + payload + TRAILER);
+            buffer.putInt(buffer.capacity())
+                .put(type)
+                .putLong(previous)
+                .putLong(timestamp)
+                .putShort((short) session.length)
+                .put(session);
+        }
+
+        void string(byte[] value) {
+            if (value == null) {
+                buffer.putInt(-1);
+                return;
+            }
+            buffer.putInt(value.length).put(value);
+        }
+
+        byte[] finish() {
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.array(), TYPE, buffer.position() - TYPE);
+            buffer.putInt((int) crc.getValue());
+            return buffer.array();
+        }
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+        private int position;
+
+        Reader(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        String string() {
+            int length = buffer.getInt(position);
+            position += Integer.BYTES;
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
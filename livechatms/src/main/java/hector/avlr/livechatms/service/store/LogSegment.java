@@ -0,0 +1,115 @@
+package hector.avlr.livechatms.service.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Arquivo de tamanho fixo do log, mapeado em memória por inteiro.
+ * Escritas copiam o registro para a página mapeada (page cache); {@link #force()} sincroniza
+ * com o disco. O mapeamento continua válido depois que o arquivo é apagado, então leituras em
+ * andamento durante a compactação não falham.
+ */
+final class LogSegment {
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final int id;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    // Fim do último registro; alterado somente pelo escritor
+    private volatile int position;
+
+    private LogSegment(int id, Path path, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Cria um segmento vazio com o tamanho informado.
+     */
+    static LogSegment create(Path directory, int id, int size) {
+        return map(id, directory.resolve(String.format("%s%08d%s", PREFIX, id, SUFFIX)), size, true);
+    }
+
+    /**
+     * Abre um segmento existente (somente leitura: segmentos recuperados não recebem escritas).
+     */
+    static LogSegment open(Path path) {
+        String name = path.getFileName().toString();
+        int id = Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        try {
+            return map(id, path, Math.toIntExact(Files.size(path)), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private static LogSegment map(int id, Path path, int size, boolean writable) {
+        try (FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(
+                writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+            return new LogSegment(id, path, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int id() {
+        return id;
+    }
+
+    MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    int position() {
+        return position;
+    }
+
+    void position(int position) {
+        this.position = position;
+    }
+
+    boolean fits(int length) {
+        return position + length <= buffer.capacity();
+    }
+
+    /**
+     * Copia o registro para o fim do segmento.
+     * @return Deslocamento do registro
+     */
+    int append(byte[] record) {
+        int offset = position;
+        buffer.put(offset, record);
+        position = offset + record.length;
+        return offset;
+    }
+
+    void force() {
+        if (!buffer.isReadOnly()) {
+            buffer.force();
+        }
+    }
+
+    void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
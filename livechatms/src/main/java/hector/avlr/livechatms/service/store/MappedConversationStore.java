@@ -0,0 +1,477 @@
+package hector.avlr.livechatms.service.store;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Armazenamento das conversações em um log append-only mapeado em memória (conversation.store=mmap).
+ * - Cada alteração do histórico vira um registro (LogRecord) no fim do segmento ativo; segmentos
+ *   têm tamanho fixo (conversation.store.segment.mb) e um novo é criado quando o ativo enche
+ * - Os registros de uma sessão formam uma cadeia para trás (cada um aponta o anterior); a
+ *   compactação do histórico grava um checkpoint, que inicia uma nova cadeia. O heap guarda
+ *   apenas o índice (por sessão: último registro, início da cadeia, bytes e última atividade);
+ *   os históricos ficam no page cache/disco e são lidos quando a sessão volta a ser usada
+ * - Na inicialização, os segmentos são lidos em ordem para reconstruir o índice; a leitura de um
+ *   segmento para no primeiro registro incompleto (queda durante a escrita) e as novas escritas
+ *   vão para um segmento novo
+ * - A manutenção periódica remove sessões sem atividade há mais de conversation.store.retention.hours
+ *   e, enquanto a fração de bytes vivos for menor que conversation.store.compaction.live.ratio,
+ *   regrava as sessões do segmento mais antigo como checkpoints e apaga o segmento
+ * Uma única thread grava o log (conversation-store-appender): o chamador apenas codifica o registro
+ * e o coloca em uma fila limitada, esperando só quando ela está cheia; a thread encadeia o registro
+ * ao anterior da sessão, copia para a página mapeada e atualiza o índice. Sessões diferentes não
+ * disputam lock. Leituras não usam lock; load espera as escritas enfileiradas. Cada escrita vai
+ * para o page cache (sobrevive a reinícios e quedas do processo); registros ainda na fila se
+ * perdem numa queda (close esvazia a fila). A sincronização com o disco acontece ao trocar de
+ * segmento e no encerramento.
+ * Métricas: conversation.store.sessions, conversation.store.bytes{state=live|total},
+ * conversation.store.segments, conversation.store.compactions e conversation.store.queue.depth.
+ */
+public class MappedConversationStore implements ConversationStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedConversationStore.class);
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int MAX_BATCH = 256;
+    private static final long POLL_MILLIS = 100;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long retentionMillis;
+    private final double compactionLiveRatio;
+
+    // Sessão -> posição da cadeia de registros; substituído (nunca alterado) a cada escrita
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, LogSegment> segments = new ConcurrentSkipListMap<>();
+    // Bytes de registros alcançáveis pelo índice e bytes de todos os registros nos segmentos
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final Counter compactions;
+
+    // Escritas aguardando a thread de escrita; enfileiradas e concluídas permitem a load saber se há pendências
+    private final BlockingQueue<Runnable> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final Thread appender;
+    private volatile boolean running = true;
+
+    // Segmento que recebe as escritas (acessado somente pela thread de escrita após a recuperação)
+    private LogSegment active;
+
+    /**
+     * Abre (ou cria) o log no diretório e reconstrói o índice a partir dos segmentos.
+     * @param directory Diretório dos segmentos
+     * @param segmentMb Tamanho de cada segmento (limita também o tamanho de um registro)
+     * @param retentionHours Horas sem atividade até a sessão ser removida do armazenamento
+     * @param compactionLiveRatio Fração mínima de bytes vivos antes de compactar o segmento mais antigo
+     */
+    public MappedConversationStore(Path directory, int segmentMb, long retentionHours, double compactionLiveRatio,
+                                   MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.segmentSize = Math.toIntExact(segmentMb * 1024L * 1024L);
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        this.compactionLiveRatio = compactionLiveRatio;
+        recover();
+
+        Gauge.builder("conversation.store.sessions", index, Map::size)
+            .description("Sessões no armazenamento de conversas")
+            .register(meterRegistry);
+        Gauge.builder("conversation.store.bytes", liveBytes, AtomicLong::get)
+            .description("Bytes de registros no log de conversas")
+            .baseUnit("bytes")
+            .tag("state", "live")
+            .register(meterRegistry);
+        Gauge.builder("conversation.store.bytes", totalBytes, AtomicLong::get)
+            .description("Bytes de registros no log de conversas")
+            .baseUnit("bytes")
+            .tag("state", "total")
+            .register(meterRegistry);
+        Gauge.builder("conversation.store.segments", segments, Map::size)
+            .description("Segmentos do log de conversas")
+            .register(meterRegistry);
+        this.compactions = Counter.builder("conversation.store.compactions")
+            .description("Segmentos do log regravados e removidos")
+            .register(meterRegistry);
+        Gauge.builder("conversation.store.queue.depth", pending, BlockingQueue::size)
+            .description("Registros aguardando escrita no log de conversas")
+            .register(meterRegistry);
+        this.appender = new Thread(this::drain, "conversation-store-appender");
+        this.appender.setDaemon(true);
+        this.appender.start();
+    }
+
+    @Override
+    public void appended(String sessionId, ConversationContext.Message message) {
+        long now = System.currentTimeMillis();
+        // Codifica na thread do chamador; a thread de escrita só encadeia ao registro anterior
+        byte[] record = LogRecord.message(sessionId, LogRecord.NONE, now, message);
+        checkSize(record);
+        submit(() -> append(sessionId, record, now));
+    }
+
+    @Override
+    public void compacted(String sessionId, ConversationContext.History history) {
+        long now = System.currentTimeMillis();
+        byte[] record = LogRecord.checkpoint(sessionId, now, history.summary(), history);
+        checkSize(record);
+        submit(() -> replace(sessionId, record, now));
+    }
+
+    @Override
+    public Snapshot load(String sessionId) {
+        if (completed.get() != submitted.get()) {
+            flush();
+        }
+        while (true) {
+            Entry entry = index.get(sessionId);
+            if (entry == null) {
+                return null;
+            }
+            Snapshot snapshot = read(entry);
+            if (snapshot != null) {
+                return snapshot;
+            }
+            // Segmento apagado pela compactação durante a leitura: a cadeia foi regravada
+            if (index.get(sessionId) == entry) {
+                throw new IllegalStateException("Cadeia de registros incompleta para a sessão " + sessionId);
+            }
+        }
+    }
+
+    @Override
+    public long sessions() {
+        flush();
+        return index.size();
+    }
+
+    /**
+     * Remove sessões além da retenção e compacta o log.
+     */
+    @Scheduled(fixedDelayString = "${conversation.store.maintenance.interval.seconds}", timeUnit = TimeUnit.SECONDS)
+    public void maintain() {
+        maintain(System.currentTimeMillis());
+    }
+
+    /**
+     * Cada remoção e regravação é uma escrita na fila, intercalada com as escritas das sessões.
+     * @param now Instante de referência (epoch millis) para a retenção
+     */
+    void maintain(long now) {
+        long cutoff = now - retentionMillis;
+        // O índice reflete as escritas já enfileiradas
+        flush();
+        index.forEach((sessionId, entry) -> {
+            if (entry.lastActivity() < cutoff) {
+                submit(() -> remove(sessionId, entry, now));
+            }
+        });
+        while (true) {
+            LogSegment oldest = call(() -> {
+                LogSegment first = segments.firstEntry().getValue();
+                boolean compact = first != active && (double) liveBytes.get() / totalBytes.get() < compactionLiveRatio;
+                return compact ? first : null;
+            });
+            if (oldest == null) {
+                return;
+            }
+            relocate(oldest);
+        }
+    }
+
+    /**
+     * Esvazia a fila de escrita, encerra a thread de escrita e sincroniza o segmento ativo com o disco.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            appender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        active.force();
+    }
+
+    // Chamado pela thread de escrita
+    private void append(String sessionId, byte[] record, long now) {
+        Entry entry = index.get(sessionId);
+        if (entry != null) {
+            LogRecord.link(record, entry.head());
+        }
+        long location = write(record);
+        index.put(sessionId, entry != null
+            ? new Entry(location, entry.base(), entry.bytes() + record.length, now)
+            : new Entry(location, location, record.length, now));
+        liveBytes.addAndGet(record.length);
+    }
+
+    /**
+     * Grava o registro de remoção (para que a recuperação não restaure a sessão) e a tira do índice.
+     * Chamado pela thread de escrita.
+     */
+    private void remove(String sessionId, Entry entry, long now) {
+        if (index.remove(sessionId, entry)) {
+            write(LogRecord.remove(sessionId, now));
+            liveBytes.addAndGet(-entry.bytes());
+        }
+    }
+
+    /**
+     * Regrava como checkpoint as sessões cuja cadeia começa no segmento e o apaga.
+     * O segmento é o mais antigo, então nenhum registro mais antigo depende dos que ele contém
+     * (inclusive remoções).
+     */
+    private void relocate(LogSegment segment) {
+        for (Map.Entry<String, Entry> session : index.entrySet()) {
+            if (segmentId(session.getValue().base()) == segment.id()) {
+                String sessionId = session.getKey();
+                submit(() -> relocate(sessionId, segment.id()));
+            }
+        }
+        // Depois das regravações enfileiradas acima
+        call(() -> {
+            segments.remove(segment.id());
+            return totalBytes.addAndGet(-segment.position());
+        });
+        segment.delete();
+        compactions.increment();
+    }
+
+    // Chamado pela thread de escrita
+    private void relocate(String sessionId, int segmentId) {
+        Entry entry = index.get(sessionId);
+        if (entry == null || segmentId(entry.base()) != segmentId) {
+            return;
+        }
+        Snapshot snapshot = read(entry);
+        // Mantém a última atividade: regravar não estende a retenção
+        replace(sessionId, LogRecord.checkpoint(sessionId, entry.lastActivity(), snapshot.summary(),
+            snapshot.messages()), entry.lastActivity());
+    }
+
+    // Chamado pela thread de escrita
+    private void replace(String sessionId, byte[] checkpoint, long lastActivity) {
+        long location = write(checkpoint);
+        Entry previous = index.put(sessionId, new Entry(location, location, checkpoint.length, lastActivity));
+        liveBytes.addAndGet(checkpoint.length - (previous != null ? previous.bytes() : 0));
+    }
+
+    // Chamado pela thread de escrita
+    private long write(byte[] record) {
+        checkSize(record);
+        if (!active.fits(record.length)) {
+            active.force();
+            roll();
+        }
+        int offset = active.append(record);
+        totalBytes.addAndGet(record.length);
+        return location(active.id(), offset);
+    }
+
+    private void checkSize(byte[] record) {
+        if (record.length > segmentSize) {
+            throw new IllegalArgumentException("Registro maior que o segmento: " + record.length + " bytes");
+        }
+    }
+
+    /**
+     * Enfileira uma escrita; espera enquanto a fila estiver cheia.
+     */
+    private void submit(Runnable task) {
+        if (!running) {
+            throw new IllegalStateException("Armazenamento de conversas encerrado");
+        }
+        submitted.incrementAndGet();
+        try {
+            pending.put(task);
+        } catch (InterruptedException e) {
+            submitted.decrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido aguardando a fila de escrita", e);
+        }
+    }
+
+    /**
+     * Executa a tarefa na thread de escrita, depois das escritas já enfileiradas, e espera o resultado.
+     */
+    private <T> T call(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submit(() -> {
+            try {
+                result.complete(task.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.join();
+    }
+
+    /**
+     * Espera a gravação das escritas enfileiradas até aqui.
+     */
+    void flush() {
+        call(() -> null);
+    }
+
+    private void drain() {
+        List<Runnable> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (running || !pending.isEmpty()) {
+                Runnable first = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, MAX_BATCH - 1);
+                for (Runnable task : batch) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        log.error("Falha ao gravar no log de conversas em {}", directory, e);
+                    }
+                    completed.incrementAndGet();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void roll() {
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        active = LogSegment.create(directory, id, segmentSize);
+        segments.put(id, active);
+    }
+
+    /**
+     * Lê a cadeia do último registro ao início e aplica os registros em ordem.
+     * @return null se um segmento da cadeia foi apagado
+     */
+    private Snapshot read(Entry entry) {
+        long[] chain = new long[16];
+        int length = 0;
+        for (long location = entry.head(); location != LogRecord.NONE; ) {
+            LogSegment segment = segments.get(segmentId(location));
+            if (segment == null) {
+                return null;
+            }
+            if (length == chain.length) {
+                chain = Arrays.copyOf(chain, length * 2);
+            }
+            chain[length++] = location;
+            location = LogRecord.previous(segment.buffer(), offset(location));
+        }
+        List<ConversationContext.Message> messages = new ArrayList<>(length);
+        ConversationContext.Message summary = null;
+        for (int i = length - 1; i >= 0; i--) {
+            LogSegment segment = segments.get(segmentId(chain[i]));
+            if (segment == null) {
+                return null;
+            }
+            summary = LogRecord.apply(segment.buffer(), offset(chain[i]), messages, summary);
+        }
+        return new Snapshot(messages, summary);
+    }
+
+    /**
+     * Reconstrói o índice lendo os segmentos em ordem e abre um segmento novo para as escritas.
+     */
+    private void recover() {
+        long start = System.nanoTime();
+        long records = 0;
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.filter(LogSegment::isSegment).sorted().toList();
+            }
+            for (Path file : files) {
+                LogSegment segment = LogSegment.open(file);
+                ByteBuffer buffer = segment.buffer();
+                int offset = 0;
+                int length;
+                while ((length = LogRecord.validLength(buffer, offset)) > 0) {
+                    apply(location(segment.id(), offset), buffer, offset);
+                    offset += length;
+                    records++;
+                }
+                segment.position(offset);
+                segments.put(segment.id(), segment);
+                totalBytes.addAndGet(offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        index.values().forEach(entry -> liveBytes.addAndGet(entry.bytes()));
+        roll();
+        log.info("Conversation store recovered: {} sessions, {} records in {} segments ({} ms)", index.size(),
+            records, segments.size() - 1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void apply(long location, ByteBuffer buffer, int offset) {
+        String sessionId = LogRecord.sessionId(buffer, offset);
+        int length = LogRecord.length(buffer, offset);
+        long timestamp = LogRecord.timestamp(buffer, offset);
+        switch (LogRecord.type(buffer, offset)) {
+            case LogRecord.MESSAGE -> {
+                long previous = LogRecord.previous(buffer, offset);
+                Entry entry = index.get(sessionId);
+                // Cadeia cujo início já foi compactado: um checkpoint posterior a substitui
+                index.put(sessionId, entry != null && entry.head() == previous
+                    ? new Entry(location, entry.base(), entry.bytes() + length, timestamp)
+                    : new Entry(location, location, length, timestamp));
+            }
+            case LogRecord.CHECKPOINT -> index.put(sessionId, new Entry(location, location, length, timestamp));
+            case LogRecord.REMOVE -> index.remove(sessionId);
+            default -> throw new IllegalStateException("Tipo de registro desconhecido em " + location);
+        }
+    }
+
+    // Posição = id do segmento (32 bits altos) + deslocamento no segmento
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    /**
+     * Cadeia de registros de uma sessão.
+     * @param head Último registro
+     * @param base Primeiro registro (mensagem inicial ou checkpoint)
+     * @param bytes Bytes dos registros da cadeia
+     * @param lastActivity Instante (epoch millis) do último registro gravado pela sessão
+     */
+    private record Entry(long head, long base, long bytes, long lastActivity) {}
+}
@@ -0,0 +1,28 @@
+package hector.avlr.livechatms.service.store;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+
+/**
+ * Sem persistência (conversation.store=memory): o histórico existe apenas no cache de sessões
+ * em memória e é perdido quando a sessão expira ou a aplicação reinicia.
+ */
+public class TransientConversationStore implements ConversationStore {
+
+    @Override
+    public void appended(String sessionId, ConversationContext.Message message) {
+    }
+
+    @Override
+    public void compacted(String sessionId, ConversationContext.History history) {
+    }
+
+    @Override
+    public Snapshot load(String sessionId) {
+        return null;
+    }
+
+    @Override
+    public long sessions() {
+        return 0;
+    }
+}
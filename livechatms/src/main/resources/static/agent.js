@@ -2,6 +2,24 @@
 let sessionId = localStorage.getItem('agentSessionId') || generateSessionId();
 localStorage.setItem('agentSessionId', sessionId);
 
+// Conexão STOMP reaproveitada entre turnos; sem ela, usa o endpoint HTTP (SSE)
+const stompClient = new StompJs.Client({
+    brokerURL: (window.location.protocol === 'https:' ? 'wss://' : 'ws://') + window.location.host + '/hectoravlr-livechat-websocket'
+});
+// Turno aguardando fragmentos na fila do usuário (um por vez: o input fica desabilitado)
+let pendingTurn = null;
+
+stompClient.onConnect = () => {
+    stompClient.subscribe('/user/queue/agent', (message) => {
+        if (pendingTurn) pendingTurn.onChunk(JSON.parse(message.body));
+    });
+};
+// Conexão perdida no meio de um turno: encerra o turno com erro
+stompClient.onWebSocketClose = () => {
+    if (pendingTurn) pendingTurn.onClose();
+};
+stompClient.activate();
+
 /**
  * Gera ID único para sessão usando timestamp e string aleatória.
  */
@@ -13,18 +31,23 @@ function generateSessionId() {
  * Adiciona mensagem à interface do chat.
  * @param {string} content - Conteúdo da mensagem
  * @param {boolean} isUser - true se mensagem do usuário, false se do agente
+ * @returns {function(string): void} Função que substitui o conteúdo da mensagem (usada no streaming)
  */
 function addMessage(content, isUser) {
     const messagesDiv = document.getElementById('messages');
     const messageDiv = document.createElement('div');
     messageDiv.className = isUser ? 'user-message' : 'agent-message';
-    
+    const label = '<strong>' + (isUser ? 'Você' : '🤖 Agente') + ':</strong> ';
+
     // Escapa HTML para prevenir XSS
-    messageDiv.innerHTML = '<strong>' + (isUser ? 'Você' : '🤖 Agente') + ':</strong> ' + escapeHtml(content);
+    const render = (text) => {
+        messageDiv.innerHTML = label + escapeHtml(text);
+        // Auto-scroll para última mensagem
+        document.querySelector('.chat-messages').scrollTop = document.querySelector('.chat-messages').scrollHeight;
+    };
     messagesDiv.appendChild(messageDiv);
-    
-    // Auto-scroll para última mensagem
-    document.querySelector('.chat-messages').scrollTop = document.querySelector('.chat-messages').scrollHeight;
+    render(content);
+    return render;
 }
 
 /**
@@ -39,7 +62,104 @@ function escapeHtml(text) {
 }
 
 /**
- * Envia mensagem para o agente AI e exibe resposta.
+ * Lê eventos Server-Sent Events de uma resposta fetch e repassa cada payload JSON.
+ * EventSource não suporta POST, por isso o stream é decodificado manualmente.
+ * @param {Response} response - Resposta HTTP com corpo text/event-stream
+ * @param {function(object): void} onEvent - Callback para cada evento recebido
+ */
+async function readEventStream(response, onEvent) {
+    const reader = response.body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+
+    while (true) {
+        const { done, value } = await reader.read();
+        if (done) break;
+        buffer += decoder.decode(value, { stream: true });
+
+        // Eventos SSE são separados por linha em branco
+        let boundary;
+        while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+            const rawEvent = buffer.slice(0, boundary);
+            buffer = buffer.slice(boundary + 2);
+            const data = rawEvent.split('\n')
+                .filter(line => line.startsWith('data:'))
+                .map(line => line.slice(5))
+                .join('\n');
+            if (data) onEvent(JSON.parse(data));
+        }
+    }
+}
+
+/**
+ * Indica se o fragmento encerra o turno sem resposta: "error", "rate_limited" ou "overloaded".
+ * @param {{status: string}} chunk - Fragmento recebido
+ * @returns {boolean}
+ */
+function isFailure(chunk) {
+    return chunk.status !== 'streaming' && chunk.status !== 'success';
+}
+
+/**
+ * Envia a mensagem pela conexão STOMP e exibe os fragmentos recebidos na fila do usuário.
+ * Os fragmentos chegam na ordem em que foram gerados; o fragmento final ("success") encerra
+ * o turno, e qualquer outro status (erro ou recusa pelo controle de admissão) o encerra com a
+ * mensagem recebida.
+ * @param {string} message - Mensagem do usuário
+ * @param {function(string): void} render - Atualiza a mensagem do agente
+ * @returns {Promise<void>} Resolvida quando a resposta estiver completa
+ */
+function streamOverWebSocket(message, render) {
+    return new Promise((resolve, reject) => {
+        let text = '';
+        pendingTurn = {
+            onClose: () => {
+                pendingTurn = null;
+                reject(new Error('Conexão WebSocket encerrada'));
+            },
+            onChunk: (chunk) => {
+                if (chunk.status === 'streaming') {
+                    text += chunk.delta;
+                    render(text);
+                    return;
+                }
+                if (isFailure(chunk)) render(chunk.delta);
+                pendingTurn = null;
+                resolve();
+            }
+        };
+        stompClient.publish({
+            destination: '/livechatms/agent/chat/stream',
+            body: JSON.stringify({ sessionId, message })
+        });
+    });
+}
+
+/**
+ * Envia a mensagem via HTTP e exibe os fragmentos recebidos por Server-Sent Events.
+ * @param {string} message - Mensagem do usuário
+ * @param {function(string): void} render - Atualiza a mensagem do agente
+ */
+async function streamOverHttp(message, render) {
+    let text = '';
+    const response = await fetch('/api/agent/chat/stream', {
+        method: 'POST',
+        headers: { 'Content-Type': 'application/json', 'Accept': 'text/event-stream' },
+        body: JSON.stringify({ sessionId, message })
+    });
+
+    await readEventStream(response, (chunk) => {
+        if (isFailure(chunk)) {
+            text = chunk.delta;
+        } else {
+            text += chunk.delta;
+        }
+        render(text);
+    });
+}
+
+/**
+ * Envia mensagem para o agente AI e exibe resposta token a token.
  */
 async function sendMessage() {
     const input = document.getElementById('message');
@@ -56,21 +176,18 @@ async function sendMessage() {
     input.disabled = true;
     document.getElementById('send').disabled = true;
 
-    try {
-        // Envia requisição para API do agente
-        const response = await fetch('/api/agent/chat', {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({ sessionId, message })
-        });
+    // Mensagem do agente é atualizada à medida que os fragmentos chegam
+    const render = addMessage('...', false);
 
-        const data = await response.json();
-        
-        // Exibe resposta do agente
-        addMessage(data.response, false);
+    try {
+        if (stompClient.connected) {
+            await streamOverWebSocket(message, render);
+        } else {
+            await streamOverHttp(message, render);
+        }
     } catch (error) {
         // Exibe mensagem de erro amigável
-        addMessage('Erro ao conectar com o agente. Verifique sua conexão.', false);
+        render('Erro ao conectar com o agente. Verifique sua conexão.');
     } finally {
         // Reabilita input
         input.disabled = false;
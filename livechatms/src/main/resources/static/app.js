@@ -1,3 +1,15 @@
+// Sala opcional (?room=nome): sem sala, usa o tópico global
+const room = new URLSearchParams(window.location.search).get('room');
+const topic = room ? '/topics/livechat/' + room : '/topics/livechat';
+const sendDestination = room ? '/livechatms/new-message/' + room : '/livechatms/new-message';
+const historyDestination = room ? '/livechatms/history/' + room : '/livechatms/history';
+
+// Maior sequência exibida: enviada ao (re)conectar para receber apenas o que faltou
+let lastSeq = 0;
+// Sequências já exibidas (mensagens podem chegar pelo histórico e ao vivo)
+const shown = new Set();
+const MAX_SHOWN = 1024;
+
 const stompClient = new StompJs.Client({
     brokerURL: 'ws://' + window.location.host + '/hectoravlr-livechat-websocket'
 });
@@ -5,10 +17,26 @@ const stompClient = new StompJs.Client({
 stompClient.onConnect = (frame) => {
     setConnected(true);
     console.log('Connected: ' + frame);
-    stompClient.subscribe('/topics/livechat', (message) => {
+    // Mensagens ao vivo que chegam antes do histórico aguardam para manter a ordem
+    let pending = [];
+    stompClient.subscribe(topic, (message) => {
         console.log('Received message:', message.body);
-        updateLiveChat(JSON.parse(message.body).content);
+        // Com livechat.batch.enabled o frame traz um lote ({"messages": [...]})
+        const body = JSON.parse(message.body);
+        const outputs = body.messages || [body];
+        if (pending) {
+            pending.push(...outputs);
+        } else {
+            outputs.forEach(showOutput);
+        }
     });
+    // Inscrito no tópico: pede as mensagens publicadas desde a última recebida
+    const history = stompClient.subscribe(historyDestination, (message) => {
+        JSON.parse(message.body).messages.forEach(showOutput);
+        pending.forEach(showOutput);
+        pending = null;
+        history.unsubscribe();
+    }, { 'last-seq': String(lastSeq) });
 };
 
 stompClient.onWebSocketError = (error) => {
@@ -44,12 +72,29 @@ function sendMessage() {
     const messageData = {'user': $("#user").val(), 'message': $("#message").val()};
     console.log('Sending message:', messageData);
     stompClient.publish({
-        destination: "/livechatms/new-message",
+        destination: sendDestination,
         body: JSON.stringify(messageData)
     });
     $("#message").val("");
 }
 
+/**
+ * Exibe a mensagem uma única vez (pela sequência) e atualiza a última sequência recebida.
+ */
+function showOutput(output) {
+    if (output.seq) {
+        if (shown.has(output.seq)) {
+            return;
+        }
+        shown.add(output.seq);
+        if (shown.size > MAX_SHOWN) {
+            shown.delete(shown.values().next().value);
+        }
+        lastSeq = Math.max(lastSeq, output.seq);
+    }
+    updateLiveChat(output.content);
+}
+
 function updateLiveChat(message) {
     const parts = message.split(': ');
     const username = parts[0];
@@ -0,0 +1,383 @@
+package hector.avlr.livechatms.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hector.avlr.livechatms.LivechatmsApplication;
+import hector.avlr.livechatms.domain.AgentRequest;
+import hector.avlr.livechatms.support.StubLLMServer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Carga ponta a ponta no agente: clientes simultâneos em laço fechado (um turno por vez cada)
+ * contra um provedor local com latência e ritmo de tokens configuráveis:
+ * - rest: POST /api/agent/chat (bloqueante)
+ * - sse: POST /api/agent/chat/stream, até o evento "done"
+ * - stomp: /livechatms/agent/chat, resposta completa na fila do usuário
+ * - stomp-stream: /livechatms/agent/chat/stream, até o fragmento final
+ * Mede latência por turno (p50/p90/p99), tempo até o primeiro fragmento (ttft, streaming),
+ * turnos por segundo e erros. Os resultados vão para target/jmh/AgentLoadBenchmark.json no
+ * formato do JMH (comparáveis entre builds com BenchmarkComparison).
+ * Parâmetros (-D): load.clients (16), load.seconds (10), load.warmup.seconds (3),
+ * load.latency.ms (50), load.token.interval.ms (10), load.tokens (20),
+ * load.provider (openai|gemini), load.turns.per.conversation (10), load.scenarios (todos).
+ * Execução: ./mvnw -Pbenchmark test -Dtest=AgentLoadBenchmark -Dload.clients=32
+ */
+@Tag("benchmark")
+class AgentLoadBenchmark {
+
+	static final int CLIENTS = Integer.getInteger("load.clients", 16);
+	static final int SECONDS = Integer.getInteger("load.seconds", 10);
+	static final int WARMUP_SECONDS = Integer.getInteger("load.warmup.seconds", 3);
+	static final int LATENCY_MILLIS = Integer.getInteger("load.latency.ms", 50);
+	static final int TOKEN_INTERVAL_MILLIS = Integer.getInteger("load.token.interval.ms", 10);
+	static final int TOKENS = Integer.getInteger("load.tokens", 20);
+	static final int TURNS_PER_CONVERSATION = Integer.getInteger("load.turns.per.conversation", 10);
+	static final String PROVIDER = System.getProperty("load.provider", "openai");
+	static final String SCENARIOS = System.getProperty("load.scenarios", "rest,sse,stomp,stomp-stream");
+
+	final ObjectMapper mapper = new ObjectMapper();
+
+	String baseUrl;
+	String wsUrl;
+
+	@Test
+	void agentUnderConcurrentLoad() throws Exception {
+		try (StubLLMServer stub = StubLLMServer.start()
+				.latency(Duration.ofMillis(LATENCY_MILLIS))
+				.tokenInterval(Duration.ofMillis(TOKEN_INTERVAL_MILLIS))
+				.tokens(IntStream.range(0, TOKENS).mapToObj(i -> "token" + i + " ").toList())) {
+			ConfigurableApplicationContext app = new SpringApplicationBuilder(LivechatmsApplication.class)
+				.run("--server.port=0",
+					"--spring.main.keep-alive=false",
+					"--llm.provider=" + PROVIDER,
+					// Todos os clientes vêm de localhost: sem limite por cliente
+					"--agent.admission.rate.per.second=0",
+					"--llm.api.url.openai=" + stub.baseUrl() + "/openai",
+					"--llm.api.url.gemini=" + stub.baseUrl() + "/gemini",
+					"--llm.api.url.gemini.stream=" + stub.baseUrl() + "/gemini-stream");
+			try {
+				int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+				baseUrl = "http://localhost:" + port;
+				wsUrl = "ws://localhost:" + port + "/hectoravlr-livechat-websocket";
+				Map<String, String> params = new LinkedHashMap<>();
+				params.put("provider", PROVIDER);
+				params.put("clients", Integer.toString(CLIENTS));
+				params.put("latencyMs", Integer.toString(LATENCY_MILLIS));
+				params.put("tokenIntervalMs", Integer.toString(TOKEN_INTERVAL_MILLIS));
+				params.put("tokens", Integer.toString(TOKENS));
+
+				BenchmarkResults results = new BenchmarkResults();
+				System.out.println("[agent-load] scenario        p50(ms)   p90(ms)   p99(ms) ttft50(ms)  turns/s  errors");
+				for (String scenario : SCENARIOS.split(",")) {
+					Result result = run(scenario.trim());
+					System.out.println("[agent-load] " + result);
+					results.add(AgentLoadBenchmark.class.getName() + "." + result.scenario(), CLIENTS, params,
+						result.latencies(), result.secondaryMetrics());
+				}
+				File file = results.write(AgentLoadBenchmark.class.getSimpleName());
+				System.out.println("[agent-load] results: " + file.getPath());
+			} finally {
+				app.close();
+			}
+		}
+	}
+
+	private Result run(String scenario) throws Exception {
+		List<Client> clients = new ArrayList<>();
+		for (int i = 0; i < CLIENTS; i++) {
+			clients.add(new Client(scenario, i));
+		}
+		try {
+			// Aquecimento: mesma carga, medições descartadas
+			drive(clients, WARMUP_SECONDS);
+			clients.forEach(Client::reset);
+			long elapsed = drive(clients, SECONDS);
+			Samples latencies = new Samples();
+			Samples ttft = new Samples();
+			int errors = 0;
+			for (Client client : clients) {
+				latencies.addAll(client.latencies);
+				ttft.addAll(client.ttft);
+				errors += client.errors;
+			}
+			assertThat(latencies.size()).as("turnos concluídos em %s", scenario).isPositive();
+			return new Result(scenario, latencies.toArray(), ttft.toArray(),
+				latencies.size() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed, errors);
+		} finally {
+			clients.forEach(Client::close);
+		}
+	}
+
+	/**
+	 * Executa os clientes em laço fechado durante o tempo informado.
+	 * @return Duração efetiva em ns (até o fim do último turno)
+	 */
+	private static long drive(List<Client> clients, int seconds) throws InterruptedException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+		List<Thread> threads = new ArrayList<>();
+		for (Client client : clients) {
+			Thread thread = new Thread(() -> {
+				while (System.nanoTime() < deadline) {
+					client.turn();
+				}
+			}, "agent-load-" + client.id);
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Cliente com conexão própria (HTTP keep-alive ou sessão STOMP) e fila de respostas.
+	 */
+	private final class Client {
+
+		final String scenario;
+		final int id;
+		final HttpClient httpClient = HttpClient.newHttpClient();
+		final BlockingQueue<JsonNode> agentQueue = new LinkedBlockingQueue<>();
+		final Samples latencies = new Samples();
+		final Samples ttft = new Samples();
+		WebSocketStompClient stompClient;
+		StompSession stompSession;
+		int turns;
+		int errors;
+
+		Client(String scenario, int id) throws Exception {
+			this.scenario = scenario;
+			this.id = id;
+			if (scenario.startsWith("stomp")) {
+				stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+				stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+				stompSession = stompClient.connectAsync(wsUrl, new StompSessionHandlerAdapter() {
+					})
+					.get(10, TimeUnit.SECONDS);
+				stompSession.subscribe("/user/queue/agent", new StompFrameHandler() {
+					@Override
+					public Type getPayloadType(StompHeaders headers) {
+						return JsonNode.class;
+					}
+
+					@Override
+					public void handleFrame(StompHeaders headers, Object payload) {
+						agentQueue.add((JsonNode) payload);
+					}
+				});
+				// O broker simples não envia RECEIPT: aguarda o registro da inscrição
+				Thread.sleep(200);
+			}
+		}
+
+		void turn() {
+			AgentRequest request = new AgentRequest("load-" + scenario + "-" + id + "-" + turns++ / TURNS_PER_CONVERSATION,
+				"Qual é o status do meu pedido?");
+			long start = System.nanoTime();
+			try {
+				long firstToken = switch (scenario) {
+					case "rest" -> success(post("/api/agent/chat", request, "application/json"));
+					case "sse" -> sse(request);
+					case "stomp" -> {
+						stompSession.send("/livechatms/agent/chat", request);
+						yield success(next());
+					}
+					case "stomp-stream" -> stompStream(request);
+					default -> throw new IllegalArgumentException(scenario);
+				};
+				long end = System.nanoTime();
+				latencies.add((end - start) / 1000);
+				if (firstToken > 0) {
+					ttft.add((firstToken - start) / 1000);
+				}
+			} catch (IllegalArgumentException e) {
+				throw e;
+			} catch (Exception e) {
+				errors++;
+				// Descarta respostas atrasadas do turno com falha
+				agentQueue.clear();
+			}
+		}
+
+		private long sse(AgentRequest request) throws Exception {
+			HttpResponse<Stream<String>> response = httpClient.send(request("/api/agent/chat/stream", request,
+				"text/event-stream"), HttpResponse.BodyHandlers.ofLines());
+			try (Stream<String> lines = response.body()) {
+				long firstToken = 0;
+				Iterator<String> it = lines.iterator();
+				while (it.hasNext()) {
+					String line = it.next();
+					if (firstToken == 0 && line.equals("event:delta")) {
+						firstToken = System.nanoTime();
+					} else if (line.equals("event:done")) {
+						return firstToken;
+					} else if (line.equals("event:error")) {
+						throw new IllegalStateException("evento de erro");
+					}
+				}
+			}
+			throw new IllegalStateException("stream sem evento done");
+		}
+
+		private long stompStream(AgentRequest request) throws Exception {
+			stompSession.send("/livechatms/agent/chat/stream", request);
+			long firstToken = 0;
+			while (true) {
+				JsonNode chunk = next();
+				String status = chunk.get("status").asText();
+				if (!"streaming".equals(status)) {
+					success(chunk);
+					return firstToken;
+				}
+				if (firstToken == 0) {
+					firstToken = System.nanoTime();
+				}
+			}
+		}
+
+		private long success(JsonNode response) {
+			if (!"success".equals(response.get("status").asText())) {
+				throw new IllegalStateException(response.get("status").asText());
+			}
+			return 0;
+		}
+
+		private JsonNode post(String uri, AgentRequest request, String accept) throws Exception {
+			HttpResponse<String> response = httpClient.send(request(uri, request, accept),
+				HttpResponse.BodyHandlers.ofString());
+			if (response.statusCode() != 200) {
+				throw new IllegalStateException("HTTP " + response.statusCode());
+			}
+			return mapper.readTree(response.body());
+		}
+
+		private HttpRequest request(String uri, AgentRequest request, String accept) throws Exception {
+			return HttpRequest.newBuilder(URI.create(baseUrl + uri))
+				.header("Content-Type", "application/json")
+				.header("Accept", accept)
+				.POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(request)))
+				.build();
+		}
+
+		private JsonNode next() throws InterruptedException {
+			JsonNode frame = agentQueue.poll(30, TimeUnit.SECONDS);
+			if (frame == null) {
+				throw new IllegalStateException("sem resposta em 30s");
+			}
+			return frame;
+		}
+
+		void reset() {
+			latencies.clear();
+			ttft.clear();
+			errors = 0;
+		}
+
+		void close() {
+			if (stompClient != null) {
+				stompSession.disconnect();
+				stompClient.stop();
+			}
+		}
+	}
+
+	/**
+	 * Amostras em µs sem boxing.
+	 */
+	private static final class Samples {
+
+		private long[] values = new long[1024];
+		private int size;
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		void addAll(Samples other) {
+			for (int i = 0; i < other.size; i++) {
+				add(other.values[i]);
+			}
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	record Result(String scenario, long[] latencies, long[] ttft, double turnsPerSecond, int errors) {
+
+		Map<String, Map<String, Object>> secondaryMetrics() {
+			Map<String, Map<String, Object>> metrics = new LinkedHashMap<>();
+			metrics.put("throughput", BenchmarkResults.score(Math.round(turnsPerSecond * 10) / 10.0, "ops/s"));
+			if (ttft.length > 0) {
+				metrics.put("ttft", BenchmarkResults.sample(ttft));
+			}
+			metrics.put("errors", BenchmarkResults.score(errors, "#"));
+			return metrics;
+		}
+
+		@Override
+		public String toString() {
+			double[] latency = percentiles(latencies);
+			double ttft50 = ttft.length == 0 ? Double.NaN : percentiles(ttft)[0];
+			return String.format("%-14s %9.1f %9.1f %9.1f %10.1f %8.1f %7d",
+				scenario, latency[0], latency[1], latency[2], ttft50, turnsPerSecond, errors);
+		}
+
+		private static double[] percentiles(long[] samples) {
+			long[] sorted = samples.clone();
+			Arrays.sort(sorted);
+			double[] result = new double[3];
+			double[] ps = {50, 90, 99};
+			for (int i = 0; i < ps.length; i++) {
+				result[i] = sorted[Math.max(0, (int) Math.ceil(sorted.length * ps[i] / 100) - 1)] / 1000.0;
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package hector.avlr.livechatms.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hector.avlr.livechatms.LivechatmsApplication;
+import hector.avlr.livechatms.domain.AgentRequest;
+import hector.avlr.livechatms.support.StubLLMServer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Latência por turno do agente via HTTP e via STOMP, contra um provedor local sem atraso
+ * (o custo medido é o do transporte e do processamento no servidor):
+ * - rest: POST /api/agent/chat/async (JSON completo)
+ * - sse: POST /api/agent/chat/stream, até o evento "done"
+ * - stomp: /livechatms/agent/chat, resposta completa na fila do usuário
+ * - stomp-stream: /livechatms/agent/chat/stream, até o fragmento final
+ * O cliente HTTP reaproveita a conexão (keep-alive), como um navegador; o cliente STOMP usa
+ * uma única conexão WebSocket. Turnos sequenciais, cada um em uma conversa nova.
+ * Execução: ./mvnw -Pbenchmark test -Dtest=AgentTransportBenchmark
+ */
+@Tag("benchmark")
+class AgentTransportBenchmark {
+
+	static final int WARMUP_TURNS = 500;
+	static final int TURNS = 2000;
+	// Fragmentos "streaming" do stub + fragmento final
+	static final int STREAM_FRAMES = 5;
+
+	final ObjectMapper mapper = new ObjectMapper();
+	final HttpClient httpClient = HttpClient.newHttpClient();
+	final BlockingQueue<JsonNode> agentQueue = new LinkedBlockingQueue<>();
+
+	String baseUrl;
+	StompSession stompSession;
+	int conversation;
+
+	@Test
+	void compareHttpAndWebSocketTurnLatency() throws Exception {
+		try (StubLLMServer stub = StubLLMServer.start()) {
+			ConfigurableApplicationContext app = new SpringApplicationBuilder(LivechatmsApplication.class)
+				.run("--server.port=0",
+					"--spring.main.keep-alive=false",
+					"--llm.provider=openai",
+					// Turnos em sequência rápida de um único cliente: sem limite por cliente
+					"--agent.admission.rate.per.second=0",
+					"--llm.api.url.openai=" + stub.baseUrl() + "/openai");
+			WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+			stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+			try {
+				int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+				baseUrl = "http://localhost:" + port;
+				stompSession = stompClient.connectAsync("ws://localhost:" + port + "/hectoravlr-livechat-websocket",
+						new StompSessionHandlerAdapter() {
+						})
+					.get(10, TimeUnit.SECONDS);
+				stompSession.subscribe("/user/queue/agent", new StompFrameHandler() {
+					@Override
+					public Type getPayloadType(StompHeaders headers) {
+						return JsonNode.class;
+					}
+
+					@Override
+					public void handleFrame(StompHeaders headers, Object payload) {
+						agentQueue.add((JsonNode) payload);
+					}
+				});
+				// O broker simples não envia RECEIPT: aguarda o registro da inscrição
+				Thread.sleep(200);
+
+				System.out.println("[agent-transport] path            p50(us)    p99(us)   turns/s");
+				for (String path : new String[] {"rest", "sse", "stomp", "stomp-stream"}) {
+					System.out.println("[agent-transport] " + measure(path));
+				}
+			} finally {
+				stompClient.stop();
+				app.close();
+			}
+		}
+	}
+
+	private Result measure(String path) throws Exception {
+		for (int i = 0; i < WARMUP_TURNS; i++) {
+			turn(path);
+		}
+		long[] latencies = new long[TURNS];
+		long start = System.nanoTime();
+		for (int i = 0; i < TURNS; i++) {
+			long turnStart = System.nanoTime();
+			turn(path);
+			latencies[i] = System.nanoTime() - turnStart;
+		}
+		long elapsed = System.nanoTime() - start;
+		Arrays.sort(latencies);
+		return new Result(path, latencies[TURNS / 2] / 1000, latencies[(int) Math.ceil(TURNS * 0.99) - 1] / 1000,
+			TURNS * TimeUnit.SECONDS.toNanos(1) / elapsed);
+	}
+
+	private void turn(String path) throws Exception {
+		AgentRequest request = new AgentRequest("transport-" + conversation++, "Oi");
+		switch (path) {
+			case "rest" -> {
+				String body = post("/api/agent/chat/async", request, "application/json");
+				assertThat(mapper.readTree(body).get("status").asText()).isEqualTo("success");
+			}
+			case "sse" -> assertThat(post("/api/agent/chat/stream", request, "text/event-stream")).contains("event:done");
+			case "stomp" -> {
+				stompSession.send("/livechatms/agent/chat", request);
+				assertThat(next().get("status").asText()).isEqualTo("success");
+			}
+			case "stomp-stream" -> {
+				stompSession.send("/livechatms/agent/chat/stream", request);
+				for (int i = 0; i < STREAM_FRAMES; i++) {
+					next();
+				}
+			}
+			default -> throw new IllegalArgumentException(path);
+		}
+	}
+
+	private String post(String uri, AgentRequest request, String accept) throws Exception {
+		HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + uri))
+				.header("Content-Type", "application/json")
+				.header("Accept", accept)
+				.POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(request)))
+				.build(),
+			HttpResponse.BodyHandlers.ofString());
+		assertThat(response.statusCode()).isEqualTo(200);
+		return response.body();
+	}
+
+	private JsonNode next() throws InterruptedException {
+		JsonNode frame = agentQueue.poll(5, TimeUnit.SECONDS);
+		assertThat(frame).isNotNull();
+		return frame;
+	}
+
+	record Result(String path, long p50Micros, long p99Micros, long turnsPerSecond) {
+		@Override
+		public String toString() {
+			return String.format("%-14s %10d %10d %9d", path, p50Micros, p99Micros, turnsPerSecond);
+		}
+	}
+}
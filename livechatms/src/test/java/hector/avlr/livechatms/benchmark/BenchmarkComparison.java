@@ -0,0 +1,120 @@
+package hector.avlr.livechatms.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compara os resultados atuais (target/jmh/*.json, do JMH ou de BenchmarkResults) com os de
+ * um build anterior, pela métrica principal de cada benchmark e combinação de parâmetros.
+ * Uma regressão é uma piora acima de benchmark.max.regression (padrão 0.10) que também
+ * excede a soma dos erros de medição informados pelo JMH; qualquer regressão falha o teste.
+ * Uso: copiar target/jmh para fora de target/ no build de referência e, no build novo:
+ * ./mvnw -Pbenchmark test -Dtest=BenchmarkComparison -Dbenchmark.baseline=/tmp/jmh-main
+ */
+@Tag("benchmark")
+class BenchmarkComparison {
+
+	static final double MAX_REGRESSION = Double.parseDouble(System.getProperty("benchmark.max.regression", "0.10"));
+
+	@Test
+	void compareWithBaseline() throws Exception {
+		String baselinePath = System.getProperty("benchmark.baseline");
+		assumeTrue(baselinePath != null && new File(baselinePath).isDirectory(),
+			"-Dbenchmark.baseline=<diretório com os JSON do build de referência>");
+		File[] current = new File(BenchmarkResults.DIRECTORY).listFiles((dir, name) -> name.endsWith(".json"));
+		assumeTrue(current != null && current.length > 0, "sem resultados em " + BenchmarkResults.DIRECTORY);
+
+		List<String> regressions = new ArrayList<>();
+		System.out.println("[benchmark-diff] benchmark                                                  baseline    current   change");
+		for (File file : current) {
+			File baselineFile = new File(baselinePath, file.getName());
+			if (!baselineFile.isFile()) {
+				continue;
+			}
+			Map<String, JsonNode> baseline = index(BenchmarkResults.read(baselineFile));
+			for (JsonNode entry : BenchmarkResults.read(file)) {
+				JsonNode previous = baseline.get(key(entry));
+				if (previous == null) {
+					continue;
+				}
+				Comparison comparison = Comparison.of(key(entry), entry, previous);
+				System.out.println("[benchmark-diff] " + comparison);
+				if (comparison.regressed()) {
+					regressions.add(comparison.toString());
+				}
+			}
+		}
+		assertThat(regressions).as("regressões acima de %.0f%%", MAX_REGRESSION * 100).isEmpty();
+	}
+
+	private static Map<String, JsonNode> index(JsonNode results) {
+		Map<String, JsonNode> entries = new HashMap<>();
+		for (JsonNode entry : results) {
+			entries.put(key(entry), entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Benchmark, modo e parâmetros (ex.: ConversationContextBenchmark.snapshot avgt {history=50}).
+	 */
+	private static String key(JsonNode entry) {
+		String name = entry.path("benchmark").asText();
+		String key = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1) + " " + entry.path("mode").asText();
+		JsonNode params = entry.path("params");
+		return params.isObject() && !params.isEmpty() ? key + " " + params : key;
+	}
+
+	record Comparison(String key, double baseline, double current, double baselineError, double currentError,
+					  boolean higherIsBetter, String unit) {
+
+		static Comparison of(String key, JsonNode entry, JsonNode previous) {
+			JsonNode metric = entry.path("primaryMetric");
+			JsonNode previousMetric = previous.path("primaryMetric");
+			return new Comparison(key, previousMetric.path("score").asDouble(), metric.path("score").asDouble(),
+				error(previousMetric), error(metric), "thrpt".equals(entry.path("mode").asText()),
+				metric.path("scoreUnit").asText());
+		}
+
+		private static double error(JsonNode metric) {
+			double error = metric.path("scoreError").asDouble(Double.NaN);
+			return Double.isNaN(error) ? 0 : error;
+		}
+
+		/**
+		 * Variação relativa, positiva quando o resultado piorou.
+		 */
+		double worsening() {
+			double change = (current - baseline) / baseline;
+			return higherIsBetter ? -change : change;
+		}
+
+		boolean regressed() {
+			return worsening() > MAX_REGRESSION && !withinError();
+		}
+
+		/**
+		 * A diferença cabe nos erros de medição somados (ruído, não conta como regressão).
+		 */
+		boolean withinError() {
+			return Math.abs(current - baseline) <= baselineError + currentError;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-58s %10.3f %10.3f %+7.1f%% %s%s", key, baseline, current,
+				(current - baseline) / baseline * 100, unit,
+				regressed() ? "  REGRESSION" : worsening() > MAX_REGRESSION ? "  (dentro do erro)" : "");
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package hector.avlr.livechatms.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resultados de benchmarks fora do JMH (cargas ponta a ponta) gravados em target/jmh/
+ * no mesmo formato JSON do JMH, para que BenchmarkComparison compare todos os
+ * resultados da mesma forma.
+ */
+final class BenchmarkResults {
+
+	static final String DIRECTORY = "target/jmh";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final List<Map<String, Object>> entries = new ArrayList<>();
+
+	/**
+	 * Adiciona uma medição por amostragem (modo "sample": menor é melhor).
+	 * @param benchmark Nome completo (classe.cenário)
+	 * @param threads Clientes simultâneos
+	 * @param params Parâmetros da execução (latência do stub, tokens...)
+	 * @param samplesMicros Amostras da métrica principal, em µs (gravadas em ms)
+	 * @param secondary Métricas secundárias (throughput, ttft, erros...)
+	 */
+	BenchmarkResults add(String benchmark, int threads, Map<String, String> params, long[] samplesMicros,
+						 Map<String, Map<String, Object>> secondary) {
+		Map<String, Object> entry = new LinkedHashMap<>();
+		entry.put("benchmark", benchmark);
+		entry.put("mode", "sample");
+		entry.put("threads", threads);
+		entry.put("forks", 1);
+		entry.put("params", params);
+		entry.put("primaryMetric", sample(samplesMicros));
+		entry.put("secondaryMetrics", secondary);
+		entries.add(entry);
+		return this;
+	}
+
+	/**
+	 * Grava os resultados em target/jmh/{name}.json.
+	 */
+	File write(String name) throws IOException {
+		new File(DIRECTORY).mkdirs();
+		File file = new File(DIRECTORY, name + ".json");
+		MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, entries);
+		return file;
+	}
+
+	/**
+	 * Lê um arquivo de resultados (do JMH ou desta classe).
+	 */
+	static JsonNode read(File file) throws IOException {
+		return MAPPER.readTree(file);
+	}
+
+	/**
+	 * Métrica por amostragem: média e percentis em ms, a partir de amostras em µs.
+	 */
+	static Map<String, Object> sample(long[] samplesMicros) {
+		long[] sorted = samplesMicros.clone();
+		Arrays.sort(sorted);
+		Map<String, Object> percentiles = new LinkedHashMap<>();
+		for (double p : new double[] {0.0, 50.0, 90.0, 99.0, 100.0}) {
+			percentiles.put(Double.toString(p), millis(percentile(sorted, p)));
+		}
+		Map<String, Object> metric = new LinkedHashMap<>();
+		metric.put("score", sorted.length == 0 ? Double.NaN : millis(Arrays.stream(sorted).sum() / (double) sorted.length));
+		metric.put("scoreError", Double.NaN);
+		metric.put("scorePercentiles", percentiles);
+		metric.put("scoreUnit", "ms/op");
+		metric.put("samples", sorted.length);
+		return metric;
+	}
+
+	/**
+	 * Métrica de valor único (throughput, contadores).
+	 */
+	static Map<String, Object> score(double score, String unit) {
+		Map<String, Object> metric = new LinkedHashMap<>();
+		metric.put("score", score);
+		metric.put("scoreError", Double.NaN);
+		metric.put("scoreUnit", unit);
+		return metric;
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int index = (int) Math.ceil(sorted.length * p / 100.0) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	private static double millis(double micros) {
+		return Math.round(micros) / 1000.0;
+	}
+}
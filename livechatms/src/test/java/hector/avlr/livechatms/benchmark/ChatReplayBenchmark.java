@@ -0,0 +1,104 @@
+package hector.avlr.livechatms.benchmark;
+
+import hector.avlr.livechatms.controller.LiveChatController;
+import hector.avlr.livechatms.domain.ChatBatch;
+import hector.avlr.livechatms.domain.ChatInput;
+import hector.avlr.livechatms.service.ChatAuditLog;
+import hector.avlr.livechatms.service.ChatReplayBuffer;
+import hector.avlr.livechatms.service.ChatRoomService;
+import hector.avlr.livechatms.service.LiveChatBroadcaster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.event.Level;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.AbstractMessageChannel;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vazão da publicação no chat (LiveChatController.newMessage) com e sem o histórico de reenvio:
+ * - publish: uma thread publicando
+ * - contended: três threads publicando enquanto uma quarta reenvia o histórico completo
+ *   (256 mensagens) a cada operação, como uma onda de reconexões
+ * A publicação no broker é descartada (canal sem assinantes), então o custo medido é escape,
+ * sequenciamento, histórico e serialização.
+ * Execução: ./mvnw -Pbenchmark test -Dtest=ChatReplayBenchmark
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChatReplayBenchmark {
+
+	@Param({"off", "on"})
+	String replay;
+
+	private LiveChatController controller;
+	private ChatAuditLog auditLog;
+	private final ChatInput input = new ChatInput("ana", "olá, alguém viu o jogo ontem?");
+
+	@Setup
+	public void setup() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		SimpMessagingTemplate template = new SimpMessagingTemplate(new AbstractMessageChannel() {
+			@Override
+			protected boolean sendInternal(Message<?> message, long timeout) {
+				return true;
+			}
+		});
+		template.setMessageConverter(new MappingJackson2MessageConverter());
+		auditLog = new ChatAuditLog(meterRegistry, 0, Level.INFO, 8192, 256, false, Path.of("unused.log"), 65536, 5);
+		controller = new LiveChatController(new ChatRoomService(meterRegistry),
+			new LiveChatBroadcaster(template, meterRegistry, false, 10, 32), auditLog,
+			new ChatReplayBuffer(meterRegistry, "simple", replay.equals("on"), 256, 10000, 60), meterRegistry);
+		// Histórico cheio desde o início
+		for (int i = 0; i < 256; i++) {
+			controller.newMessage(input);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		auditLog.shutdown();
+	}
+
+	@Benchmark
+	@Group("publish")
+	public void publish() {
+		controller.newMessage(input);
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(3)
+	public void contendedPublish() {
+		controller.newMessage(input);
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(1)
+	public ChatBatch contendedReplay() {
+		return controller.history(null);
+	}
+
+	@Tag("benchmark")
+	@Test
+	void run() throws Exception {
+		JmhRunner.run(ChatReplayBenchmark.class, 10);
+	}
+}
@@ -0,0 +1,104 @@
+package hector.avlr.livechatms.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.ContextWindowPolicy;
+import hector.avlr.livechatms.service.LLMRequestEncoder;
+import hector.avlr.livechatms.service.PromptSanitizer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Alocação e tempo por turno (mensagem do usuário, corpo da requisição OpenAI, resposta)
+ * com históricos de 10/50/200 mensagens.
+ * - legacy: ArrayList copiado a cada leitura + Map.of por mensagem + serialização Jackson
+ * - snapshot: histórico copy-on-write + fragmentos de mensagem pré-serializados
+ * Execução: ./mvnw -Pbenchmark test -Dtest=ConversationContextBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConversationContextBenchmark {
+
+	private static final String USER = "Qual é o status do meu pedido número 12345? Preciso de uma atualização.";
+	private static final String ASSISTANT = "Seu pedido 12345 foi enviado ontem e deve chegar em até três dias úteis.";
+
+	@Param({"10", "50", "200"})
+	int historySize;
+
+	private final PromptSanitizer sanitizer = new PromptSanitizer();
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private LLMRequestEncoder.Template template;
+	private ContextWindowPolicy windowPolicy;
+	private ConversationContext context;
+	private List<ConversationContext.Message> legacyHistory;
+
+	@Setup
+	public void setup() {
+		template = new LLMRequestEncoder(sanitizer).openAITemplate("gpt-3.5-turbo", 500, 0.7, false);
+		windowPolicy = new ContextWindowPolicy(historySize, Integer.MAX_VALUE);
+		context = new ConversationContext("benchmark");
+		legacyHistory = new ArrayList<>();
+		for (int i = 0; i < historySize; i++) {
+			context.addMessage(i % 2 == 0 ? "user" : "assistant", i % 2 == 0 ? USER : ASSISTANT);
+			legacyHistory.add(new ConversationContext.Message(i % 2 == 0 ? "user" : "assistant", i % 2 == 0 ? USER : ASSISTANT));
+		}
+	}
+
+	@Benchmark
+	public byte[] legacy() throws Exception {
+		legacyHistory.add(new ConversationContext.Message("user", USER));
+
+		// Mesmo algoritmo do LLMService anterior (cópia + Map por mensagem + HashMap)
+		List<Map<String, String>> messages = new ArrayList<>(legacyHistory).stream()
+			.map(msg -> Map.of("role", msg.role(), "content", msg.content()))
+			.collect(Collectors.toList());
+		messages.add(0, Map.of("role", "system", "content", sanitizer.buildSystemPrompt()));
+		Map<String, Object> requestBody = new HashMap<>();
+		requestBody.put("model", "gpt-3.5-turbo");
+		requestBody.put("messages", messages);
+		requestBody.put("max_tokens", 500);
+		requestBody.put("temperature", 0.7);
+		byte[] body = objectMapper.writeValueAsBytes(requestBody);
+
+		legacyHistory.add(new ConversationContext.Message("assistant", ASSISTANT));
+		legacyHistory.remove(0);
+		legacyHistory.remove(0);
+		return body;
+	}
+
+	@Benchmark
+	public byte[] snapshot() {
+		context.addMessage("user", USER);
+		byte[] body = template.body(windowPolicy.window(context));
+		context.addMessage("assistant", ASSISTANT);
+
+		// Mantém o histórico limitado sem custo por turno (compactação amortizada)
+		int size = context.getMessages().size();
+		if (size > 10_000) {
+			context.compact(size - historySize, null);
+		}
+		return body;
+	}
+
+	@Tag("benchmark")
+	@Test
+	void run() throws Exception {
+		JmhRunner.run(ConversationContextBenchmark.class);
+	}
+}
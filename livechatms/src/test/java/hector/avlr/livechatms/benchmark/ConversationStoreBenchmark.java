@@ -0,0 +1,173 @@
+package hector.avlr.livechatms.benchmark;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.ConversationManager;
+import hector.avlr.livechatms.service.store.ConversationStore;
+import hector.avlr.livechatms.service.store.MappedConversationStore;
+import hector.avlr.livechatms.service.store.TransientConversationStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Armazenamento de conversas com 1M de mensagens (10 mil sessões x 100 mensagens):
+ * - recovery: tempo para reabrir o log mapeado e reconstruir o índice
+ * - heap: heap ocupado após GC com todas as sessões no mapa em memória (memory) e com o
+ *   log mapeado e as sessões fora do cache (mmap, estado ocioso)
+ * - load: latência para restaurar uma sessão ociosa do log
+ * - append: vazão e latência de gravação com várias threads, cada uma com suas próprias sessões
+ * Execução: ./mvnw -Pbenchmark test -Dtest=ConversationStoreBenchmark
+ */
+@Tag("benchmark")
+class ConversationStoreBenchmark {
+
+	static final int SESSIONS = 10_000;
+	static final int MESSAGES_PER_SESSION = 100;
+	static final int RECOVERIES = 5;
+	static final int LOADS = 10_000;
+	static final int APPENDS_PER_THREAD = 100_000;
+	static final int SESSIONS_PER_THREAD = 100;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void compareRecoveryAndHeap() {
+		// Mesma referência para os dois casos: heap antes de qualquer sessão
+		long baseline = usedHeap();
+		long memoryHeap = inMemoryHeap() - baseline;
+		SimpleMeterRegistry storeMetrics = new SimpleMeterRegistry();
+		long mappedHeap = mappedIdleHeap(storeMetrics) - baseline;
+		System.out.printf("[conversation-store] heap memory=%d MB mmap(idle)=%d MB log=%d MB%n",
+			memoryHeap >> 20, mappedHeap >> 20,
+			(long) storeMetrics.get("conversation.store.bytes").tag("state", "total").gauge().value() >> 20);
+
+		long[] recoveries = new long[RECOVERIES];
+		for (int i = 0; i < RECOVERIES; i++) {
+			long start = System.nanoTime();
+			MappedConversationStore store = open();
+			recoveries[i] = System.nanoTime() - start;
+			assertThat(store.sessions()).isEqualTo(SESSIONS);
+			if (i == RECOVERIES - 1) {
+				measureLoads(store);
+			}
+			store.close();
+		}
+		Arrays.sort(recoveries);
+		System.out.printf("[conversation-store] recovery of %d messages: median=%d ms best=%d ms%n",
+			SESSIONS * MESSAGES_PER_SESSION, TimeUnit.NANOSECONDS.toMillis(recoveries[RECOVERIES / 2]),
+			TimeUnit.NANOSECONDS.toMillis(recoveries[0]));
+	}
+
+	@Test
+	void measureAppendContention() throws Exception {
+		for (int threads : new int[] {1, 4, 8}) {
+			try (MappedConversationStore store = new MappedConversationStore(directory.resolve("append-" + threads),
+					64, 24, 0.5, new SimpleMeterRegistry())) {
+				long[][] latencies = new long[threads][APPENDS_PER_THREAD];
+				CyclicBarrier start = new CyclicBarrier(threads + 1);
+				List<Thread> writers = new ArrayList<>();
+				for (int t = 0; t < threads; t++) {
+					long[] own = latencies[t];
+					ConversationContext[] contexts = new ConversationContext[SESSIONS_PER_THREAD];
+					for (int i = 0; i < SESSIONS_PER_THREAD; i++) {
+						contexts[i] = new ConversationContext("append-" + t + "-" + i, store);
+					}
+					Thread writer = new Thread(() -> {
+						try {
+							start.await();
+						} catch (Exception e) {
+							throw new IllegalStateException(e);
+						}
+						for (int i = 0; i < APPENDS_PER_THREAD; i++) {
+							long begin = System.nanoTime();
+							contexts[i % SESSIONS_PER_THREAD].addMessage("user", "Mensagem " + i + " do cliente sobre o pedido.");
+							own[i] = System.nanoTime() - begin;
+						}
+					});
+					writer.start();
+					writers.add(writer);
+				}
+				start.await();
+				long begin = System.nanoTime();
+				for (Thread writer : writers) {
+					writer.join();
+				}
+				// Inclui as gravações ainda enfileiradas
+				assertThat(store.sessions()).isEqualTo((long) threads * SESSIONS_PER_THREAD);
+				long elapsed = System.nanoTime() - begin;
+				long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+				System.out.printf("[conversation-store] append threads=%d: %d k msgs/s p50=%d ns p99=%d ns p99.9=%d ns%n",
+					threads, (long) threads * APPENDS_PER_THREAD * 1_000_000 / elapsed,
+					all[all.length / 2], all[(int) (all.length * 0.99)], all[(int) (all.length * 0.999)]);
+			}
+		}
+	}
+
+	private long inMemoryHeap() {
+		ConversationManager manager = populate(new TransientConversationStore());
+		long heap = usedHeap();
+		assertThat(manager.activeSessions()).isEqualTo(SESSIONS);
+		return heap;
+	}
+
+	/**
+	 * Todas as sessões ociosas: o cache em memória é descartado e o histórico fica no log.
+	 */
+	private long mappedIdleHeap(SimpleMeterRegistry storeMetrics) {
+		try (MappedConversationStore store = new MappedConversationStore(directory, 64, 24, 0.5, storeMetrics)) {
+			assertThat(populate(store).activeSessions()).isEqualTo(SESSIONS);
+			long heap = usedHeap();
+			assertThat(store.sessions()).isEqualTo(SESSIONS);
+			return heap;
+		}
+	}
+
+	private ConversationManager populate(ConversationStore store) {
+		ConversationManager manager = new ConversationManager(new SimpleMeterRegistry(), store, 30, SESSIONS * 2, 30);
+		for (int session = 0; session < SESSIONS; session++) {
+			ConversationContext context = manager.getOrCreateSession("session-" + session);
+			for (int i = 0; i < MESSAGES_PER_SESSION; i += 2) {
+				context.addMessage("user", "Qual é o status do meu pedido número " + (session * 1000 + i) + "? Ainda não chegou.");
+				context.addMessage("assistant", "Seu pedido " + (session * 1000 + i)
+					+ " saiu para entrega e deve chegar amanhã até as 18h. Posso ajudar em algo mais?");
+			}
+		}
+		return manager;
+	}
+
+	private void measureLoads(MappedConversationStore store) {
+		long[] latencies = new long[LOADS];
+		for (int i = 0; i < LOADS; i++) {
+			long start = System.nanoTime();
+			ConversationStore.Snapshot snapshot = store.load("session-" + (i * 7919 % SESSIONS));
+			latencies[i] = System.nanoTime() - start;
+			assertThat(snapshot.messages()).hasSize(MESSAGES_PER_SESSION);
+		}
+		Arrays.sort(latencies);
+		System.out.printf("[conversation-store] load of an idle session (%d messages): p50=%d us p99=%d us%n",
+			MESSAGES_PER_SESSION, latencies[LOADS / 2] / 1000, latencies[(int) (LOADS * 0.99)] / 1000);
+	}
+
+	private MappedConversationStore open() {
+		return new MappedConversationStore(directory, 64, 24, 0.5, new SimpleMeterRegistry());
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
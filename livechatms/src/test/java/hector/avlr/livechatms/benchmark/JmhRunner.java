@@ -0,0 +1,45 @@
+package hector.avlr.livechatms.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+
+/**
+ * Executa benchmarks JMH a partir dos testes marcados com @Tag("benchmark").
+ * Usa o profiler de GC (alocação por operação) e grava os resultados em JSON
+ * em target/jmh/, para comparação entre builds.
+ */
+final class JmhRunner {
+
+    private JmhRunner() {
+    }
+
+    static void run(Class<?> benchmark) throws RunnerException {
+        run(benchmark, 3);
+    }
+
+    /**
+     * Variante com mais aquecimento, para caminhos que levam mais tempo para serem compilados
+     * pelo JIT (ex.: pipelines reativos completos).
+     */
+    static void run(Class<?> benchmark, int warmupIterations) throws RunnerException {
+        new File("target/jmh").mkdirs();
+        new Runner(new OptionsBuilder()
+            .include(benchmark.getName() + "\\.")
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .warmupIterations(warmupIterations)
+            .warmupTime(TimeValue.seconds(1))
+            .measurementIterations(5)
+            .measurementTime(TimeValue.seconds(1))
+            .resultFormat(ResultFormatType.JSON)
+            .result("target/jmh/" + benchmark.getSimpleName() + ".json")
+            .build())
+            .run();
+    }
+}
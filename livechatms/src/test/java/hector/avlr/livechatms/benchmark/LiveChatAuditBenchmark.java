@@ -0,0 +1,104 @@
+package hector.avlr.livechatms.benchmark;
+
+import hector.avlr.livechatms.controller.LiveChatController;
+import hector.avlr.livechatms.domain.ChatInput;
+import hector.avlr.livechatms.service.ChatAuditLog;
+import hector.avlr.livechatms.service.ChatReplayBuffer;
+import hector.avlr.livechatms.service.ChatRoomService;
+import hector.avlr.livechatms.service.LiveChatBroadcaster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.event.Level;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.AbstractMessageChannel;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vazão do handler de mensagens do chat (LiveChatController.newMessage) por modo de log:
+ * - off: sem registro
+ * - println: o System.out.println síncrono anterior
+ * - sampled: ChatAuditLog com amostragem de 1% no log
+ * - transcript: ChatAuditLog gravando todas as mensagens no arquivo de transcrição
+ * A saída padrão (println e o appender de console) é redirecionada para um arquivo durante
+ * a medição; a publicação no broker é descartada (canal sem assinantes), então o custo
+ * medido é escape, serialização e registro.
+ * Execução: ./mvnw -Pbenchmark test -Dtest=LiveChatAuditBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LiveChatAuditBenchmark {
+
+	@Param({"off", "println", "sampled", "transcript"})
+	String logging;
+
+	private Path dir;
+	private PrintStream originalOut;
+	private ChatAuditLog auditLog;
+	private LiveChatController controller;
+	private final ChatInput input = new ChatInput("ana", "olá, alguém viu o jogo ontem?");
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("livechat-audit");
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		SimpMessagingTemplate template = new SimpMessagingTemplate(new AbstractMessageChannel() {
+			@Override
+			protected boolean sendInternal(Message<?> message, long timeout) {
+				return true;
+			}
+		});
+		template.setMessageConverter(new MappingJackson2MessageConverter());
+		LiveChatBroadcaster broadcaster = new LiveChatBroadcaster(template, meterRegistry, false, 10, 32);
+		auditLog = new ChatAuditLog(meterRegistry, logging.equals("sampled") ? 0.01 : 0, Level.INFO, 8192, 256,
+			logging.equals("transcript"), dir.resolve("transcript.log"), 65536, 5);
+		originalOut = System.out;
+		System.setOut(new PrintStream(new BufferedOutputStream(
+			new FileOutputStream(dir.resolve("stdout.log").toFile())), true));
+		controller = new LiveChatController(new ChatRoomService(meterRegistry), broadcaster, auditLog,
+			new ChatReplayBuffer(meterRegistry, "simple", false, 256, 10000, 60), meterRegistry);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		auditLog.shutdown();
+		System.out.close();
+		System.setOut(originalOut);
+		FileSystemUtils.deleteRecursively(dir);
+	}
+
+	@Benchmark
+	public void newMessage() {
+		if (logging.equals("println")) {
+			// Handler anterior: log síncrono antes de publicar
+			System.out.println("Received message from: " + input.user() + " - " + input.message());
+		}
+		controller.newMessage(input);
+	}
+
+	@Tag("benchmark")
+	@Test
+	void run() throws Exception {
+		JmhRunner.run(LiveChatAuditBenchmark.class);
+	}
+}
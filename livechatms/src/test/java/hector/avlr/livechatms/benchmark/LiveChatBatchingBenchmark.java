@@ -0,0 +1,138 @@
+package hector.avlr.livechatms.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import hector.avlr.livechatms.LivechatmsApplication;
+import hector.avlr.livechatms.config.RoomSubscriptionRegistry;
+import hector.avlr.livechatms.domain.ChatInput;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Compara a entrega de rajadas em uma sala movimentada com e sem lote de saída
+ * (livechat.batch.enabled). Um publicador envia uma rajada de mensagens para uma sala com
+ * vários assinantes; mede mensagens entregues por segundo (somando todos os assinantes),
+ * frames recebidos e CPU do processo por mensagem entregue. Clientes e servidor rodam no
+ * mesmo processo, então a CPU inclui o custo de decodificação dos frames nos clientes.
+ * Execução: ./mvnw -Pbenchmark test -Dtest=LiveChatBatchingBenchmark
+ */
+@Tag("benchmark")
+class LiveChatBatchingBenchmark {
+
+	static final int SUBSCRIBERS = 100;
+	static final int MESSAGES = 2000;
+	static final String ROOM = "rajada";
+
+	@Test
+	void compareBatchedAndUnbatchedDelivery() throws Exception {
+		Result unbatched = run(false);
+		Result batched = run(true);
+
+		System.out.println("[live-chat-batching] mode       messages/s      frames  cpuMicros/message");
+		System.out.println("[live-chat-batching] " + unbatched);
+		System.out.println("[live-chat-batching] " + batched);
+
+		assertThat(batched.frames()).isLessThan(unbatched.frames());
+	}
+
+	private Result run(boolean batching) throws Exception {
+		ConfigurableApplicationContext app = new SpringApplicationBuilder(LivechatmsApplication.class)
+			.run("--server.port=0",
+				"--spring.main.keep-alive=false",
+				"--livechat.batch.enabled=" + batching);
+		WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+		stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+		try {
+			String url = "ws://localhost:" + ((WebServerApplicationContext) app).getWebServer().getPort()
+				+ "/hectoravlr-livechat-websocket";
+			AtomicLong delivered = new AtomicLong();
+			AtomicLong frames = new AtomicLong();
+			List<StompSession> sessions = new ArrayList<>();
+			for (int i = 0; i < SUBSCRIBERS; i++) {
+				StompSession session = connect(stompClient, url);
+				session.subscribe("/topics/livechat/" + ROOM, new StompFrameHandler() {
+					@Override
+					public Type getPayloadType(StompHeaders headers) {
+						return JsonNode.class;
+					}
+
+					@Override
+					public void handleFrame(StompHeaders headers, Object payload) {
+						JsonNode body = (JsonNode) payload;
+						frames.incrementAndGet();
+						delivered.addAndGet(body.has("messages") ? body.get("messages").size() : 1);
+					}
+				});
+				sessions.add(session);
+			}
+			StompSession publisher = connect(stompClient, url);
+			RoomSubscriptionRegistry registry =
+				(RoomSubscriptionRegistry) app.getBean(SimpleBrokerMessageHandler.class).getSubscriptionRegistry();
+			await().atMost(Duration.ofSeconds(10))
+				.until(() -> registry.subscriberCount("/topics/livechat/" + ROOM) == SUBSCRIBERS);
+
+			// Aquecimento (JIT, buffers das sessões)
+			burst(publisher, delivered, 200);
+			delivered.set(0);
+			frames.set(0);
+
+			com.sun.management.OperatingSystemMXBean os =
+				(com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+			long cpuStart = os.getProcessCpuTime();
+			long start = System.nanoTime();
+			burst(publisher, delivered, MESSAGES);
+			long elapsed = System.nanoTime() - start;
+			long cpu = os.getProcessCpuTime() - cpuStart;
+
+			sessions.forEach(StompSession::disconnect);
+			long total = (long) SUBSCRIBERS * MESSAGES;
+			return new Result(batching ? "batched" : "unbatched",
+				total * TimeUnit.SECONDS.toNanos(1) / elapsed, frames.get(), cpu / 1000.0 / total);
+		} finally {
+			stompClient.stop();
+			app.close();
+		}
+	}
+
+	private static void burst(StompSession publisher, AtomicLong delivered, int messages) {
+		for (int i = 0; i < messages; i++) {
+			publisher.send("/livechatms/new-message/" + ROOM, new ChatInput("ana", "mensagem " + i));
+		}
+		await().atMost(Duration.ofMinutes(1)).pollInterval(Duration.ofMillis(5))
+			.until(() -> delivered.get() == (long) SUBSCRIBERS * messages);
+	}
+
+	private static StompSession connect(WebSocketStompClient stompClient, String url) throws Exception {
+		return stompClient.connectAsync(url, new StompSessionHandlerAdapter() {
+			})
+			.get(10, TimeUnit.SECONDS);
+	}
+
+	record Result(String mode, long messagesPerSecond, long frames, double cpuMicrosPerMessage) {
+		@Override
+		public String toString() {
+			return String.format("%-10s %11d  %10d  %17.2f", mode, messagesPerSecond, frames, cpuMicrosPerMessage);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package hector.avlr.livechatms.benchmark;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.ContextWindowPolicy;
+import hector.avlr.livechatms.service.ConversationManager;
+import hector.avlr.livechatms.service.LLMResponseCache;
+import hector.avlr.livechatms.service.LLMService;
+import hector.avlr.livechatms.service.PromptSanitizer;
+import hector.avlr.livechatms.service.admission.AdaptiveConcurrencyLimiter;
+import hector.avlr.livechatms.service.provider.LLMProvider;
+import hector.avlr.livechatms.service.provider.LLMProviderRouter;
+import hector.avlr.livechatms.service.store.TransientConversationStore;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler.IgnoredMeters;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo da instrumentação no caminho de um turno do agente (LLMService.generateResponseAsync),
+ * com um provedor em memória que responde imediatamente (o custo medido é só o do serviço):
+ * - noop: ObservationRegistry.NOOP (observações desligadas; contadores e timers do roteador ativos)
+ * - metrics: observações llm.agent.* e llm.provider.call registradas como timers e long task timers
+ * - metrics-no-ltt: somente timers (management.observations.long-task-timer.enabled=false, como na aplicação)
+ * Execução: ./mvnw -Pbenchmark test -Dtest=ObservabilityOverheadBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ObservabilityOverheadBenchmark {
+
+	@Param({"noop", "metrics", "metrics-no-ltt"})
+	String instrumentation;
+
+	private LLMService llmService;
+
+	@Setup
+	public void setup() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
+		if (!instrumentation.equals("noop")) {
+			observationRegistry = ObservationRegistry.create();
+			observationRegistry.observationConfig().observationHandler(instrumentation.equals("metrics")
+				? new DefaultMeterObservationHandler(meterRegistry)
+				: new DefaultMeterObservationHandler(meterRegistry, IgnoredMeters.LONG_TASK_TIMER));
+		}
+		PromptSanitizer sanitizer = new PromptSanitizer();
+		LLMProviderRouter router = new LLMProviderRouter(List.of(new InstantProvider()), meterRegistry,
+			observationRegistry, new AdaptiveConcurrencyLimiter(meterRegistry, 100, 10, 1000, 2.0, 0.9), "instant", "", false, 2000, 50, 5, 30);
+		llmService = new LLMService(router, sanitizer, new ConversationManager(meterRegistry, new TransientConversationStore(), 30, 100000, 30),
+			new ContextWindowPolicy(20, 3000), new LLMResponseCache(sanitizer, meterRegistry, false, 1, 1, false),
+			meterRegistry, observationRegistry);
+	}
+
+	@Benchmark
+	public String turn() {
+		return llmService.generateResponseAsync("benchmark", "Qual é o status do meu pedido?").block();
+	}
+
+	@Tag("benchmark")
+	@Test
+	void run() throws Exception {
+		JmhRunner.run(ObservabilityOverheadBenchmark.class, 15);
+	}
+
+	/**
+	 * Provedor que responde sem I/O.
+	 */
+	static final class InstantProvider implements LLMProvider {
+
+		@Override
+		public String name() {
+			return "instant";
+		}
+
+		@Override
+		public String model() {
+			return "instant";
+		}
+
+		@Override
+		public Mono<String> complete(List<ConversationContext.Message> window) {
+			return Mono.just("Seu pedido foi enviado ontem.");
+		}
+
+		@Override
+		public Flux<String> stream(List<ConversationContext.Message> window) {
+			return Flux.just("Seu pedido ", "foi enviado ontem.");
+		}
+	}
+}
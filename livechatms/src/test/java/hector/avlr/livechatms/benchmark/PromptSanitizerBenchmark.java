@@ -0,0 +1,68 @@
+package hector.avlr.livechatms.benchmark;
+
+import hector.avlr.livechatms.service.PromptSanitizer;
+import hector.avlr.livechatms.support.LegacyPromptSanitizer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo e alocação de PromptSanitizer.sanitize por mensagem.
+ * - legacy: HtmlUtils.htmlEscape + regex de script + regex de SQL Injection
+ * - singlePass: escape em uma única passada, sem regex
+ * Entradas: texto comum curto, texto em português no limite de tamanho e entradas
+ * adversariais no limite (marcação/aspas em toda a mensagem e padrões de SQL Injection).
+ * Execução: ./mvnw -Pbenchmark test -Dtest=PromptSanitizerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PromptSanitizerBenchmark {
+
+	@Param({"short", "portuguese", "markup", "sqlInjection", "unterminatedQuote"})
+	String input;
+
+	private final PromptSanitizer sanitizer = new PromptSanitizer();
+	private String text;
+
+	@Setup
+	public void setup() {
+		text = switch (input) {
+			case "short" -> "What are your opening hours today?";
+			case "portuguese" -> fill("Olá! Qual é a previsão de entrega do pedido número 12345? ");
+			case "markup" -> fill("<script>alert('x')</script><img src=\"y\" onerror=\"z\">&");
+			case "sqlInjection" -> fill("' OR '1'='1'; DROP TABLE users; -- AND ");
+			case "unterminatedQuote" -> "'" + fill("a OR b AND c -- ");
+			default -> throw new IllegalArgumentException(input);
+		};
+	}
+
+	@Benchmark
+	public String legacy() {
+		return LegacyPromptSanitizer.sanitize(text);
+	}
+
+	@Benchmark
+	public String singlePass() {
+		return sanitizer.sanitize(text);
+	}
+
+	private static String fill(String pattern) {
+		return pattern.repeat(2000 / pattern.length() + 1).substring(0, 2000);
+	}
+
+	@Tag("benchmark")
+	@Test
+	void run() throws Exception {
+		JmhRunner.run(PromptSanitizerBenchmark.class);
+	}
+}
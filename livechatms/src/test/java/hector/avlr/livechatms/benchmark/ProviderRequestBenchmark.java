@@ -0,0 +1,131 @@
+package hector.avlr.livechatms.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.LLMRequestEncoder;
+import hector.avlr.livechatms.service.PromptSanitizer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo e bytes alocados (gc.alloc.rate.norm) para montar uma requisição ao provedor
+ * (corpo, URI e cabeçalho de autorização), com a janela de contexto já em memória:
+ * - map: caminho original (system prompt montado por chamada, Map por mensagem, Jackson)
+ * - perCall: encoder em bytes, mas envelope (modelo, parâmetros) recodificado por chamada e
+ *   URI/cabeçalho concatenados e expandidos como template pelo WebClient
+ * - template: envelope pré-codificado por provedor, URI e cabeçalho montados uma vez
+ * Execução: ./mvnw -Pbenchmark test -Dtest=ProviderRequestBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProviderRequestBenchmark {
+
+	private static final String USER = "Qual é o status do meu pedido número 12345? Preciso de uma atualização.";
+	private static final String ASSISTANT = "Seu pedido 12345 foi enviado ontem e deve chegar em até três dias úteis.";
+	private static final String URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-pro:generateContent";
+	private static final String API_KEY = "AIzaSyD-benchmark_key_0123456789abcdef";
+
+	@Param({"openai", "gemini"})
+	String provider;
+
+	@Param({"10", "50"})
+	int historySize;
+
+	private final PromptSanitizer sanitizer = new PromptSanitizer();
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	// Fábrica padrão do WebClient para .uri(String)
+	private final DefaultUriBuilderFactory uriFactory = new DefaultUriBuilderFactory();
+	private LLMRequestEncoder encoder;
+	private LLMRequestEncoder.Template template;
+	private URI uri;
+	private String authorization;
+	private List<ConversationContext.Message> window;
+
+	@Setup
+	public void setup() {
+		encoder = new LLMRequestEncoder(sanitizer);
+		window = new ArrayList<>();
+		for (int i = 0; i < historySize; i++) {
+			window.add(new ConversationContext.Message(i % 2 == 0 ? "user" : "assistant", i % 2 == 0 ? USER : ASSISTANT));
+		}
+		boolean openAI = "openai".equals(provider);
+		template = openAI
+			? encoder.openAITemplate("gpt-3.5-turbo", 500, 0.7, false)
+			: encoder.geminiTemplate(0.7, 500);
+		uri = openAI
+			? UriComponentsBuilder.fromUriString(URL).encode().build().toUri()
+			: UriComponentsBuilder.fromUriString(URL).queryParam("key", API_KEY).encode().build().toUri();
+		authorization = "Bearer " + API_KEY;
+	}
+
+	@Benchmark
+	public void map(Blackhole blackhole) throws Exception {
+		Map<String, Object> requestBody = new HashMap<>();
+		if ("openai".equals(provider)) {
+			List<Map<String, String>> messages = new ArrayList<>();
+			messages.add(Map.of("role", "system", "content", sanitizer.buildSystemPrompt()));
+			for (ConversationContext.Message message : window) {
+				messages.add(Map.of("role", message.role(), "content", message.content()));
+			}
+			requestBody.put("model", "gpt-3.5-turbo");
+			requestBody.put("messages", messages);
+			requestBody.put("max_tokens", 500);
+			requestBody.put("temperature", 0.7);
+			blackhole.consume(uriFactory.expand(URL));
+			blackhole.consume("Bearer " + API_KEY);
+		} else {
+			StringBuilder prompt = new StringBuilder(sanitizer.buildSystemPrompt()).append("\n\n");
+			for (ConversationContext.Message message : window) {
+				prompt.append(message.role()).append(": ").append(message.content()).append("\n");
+			}
+			requestBody.put("contents", List.of(Map.of("parts", List.of(Map.of("text", prompt.toString())))));
+			requestBody.put("generationConfig", Map.of("temperature", 0.7, "maxOutputTokens", 500));
+			blackhole.consume(uriFactory.expand(URL + "?key=" + API_KEY));
+		}
+		blackhole.consume(objectMapper.writeValueAsBytes(requestBody));
+	}
+
+	@Benchmark
+	public void perCall(Blackhole blackhole) {
+		if ("openai".equals(provider)) {
+			blackhole.consume(encoder.openAITemplate("gpt-3.5-turbo", 500, 0.7, false).body(window));
+			blackhole.consume(uriFactory.expand(URL));
+			blackhole.consume("Bearer " + API_KEY);
+		} else {
+			blackhole.consume(encoder.geminiTemplate(0.7, 500).body(window));
+			blackhole.consume(uriFactory.expand(URL + "?key=" + API_KEY));
+		}
+	}
+
+	@Benchmark
+	public void template(Blackhole blackhole) {
+		blackhole.consume(template.body(window));
+		blackhole.consume(uri);
+		blackhole.consume(authorization);
+	}
+
+	@Tag("benchmark")
+	@Test
+	void run() throws Exception {
+		JmhRunner.run(ProviderRequestBenchmark.class);
+	}
+}
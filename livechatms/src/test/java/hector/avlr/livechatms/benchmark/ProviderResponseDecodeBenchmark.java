@@ -0,0 +1,135 @@
+package hector.avlr.livechatms.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import hector.avlr.livechatms.service.provider.GeminiResponse;
+import hector.avlr.livechatms.service.provider.OpenAIResponse;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo e alocação (gc.alloc.rate.norm) para extrair o texto de uma resposta dos provedores:
+ * - map: decodificação anterior em Map (resposta completa) ou JsonNode + JSON Pointer (streaming)
+ * - typed: records OpenAIResponse/GeminiResponse com ObjectReader pré-configurado, pulando os
+ *   campos não mapeados
+ * Payloads: resposta completa da OpenAI e do Gemini (com usage e safetyRatings) e um evento
+ * de streaming da OpenAI.
+ * Execução: ./mvnw -Pbenchmark test -Dtest=ProviderResponseDecodeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProviderResponseDecodeBenchmark {
+
+	static final String OPENAI = """
+		{"id":"chatcmpl-9f2c","object":"chat.completion","created":1700000000,"model":"gpt-3.5-turbo-0125",
+		 "choices":[{"index":0,"message":{"role":"assistant","content":"%s","refusal":null},
+		             "logprobs":null,"finish_reason":"stop"}],
+		 "usage":{"prompt_tokens":412,"completion_tokens":96,"total_tokens":508,
+		          "prompt_tokens_details":{"cached_tokens":0,"audio_tokens":0},
+		          "completion_tokens_details":{"reasoning_tokens":0,"audio_tokens":0,
+		                                       "accepted_prediction_tokens":0,"rejected_prediction_tokens":0}},
+		 "service_tier":"default","system_fingerprint":"fp_0165350fbb"}
+		""";
+
+	static final String GEMINI = """
+		{"candidates":[{"content":{"parts":[{"text":"%s"}],"role":"model"},"finishReason":"STOP","index":0,
+		                "safetyRatings":[
+		                  {"category":"HARM_CATEGORY_SEXUALLY_EXPLICIT","probability":"NEGLIGIBLE"},
+		                  {"category":"HARM_CATEGORY_HATE_SPEECH","probability":"NEGLIGIBLE"},
+		                  {"category":"HARM_CATEGORY_HARASSMENT","probability":"NEGLIGIBLE"},
+		                  {"category":"HARM_CATEGORY_DANGEROUS_CONTENT","probability":"NEGLIGIBLE"}]}],
+		 "usageMetadata":{"promptTokenCount":412,"candidatesTokenCount":96,"totalTokenCount":508},
+		 "modelVersion":"gemini-pro"}
+		""";
+
+	static final String OPENAI_CHUNK = """
+		{"id":"chatcmpl-9f2c","object":"chat.completion.chunk","created":1700000000,"model":"gpt-3.5-turbo-0125",
+		 "system_fingerprint":"fp_0165350fbb","choices":[{"index":0,"delta":{"content":" mundo"},
+		 "logprobs":null,"finish_reason":null}]}
+		""";
+
+	static final String TEXT = ("Claro! Aqui está um resumo da conversa até agora, com os pontos principais "
+		+ "e as próximas etapas sugeridas para o projeto. ").repeat(4);
+
+	@Param({"map", "typed"})
+	String decoder;
+
+	@Param({"openai", "gemini", "openai-chunk"})
+	String payload;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private ObjectReader openAIReader;
+	private ObjectReader geminiReader;
+	private byte[] body;
+	private String event;
+
+	@Setup
+	public void setup() {
+		openAIReader = objectMapper.readerFor(OpenAIResponse.class);
+		geminiReader = objectMapper.readerFor(GeminiResponse.class);
+		String json = switch (payload) {
+			case "openai" -> OPENAI.formatted(TEXT);
+			case "gemini" -> GEMINI.formatted(TEXT);
+			default -> OPENAI_CHUNK;
+		};
+		body = json.getBytes(StandardCharsets.UTF_8);
+		event = json;
+	}
+
+	@Benchmark
+	public String decode() throws Exception {
+		boolean typed = decoder.equals("typed");
+		return switch (payload) {
+			case "openai" -> typed ? openAIReader.<OpenAIResponse>readValue(body).text() : mapOpenAI(body);
+			case "gemini" -> typed ? geminiReader.<GeminiResponse>readValue(body).text() : mapGemini(body);
+			default -> typed
+				? openAIReader.<OpenAIResponse>readValue(event).deltaText()
+				: treeText(event, "/choices/0/delta/content");
+		};
+	}
+
+	// Extração anterior dos provedores (bodyToMono(Map.class) + casts)
+	@SuppressWarnings("unchecked")
+	private String mapOpenAI(byte[] json) throws Exception {
+		Map<String, Object> response = objectMapper.readValue(json, Map.class);
+		List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
+		Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
+		return (String) message.get("content");
+	}
+
+	@SuppressWarnings("unchecked")
+	private String mapGemini(byte[] json) throws Exception {
+		Map<String, Object> response = objectMapper.readValue(json, Map.class);
+		List<Map<String, Object>> candidates = (List<Map<String, Object>>) response.get("candidates");
+		Map<String, Object> content = (Map<String, Object>) candidates.get(0).get("content");
+		List<Map<String, Object>> parts = (List<Map<String, Object>>) content.get("parts");
+		return (String) parts.get(0).get("text");
+	}
+
+	// Extração anterior dos eventos de streaming (readTree + JSON Pointer)
+	private String treeText(String json, String pointer) throws Exception {
+		JsonNode node = objectMapper.readTree(json).at(pointer);
+		return node.isTextual() ? node.asText() : "";
+	}
+
+	@Tag("benchmark")
+	@Test
+	void run() throws Exception {
+		JmhRunner.run(ProviderResponseDecodeBenchmark.class);
+	}
+}
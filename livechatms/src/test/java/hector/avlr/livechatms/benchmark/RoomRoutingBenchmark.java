@@ -0,0 +1,151 @@
+package hector.avlr.livechatms.benchmark;
+
+import hector.avlr.livechatms.config.RoomSubscriptionRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Custo de roteamento de uma mensagem do chat no broker simples com 10 mil conexões.
+ * - rooms=1: todas as conexões no tópico global (/topics/livechat), como antes das salas
+ * - rooms=1000/5000: conexões distribuídas igualmente entre as salas (/topics/livechat/{sala})
+ * Cada operação publica uma mensagem em uma sala (em rodízio) e a entrega a todos os
+ * assinantes até o canal de saída (sem rede). Compara o registro de assinaturas padrão do
+ * Spring (cache de 1024 destinos; acima disso, busca em todas as sessões) com o indexado.
+ * RoomRoutingBenchmark.Registration mede o lado das inscrições: 10 mil sessões se inscrevendo
+ * e saindo de um único tópico (ex.: reconexão em massa no /topics/livechat).
+ * Execução: ./mvnw -Pbenchmark test -Dtest=RoomRoutingBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoomRoutingBenchmark {
+
+	private static final int CONNECTIONS = 10_000;
+
+	@Param({"default", "indexed"})
+	String registry;
+
+	@Param({"1", "1000", "5000"})
+	int rooms;
+
+	private SimpleBrokerMessageHandler broker;
+	private List<Message<byte[]>> messages;
+	private long delivered;
+	private int next;
+
+	@Setup
+	public void setup() {
+		broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(),
+			(message, timeout) -> {
+				delivered++;
+				return true;
+			},
+			new ExecutorSubscribableChannel(), List.of("/topics"));
+		if (registry.equals("indexed")) {
+			broker.setSubscriptionRegistry(new RoomSubscriptionRegistry());
+		}
+		broker.start();
+
+		SubscriptionRegistry subscriptions = broker.getSubscriptionRegistry();
+		for (int session = 0; session < CONNECTIONS; session++) {
+			SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+			headers.setSessionId("session-" + session);
+			headers.setSubscriptionId("sub-0");
+			headers.setDestination(destination(session % rooms));
+			subscriptions.registerSubscription(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()));
+		}
+
+		byte[] payload = "{\"content\":\"ana: olá\"}".getBytes();
+		messages = IntStream.range(0, rooms)
+			.mapToObj(room -> {
+				SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+				headers.setDestination(destination(room));
+				return MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+			})
+			.toList();
+	}
+
+	@TearDown
+	public void tearDown() {
+		broker.stop();
+	}
+
+	@Benchmark
+	public long publish() {
+		broker.handleMessage(messages.get(next));
+		next = (next + 1) % rooms;
+		return delivered;
+	}
+
+	private String destination(int room) {
+		return rooms == 1 ? "/topics/livechat" : "/topics/livechat/room-" + room;
+	}
+
+	/**
+	 * Inscreve 10 mil sessões no mesmo tópico e depois as desconecta (uma operação = ciclo completo).
+	 */
+	@State(Scope.Thread)
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public static class Registration {
+
+		@Param({"default", "indexed"})
+		String registry;
+
+		private List<Message<byte[]>> subscribes;
+
+		@Setup
+		public void setup() {
+			subscribes = IntStream.range(0, CONNECTIONS)
+				.mapToObj(session -> {
+					SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+					headers.setSessionId("session-" + session);
+					headers.setSubscriptionId("sub-0");
+					headers.setDestination("/topics/livechat");
+					return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+				})
+				.toList();
+		}
+
+		@Benchmark
+		public SubscriptionRegistry subscribeAndDisconnect() {
+			SubscriptionRegistry subscriptions = registry.equals("indexed")
+				? new RoomSubscriptionRegistry()
+				: new DefaultSubscriptionRegistry();
+			for (Message<byte[]> subscribe : subscribes) {
+				subscriptions.registerSubscription(subscribe);
+			}
+			for (int session = 0; session < CONNECTIONS; session++) {
+				subscriptions.unregisterAllSubscriptions("session-" + session);
+			}
+			return subscriptions;
+		}
+	}
+
+	@Tag("benchmark")
+	@Test
+	void run() throws Exception {
+		JmhRunner.run(RoomRoutingBenchmark.class);
+	}
+}
@@ -0,0 +1,137 @@
+package hector.avlr.livechatms.benchmark;
+
+import hector.avlr.livechatms.LivechatmsApplication;
+import hector.avlr.livechatms.domain.AgentRequest;
+import hector.avlr.livechatms.domain.AgentResponse;
+import hector.avlr.livechatms.support.StubLLMServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara o caminho bloqueante de /api/agent/chat com threads de plataforma (pool padrão
+ * do Tomcat, 200 threads) e com virtual threads (profile "virtual").
+ * Para cada nível de concorrência mede o p99; o maior nível com p99 até 1,5x a latência
+ * do provedor é considerado sustentável. Também registra pico de threads de plataforma e de heap.
+ * Execução: ./mvnw -Pjava21,benchmark test -Dtest=VirtualThreadBenchmark (com JDK 21).
+ */
+@Tag("benchmark")
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadBenchmark {
+
+	static final Duration PROVIDER_LATENCY = Duration.ofSeconds(2);
+	static final int[] CONCURRENCY_LEVELS = {100, 200, 400, 800, 1600};
+
+	static final StubLLMServer STUB = StubLLMServer.start().latency(PROVIDER_LATENCY);
+
+	@AfterAll
+	static void stopStub() {
+		STUB.close();
+	}
+
+	@Test
+	void compareMaxSustainableConcurrency() {
+		Result platform = run(false);
+		Result virtual = run(true);
+
+		System.out.println("[virtual-threads] mode      sustainable  peakPlatformThreads  peakHeapMB");
+		System.out.println("[virtual-threads] " + platform);
+		System.out.println("[virtual-threads] " + virtual);
+
+		assertThat(virtual.sustainable()).isGreaterThanOrEqualTo(platform.sustainable());
+	}
+
+	private Result run(boolean virtualThreads) {
+		ConfigurableApplicationContext app = new SpringApplicationBuilder(LivechatmsApplication.class)
+			.profiles(virtualThreads ? "virtual" : "default")
+			.run("--server.port=0",
+				"--spring.main.keep-alive=false",
+				"--llm.provider=openai",
+				"--llm.api.url.openai=" + STUB.baseUrl() + "/openai");
+		ConnectionProvider connections = ConnectionProvider.builder("benchmark-client")
+			.maxConnections(4000)
+			.pendingAcquireMaxCount(-1)
+			.build();
+		try {
+			int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+			WebClient client = WebClient.builder()
+				.baseUrl("http://localhost:" + port)
+				.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+				.build();
+
+			// Aquecimento (JIT, conexões)
+			measure(client, 100);
+
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(pool -> pool.getType() == MemoryType.HEAP)
+				.toList();
+			System.gc();
+			threads.resetPeakThreadCount();
+			heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+			int sustainable = 0;
+			for (int level : CONCURRENCY_LEVELS) {
+				long[] latencies = measure(client, level);
+				long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+				System.out.printf("[virtual-threads] %-8s concurrency=%5d p99=%5dms%n",
+					virtualThreads ? "virtual" : "platform", level, p99);
+				if (p99 <= PROVIDER_LATENCY.toMillis() * 3 / 2) {
+					sustainable = level;
+				}
+			}
+			long peakHeapMb = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() / (1024 * 1024);
+			return new Result(virtualThreads ? "virtual" : "platform", sustainable,
+				threads.getPeakThreadCount(), peakHeapMb);
+		} finally {
+			connections.dispose();
+			app.close();
+		}
+	}
+
+	private long[] measure(WebClient client, int concurrency) {
+		List<Long> latencies = Flux.range(0, concurrency)
+			.flatMap(i -> {
+				long start = System.nanoTime();
+				return client.post()
+					.uri("/api/agent/chat")
+					.bodyValue(new AgentRequest("bench-" + concurrency + "-" + i, "Oi"))
+					.retrieve()
+					.bodyToMono(AgentResponse.class)
+					.doOnNext(response -> assertThat(response.response()).isEqualTo("Olá, mundo!"))
+					.then(Mono.fromCallable(() -> Duration.ofNanos(System.nanoTime() - start).toMillis()));
+			}, concurrency)
+			.collectList()
+			.block(Duration.ofMinutes(2));
+		long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	record Result(String mode, int sustainable, int peakPlatformThreads, long peakHeapMb) {
+		@Override
+		public String toString() {
+			return String.format("%-9s %11d  %19d  %10d", mode, sustainable, peakPlatformThreads, peakHeapMb);
+		}
+	}
+}
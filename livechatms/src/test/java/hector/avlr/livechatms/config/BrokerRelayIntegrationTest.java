@@ -0,0 +1,143 @@
+package hector.avlr.livechatms.config;
+
+import hector.avlr.livechatms.LivechatmsApplication;
+import hector.avlr.livechatms.domain.ChatInput;
+import hector.avlr.livechatms.domain.ChatOutput;
+import hector.avlr.livechatms.support.StubStompBroker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sobe duas instâncias da aplicação no modo relay, ligadas a um broker STOMP local,
+ * e verifica que mensagens publicadas em uma instância chegam aos clientes da outra.
+ * Reporta a latência de entrega entre nós (cliente a cliente e métrica do servidor).
+ */
+class BrokerRelayIntegrationTest {
+
+	static final StubStompBroker BROKER = StubStompBroker.start();
+
+	final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+	final WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+	final ThreadPoolTaskScheduler receiptScheduler = new ThreadPoolTaskScheduler();
+
+	@BeforeEach
+	void configureClient() {
+		receiptScheduler.initialize();
+		stompClient.setTaskScheduler(receiptScheduler);
+		stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+	}
+
+	@AfterEach
+	void stopNodes() {
+		stompClient.stop();
+		receiptScheduler.shutdown();
+		nodes.forEach(ConfigurableApplicationContext::close);
+	}
+
+	@AfterAll
+	static void stopBroker() {
+		BROKER.close();
+	}
+
+	@Test
+	void deliversMessagesAcrossNodes() throws Exception {
+		ConfigurableApplicationContext nodeA = startNode();
+		ConfigurableApplicationContext nodeB = startNode();
+
+		BlockingQueue<ChatOutput> receivedOnB = new LinkedBlockingQueue<>();
+		Set<String> receivedHeaders = ConcurrentHashMap.newKeySet();
+		StompSession subscriber = connect(nodeB);
+		subscriber.setAutoReceipt(true);
+		// Aguarda o broker confirmar a assinatura antes de publicar
+		BlockingQueue<Boolean> subscribed = new LinkedBlockingQueue<>();
+		subscriber.subscribe("/topics/livechat", new StompFrameHandler() {
+			@Override
+			public Type getPayloadType(StompHeaders headers) {
+				return ChatOutput.class;
+			}
+
+			@Override
+			public void handleFrame(StompHeaders headers, Object payload) {
+				receivedOnB.add((ChatOutput) payload);
+				receivedHeaders.addAll(headers.keySet());
+			}
+		}).addReceiptTask(() -> subscribed.add(true));
+		assertThat(subscribed.poll(10, TimeUnit.SECONDS)).isTrue();
+
+		StompSession publisher = connect(nodeA);
+		int messages = 50;
+		long[] latencies = new long[messages];
+		for (int i = 0; i < messages; i++) {
+			long start = System.nanoTime();
+			publisher.send("/livechatms/new-message", new ChatInput("ana", "mensagem " + i));
+			ChatOutput output = receivedOnB.poll(10, TimeUnit.SECONDS);
+			latencies[i] = System.nanoTime() - start;
+			assertThat(output).isNotNull();
+			assertThat(output.content()).isEqualTo("ana: mensagem " + i);
+		}
+
+		Arrays.sort(latencies);
+		Timer serverLatency = nodeB.getBean(MeterRegistry.class)
+			.get("livechat.broker.delivery.latency").tag("mode", "relay").timer();
+		// A latência é registrada depois da escrita no WebSocket, logo após o cliente receber
+		for (int i = 0; i < 100 && serverLatency.count() < messages; i++) {
+			Thread.sleep(50);
+		}
+		System.out.printf("[broker-relay] cross-node delivery latency (client to client): p50=%.2fms p99=%.2fms max=%.2fms%n",
+			latencies[messages / 2] / 1e6, latencies[messages * 99 / 100] / 1e6, latencies[messages - 1] / 1e6);
+		System.out.printf("[broker-relay] livechat.broker.delivery.latency on node B: count=%d mean=%.2fms max=%.2fms%n",
+			serverLatency.count(), serverLatency.mean(TimeUnit.MILLISECONDS), serverLatency.max(TimeUnit.MILLISECONDS));
+
+		assertThat(serverLatency.count()).isEqualTo(messages);
+		// O instante de publicação é interno ao servidor e não chega ao cliente
+		assertThat(receivedHeaders).isNotEmpty().doesNotContain("x-published-at");
+		// Sessões de sistema dos dois nós + uma sessão por cliente
+		assertThat(BROKER.connectionCount()).isGreaterThanOrEqualTo(4);
+	}
+
+	private ConfigurableApplicationContext startNode() {
+		ConfigurableApplicationContext node = new SpringApplicationBuilder(LivechatmsApplication.class)
+			.run("--server.port=0",
+				"--spring.main.keep-alive=false",
+				"--livechat.broker.mode=relay",
+				"--livechat.broker.relay.host=localhost",
+				"--livechat.broker.relay.port=" + BROKER.port());
+		nodes.add(node);
+		return node;
+	}
+
+	private StompSession connect(ConfigurableApplicationContext node) throws Exception {
+		int port = ((WebServerApplicationContext) node).getWebServer().getPort();
+		return stompClient.connectAsync("ws://localhost:" + port + "/hectoravlr-livechat-websocket",
+				new StompSessionHandlerAdapter() {
+				})
+			.get(10, TimeUnit.SECONDS);
+	}
+}
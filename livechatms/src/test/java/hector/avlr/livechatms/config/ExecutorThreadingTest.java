@@ -0,0 +1,113 @@
+package hector.avlr.livechatms.config;
+
+import hector.avlr.livechatms.LivechatmsApplication;
+import hector.avlr.livechatms.support.StubLLMServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifica em qual tipo de thread os canais STOMP e o processamento assíncrono do MVC (SSE)
+ * executam: pools de threads de plataforma dimensionados por padrão e virtual threads no
+ * profile "virtual" (Java 21+).
+ */
+@ExtendWith(OutputCaptureExtension.class)
+class ExecutorThreadingTest {
+
+	@Test
+	void channelsUseSizedPlatformThreadPoolsByDefault(CapturedOutput output) throws Exception {
+		try (StubLLMServer stub = StubLLMServer.start();
+			 ConfigurableApplicationContext app = start("default", "--llm.provider=openai",
+				 "--llm.api.url.openai=" + stub.baseUrl() + "/openai")) {
+			Thread inbound = threadOf(channelExecutor(app, "clientInboundChannel"));
+			Thread outbound = threadOf(channelExecutor(app, "clientOutboundChannel"));
+
+			assertThat(isVirtual(inbound)).isFalse();
+			assertThat(inbound.getName()).startsWith("clientInboundChannel-");
+			assertThat(isVirtual(outbound)).isFalse();
+			assertThat(outbound.getName()).startsWith("clientOutboundChannel-");
+
+			// Streaming SSE escrito pelo executor assíncrono configurado, não pelo padrão do MVC
+			Thread mvcAsync = threadOf(mvcAsyncExecutor(app));
+			assertThat(isVirtual(mvcAsync)).isFalse();
+			assertThat(mvcAsync.getName()).startsWith("mvc-async-");
+			int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+			HttpResponse<String> stream = HttpClient.newHttpClient().send(HttpRequest.newBuilder(
+					URI.create("http://localhost:" + port + "/api/agent/chat/stream"))
+					.header("Content-Type", "application/json")
+					.header("Accept", "text/event-stream")
+					.POST(HttpRequest.BodyPublishers.ofString("{\"sessionId\":\"threading\",\"message\":\"Oi\"}"))
+					.build(),
+				HttpResponse.BodyHandlers.ofString());
+			assertThat(stream.body()).contains("event:done");
+			assertThat(output).doesNotContain("not suitable for production");
+		}
+	}
+
+	@Test
+	@EnabledForJreRange(min = JRE.JAVA_21)
+	void channelsUseVirtualThreadsUnderVirtualProfile() throws Exception {
+		try (ConfigurableApplicationContext app = start("virtual")) {
+			assertThat(isVirtual(threadOf(channelExecutor(app, "clientInboundChannel")))).isTrue();
+			assertThat(isVirtual(threadOf(channelExecutor(app, "clientOutboundChannel")))).isTrue();
+			assertThat(isVirtual(threadOf(mvcAsyncExecutor(app)))).isTrue();
+		}
+	}
+
+	private static ConfigurableApplicationContext start(String profile, String... args) {
+		List<String> arguments = new ArrayList<>(List.of("--server.port=0", "--spring.main.keep-alive=false"));
+		arguments.addAll(List.of(args));
+		return new SpringApplicationBuilder(LivechatmsApplication.class)
+			.profiles(profile)
+			.run(arguments.toArray(String[]::new));
+	}
+
+	/**
+	 * Executor efetivamente usado pelo MVC para o processamento assíncrono (SSE).
+	 */
+	private static Executor mvcAsyncExecutor(ConfigurableApplicationContext app) {
+		return (Executor) ReflectionTestUtils.getField(app.getBean(RequestMappingHandlerAdapter.class), "taskExecutor");
+	}
+
+	private static Executor channelExecutor(ConfigurableApplicationContext app, String channel) {
+		return app.getBean(channel, ExecutorSubscribableChannel.class).getExecutor();
+	}
+
+	static Thread threadOf(Executor executor) throws Exception {
+		CompletableFuture<Thread> thread = new CompletableFuture<>();
+		executor.execute(() -> thread.complete(Thread.currentThread()));
+		return thread.get(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Thread.isVirtual() via reflexão: o código de teste também compila para Java 17.
+	 */
+	static boolean isVirtual(Thread thread) throws Exception {
+		try {
+			return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+}
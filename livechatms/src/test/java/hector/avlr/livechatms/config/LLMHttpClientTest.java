@@ -0,0 +1,81 @@
+package hector.avlr.livechatms.config;
+
+import hector.avlr.livechatms.service.LLMService;
+import hector.avlr.livechatms.support.StubLLMServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Verifica o cliente HTTP dos provedores contra o stub local: limite do pool sob carga,
+ * métricas do pool, compressão e timeout de resposta por provedor.
+ */
+@SpringBootTest(properties = {"llm.http.max.connections=8", "llm.http.timeout.openai.seconds=1"})
+class LLMHttpClientTest {
+
+	static final StubLLMServer STUB = StubLLMServer.start();
+
+	@Autowired
+	LLMService llmService;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) {
+		registry.add("llm.provider", () -> "openai");
+		registry.add("llm.api.url.openai", () -> STUB.baseUrl() + "/openai");
+	}
+
+	@BeforeEach
+	void resetStub() {
+		// Requisições abandonadas por timeout continuam no stub até o fim da latência
+		await().atMost(Duration.ofSeconds(10)).until(() -> STUB.inFlightRequests() == 0);
+		STUB.reset();
+	}
+
+	@AfterAll
+	static void stopStub() {
+		STUB.close();
+	}
+
+	@Test
+	void boundsConnectionsUnderLoadAndExposesPoolMetrics() {
+		STUB.latency(Duration.ofMillis(100));
+
+		List<String> responses = Flux.range(0, 100)
+			.flatMap(i -> llmService.generateResponseAsync("pool-" + i, "Oi"), 100)
+			.collectList()
+			.block(Duration.ofSeconds(30));
+
+		assertThat(responses).hasSize(100).containsOnly("Olá, mundo!");
+		// Conexões reaproveitadas: nunca mais requisições simultâneas que o tamanho do pool
+		assertThat(STUB.peakConcurrentRequests()).isBetween(2, 8);
+		assertThat(meterRegistry.find("reactor.netty.connection.provider.total.connections")
+			.tag("name", "llm").gauge()).isNotNull();
+		assertThat(STUB.lastAcceptEncoding()).contains("gzip");
+	}
+
+	@Test
+	void responseTimeoutReleasesHungRequests() {
+		STUB.latency(Duration.ofSeconds(6));
+
+		long start = System.nanoTime();
+		String response = llmService.generateResponse("timeout-session", "Oi");
+
+		assertThat(response).startsWith("Desculpe");
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(4));
+	}
+}
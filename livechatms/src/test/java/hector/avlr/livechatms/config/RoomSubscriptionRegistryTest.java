@@ -0,0 +1,104 @@
+package hector.avlr.livechatms.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoomSubscriptionRegistryTest {
+
+	final RoomSubscriptionRegistry registry = new RoomSubscriptionRegistry();
+
+	@Test
+	void routesOnlyToSubscribersOfTheRoom() {
+		subscribe("s1", "a", "/topics/livechat/sala-1");
+		subscribe("s2", "a", "/topics/livechat/sala-1");
+		subscribe("s3", "a", "/topics/livechat/sala-2");
+
+		assertThat(find("/topics/livechat/sala-1").keySet()).containsExactlyInAnyOrder("s1", "s2");
+		assertThat(find("/topics/livechat/sala-2").keySet()).containsExactly("s3");
+		assertThat(find("/topics/livechat/sala-3")).isEmpty();
+		assertThat(registry.subscriberCount("/topics/livechat/sala-1")).isEqualTo(2);
+	}
+
+	@Test
+	void exposesLiveReadOnlyViewOfTheRoom() {
+		subscribe("s1", "a", "/topics/livechat/sala-1");
+		MultiValueMap<String, String> view = find("/topics/livechat/sala-1");
+
+		subscribe("s1", "b", "/topics/livechat/sala-1");
+		subscribe("s2", "a", "/topics/livechat/sala-1");
+
+		assertThat(view).containsOnlyKeys("s1", "s2");
+		assertThat(view.get("s1")).containsExactly("a", "b");
+		assertThatThrownBy(() -> view.add("s3", "a")).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> view.get("s1").add("c")).isInstanceOf(UnsupportedOperationException.class);
+	}
+
+	@Test
+	void registersManySubscribersOnOneTopic() {
+		for (int session = 0; session < 10_000; session++) {
+			subscribe("s" + session, "a", "/topics/livechat");
+		}
+		assertThat(registry.subscriberCount("/topics/livechat")).isEqualTo(10_000);
+
+		for (int session = 0; session < 10_000; session++) {
+			registry.unregisterAllSubscriptions("s" + session);
+		}
+		assertThat(registry.subscriberCount("/topics/livechat")).isZero();
+		assertThat(find("/topics/livechat")).isEmpty();
+	}
+
+	@Test
+	void removesSubscriptionsOnUnsubscribeAndDisconnect() {
+		subscribe("s1", "a", "/topics/livechat/sala-1");
+		subscribe("s1", "b", "/topics/livechat/sala-1");
+		subscribe("s1", "c", "/topics/livechat/sala-2");
+		subscribe("s2", "a", "/topics/livechat/sala-1");
+
+		registry.unregisterSubscription(frame(SimpMessageType.UNSUBSCRIBE, "s1", "a", null));
+		assertThat(find("/topics/livechat/sala-1").get("s1")).containsExactly("b");
+
+		registry.unregisterAllSubscriptions("s1");
+		assertThat(find("/topics/livechat/sala-1").keySet()).containsExactly("s2");
+		assertThat(find("/topics/livechat/sala-2")).isEmpty();
+		assertThat(registry.subscriberCount("/topics/livechat/sala-2")).isZero();
+	}
+
+	@Test
+	void combinesPatternSubscriptionsWithExactOnes() {
+		subscribe("s1", "a", "/topics/livechat/sala-1");
+		subscribe("monitor", "all", "/topics/livechat/*");
+
+		MultiValueMap<String, String> subscriptions = find("/topics/livechat/sala-1");
+
+		assertThat(subscriptions.keySet()).containsExactlyInAnyOrder("s1", "monitor");
+		assertThat(find("/topics/livechat/sala-9").keySet()).containsExactly("monitor");
+
+		registry.unregisterSubscription(frame(SimpMessageType.UNSUBSCRIBE, "monitor", "all", null));
+		assertThat(find("/topics/livechat/sala-9")).isEmpty();
+		assertThat(find("/topics/livechat/sala-1").keySet()).containsExactly("s1");
+	}
+
+	private void subscribe(String sessionId, String subscriptionId, String destination) {
+		registry.registerSubscription(frame(SimpMessageType.SUBSCRIBE, sessionId, subscriptionId, destination));
+	}
+
+	private MultiValueMap<String, String> find(String destination) {
+		return registry.findSubscriptions(frame(SimpMessageType.MESSAGE, null, null, destination));
+	}
+
+	private static Message<byte[]> frame(SimpMessageType type, String sessionId, String subscriptionId,
+			String destination) {
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(type);
+		headers.setSessionId(sessionId);
+		headers.setSubscriptionId(subscriptionId);
+		headers.setDestination(destination);
+		return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+	}
+}
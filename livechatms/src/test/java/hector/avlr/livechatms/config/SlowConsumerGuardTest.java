@@ -0,0 +1,81 @@
+package hector.avlr.livechatms.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.lang.reflect.Proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlowConsumerGuardTest {
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final MessageHandler handler = message -> {
+	};
+
+	@Test
+	void dropsMessagesOnceConnectionBacklogIsFull() throws Exception {
+		SlowConsumerGuard guard = new SlowConsumerGuard(meterRegistry, SlowConsumerGuard.Policy.DROP, 3, 1000);
+		WebSocketSession session = connect(guard);
+		ExecutorChannelInterceptor admission = guard.admission();
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(admission.beforeHandle(message(session.getId(), SimpMessageType.MESSAGE), null, handler)).isNotNull();
+		}
+		assertThat(admission.beforeHandle(message(session.getId(), SimpMessageType.MESSAGE), null, handler)).isNull();
+		// Frames de controle não são descartados
+		assertThat(admission.beforeHandle(message(session.getId(), SimpMessageType.HEARTBEAT), null, handler)).isNotNull();
+
+		assertThat(meterRegistry.get("livechat.ws.slow.consumer").tag("action", "dropped").counter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("livechat.ws.session.queue.depth").tag("session", session.getId()).gauge().value())
+			.isEqualTo(3);
+	}
+
+	@Test
+	void disconnectsSlowConsumerOnceAndRemovesItsMetric() throws Exception {
+		SlowConsumerGuard guard = new SlowConsumerGuard(meterRegistry, SlowConsumerGuard.Policy.DISCONNECT, 1, 1000);
+		WebSocketHandler decorated = guard.decorate(new AbstractWebSocketHandler() {
+		});
+		WebSocketSession session = session("s2");
+		decorated.afterConnectionEstablished(session);
+		ExecutorChannelInterceptor admission = guard.admission();
+
+		admission.beforeHandle(message(session.getId(), SimpMessageType.MESSAGE), null, handler);
+		assertThat(admission.beforeHandle(message(session.getId(), SimpMessageType.MESSAGE), null, handler)).isNull();
+		assertThat(admission.beforeHandle(message(session.getId(), SimpMessageType.MESSAGE), null, handler)).isNull();
+		assertThat(meterRegistry.get("livechat.ws.slow.consumer").tag("action", "disconnected").counter().count()).isEqualTo(1);
+
+		decorated.afterConnectionClosed(session, CloseStatus.SESSION_NOT_RELIABLE);
+		assertThat(meterRegistry.find("livechat.ws.session.queue.depth").gauges()).isEmpty();
+	}
+
+	private static WebSocketSession connect(SlowConsumerGuard guard) throws Exception {
+		WebSocketSession session = session("s1");
+		guard.decorate(new AbstractWebSocketHandler() {
+		}).afterConnectionEstablished(session);
+		return session;
+	}
+
+	// Sessão sem transporte: apenas o id; demais métodos não fazem nada
+	private static WebSocketSession session(String id) {
+		return (WebSocketSession) Proxy.newProxyInstance(WebSocketSession.class.getClassLoader(),
+			new Class<?>[] {WebSocketSession.class},
+			(proxy, method, args) -> method.getName().equals("getId") ? id : null);
+	}
+
+	private static Message<byte[]> message(String sessionId, SimpMessageType type) {
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(type);
+		headers.setSessionId(sessionId);
+		return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+	}
+}
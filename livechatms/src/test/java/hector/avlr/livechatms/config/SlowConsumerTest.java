@@ -0,0 +1,129 @@
+package hector.avlr.livechatms.config;
+
+import hector.avlr.livechatms.domain.ChatInput;
+import hector.avlr.livechatms.domain.ChatOutput;
+import hector.avlr.livechatms.support.StalledStompClient;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Verifica que um cliente que parou de ler o socket não atrasa a entrega aos demais:
+ * com uma única thread de saída, uma rajada de mensagens grandes é publicada em uma sala com
+ * clientes saudáveis e um cliente travado. A escrita bloqueada no socket do cliente travado
+ * desiste no limite de tempo de envio e a conexão é encerrada, liberando a thread.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+	"livechat.ws.outbound.threads=1",
+	"livechat.ws.send.time.limit.millis=500"})
+class SlowConsumerTest {
+
+	static final String ROOM = "lenta";
+	static final String DESTINATION = "/topics/livechat/" + ROOM;
+	static final int HEALTHY_CLIENTS = 4;
+	static final int MESSAGES = 400;
+
+	@LocalServerPort
+	int port;
+
+	@Autowired
+	SimpleBrokerMessageHandler brokerHandler;
+
+	WebSocketStompClient stompClient;
+
+	@BeforeEach
+	void configureClient() {
+		// Mensagens de 16 KB: aumenta o buffer padrão (8 KB) do cliente WebSocket
+		WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+		container.setDefaultMaxTextMessageBufferSize(64 * 1024);
+		stompClient = new WebSocketStompClient(new StandardWebSocketClient(container));
+		stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+		stompClient.setInboundMessageSizeLimit(64 * 1024);
+	}
+
+	@AfterEach
+	void stopClient() {
+		stompClient.stop();
+	}
+
+	@Test
+	void stalledClientDoesNotDelayOtherSubscribers() throws Exception {
+		RoomSubscriptionRegistry registry = (RoomSubscriptionRegistry) brokerHandler.getSubscriptionRegistry();
+		ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+		AtomicInteger received = new AtomicInteger();
+		List<StompSession> sessions = new ArrayList<>();
+		for (int i = 0; i < HEALTHY_CLIENTS; i++) {
+			sessions.add(subscribe(latencies, received));
+		}
+		try (StalledStompClient stalled = StalledStompClient.subscribe(port, "/hectoravlr-livechat-websocket", DESTINATION)) {
+			await().atMost(Duration.ofSeconds(5)).until(() -> registry.subscriberCount(DESTINATION) == HEALTHY_CLIENTS + 1);
+
+			StompSession publisher = sessions.get(0);
+			String padding = "x".repeat(16 * 1024);
+			for (int i = 0; i < MESSAGES; i++) {
+				publisher.send("/livechatms/new-message/" + ROOM, new ChatInput("ana", System.nanoTime() + " " + padding));
+				Thread.sleep(2);
+			}
+
+			await().atMost(Duration.ofSeconds(30)).until(() -> received.get() == HEALTHY_CLIENTS * MESSAGES);
+			// A escrita bloqueada desiste no limite de tempo e a conexão travada é encerrada
+			await().atMost(Duration.ofSeconds(5)).until(() -> registry.subscriberCount(DESTINATION) == HEALTHY_CLIENTS);
+		}
+
+		long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+		long p99 = sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+		System.out.printf("[slow-consumer] healthy clients: p50=%dms p99=%dms max=%dms%n",
+			sorted[sorted.length / 2], p99, sorted[sorted.length - 1]);
+
+		// Sem os limites, a escrita bloqueada prende a única thread de saída por ~20 s
+		assertThat(p99).isLessThan(2500);
+		assertThat(sorted[sorted.length - 1]).isLessThan(4000);
+	}
+
+	private StompSession subscribe(ConcurrentLinkedQueue<Long> latencies, AtomicInteger received) throws Exception {
+		StompSession session = stompClient.connectAsync("ws://localhost:" + port + "/hectoravlr-livechat-websocket",
+				new StompSessionHandlerAdapter() {
+				})
+			.get(10, TimeUnit.SECONDS);
+		session.subscribe(DESTINATION, new StompFrameHandler() {
+			@Override
+			public Type getPayloadType(StompHeaders headers) {
+				return ChatOutput.class;
+			}
+
+			@Override
+			public void handleFrame(StompHeaders headers, Object payload) {
+				// Conteúdo: "ana: <nanoTime da publicação> <padding>"
+				String content = ((ChatOutput) payload).content();
+				long publishedAt = Long.parseLong(content.substring(5, content.indexOf(' ', 5)));
+				latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - publishedAt));
+				received.incrementAndGet();
+			}
+		});
+		return session;
+	}
+}
@@ -0,0 +1,144 @@
+package hector.avlr.livechatms.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hector.avlr.livechatms.domain.AgentRequest;
+import hector.avlr.livechatms.service.admission.AdaptiveConcurrencyLimiter;
+import hector.avlr.livechatms.support.StubLLMServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Verifica o controle de admissão nos endpoints HTTP do agente: recusas imediatas com
+ * 503 (limite global de turnos simultâneos) e 429 (limite por cliente), ambas com Retry-After.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AgentAdmissionTest {
+
+	static final StubLLMServer STUB = StubLLMServer.start();
+
+	@LocalServerPort
+	int port;
+
+	@Autowired
+	AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	final ObjectMapper mapper = new ObjectMapper();
+	final HttpClient httpClient = HttpClient.newHttpClient();
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) {
+		registry.add("llm.provider", () -> "openai");
+		registry.add("llm.api.url.openai", () -> STUB.baseUrl() + "/openai");
+		// Um turno por vez; 1 requisição por segundo por cliente, rajada de 2
+		registry.add("agent.admission.concurrency.initial", () -> 1);
+		registry.add("agent.admission.concurrency.min", () -> 1);
+		registry.add("agent.admission.concurrency.max", () -> 1);
+		registry.add("agent.admission.rate.per.second", () -> 1);
+		registry.add("agent.admission.burst", () -> 2);
+	}
+
+	@BeforeEach
+	void resetStub() {
+		STUB.reset();
+	}
+
+	@AfterAll
+	static void stopStub() {
+		STUB.close();
+	}
+
+	@Test
+	void rejectsOverloadAndClientsAboveRateWithoutCallingProvider() throws Exception {
+		STUB.latency(Duration.ofSeconds(1));
+		double overloadedBefore = rejected("overloaded");
+		double rateLimitedBefore = rejected("rate_limited");
+		CompletableFuture<HttpResponse<String>> admitted = httpClient.sendAsync(
+			post("/api/agent/chat/async", "application/json", "admitted"), HttpResponse.BodyHandlers.ofString());
+		await().atMost(Duration.ofSeconds(5)).until(() -> concurrencyLimiter.inFlight() == 1);
+
+		// Limite global cheio: 503 sem aguardar o provedor
+		HttpResponse<String> overloaded = send(post("/api/agent/chat/async", "application/json", "overloaded"));
+		assertThat(overloaded.statusCode()).isEqualTo(503);
+		assertThat(overloaded.headers().firstValue("Retry-After")).hasValue("1");
+		assertThat(status(overloaded.body())).isEqualTo("overloaded");
+
+		// Rajada do cliente esgotada: 429, também no streaming (um único evento "error")
+		HttpResponse<String> rateLimited = send(post("/api/agent/chat/stream", "text/event-stream", "limited"));
+		assertThat(rateLimited.statusCode()).isEqualTo(429);
+		assertThat(rateLimited.headers().firstValue("Retry-After")).isPresent();
+		assertThat(rateLimited.body()).contains("event:error").contains("\"status\":\"rate_limited\"");
+
+		HttpResponse<String> response = admitted.get();
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(status(response.body())).isEqualTo("success");
+		assertThat(STUB.requestCount()).isEqualTo(1);
+		assertThat(concurrencyLimiter.inFlight()).isZero();
+		assertThat(rejected("overloaded") - overloadedBefore).isEqualTo(1);
+		assertThat(rejected("rate_limited") - rateLimitedBefore).isEqualTo(1);
+	}
+
+	@Test
+	void limitsEachForwardedClientSeparately() throws Exception {
+		// Aquecimento com um terceiro cliente: a primeira chamada é lenta e recarregaria a rajada
+		send(post("/api/agent/chat/async", "application/json", "warmup", "203.0.113.9"));
+		// Dois clientes atrás do mesmo proxy (conexões de 127.0.0.1): cada um tem sua rajada de 2
+		for (int i = 0; i < 2; i++) {
+			assertThat(send(post("/api/agent/chat/async", "application/json", "a-" + i, "203.0.113.1")).statusCode())
+				.isEqualTo(200);
+		}
+		assertThat(send(post("/api/agent/chat/async", "application/json", "a-2", "203.0.113.1")).statusCode())
+			.isEqualTo(429);
+		assertThat(send(post("/api/agent/chat/async", "application/json", "b-0", "203.0.113.2")).statusCode())
+			.isEqualTo(200);
+	}
+
+	private HttpRequest post(String uri, String accept, String sessionId) throws Exception {
+		return post(uri, accept, sessionId, null);
+	}
+
+	private HttpRequest post(String uri, String accept, String sessionId, String forwardedFor) throws Exception {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + port + uri));
+		if (forwardedFor != null) {
+			builder.header("X-Forwarded-For", forwardedFor);
+		}
+		return builder
+			.header("Content-Type", "application/json")
+			.header("Accept", accept)
+			.POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(new AgentRequest(sessionId, "Oi"))))
+			.build();
+	}
+
+	private double rejected(String reason) {
+		return meterRegistry.counter("agent.admission.rejected", "reason", reason).count();
+	}
+
+	private HttpResponse<String> send(HttpRequest request) throws Exception {
+		return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private String status(String body) throws Exception {
+		JsonNode json = mapper.readTree(body);
+		return json.get("status").asText();
+	}
+}
@@ -0,0 +1,173 @@
+package hector.avlr.livechatms.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import hector.avlr.livechatms.domain.AgentRequest;
+import hector.avlr.livechatms.service.admission.AdaptiveConcurrencyLimiter;
+import hector.avlr.livechatms.support.StubLLMServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Verifica o agente sobre STOMP: respostas e fragmentos chegam na fila do usuário,
+ * somente para a sessão que enviou a requisição.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AgentMessagingTest {
+
+	static final StubLLMServer STUB = StubLLMServer.start();
+
+	@LocalServerPort
+	int port;
+
+	@Autowired
+	AgentSubscriptions subscriptions;
+
+	@Autowired
+	AgentMessagingController controller;
+
+	@Autowired
+	AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+	final WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) {
+		registry.add("llm.provider", () -> "openai");
+		registry.add("llm.api.url.openai", () -> STUB.baseUrl() + "/openai");
+	}
+
+	@AfterAll
+	static void stopStub() {
+		STUB.close();
+	}
+
+	@BeforeEach
+	void configureClient() {
+		stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+	}
+
+	@AfterEach
+	void stopClient() {
+		stompClient.stop();
+	}
+
+	@Test
+	void repliesOnTheSenderUserQueue() throws Exception {
+		BlockingQueue<JsonNode> ana = new LinkedBlockingQueue<>();
+		BlockingQueue<JsonNode> bruno = new LinkedBlockingQueue<>();
+		StompSession anaSession = connect(ana);
+		connect(bruno);
+
+		anaSession.send("/livechatms/agent/chat", new AgentRequest("stomp-ana", "Oi"));
+
+		JsonNode reply = ana.poll(5, TimeUnit.SECONDS);
+		assertThat(reply).isNotNull();
+		assertThat(reply.get("response").asText()).isEqualTo("Olá, mundo!");
+		assertThat(reply.get("status").asText()).isEqualTo("success");
+		assertThat(bruno.poll(200, TimeUnit.MILLISECONDS)).isNull();
+	}
+
+	@Test
+	void streamsChunksInOrderFollowedByCompletion() throws Exception {
+		BlockingQueue<JsonNode> frames = new LinkedBlockingQueue<>();
+		StompSession session = connect(frames);
+
+		session.send("/livechatms/agent/chat/stream", new AgentRequest("stomp-stream", "Oi"));
+
+		List<JsonNode> received = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			JsonNode frame = frames.poll(5, TimeUnit.SECONDS);
+			assertThat(frame).isNotNull();
+			received.add(frame);
+		}
+		// Chegam na ordem de geração, sem reordenação no cliente
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 4; i++) {
+			assertThat(received.get(i).get("status").asText()).isEqualTo("streaming");
+			text.append(received.get(i).get("delta").asText());
+		}
+		assertThat(text).hasToString("Olá, mundo!");
+		assertThat(received.get(4).get("status").asText()).isEqualTo("success");
+	}
+
+	@Test
+	void ignoresStreamRequestsAfterDisconnect() {
+		STUB.reset();
+		controller.onDisconnect(new SessionDisconnectEvent(this, MessageBuilder.withPayload(new byte[0]).build(),
+			"desconectada", CloseStatus.NORMAL));
+
+		controller.chatStream(new AgentRequest("stomp-desconectada", "Oi"), "desconectada", Map.of());
+
+		assertThat(concurrencyLimiter.inFlight()).isZero();
+		assertThat(STUB.requestCount()).isZero();
+	}
+
+	private StompSession connect(BlockingQueue<JsonNode> frames) throws Exception {
+		StompSession session = stompClient.connectAsync("ws://localhost:" + port + "/hectoravlr-livechat-websocket",
+				new StompSessionHandlerAdapter() {
+				})
+			.get(5, TimeUnit.SECONDS);
+		int subscribed = subscriptions.count.get();
+		session.subscribe("/user/queue/agent", new StompFrameHandler() {
+			@Override
+			public Type getPayloadType(StompHeaders headers) {
+				return JsonNode.class;
+			}
+
+			@Override
+			public void handleFrame(StompHeaders headers, Object payload) {
+				frames.add((JsonNode) payload);
+			}
+		});
+		// O broker simples não envia RECEIPT: aguarda o registro da inscrição
+		await().atMost(Duration.ofSeconds(5)).until(() -> subscriptions.count.get() > subscribed);
+		return session;
+	}
+
+	@TestConfiguration
+	static class AgentSubscriptions {
+
+		final AtomicInteger count = new AtomicInteger();
+
+		@EventListener
+		void onSubscribe(SessionSubscribeEvent event) {
+			if ("/user/queue/agent".equals(SimpMessageHeaderAccessor.getDestination(event.getMessage().getHeaders()))) {
+				count.incrementAndGet();
+			}
+		}
+	}
+}
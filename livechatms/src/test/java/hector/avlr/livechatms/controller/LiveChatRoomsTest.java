@@ -0,0 +1,252 @@
+package hector.avlr.livechatms.controller;
+
+import hector.avlr.livechatms.config.RoomSubscriptionRegistry;
+import hector.avlr.livechatms.domain.ChatBatch;
+import hector.avlr.livechatms.domain.ChatInput;
+import hector.avlr.livechatms.domain.ChatOutput;
+import hector.avlr.livechatms.service.ChatRoomService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Verifica o roteamento por sala no broker simples: mensagens de uma sala chegam apenas
+ * aos seus membros, os membros são acompanhados por inscrição e desconexão, e quem entra
+ * depois recebe o histórico recente da sala.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class LiveChatRoomsTest {
+
+	static final String SLOW_ROOM = "concorrente";
+	static final String SLOW_TOPIC = "/topics/livechat/" + SLOW_ROOM;
+
+	@LocalServerPort
+	int port;
+
+	@Autowired
+	ChatRoomService chatRoomService;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	SimpleBrokerMessageHandler brokerHandler;
+
+	final WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+
+	@BeforeEach
+	void configureClient() {
+		stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+	}
+
+	@AfterEach
+	void stopClient() {
+		stompClient.stop();
+	}
+
+	@Test
+	void deliversRoomMessagesOnlyToRoomMembers() throws Exception {
+		BlockingQueue<ChatOutput> alice = new LinkedBlockingQueue<>();
+		BlockingQueue<ChatOutput> bruno = new LinkedBlockingQueue<>();
+		BlockingQueue<ChatOutput> carla = new LinkedBlockingQueue<>();
+		StompSession aliceSession = join("suporte", alice);
+		StompSession brunoSession = join("suporte", bruno);
+		join("vendas", carla);
+
+		await().atMost(Duration.ofSeconds(5)).until(() -> chatRoomService.memberCount("suporte") == 2);
+		assertThat(chatRoomService.memberCount("vendas")).isEqualTo(1);
+		assertThat(meterRegistry.get("livechat.rooms.active").gauge().value()).isGreaterThanOrEqualTo(2);
+
+		aliceSession.send("/livechatms/new-message/suporte", new ChatInput("alice", "<b>oi</b>"));
+
+		assertThat(alice.poll(5, TimeUnit.SECONDS).content()).isEqualTo("alice: &lt;b&gt;oi&lt;/b&gt;");
+		assertThat(bruno.poll(5, TimeUnit.SECONDS).content()).isEqualTo("alice: &lt;b&gt;oi&lt;/b&gt;");
+		assertThat(carla.poll(500, TimeUnit.MILLISECONDS)).isNull();
+
+		brunoSession.disconnect();
+		await().atMost(Duration.ofSeconds(5)).until(() -> chatRoomService.memberCount("suporte") == 1);
+	}
+
+	@Test
+	void rejectsInvalidRoomNames() throws Exception {
+		BlockingQueue<ChatOutput> received = new LinkedBlockingQueue<>();
+		StompSession session = join("geral", received);
+
+		session.send("/livechatms/new-message/sala.inválida", new ChatInput("alice", "oi"));
+		session.send("/livechatms/new-message/geral", new ChatInput("alice", "oi"));
+
+		assertThat(received.poll(5, TimeUnit.SECONDS).content()).isEqualTo("alice: oi");
+		assertThat(received.poll(500, TimeUnit.MILLISECONDS)).isNull();
+		assertThat(chatRoomService.memberCount("sala.inválida")).isZero();
+	}
+
+	@Test
+	void replaysMissedMessagesToLateJoiners() throws Exception {
+		BlockingQueue<ChatOutput> alice = new LinkedBlockingQueue<>();
+		StompSession aliceSession = join("historico", alice);
+		ChatOutput first = null;
+		// Uma mensagem por vez: a primeira entregue define o last-seq do segundo pedido
+		for (String text : new String[] {"um", "dois", "tres"}) {
+			aliceSession.send("/livechatms/new-message/historico", new ChatInput("alice", text));
+			ChatOutput delivered = alice.poll(5, TimeUnit.SECONDS);
+			assertThat(delivered).isNotNull();
+			first = first != null ? first : delivered;
+		}
+
+		ChatBatch all = history("historico", null);
+		ChatBatch missed = history("historico", first.seq());
+
+		assertThat(all.messages()).extracting(ChatOutput::content)
+			.containsExactly("alice: um", "alice: dois", "alice: tres");
+		assertThat(all.messages().get(0)).isEqualTo(first);
+		assertThat(missed.messages()).extracting(ChatOutput::content).containsExactly("alice: dois", "alice: tres");
+	}
+
+	@Test
+	void clientsJoiningWhilePublishingMissNoMessage() throws Exception {
+		// O histórico completo cabe no buffer padrão (8 KB) do cliente WebSocket
+		int messages = 100;
+		BlockingQueue<ChatOutput> reference = new LinkedBlockingQueue<>();
+		join(SLOW_ROOM, reference);
+		StompSession publisher = connect();
+		Thread publishing = new Thread(() -> {
+			for (int i = 0; i < messages; i++) {
+				publisher.send("/livechatms/new-message/" + SLOW_ROOM, new ChatInput("ana", Integer.toString(i)));
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+			}
+		});
+
+		publishing.start();
+		// Como o app.js: assina o tópico e pede o histórico em seguida, sem aguardar o registro
+		List<Set<Long>> joiners = new ArrayList<>();
+		while (publishing.isAlive()) {
+			Set<Long> seen = ConcurrentHashMap.newKeySet();
+			StompSession session = connect();
+			session.subscribe(SLOW_TOPIC, frames(ChatOutput.class, output -> seen.add(output.seq())));
+			session.subscribe("/livechatms/history/" + SLOW_ROOM,
+				frames(ChatBatch.class, batch -> batch.messages().forEach(output -> seen.add(output.seq()))));
+			joiners.add(seen);
+			Thread.sleep(20);
+		}
+
+		Set<Long> published = new HashSet<>();
+		for (int i = 0; i < messages; i++) {
+			ChatOutput delivered = reference.poll(5, TimeUnit.SECONDS);
+			assertThat(delivered).isNotNull();
+			published.add(delivered.seq());
+		}
+		assertThat(joiners).isNotEmpty();
+		// Cada mensagem chega pelo histórico ou ao vivo, nunca fica entre os dois
+		await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+			assertThat(joiners).allSatisfy(seen -> assertThat(seen).containsAll(published)));
+	}
+
+	/**
+	 * Inscreve uma nova conexão no histórico da sala e retorna a resposta única do servidor.
+	 */
+	private ChatBatch history(String room, Long lastSeq) throws Exception {
+		StompSession session = connect();
+		BlockingQueue<ChatBatch> received = new LinkedBlockingQueue<>();
+		StompHeaders headers = new StompHeaders();
+		headers.setDestination("/livechatms/history/" + room);
+		if (lastSeq != null) {
+			headers.set("last-seq", Long.toString(lastSeq));
+		}
+		session.subscribe(headers, frames(ChatBatch.class, received::add));
+		ChatBatch batch = received.poll(5, TimeUnit.SECONDS);
+		session.disconnect();
+		return batch;
+	}
+
+	private StompSession join(String room, BlockingQueue<ChatOutput> received) throws Exception {
+		StompSession session = connect();
+		String destination = "/topics/livechat/" + room;
+		RoomSubscriptionRegistry registry = (RoomSubscriptionRegistry) brokerHandler.getSubscriptionRegistry();
+		int subscribers = registry.subscriberCount(destination);
+		session.subscribe(destination, frames(ChatOutput.class, received::add));
+		// O broker simples não confirma assinaturas (RECEIPT): aguarda o registro
+		await().atMost(Duration.ofSeconds(5)).until(() -> registry.subscriberCount(destination) == subscribers + 1);
+		return session;
+	}
+
+	private StompSession connect() throws Exception {
+		return stompClient.connectAsync("ws://localhost:" + port + "/hectoravlr-livechat-websocket",
+				new StompSessionHandlerAdapter() {
+				})
+			.get(10, TimeUnit.SECONDS);
+	}
+
+	private static <T> StompFrameHandler frames(Class<T> type, Consumer<T> consumer) {
+		return new StompFrameHandler() {
+			@Override
+			public Type getPayloadType(StompHeaders headers) {
+				return type;
+			}
+
+			@Override
+			public void handleFrame(StompHeaders headers, Object payload) {
+				consumer.accept(type.cast(payload));
+			}
+		};
+	}
+
+	/**
+	 * Atrasa o registro das assinaturas de SLOW_TOPIC no broker, alargando a janela entre a
+	 * inscrição no tópico e o pedido de histórico da mesma conexão.
+	 */
+	@TestConfiguration
+	static class SlowSubscriptionConfig implements WebSocketMessageBrokerConfigurer {
+
+		@Override
+		public void configureClientInboundChannel(ChannelRegistration registration) {
+			registration.interceptors(new ExecutorChannelInterceptor() {
+				@Override
+				public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+					if (handler instanceof SimpleBrokerMessageHandler
+						&& SimpMessageType.SUBSCRIBE == SimpMessageHeaderAccessor.getMessageType(message.getHeaders())
+						&& SLOW_TOPIC.equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+						LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+					}
+					return message;
+				}
+			});
+		}
+	}
+}
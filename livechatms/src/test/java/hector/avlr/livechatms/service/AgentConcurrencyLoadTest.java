@@ -0,0 +1,90 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.support.StubLLMServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Teste de carga comparando o caminho bloqueante (uma thread por requisição, pool limitado
+ * como o do Tomcat) com o pipeline reativo contra um provedor local com latência fixa.
+ */
+@SpringBootTest
+class AgentConcurrencyLoadTest {
+
+	static final StubLLMServer STUB = StubLLMServer.start().latency(Duration.ofMillis(300));
+
+	// Requisições simultâneas e threads disponíveis no caminho bloqueante
+	static final int CONCURRENT_CHATS = 200;
+	static final int BLOCKING_THREADS = 20;
+
+	@Autowired
+	LLMService llmService;
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) {
+		registry.add("llm.provider", () -> "openai");
+		registry.add("llm.api.url.openai", () -> STUB.baseUrl() + "/openai");
+	}
+
+	@AfterAll
+	static void stopStub() {
+		STUB.close();
+	}
+
+	@Test
+	void reactivePathScalesPastBlockingThreadPool() throws Exception {
+		// Aquecimento: JIT e abertura das conexões do pool não entram na medição
+		runReactive();
+
+		long blockingMillis = runBlocking();
+		long reactiveMillis = runReactive();
+
+		System.out.printf("[load] %d chats @ 300ms: blocking(%d threads)=%dms reactive=%dms%n",
+			CONCURRENT_CHATS, BLOCKING_THREADS, blockingMillis, reactiveMillis);
+
+		// Bloqueante: ~CONCURRENT_CHATS / BLOCKING_THREADS ondas de latência; reativo: ~1 onda
+		assertThat(reactiveMillis).isLessThan(blockingMillis / 2);
+	}
+
+	private long runBlocking() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(BLOCKING_THREADS);
+		try {
+			long start = System.nanoTime();
+			List<Future<String>> futures = new ArrayList<>();
+			for (int i = 0; i < CONCURRENT_CHATS; i++) {
+				String sessionId = "blocking-" + i;
+				futures.add(pool.submit(() -> llmService.generateResponse(sessionId, "Oi")));
+			}
+			for (Future<String> future : futures) {
+				assertThat(future.get()).isEqualTo("Olá, mundo!");
+			}
+			return Duration.ofNanos(System.nanoTime() - start).toMillis();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private long runReactive() {
+		long start = System.nanoTime();
+		List<String> responses = Flux.range(0, CONCURRENT_CHATS)
+			.flatMap(i -> llmService.generateResponseAsync("reactive-" + i, "Oi"), CONCURRENT_CHATS)
+			.collectList()
+			.block(Duration.ofSeconds(30));
+		assertThat(responses).hasSize(CONCURRENT_CHATS).containsOnly("Olá, mundo!");
+		return Duration.ofNanos(System.nanoTime() - start).toMillis();
+	}
+}
@@ -0,0 +1,99 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ChatInput;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.event.Level;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class ChatAuditLogTest {
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final List<ChatAuditLog> auditLogs = new ArrayList<>();
+
+	@TempDir
+	Path dir;
+
+	@AfterEach
+	void shutdown() throws InterruptedException {
+		for (ChatAuditLog auditLog : auditLogs) {
+			auditLog.shutdown();
+		}
+	}
+
+	@Test
+	void writesEveryMessageToTranscriptAsOneLine() throws IOException {
+		Path file = dir.resolve("transcript.log");
+		ChatAuditLog auditLog = auditLog(0, true, file, 1024, 3);
+
+		auditLog.record("/topics/livechat/sala", new ChatInput("ana", "oi"));
+		auditLog.record("/topics/livechat/sala", new ChatInput("bob", "linha 1\nfalsa\tlinha"));
+
+		await().atMost(Duration.ofSeconds(2)).until(() -> written() == 2);
+		List<String> lines = Files.readAllLines(file);
+		assertThat(lines).hasSize(2);
+		assertThat(lines.get(0)).endsWith("\t/topics/livechat/sala\tana\toi");
+		// Quebras de linha e tabulações do cliente são escapadas
+		assertThat(lines.get(1)).endsWith("\tbob\tlinha 1\\nfalsa\\tlinha");
+	}
+
+	@Test
+	void rotatesTranscriptBySizeKeepingConfiguredFiles() throws IOException {
+		Path file = dir.resolve("transcript.log");
+		ChatAuditLog auditLog = auditLog(0, true, file, 1, 2);
+		String message = "x".repeat(200);
+
+		for (int i = 0; i < 30; i++) {
+			auditLog.record("/topics/livechat", new ChatInput("ana", message));
+		}
+
+		await().atMost(Duration.ofSeconds(2)).until(() -> written() == 30);
+		assertThat(file).exists();
+		assertThat(dir.resolve("transcript.log.1")).exists();
+		assertThat(dir.resolve("transcript.log.2")).exists();
+		assertThat(dir.resolve("transcript.log.3")).doesNotExist();
+		assertThat(Files.size(dir.resolve("transcript.log.1"))).isLessThan(1024 + 300);
+	}
+
+	@Test
+	void skipsBufferWhenMessageIsNeitherSampledNorTranscribed() {
+		ChatAuditLog auditLog = auditLog(0, false, dir.resolve("transcript.log"), 1024, 3);
+
+		auditLog.record("/topics/livechat", new ChatInput("ana", "oi"));
+
+		assertThat(meterRegistry.get("livechat.audit.queue.depth").gauge().value()).isZero();
+		assertThat(dir.resolve("transcript.log")).doesNotExist();
+	}
+
+	@Test
+	void logsSampledMessagesOffTheCallerThread() {
+		ChatAuditLog auditLog = auditLog(1, false, dir.resolve("transcript.log"), 1024, 3);
+
+		auditLog.record("/topics/livechat", new ChatInput("ana", "oi"));
+
+		await().atMost(Duration.ofSeconds(2)).until(() -> written() == 1);
+		assertThat(meterRegistry.get("livechat.audit.entries").tag("result", "dropped").counter().count()).isZero();
+	}
+
+	private double written() {
+		return meterRegistry.get("livechat.audit.entries").tag("result", "written").counter().count();
+	}
+
+	private ChatAuditLog auditLog(double sampleRate, boolean transcript, Path file, long maxSizeKb, int maxFiles) {
+		ChatAuditLog auditLog = new ChatAuditLog(meterRegistry, sampleRate, Level.INFO, 1024, 64,
+			transcript, file, maxSizeKb, maxFiles);
+		auditLogs.add(auditLog);
+		return auditLog;
+	}
+}
@@ -0,0 +1,71 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ChatOutput;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatReplayBufferTest {
+
+	static final String TOPIC = "/topics/livechat/sala";
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	// Capacidade 3 é arredondada para 4
+	final ChatReplayBuffer buffer = new ChatReplayBuffer(meterRegistry, "simple", true, 3, 100, 60);
+
+	@Test
+	void sequencesMessagesAndReplaysAfterLastSeen() {
+		ChatOutput first = buffer.record(TOPIC, new ChatOutput("ana: oi"));
+		ChatOutput second = buffer.record(TOPIC, new ChatOutput("bia: olá"));
+		buffer.record("/topics/livechat", new ChatOutput("caio: outro tópico"));
+
+		assertThat(second.seq()).isEqualTo(first.seq() + 1);
+		assertThat(buffer.since(TOPIC, 0)).containsExactly(first, second);
+		assertThat(buffer.since(TOPIC, first.seq())).containsExactly(second);
+		assertThat(buffer.since(TOPIC, second.seq())).isEmpty();
+		assertThat(buffer.since("/topics/livechat/vazia", 0)).isEmpty();
+	}
+
+	@Test
+	void keepsOnlyLatestMessagesAndCountsGaps() {
+		ChatOutput first = buffer.record(TOPIC, new ChatOutput("0"));
+		for (int i = 1; i < 6; i++) {
+			buffer.record(TOPIC, new ChatOutput(Integer.toString(i)));
+		}
+
+		List<ChatOutput> replayed = buffer.since(TOPIC, first.seq());
+
+		assertThat(replayed).extracting(ChatOutput::content).containsExactly("2", "3", "4", "5");
+		assertThat(meterRegistry.get("livechat.replay.gaps").counter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("livechat.replay.messages").summary().totalAmount()).isEqualTo(4);
+	}
+
+	@Test
+	void continuesSequenceAcrossInstances() {
+		long previous = buffer.record(TOPIC, new ChatOutput("antes")).seq();
+
+		ChatReplayBuffer restarted = new ChatReplayBuffer(new SimpleMeterRegistry(), "simple", true, 4, 100, 60);
+
+		assertThat(restarted.record(TOPIC, new ChatOutput("depois")).seq()).isGreaterThan(previous);
+	}
+
+	@Test
+	void passesMessagesThroughWhenDisabled() {
+		ChatReplayBuffer disabled = new ChatReplayBuffer(meterRegistry, "simple", false, 4, 100, 60);
+
+		assertThat(disabled.record(TOPIC, new ChatOutput("ana: oi")).seq()).isZero();
+		assertThat(disabled.since(TOPIC, 0)).isEmpty();
+	}
+
+	@Test
+	void staysDisabledInRelayMode() {
+		// Cada instância só veria o que publicou, com sequências próprias
+		ChatReplayBuffer relay = new ChatReplayBuffer(meterRegistry, "relay", true, 4, 100, 60);
+
+		assertThat(relay.record(TOPIC, new ChatOutput("ana: oi")).seq()).isZero();
+		assertThat(relay.since(TOPIC, 0)).isEmpty();
+	}
+}
@@ -0,0 +1,68 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextWindowPolicyTest {
+
+	@Test
+	void keepsOnlyMostRecentMessagesWithinMessageLimit() {
+		ContextWindowPolicy policy = new ContextWindowPolicy(4, 10_000);
+		ConversationContext context = contextWith(6, "mensagem");
+
+		List<ConversationContext.Message> window = policy.window(context);
+
+		assertThat(window).extracting(ConversationContext.Message::content)
+			.containsExactly("mensagem 2", "mensagem 3", "mensagem 4", "mensagem 5");
+	}
+
+	@Test
+	void keepsOnlyMessagesWithinTokenBudget() {
+		ContextWindowPolicy policy = new ContextWindowPolicy(100, 60);
+		ConversationContext context = contextWith(10, "x".repeat(80));
+
+		// Cada mensagem estima ~25 tokens: cabem duas no orçamento de 60
+		assertThat(policy.window(context)).hasSize(2);
+	}
+
+	@Test
+	void alwaysKeepsLatestMessageEvenIfOverBudget() {
+		ContextWindowPolicy policy = new ContextWindowPolicy(10, 5);
+		ConversationContext context = contextWith(3, "x".repeat(400));
+
+		assertThat(policy.window(context)).hasSize(1);
+	}
+
+	@Test
+	void prependsSummaryAsSystemMessage() {
+		ContextWindowPolicy policy = new ContextWindowPolicy(4, 10_000);
+		ConversationContext context = contextWith(6, "mensagem");
+		context.compact(2, "resumo");
+
+		List<ConversationContext.Message> window = policy.window(context);
+
+		assertThat(window.get(0).role()).isEqualTo("system");
+		assertThat(window.get(0).content()).endsWith("resumo");
+		assertThat(window).hasSize(5);
+	}
+
+	@Test
+	void compactsToHalfWindowOnlyWhenHistoryOverflows() {
+		ContextWindowPolicy policy = new ContextWindowPolicy(4, 10_000);
+
+		assertThat(policy.overflow(contextWith(4, "mensagem"))).isZero();
+		assertThat(policy.overflow(contextWith(5, "mensagem"))).isEqualTo(3);
+	}
+
+	private static ConversationContext contextWith(int count, String content) {
+		ConversationContext context = new ConversationContext("window");
+		for (int i = 0; i < count; i++) {
+			context.addMessage(i % 2 == 0 ? "user" : "assistant", content.equals("mensagem") ? content + " " + i : content);
+		}
+		return context;
+	}
+}
@@ -0,0 +1,104 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.store.MappedConversationStore;
+import hector.avlr.livechatms.service.store.TransientConversationStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationManagerTest {
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void evictsOnlySessionsIdleLongerThanTimeout() {
+		ConversationManager manager = new ConversationManager(meterRegistry, new TransientConversationStore(), 30, 1000, 30);
+		ConversationContext idle = manager.getOrCreateSession("idle");
+		manager.getOrCreateSession("active");
+
+		manager.evictInactiveSessions(Instant.now().plus(Duration.ofMinutes(29)));
+		assertThat(manager.activeSessions()).isEqualTo(2);
+
+		manager.evictInactiveSessions(Instant.now().plus(Duration.ofMinutes(31)));
+		assertThat(manager.activeSessions()).isZero();
+		assertThat(manager.getOrCreateSession("idle")).isNotSameAs(idle);
+		assertThat(meterRegistry.counter("conversation.sessions.evicted", "reason", "idle").count()).isEqualTo(2);
+	}
+
+	@Test
+	void reindexesSessionsTouchedAfterIndexing() throws InterruptedException {
+		ConversationManager manager = new ConversationManager(meterRegistry, new TransientConversationStore(), 1, 1000, 1);
+		ConversationContext context = manager.getOrCreateSession("touched");
+		Instant created = context.getLastActivity();
+
+		Thread.sleep(1100);
+		context.addMessage("user", "Oi");
+
+		// Expirada pela criação, mas ainda ativa pela última mensagem
+		manager.evictInactiveSessions(created.plus(Duration.ofMinutes(1)).plusMillis(500));
+		assertThat(manager.getOrCreateSession("touched")).isSameAs(context);
+
+		manager.evictInactiveSessions(context.getLastActivity().plus(Duration.ofMinutes(1)).plusSeconds(1));
+		assertThat(manager.activeSessions()).isZero();
+	}
+
+	@Test
+	void evictsOldestSessionWhenCapacityIsReached() {
+		ConversationManager manager = new ConversationManager(meterRegistry, new TransientConversationStore(), 30, 2, 1);
+		manager.getOrCreateSession("first");
+		manager.getOrCreateSession("second");
+		manager.getOrCreateSession("third");
+
+		assertThat(manager.activeSessions()).isEqualTo(2);
+		assertThat(meterRegistry.counter("conversation.sessions.evicted", "reason", "capacity").count()).isEqualTo(1);
+	}
+
+	@Test
+	void evictsLeastRecentlyActiveIdleSessionWhenCapacityIsReached() throws InterruptedException {
+		ConversationManager manager = new ConversationManager(meterRegistry, new TransientConversationStore(), 30, 3, 1);
+		ConversationContext busy = manager.getOrCreateSession("busy");
+		ConversationContext active = manager.getOrCreateSession("active");
+		ConversationContext idle = manager.getOrCreateSession("idle");
+		// Sessão mais antiga, mas com um turno em andamento
+		CompletableFuture<Void> turn = new CompletableFuture<>();
+		busy.enqueueTurn(turn);
+
+		Thread.sleep(1100);
+		active.addMessage("user", "Oi");
+		manager.getOrCreateSession("new");
+
+		assertThat(manager.getOrCreateSession("busy")).isSameAs(busy);
+		assertThat(manager.getOrCreateSession("active")).isSameAs(active);
+		assertThat(manager.getOrCreateSession("new")).isNotNull();
+		assertThat(manager.activeSessions()).isEqualTo(3);
+		assertThat(meterRegistry.counter("conversation.sessions.evicted", "reason", "capacity").count()).isEqualTo(1);
+		assertThat(manager.getOrCreateSession("idle")).isNotSameAs(idle);
+		turn.complete(null);
+	}
+
+	@Test
+	void restoresEvictedSessionFromStore(@TempDir Path directory) {
+		try (MappedConversationStore store = new MappedConversationStore(directory, 1, 24, 0.5, meterRegistry)) {
+			ConversationManager manager = new ConversationManager(meterRegistry, store, 30, 1000, 30);
+			ConversationContext context = manager.getOrCreateSession("durable");
+			context.addMessage("user", "Qual o status do pedido?");
+			context.addMessage("assistant", "Em transporte.");
+
+			manager.evictInactiveSessions(Instant.now().plus(Duration.ofMinutes(31)));
+			assertThat(manager.activeSessions()).isZero();
+
+			ConversationContext restored = manager.getOrCreateSession("durable");
+			assertThat(restored).isNotSameAs(context);
+			assertThat(restored.getMessages()).containsExactlyElementsOf(context.getMessages());
+			assertThat(meterRegistry.counter("conversation.sessions.restored").count()).isEqualTo(1);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package hector.avlr.livechatms.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hector.avlr.livechatms.domain.ConversationContext;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LLMRequestEncoderTest {
+
+	final PromptSanitizer sanitizer = new PromptSanitizer();
+	final LLMRequestEncoder encoder = new LLMRequestEncoder(sanitizer);
+	final ObjectMapper objectMapper = new ObjectMapper();
+
+	final List<ConversationContext.Message> window = List.of(
+		new ConversationContext.Message("user", "Olá \"agente\"\nlinha 2 \\ ☃ 😀"),
+		new ConversationContext.Message("assistant", "Resposta com <tags> & \t tab"));
+
+	@Test
+	void openAIBodyMatchesMapBasedRequest() throws Exception {
+		JsonNode body = objectMapper.readTree(encoder.openAITemplate("gpt-3.5-turbo", 500, 0.7, true).body(window));
+
+		JsonNode expected = objectMapper.valueToTree(Map.of(
+			"model", "gpt-3.5-turbo",
+			"messages", List.of(
+				Map.of("role", "system", "content", sanitizer.buildSystemPrompt()),
+				Map.of("role", "user", "content", window.get(0).content()),
+				Map.of("role", "assistant", "content", window.get(1).content())),
+			"max_tokens", 500,
+			"temperature", 0.7,
+			"stream", true,
+			"stream_options", Map.of("include_usage", true)));
+		assertThat(body).isEqualTo(expected);
+	}
+
+	@Test
+	void geminiBodyMatchesMapBasedRequest() throws Exception {
+		JsonNode body = objectMapper.readTree(encoder.geminiTemplate(0.7, 500).body(window));
+
+		String prompt = sanitizer.buildSystemPrompt() + "\n\n"
+			+ "user: " + window.get(0).content() + "\n"
+			+ "assistant: " + window.get(1).content() + "\n";
+		JsonNode expected = objectMapper.valueToTree(Map.of(
+			"contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))),
+			"generationConfig", Map.of("temperature", 0.7, "maxOutputTokens", 500)));
+		assertThat(body).isEqualTo(expected);
+	}
+
+	@Test
+	void encodesEachMessageOnlyOnce() {
+		ConversationContext.Message message = window.get(0);
+
+		byte[] first = message.encoded(LLMRequestEncoder.OPENAI_MESSAGE);
+		encoder.openAITemplate("gpt-3.5-turbo", 500, 0.7, false).body(window);
+
+		assertThat(message.encoded(LLMRequestEncoder.OPENAI_MESSAGE)).isSameAs(first);
+	}
+
+	@Test
+	void templatesKeepByteIdenticalPrefixAcrossTurns() {
+		LLMRequestEncoder.Template complete = encoder.openAITemplate("gpt-3.5-turbo", 500, 0.7, false);
+		LLMRequestEncoder.Template stream = encoder.openAITemplate("gpt-3.5-turbo", 500, 0.7, true);
+		List<ConversationContext.Message> nextTurn = List.of(window.get(0), window.get(1),
+			new ConversationContext.Message("user", "Próxima pergunta"));
+
+		// Prefixo (modelo, system prompt, histórico) igual entre turnos e entre os modos:
+		// só o final, a partir das mensagens novas, difere (cache de prompt do provedor)
+		String first = new String(complete.body(window), StandardCharsets.UTF_8);
+		String prefix = first.substring(0, first.lastIndexOf("]"));
+		assertThat(new String(complete.body(nextTurn), StandardCharsets.UTF_8)).startsWith(prefix);
+		assertThat(new String(stream.body(window), StandardCharsets.UTF_8)).startsWith(prefix);
+		assertThat(complete.body(window))
+			.isEqualTo(encoder.openAITemplate("gpt-3.5-turbo", 500, 0.7, false).body(window));
+	}
+}
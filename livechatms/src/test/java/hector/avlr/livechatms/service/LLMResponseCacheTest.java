@@ -0,0 +1,95 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class LLMResponseCacheTest {
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final AtomicInteger upstreamCalls = new AtomicInteger();
+
+	@Test
+	void normalizesWhitespaceAndCaseInKey() {
+		LLMResponseCache cache = cache(true, 100, false);
+
+		String key = cache.key("openai/gpt", 0, window("  Qual o  horário\nde atendimento? "));
+
+		assertThat(cache.key("openai/gpt", 0, window("qual o horário de atendimento?"))).isEqualTo(key);
+		assertThat(cache.key("openai/gpt", 0.5, window("qual o horário de atendimento?"))).isNotEqualTo(key);
+		assertThat(cache.key("gemini/gpt", 0, window("qual o horário de atendimento?"))).isNotEqualTo(key);
+		assertThat(cache.key("openai/gpt", 0, window("qual o endereço?"))).isNotEqualTo(key);
+	}
+
+	@Test
+	void coalescesConcurrentMissesIntoSingleUpstreamCall() {
+		LLMResponseCache cache = cache(true, 100, false);
+
+		List<String> responses = Flux.range(0, 50)
+			.flatMap(i -> cache.get("key", () -> upstream("resposta", Duration.ofMillis(200))))
+			.collectList()
+			.block(Duration.ofSeconds(5));
+
+		assertThat(responses).hasSize(50).containsOnly("resposta");
+		assertThat(upstreamCalls).hasValue(1);
+		assertThat(cache.get("key", () -> upstream("outra", Duration.ZERO)).block()).isEqualTo("resposta");
+		assertThat(upstreamCalls).hasValue(1);
+		assertThat(meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(50);
+	}
+
+	@Test
+	void doesNotCacheFailures() {
+		LLMResponseCache cache = cache(true, 100, false);
+
+		assertThatThrownBy(() -> cache.get("key", () -> {
+			upstreamCalls.incrementAndGet();
+			return Mono.error(new IllegalStateException("falha"));
+		}).block()).hasMessageContaining("falha");
+
+		assertThat(cache.get("key", () -> upstream("resposta", Duration.ZERO)).block()).isEqualTo("resposta");
+		assertThat(upstreamCalls).hasValue(2);
+	}
+
+	@Test
+	void evictsBeyondMaximumSize() {
+		LLMResponseCache cache = cache(true, 1, false);
+
+		cache.get("a", () -> upstream("a", Duration.ZERO)).block();
+		cache.get("b", () -> upstream("b", Duration.ZERO)).block();
+
+		await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+			assertThat(meterRegistry.get("cache.evictions").functionCounter().count()).isEqualTo(1));
+	}
+
+	@Test
+	void bypassesNonZeroTemperatureUnlessAllowed() {
+		assertThat(cache(true, 100, false).isCacheable(0)).isTrue();
+		assertThat(cache(true, 100, false).isCacheable(0.7)).isFalse();
+		assertThat(cache(true, 100, true).isCacheable(0.7)).isTrue();
+		assertThat(cache(false, 100, true).isCacheable(0)).isFalse();
+	}
+
+	private LLMResponseCache cache(boolean enabled, long maxEntries, boolean allowNonZeroTemperature) {
+		return new LLMResponseCache(new PromptSanitizer(), meterRegistry, enabled, maxEntries, 60, allowNonZeroTemperature);
+	}
+
+	private Mono<String> upstream(String response, Duration latency) {
+		upstreamCalls.incrementAndGet();
+		return Mono.delay(latency).thenReturn(response);
+	}
+
+	private static List<ConversationContext.Message> window(String question) {
+		return List.of(new ConversationContext.Message("user", question));
+	}
+}
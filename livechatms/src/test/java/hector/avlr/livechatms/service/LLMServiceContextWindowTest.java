@@ -0,0 +1,60 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.support.StubLLMServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {"conversation.window.max.messages=4", "conversation.summary.enabled=true"})
+class LLMServiceContextWindowTest {
+
+	static final StubLLMServer STUB = StubLLMServer.start();
+
+	@Autowired
+	LLMService llmService;
+
+	@Autowired
+	ConversationManager conversationManager;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) {
+		registry.add("llm.provider", () -> "openai");
+		registry.add("llm.api.url.openai", () -> STUB.baseUrl() + "/openai");
+	}
+
+	@AfterAll
+	static void stopStub() {
+		STUB.close();
+	}
+
+	@Test
+	void compactsOldTurnsIntoSummaryInBackground() {
+		for (int turn = 0; turn < 3; turn++) {
+			llmService.generateResponse("window-session", "Pergunta " + turn);
+		}
+
+		ConversationContext context = conversationManager.getOrCreateSession("window-session");
+		await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+			assertThat(context.getSummary()).isEqualTo("Olá, mundo!");
+			assertThat(context.getMessages()).hasSize(2);
+		});
+		// Três turnos de conversa + uma chamada de sumarização
+		assertThat(STUB.requestCount()).isEqualTo(4);
+		// O pedido de resumo não é um turno: fica fora das distribuições de tamanho do prompt
+		assertThat(meterRegistry.get("llm.prompt.tokens").tag("scope", "history").summary().count()).isEqualTo(3);
+		assertThat(meterRegistry.get("llm.prompt.tokens").tag("scope", "window").summary().count()).isEqualTo(3);
+	}
+}
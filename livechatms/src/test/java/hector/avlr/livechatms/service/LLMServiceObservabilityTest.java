@@ -0,0 +1,143 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.support.StubLLMServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationView;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class LLMServiceObservabilityTest {
+
+	static final StubLLMServer STUB = StubLLMServer.start();
+
+	@Autowired
+	LLMService llmService;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	ParentRecorder parents;
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) {
+		registry.add("llm.provider", () -> "openai");
+		registry.add("llm.api.url.openai", () -> STUB.baseUrl() + "/openai");
+	}
+
+	@BeforeEach
+	void clearParents() {
+		parents.parentByName.clear();
+	}
+
+	@AfterEach
+	void resetStub() {
+		STUB.reset();
+	}
+
+	@AfterAll
+	static void stopStub() {
+		STUB.close();
+	}
+
+	@Test
+	void recordsTurnStagesAsChildObservations() {
+		llmService.generateResponse("observed-session", "Oi");
+
+		assertThat(parents.parentByName).containsEntry("llm.agent.session", "llm.agent.turn")
+			.containsEntry("llm.agent.sanitize", "llm.agent.turn")
+			.containsEntry("llm.provider.call", "llm.agent.turn")
+			.containsEntry("llm.agent.response", "llm.agent.turn");
+		assertThat(meterRegistry.get("llm.agent.turn").tag("mode", "complete").tag("outcome", "success").timer().count())
+			.isPositive();
+		assertThat(meterRegistry.get("llm.provider.call").tag("provider", "openai").tag("mode", "complete")
+			.tag("outcome", "success").timer().count()).isPositive();
+		assertThat(meterRegistry.find("llm.agent.turn.active").longTaskTimer()).isNull();
+	}
+
+	@Test
+	void countsTokensReportedByProvider() {
+		STUB.tokens(List.of("Olá", "!"));
+		double input = tokens("input");
+		double output = tokens("output");
+
+		llmService.generateResponse("tokens-session", "Oi");
+		llmService.streamResponse("tokens-session", "Oi de novo").blockLast();
+
+		// Stub: PROMPT_TOKENS de entrada e um token por fragmento, nos dois modos
+		assertThat(tokens("input") - input).isEqualTo(2 * StubLLMServer.PROMPT_TOKENS);
+		assertThat(tokens("output") - output).isEqualTo(2 * 2);
+	}
+
+	@Test
+	void countsFailedTurnsInsteadOfOnlyReturningFriendlyMessage() {
+		STUB.errorStatus(500);
+
+		String response = llmService.generateResponse("failing-session", "Oi");
+
+		assertThat(response).contains("ocorreu um erro");
+		assertThat(meterRegistry.get("llm.agent.turns").tag("mode", "complete").tag("outcome", "error").counter().count())
+			.isPositive();
+		assertThat(meterRegistry.get("llm.provider.call").tag("provider", "openai").tag("outcome", "error").timer().count())
+			.isPositive();
+	}
+
+	@Test
+	void exposesStompChannelExecutorQueues() {
+		for (String executor : List.of("clientInboundChannelExecutor", "clientOutboundChannelExecutor",
+			"brokerChannelExecutor")) {
+			assertThat(meterRegistry.find("executor.queued").tag("name", executor).gauge()).as(executor).isNotNull();
+		}
+	}
+
+	private double tokens(String type) {
+		return meterRegistry.get("llm.token.usage").tag("provider", "openai").tag("type", type).counter().count();
+	}
+
+	@TestConfiguration
+	static class Observations {
+
+		@Bean
+		ParentRecorder parentRecorder() {
+			return new ParentRecorder();
+		}
+	}
+
+	/**
+	 * Registra, para cada observação encerrada, o nome da observação pai.
+	 */
+	static class ParentRecorder implements ObservationHandler<Observation.Context> {
+
+		final Map<String, String> parentByName = new ConcurrentHashMap<>();
+
+		@Override
+		public void onStop(Observation.Context context) {
+			ObservationView parent = context.getParentObservation();
+			if (parent != null) {
+				parentByName.put(context.getName(), parent.getContextView().getName());
+			}
+		}
+
+		@Override
+		public boolean supportsContext(Observation.Context context) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.support.StubLLMServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class LLMServiceStreamingTest {
+
+	static final StubLLMServer STUB = StubLLMServer.start();
+
+	@Autowired
+	LLMService llmService;
+
+	@Autowired
+	ConversationManager conversationManager;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) {
+		registry.add("llm.provider", () -> "openai");
+		registry.add("llm.api.url.openai", () -> STUB.baseUrl() + "/openai");
+		registry.add("llm.api.url.gemini", () -> STUB.baseUrl() + "/gemini");
+		registry.add("llm.api.url.gemini.stream", () -> STUB.baseUrl() + "/gemini-stream");
+	}
+
+	@AfterAll
+	static void stopStub() {
+		STUB.close();
+	}
+
+	@Test
+	void streamsDeltasAndAppendsFullResponseOnce() {
+		List<String> deltas = llmService.streamResponse("stream-session", "Oi").collectList().block();
+
+		assertThat(deltas).containsExactly("Olá", ", ", "mundo", "!");
+		List<ConversationContext.Message> history =
+			conversationManager.getOrCreateSession("stream-session").getMessages();
+		assertThat(history).extracting(ConversationContext.Message::role).containsExactly("user", "assistant");
+		assertThat(history.get(1).content()).isEqualTo("Olá, mundo!");
+	}
+
+	@Test
+	void recordsTimeToFirstToken() {
+		llmService.streamResponse("ttft-session", "Oi").blockLast();
+
+		Timer ttft = meterRegistry.find("llm.time.to.first.token").tag("provider", "openai").timer();
+		assertThat(ttft).isNotNull();
+		assertThat(ttft.count()).isGreaterThanOrEqualTo(1);
+	}
+}
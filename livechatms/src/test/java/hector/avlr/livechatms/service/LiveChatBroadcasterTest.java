@@ -0,0 +1,134 @@
+package hector.avlr.livechatms.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hector.avlr.livechatms.domain.ChatOutput;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class LiveChatBroadcasterTest {
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final ObjectMapper mapper = new ObjectMapper();
+	final List<Message<?>> sent = new CopyOnWriteArrayList<>();
+	final List<LiveChatBroadcaster> broadcasters = new ArrayList<>();
+
+	@AfterEach
+	void shutdown() {
+		broadcasters.forEach(LiveChatBroadcaster::shutdown);
+	}
+
+	@Test
+	void publishesEachMessageImmediatelyWhenBatchingIsDisabled() throws IOException {
+		LiveChatBroadcaster broadcaster = broadcaster(false, 10, 32);
+
+		broadcaster.publish("/topics/livechat/sala", new ChatOutput("ana: oi"));
+		broadcaster.publish("/topics/livechat/sala", new ChatOutput("ana: tudo bem?"));
+
+		assertThat(sent).hasSize(2);
+		assertThat(payload(sent.get(0)).get("content").asText()).isEqualTo("ana: oi");
+	}
+
+	@Test
+	void flushesPartialBatchWhenWindowElapses() throws IOException {
+		LiveChatBroadcaster broadcaster = broadcaster(true, 20, 32);
+
+		broadcaster.publish("/topics/livechat/a", new ChatOutput("1"));
+		broadcaster.publish("/topics/livechat/a", new ChatOutput("2"));
+		broadcaster.publish("/topics/livechat/b", new ChatOutput("3"));
+		assertThat(sent).isEmpty();
+
+		await().atMost(Duration.ofSeconds(2)).until(() -> sent.size() == 2);
+		Map<String, List<String>> byDestination = new ConcurrentHashMap<>();
+		for (Message<?> message : sent) {
+			byDestination.put(SimpMessageHeaderAccessor.getDestination(message.getHeaders()), contents(message));
+		}
+		assertThat(byDestination).containsEntry("/topics/livechat/a", List.of("1", "2"))
+			.containsEntry("/topics/livechat/b", List.of("3"));
+		assertThat(meterRegistry.counter("livechat.batch.flushed", "reason", "time").count()).isEqualTo(2);
+	}
+
+	@Test
+	void closesFullBatchesAndKeepsPublishOrderUnderConcurrency() throws Exception {
+		LiveChatBroadcaster broadcaster = broadcaster(true, 50, 32);
+		int threads = 8;
+		int perThread = 500;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> publishers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int publisher = t;
+			Thread thread = new Thread(() -> {
+				await().until(() -> start.getCount() == 0);
+				for (int i = 0; i < perThread; i++) {
+					broadcaster.publish("/topics/livechat/sala", new ChatOutput(publisher + ":" + i));
+				}
+			});
+			thread.start();
+			publishers.add(thread);
+		}
+		start.countDown();
+		for (Thread publisher : publishers) {
+			publisher.join();
+		}
+
+		await().atMost(Duration.ofSeconds(2)).until(() -> totalMessages() == threads * perThread);
+		int[] lastSeen = new int[threads];
+		Arrays.fill(lastSeen, -1);
+		for (Message<?> message : sent) {
+			List<String> contents = contents(message);
+			assertThat(contents).hasSizeLessThanOrEqualTo(32);
+			for (String content : contents) {
+				String[] parts = content.split(":");
+				int publisher = Integer.parseInt(parts[0]);
+				int sequence = Integer.parseInt(parts[1]);
+				assertThat(sequence).isEqualTo(lastSeen[publisher] + 1);
+				lastSeen[publisher] = sequence;
+			}
+		}
+		assertThat(meterRegistry.counter("livechat.batch.flushed", "reason", "size").count()).isPositive();
+	}
+
+	private int totalMessages() throws IOException {
+		int total = 0;
+		for (Message<?> message : sent) {
+			total += contents(message).size();
+		}
+		return total;
+	}
+
+	private List<String> contents(Message<?> message) throws IOException {
+		List<String> contents = new ArrayList<>();
+		payload(message).get("messages").forEach(node -> contents.add(node.get("content").asText()));
+		return contents;
+	}
+
+	private JsonNode payload(Message<?> message) throws IOException {
+		return mapper.readTree((byte[]) message.getPayload());
+	}
+
+	private LiveChatBroadcaster broadcaster(boolean enabled, long windowMillis, int maxMessages) {
+		SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+		template.setMessageConverter(new MappingJackson2MessageConverter());
+		LiveChatBroadcaster broadcaster = new LiveChatBroadcaster(template, meterRegistry, enabled, windowMillis, maxMessages);
+		broadcasters.add(broadcaster);
+		return broadcaster;
+	}
+}
@@ -0,0 +1,65 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.support.LegacyPromptSanitizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptSanitizerTest {
+
+	// Fragmentos que exercitam escape, filtros antigos, bordas de trim e limites de tamanho
+	static final List<String> FRAGMENTS = List.of(
+		"a", "Z", "0", "_", " ", "  ", "\t", "\n", "\r\n", "\u0000", "\u001f", "\u0085", "\u00a0", "\u2003", "\u2028",
+		"<", ">", "&", "\"", "'", ";", "--", "-", "OR", "or", "AND", "and", "x", "1=1",
+		"<script>", "</script>", "<SCRIPT src=x>", "alert(1)", "' OR '1'='1", "'; DROP TABLE users; --",
+		"Olá", "ação", "ÿ", "Œ", "€", "—", "…", "Ω", "π", "©", "😀", "\ud83d", "\ude00",
+		"Qual é o status do meu pedido?", "&amp;", "&#39;");
+
+	final PromptSanitizer sanitizer = new PromptSanitizer();
+
+	@Test
+	void matchesLegacyImplementationOnRandomInputs() {
+		Random random = new Random(20240610);
+		for (int sample = 0; sample < 20_000; sample++) {
+			String input = randomInput(random, sample % 100 == 0 ? 1200 : 40);
+			assertThat(sanitizer.sanitize(input))
+				.as("entrada: %s", input)
+				.isEqualTo(LegacyPromptSanitizer.sanitize(input));
+		}
+	}
+
+	@Test
+	void matchesLegacyImplementationOnEdgeCases() {
+		List<String> inputs = List.of("", "   ", " ", "\u0001", " a ", "x".repeat(2500),
+			" " + "<".repeat(2500), "'" + "a OR b ".repeat(400) + "'", "😀".repeat(1001));
+		for (String input : inputs) {
+			assertThat(sanitizer.sanitize(input)).isEqualTo(LegacyPromptSanitizer.sanitize(input));
+		}
+		assertThat(sanitizer.sanitize(null)).isEmpty();
+	}
+
+	@Test
+	void returnsSameInstanceWhenNothingToEscape() {
+		String input = "Qual o horario de atendimento?";
+
+		assertThat(sanitizer.sanitize(input)).isSameAs(input);
+	}
+
+	@Test
+	void escapesMarkupAndQuotes() {
+		assertThat(sanitizer.sanitize(" <script>alert('x')</script> "))
+			.isEqualTo("&lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt;");
+	}
+
+	private static String randomInput(Random random, int maxFragments) {
+		StringBuilder input = new StringBuilder();
+		int fragments = random.nextInt(maxFragments + 1);
+		for (int i = 0; i < fragments; i++) {
+			input.append(FRAGMENTS.get(random.nextInt(FRAGMENTS.size())));
+		}
+		return input.toString();
+	}
+}
@@ -0,0 +1,144 @@
+package hector.avlr.livechatms.service;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.support.StubLLMServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Dispara muitos turnos concorrentes na mesma sessão (reativos, bloqueantes e streaming)
+ * e verifica que o histórico permanece consistente: cada pergunta seguida da sua resposta.
+ * Verifica também que sessões diferentes não se bloqueiam entre si.
+ */
+@SpringBootTest(properties = {"conversation.window.max.messages=10000",
+	"conversation.window.max.tokens=1000000", "conversation.summary.enabled=false"})
+class SessionConcurrencyStressTest {
+
+	static final StubLLMServer STUB = StubLLMServer.start();
+
+	@Autowired
+	LLMService llmService;
+
+	@Autowired
+	ConversationManager conversationManager;
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) {
+		registry.add("llm.provider", () -> "openai");
+		registry.add("llm.api.url.openai", () -> STUB.baseUrl() + "/openai");
+	}
+
+	@BeforeEach
+	void resetStub() {
+		STUB.reset();
+		STUB.echo(true).latency(Duration.ofMillis(5));
+	}
+
+	@AfterAll
+	static void stopStub() {
+		STUB.close();
+	}
+
+	@Test
+	void concurrentTurnsOnSameSessionKeepHistoryConsistent() {
+		int turns = 150;
+		String sessionId = "stress-session";
+
+		Flux.range(0, turns)
+			.flatMap(turn -> turn(sessionId, turn).subscribeOn(Schedulers.boundedElastic()), turns)
+			.blockLast(Duration.ofSeconds(60));
+
+		ConversationContext.History history = conversationManager.getOrCreateSession(sessionId).getMessages();
+		assertThat(history).hasSize(turns * 2);
+		Set<String> questions = new HashSet<>();
+		for (int i = 0; i < history.size(); i += 2) {
+			ConversationContext.Message question = history.get(i);
+			ConversationContext.Message answer = history.get(i + 1);
+			assertThat(question.role()).isEqualTo("user");
+			assertThat(answer.role()).isEqualTo("assistant");
+			// Modo streaming responde com tokens fixos; os demais ecoam a pergunta
+			if (!question.content().startsWith("stream")) {
+				assertThat(answer.content()).isEqualTo(question.content());
+			}
+			questions.add(question.content());
+		}
+		assertThat(questions).hasSize(turns);
+		assertThat(STUB.requestCount()).isEqualTo(turns);
+		// Uma sessão nunca tem mais de uma chamada completa ao provedor em andamento
+		assertThat(STUB.peakConcurrentRequests()).isEqualTo(1);
+	}
+
+	@Test
+	void differentSessionsRunInParallel() {
+		int sessions = 20;
+		int turnsPerSession = 3;
+		STUB.latency(Duration.ofMillis(200));
+
+		long start = System.nanoTime();
+		Flux.range(0, sessions)
+			.flatMap(session -> Flux.range(0, turnsPerSession)
+				.flatMap(turn -> llmService.generateResponseAsync("parallel-" + session, "mensagem " + turn)),
+				sessions)
+			.blockLast(Duration.ofSeconds(30));
+		Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+		// Em série por sessão e em paralelo entre sessões: ~3 x 200ms, e não 60 x 200ms
+		assertThat(elapsed).isLessThan(Duration.ofMillis(200L * sessions * turnsPerSession / 4));
+		assertThat(STUB.peakConcurrentRequests()).isGreaterThan(1);
+		for (int session = 0; session < sessions; session++) {
+			List<ConversationContext.Message> history =
+				conversationManager.getOrCreateSession("parallel-" + session).getMessages();
+			assertThat(history).hasSize(turnsPerSession * 2);
+		}
+	}
+
+	@Test
+	void cancelledQueuedTurnDoesNotLetNextTurnOverlap() throws Exception {
+		String sessionId = "cancel-session";
+		STUB.latency(Duration.ofMillis(500));
+
+		Mono<String> first = llmService.generateResponseAsync(sessionId, "turno 1").cache();
+		first.subscribe();
+		await().atMost(Duration.ofSeconds(5)).until(() -> STUB.inFlightRequests() == 1);
+
+		// Turno 2 cancelado enquanto aguarda o turno 1 (cliente desconectou)
+		Disposable second = llmService.generateResponseAsync(sessionId, "turno 2").subscribe();
+		Mono<String> third = llmService.generateResponseAsync(sessionId, "turno 3").cache();
+		third.subscribe();
+		second.dispose();
+
+		third.block(Duration.ofSeconds(10));
+		first.block(Duration.ofSeconds(10));
+		// O turno 3 só começa depois do turno 1: nunca duas chamadas da sessão ao mesmo tempo
+		assertThat(STUB.peakConcurrentRequests()).isEqualTo(1);
+		assertThat(STUB.requestCount()).isEqualTo(2);
+		assertThat(conversationManager.getOrCreateSession(sessionId).getMessages())
+			.extracting(ConversationContext.Message::content)
+			.containsExactly("turno 1", "turno 1", "turno 3", "turno 3");
+	}
+
+	private Mono<?> turn(String sessionId, int turn) {
+		return switch (turn % 3) {
+			case 0 -> llmService.generateResponseAsync(sessionId, "async " + turn);
+			case 1 -> Mono.fromCallable(() -> llmService.generateResponse(sessionId, "blocking " + turn));
+			default -> llmService.streamResponse(sessionId, "stream " + turn).then();
+		};
+	}
+}
@@ -0,0 +1,98 @@
+package hector.avlr.livechatms.service.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+	static final long TYPICAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	// Limite inicial 4, entre 2 e 6; latência acima de 2x a típica indica sobrecarga; redução de 50%
+	final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(meterRegistry, 4, 2, 6, 2.0, 0.5);
+
+	@Test
+	void rejectsAboveLimitUntilReleased() {
+		for (int i = 0; i < 4; i++) {
+			assertThat(limiter.tryAcquire()).isTrue();
+		}
+
+		assertThat(limiter.tryAcquire()).isFalse();
+		limiter.release();
+		assertThat(limiter.tryAcquire()).isTrue();
+		assertThat(meterRegistry.get("agent.admission.in.flight").gauge().value()).isEqualTo(4);
+	}
+
+	@Test
+	void growsWhileBusyAndLatencyIsNormal() {
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire();
+		}
+
+		for (int i = 0; i < 5; i++) {
+			limiter.onSample("complete", TYPICAL, 1, false);
+		}
+
+		assertThat(limiter.limit()).isEqualTo(6);
+		assertThat(meterRegistry.get("agent.admission.limit").gauge().value()).isEqualTo(6);
+	}
+
+	@Test
+	void keepsLimitWhenMostlyIdle() {
+		limiter.tryAcquire();
+
+		limiter.onSample("complete", TYPICAL, 1, false);
+
+		assertThat(limiter.limit()).isEqualTo(4);
+	}
+
+	@Test
+	void backsOffOnOverloadDownToMinimum() {
+		limiter.onSample("complete", TYPICAL, 1, true);
+		assertThat(limiter.limit()).isEqualTo(2);
+
+		limiter.onSample("complete", TYPICAL, 1, true);
+		assertThat(limiter.limit()).isEqualTo(2);
+	}
+
+	@Test
+	void treatsLatencyAboveToleranceAsOverload() {
+		limiter.onSample("complete", TYPICAL, 1, false);
+		// Outro modo tem sua própria latência típica
+		limiter.onSample("stream", TYPICAL * 3, 1, false);
+		assertThat(limiter.limit()).isEqualTo(4);
+
+		limiter.onSample("complete", TYPICAL * 3, 1, false);
+
+		assertThat(limiter.limit()).isEqualTo(2);
+	}
+
+	@Test
+	void longAnswersDoNotCollapseTheLimit() {
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire();
+		}
+
+		// Mesma velocidade do provedor (300 ms fixos + 20 ms por token), respostas curtas e longas
+		for (int i = 0; i < 20; i++) {
+			int tokens = i % 2 == 0 ? 30 : 600;
+			limiter.onSample("complete", TimeUnit.MILLISECONDS.toNanos(300 + 20L * tokens), tokens, false);
+		}
+
+		assertThat(limiter.limit()).isEqualTo(6);
+	}
+
+	@Test
+	void slowerTokensStillCountAsOverload() {
+		limiter.onSample("complete", TimeUnit.MILLISECONDS.toNanos(2_000), 100, false);
+
+		// Resposta curta com o triplo da latência por token
+		limiter.onSample("complete", TimeUnit.MILLISECONDS.toNanos(600), 10, false);
+
+		assertThat(limiter.limit()).isEqualTo(2);
+	}
+}
@@ -0,0 +1,53 @@
+package hector.avlr.livechatms.service.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientRateLimiterTest {
+
+	final AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+	// 2 requisições por segundo, rajada de 3
+	final ClientRateLimiter limiter = new ClientRateLimiter(2, 3, 1000, now::get);
+
+	@Test
+	void acceptsBurstThenRejectsWithWaitTime() {
+		for (int i = 0; i < 3; i++) {
+			assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		}
+
+		assertThat(limiter.tryAcquire("10.0.0.1")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+	}
+
+	@Test
+	void refillsAtConfiguredRate() {
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire("10.0.0.1");
+		}
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+		assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		assertThat(limiter.tryAcquire("10.0.0.1")).isPositive();
+
+		// Após a rajada inteira sem uso, o balde volta a estar cheio (sem acumular além dela)
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		for (int i = 0; i < 3; i++) {
+			assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+		}
+		assertThat(limiter.tryAcquire("10.0.0.1")).isPositive();
+	}
+
+	@Test
+	void limitsEachClientIndependently() {
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire("10.0.0.1");
+		}
+
+		assertThat(limiter.tryAcquire("10.0.0.1")).isPositive();
+		assertThat(limiter.tryAcquire("10.0.0.2")).isZero();
+		assertThat(limiter.clients()).isEqualTo(2);
+	}
+}
@@ -0,0 +1,89 @@
+package hector.avlr.livechatms.service.provider;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+	final AtomicLong clock = new AtomicLong();
+	final CircuitBreaker breaker = new CircuitBreaker(3, 1_000, clock::get);
+
+	@Test
+	void opensAfterConsecutiveFailuresAndRejectsUntilIntervalElapses() {
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onSuccess();
+		breaker.onFailure();
+		breaker.onFailure();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+		breaker.onFailure();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+
+		clock.set(999);
+		assertThat(breaker.isCallPermitted()).isFalse();
+		clock.set(1_000);
+		assertThat(breaker.isCallPermitted()).isTrue();
+	}
+
+	@Test
+	void halfOpenAllowsSingleTrialThatClosesOrReopens() {
+		for (int i = 0; i < 3; i++) {
+			breaker.onFailure();
+		}
+		clock.set(1_000);
+
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+
+		// Teste cancelado (ex.: perdeu o hedge): outra chamada pode testar
+		breaker.onCancel();
+		assertThat(breaker.tryAcquire()).isTrue();
+		breaker.onFailure();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+		clock.set(2_000);
+		assertThat(breaker.tryAcquire()).isTrue();
+		breaker.onSuccess();
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.tryAcquire()).isTrue();
+	}
+
+	@Test
+	void concurrentCallersGetASingleHalfOpenTrial() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			breaker.onFailure();
+		}
+		clock.set(1_000);
+		int callers = 8;
+		CyclicBarrier start = new CyclicBarrier(callers);
+		AtomicInteger admitted = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		for (int i = 0; i < callers; i++) {
+			executor.submit(() -> {
+				start.await();
+				if (breaker.tryAcquire()) {
+					admitted.incrementAndGet();
+				}
+				return null;
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(admitted).hasValue(1);
+		assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+	}
+}
@@ -0,0 +1,141 @@
+package hector.avlr.livechatms.service.provider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hector.avlr.livechatms.domain.ConversationContext;
+import hector.avlr.livechatms.service.LLMRequestEncoder;
+import hector.avlr.livechatms.service.PromptSanitizer;
+import hector.avlr.livechatms.service.admission.AdaptiveConcurrencyLimiter;
+import hector.avlr.livechatms.support.StubLLMServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Roteamento entre dois provedores reais (OpenAI e Gemini) apontados para stubs locais
+ * que injetam latência e erros.
+ */
+class LLMProviderRouterTest {
+
+	static final StubLLMServer OPENAI = StubLLMServer.start();
+	static final StubLLMServer GEMINI = StubLLMServer.start();
+	static final List<ConversationContext.Message> WINDOW = List.of(new ConversationContext.Message("user", "Oi"));
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	final List<LLMProvider> providers = providers(meterRegistry);
+
+	@AfterEach
+	void resetStubs() {
+		OPENAI.reset();
+		GEMINI.reset();
+	}
+
+	@AfterAll
+	static void stopStubs() {
+		OPENAI.close();
+		GEMINI.close();
+	}
+
+	@Test
+	void routesByWeight() {
+		GEMINI.tokens(List.of("gemini"));
+		LLMProviderRouter router = router("openai:3,gemini:1", false);
+
+		for (int i = 0; i < 400; i++) {
+			router.complete(WINDOW).block();
+		}
+
+		// Esperado 300/100
+		assertThat(OPENAI.requestCount()).isBetween(240, 360);
+		assertThat(GEMINI.requestCount()).isEqualTo(400 - OPENAI.requestCount());
+	}
+
+	@Test
+	void identityCoversEveryRouteRegardlessOfWeights() {
+		// Qualquer rota pode responder (sorteio, failover, hedge): todas entram na identidade
+		assertThat(router("openai:3,gemini:1", false).identity()).isEqualTo("gemini/gemini,openai/gpt");
+		assertThat(router("gemini:3,openai:0", false).identity()).isEqualTo("gemini/gemini,openai/gpt");
+		assertThat(router("", false).identity()).isEqualTo("openai/gpt");
+	}
+
+	@Test
+	void failsOverToAlternativeWhenProviderErrors() {
+		OPENAI.errorStatus(503);
+		GEMINI.tokens(List.of("resposta ", "do gemini"));
+		LLMProviderRouter router = router("openai:1,gemini:0", false);
+
+		assertThat(router.complete(WINDOW).block()).isEqualTo("resposta do gemini");
+		assertThat(router.stream(WINDOW).collectList().block()).containsExactly("resposta ", "do gemini");
+		assertThat(meterRegistry.get("llm.router.failover").counter().count()).isEqualTo(2);
+	}
+
+	@Test
+	void hedgesToAlternativeWhenProviderIsSlow() {
+		OPENAI.latency(Duration.ofSeconds(2));
+		GEMINI.tokens(List.of("rápido"));
+		LLMProviderRouter router = router("openai:1,gemini:0", true);
+
+		long start = System.nanoTime();
+		String response = router.complete(WINDOW).block();
+		long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+		assertThat(response).isEqualTo("rápido");
+		assertThat(elapsedMillis).isLessThan(1000);
+		assertThat(meterRegistry.get("llm.router.hedged").counter().count()).isEqualTo(1);
+		assertThat(router.stream(WINDOW).collectList().block()).containsExactly("rápido");
+	}
+
+	@Test
+	void openCircuitSkipsProviderWithoutCallingIt() {
+		OPENAI.errorStatus(500);
+		LLMProviderRouter router = router("openai:1,gemini:0", false);
+
+		for (int i = 0; i < 3; i++) {
+			router.complete(WINDOW).block();
+		}
+		assertThat(OPENAI.requestCount()).isEqualTo(3);
+		assertThat(meterRegistry.get("llm.provider.circuit.state").tag("provider", "openai").gauge().value())
+			.isEqualTo(CircuitBreaker.State.OPEN.ordinal());
+
+		assertThat(router.complete(WINDOW).block()).isEqualTo("Olá, mundo!");
+		assertThat(OPENAI.requestCount()).isEqualTo(3);
+	}
+
+	@Test
+	void failsFastWhenEveryCircuitIsOpen() {
+		OPENAI.errorStatus(500);
+		LLMProviderRouter router = router("", false);
+
+		for (int i = 0; i < 3; i++) {
+			assertThatThrownBy(() -> router.complete(WINDOW).block()).isNotNull();
+		}
+		assertThatThrownBy(() -> router.complete(WINDOW).block())
+			.hasMessageContaining("Nenhum provedor LLM disponível");
+		assertThat(OPENAI.requestCount()).isEqualTo(3);
+	}
+
+	private LLMProviderRouter router(String weights, boolean hedge) {
+		// Hedge após 100 ms enquanto não há amostras de latência; circuito abre após 3 falhas
+		return new LLMProviderRouter(providers, meterRegistry, ObservationRegistry.NOOP,
+			new AdaptiveConcurrencyLimiter(meterRegistry, 100, 10, 1000, 2.0, 0.9), "openai", weights, hedge, 100, 50, 3, 60);
+	}
+
+	private static List<LLMProvider> providers(MeterRegistry meterRegistry) {
+		WebClient webClient = WebClient.create();
+		ObjectMapper objectMapper = new ObjectMapper();
+		LLMRequestEncoder encoder = new LLMRequestEncoder(new PromptSanitizer());
+		return List.of(
+			new OpenAIProvider(webClient, encoder, objectMapper, meterRegistry, OPENAI.baseUrl() + "/openai", "key", "gpt", 100, 0.7, 5),
+			new GeminiProvider(webClient, encoder, objectMapper, meterRegistry, GEMINI.baseUrl() + "/gemini",
+				GEMINI.baseUrl() + "/gemini-stream", "key", "gemini", 100, 0.7, 5));
+	}
+}
@@ -0,0 +1,62 @@
+package hector.avlr.livechatms.service.provider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProviderResponseTest {
+
+	final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void decodesOpenAICompletionSkippingUnusedFields() throws Exception {
+		OpenAIResponse response = objectMapper.readValue("""
+			{"id":"chatcmpl-1","object":"chat.completion","created":1700000000,"model":"gpt-3.5-turbo",
+			 "choices":[{"index":0,"message":{"role":"assistant","content":"Olá!","refusal":null},
+			             "logprobs":null,"finish_reason":"stop"}],
+			 "usage":{"prompt_tokens":12,"completion_tokens":3,"total_tokens":15,
+			          "prompt_tokens_details":{"cached_tokens":0}},
+			 "system_fingerprint":"fp_1"}
+			""", OpenAIResponse.class);
+
+		assertThat(response.text()).isEqualTo("Olá!");
+		assertThat(response.deltaText()).isNull();
+	}
+
+	@Test
+	void decodesOpenAIStreamChunks() throws Exception {
+		OpenAIResponse delta = objectMapper.readValue("""
+			{"id":"c","choices":[{"index":0,"delta":{"content":"mun"},"finish_reason":null}]}
+			""", OpenAIResponse.class);
+		OpenAIResponse last = objectMapper.readValue("""
+			{"id":"c","choices":[{"index":0,"delta":{},"finish_reason":"stop"}]}
+			""", OpenAIResponse.class);
+
+		assertThat(delta.deltaText()).isEqualTo("mun");
+		assertThat(last.deltaText()).isNull();
+	}
+
+	@Test
+	void decodesGeminiResponseSkippingUnusedFields() throws Exception {
+		GeminiResponse response = objectMapper.readValue("""
+			{"candidates":[{"content":{"parts":[{"text":"Olá!"}],"role":"model"},"finishReason":"STOP",
+			                "safetyRatings":[{"category":"HARM_CATEGORY_HARASSMENT","probability":"NEGLIGIBLE"}]}],
+			 "usageMetadata":{"promptTokenCount":12,"candidatesTokenCount":3,"totalTokenCount":15},
+			 "modelVersion":"gemini-pro"}
+			""", GeminiResponse.class);
+
+		assertThat(response.text()).isEqualTo("Olá!");
+	}
+
+	@Test
+	void missingTextYieldsNull() throws Exception {
+		assertThat(objectMapper.readValue("{}", OpenAIResponse.class).text()).isNull();
+		assertThat(objectMapper.readValue("{\"choices\":[]}", OpenAIResponse.class).text()).isNull();
+		assertThat(objectMapper.readValue("{\"choices\":[{\"message\":{}}]}", OpenAIResponse.class).text()).isNull();
+		// Resposta bloqueada por segurança: candidato sem conteúdo
+		assertThat(objectMapper.readValue("{\"candidates\":[{\"finishReason\":\"SAFETY\"}]}", GeminiResponse.class)
+			.text()).isNull();
+		assertThat(objectMapper.readValue("{\"candidates\":[{\"content\":{}}]}", GeminiResponse.class).text()).isNull();
+	}
+}
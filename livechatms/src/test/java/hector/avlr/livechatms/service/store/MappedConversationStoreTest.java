@@ -0,0 +1,169 @@
+package hector.avlr.livechatms.service.store;
+
+import hector.avlr.livechatms.domain.ConversationContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedConversationStoreTest {
+
+	@TempDir
+	Path directory;
+
+	final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	MappedConversationStore store;
+
+	@AfterEach
+	void closeStore() {
+		store.close();
+	}
+
+	@Test
+	void restoresHistoryAndSummaryAfterRestart() {
+		store = open();
+		ConversationContext context = new ConversationContext("restart", store);
+		context.addMessage("user", "Olá");
+		context.addMessage("assistant", "Oi! Como posso ajudar?");
+		context.addMessage("user", "Qual o prazo de entrega?");
+		context.compact(2, "Cliente cumprimentou o agente.");
+		context.addMessage("assistant", "Até 5 dias úteis.");
+		store.close();
+
+		store = open();
+		ConversationStore.Snapshot snapshot = store.load("restart");
+
+		assertThat(snapshot.messages()).containsExactlyElementsOf(context.getMessages());
+		assertThat(snapshot.summary()).isEqualTo(context.getMessages().summary());
+		assertThat(store.load("unknown")).isNull();
+	}
+
+	@Test
+	void dropsTornRecordAndKeepsWriting() throws IOException {
+		store = open();
+		ConversationContext context = new ConversationContext("torn", store);
+		context.addMessage("user", "primeira");
+		context.addMessage("user", "segunda");
+		store.close();
+		corruptLastRecord(segments().get(0));
+
+		store = open();
+		assertThat(store.load("torn").messages()).extracting(ConversationContext.Message::content)
+			.containsExactly("primeira");
+
+		ConversationContext.restore("torn", store, store.load("torn").messages(), null).addMessage("user", "terceira");
+		store.close();
+		store = open();
+		assertThat(store.load("torn").messages()).extracting(ConversationContext.Message::content)
+			.containsExactly("primeira", "terceira");
+	}
+
+	@Test
+	void compactsOldSegmentsKeepingLiveSessions() throws IOException {
+		store = open();
+		ConversationContext kept = new ConversationContext("kept", store);
+		kept.addMessage("user", "mensagem que deve sobreviver");
+		// Cada compactação torna os registros anteriores da sessão obsoletos
+		ConversationContext churn = new ConversationContext("churn", store);
+		String large = "x".repeat(16 * 1024);
+		for (int i = 0; i < 200; i++) {
+			churn.addMessage("user", large + i);
+			churn.compact(1, "resumo " + i);
+		}
+		store.flush();
+		int before = segments().size();
+
+		store.maintain(System.currentTimeMillis());
+
+		assertThat(before).isGreaterThan(3);
+		assertThat(segments()).hasSizeLessThan(before);
+		assertThat(meterRegistry.get("conversation.store.compactions").counter().count()).isPositive();
+		store.close();
+		store = open();
+		assertThat(store.load("kept").messages()).containsExactlyElementsOf(kept.getMessages());
+		assertThat(store.load("churn").summary()).isEqualTo(churn.getMessages().summary());
+	}
+
+	@Test
+	void keepsPerSessionOrderUnderConcurrentAppends() throws InterruptedException {
+		store = open();
+		int threads = 8;
+		int messages = 500;
+		List<ConversationContext> contexts = new ArrayList<>();
+		List<Thread> writers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			ConversationContext context = new ConversationContext("concurrent-" + t, store);
+			contexts.add(context);
+			writers.add(new Thread(() -> {
+				for (int i = 0; i < messages; i++) {
+					context.addMessage("user", Integer.toString(i));
+				}
+			}));
+		}
+		writers.forEach(Thread::start);
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		store.close();
+
+		store = open();
+		assertThat(store.sessions()).isEqualTo(threads);
+		for (ConversationContext context : contexts) {
+			assertThat(store.load(context.getSessionId()).messages()).containsExactlyElementsOf(context.getMessages());
+		}
+	}
+
+	@Test
+	void removesSessionsPastRetention() {
+		store = open();
+		new ConversationContext("expired", store).addMessage("user", "Oi");
+
+		store.maintain(System.currentTimeMillis() + Duration.ofHours(2).toMillis());
+		assertThat(store.load("expired")).isNull();
+
+		store.close();
+		store = open();
+		assertThat(store.load("expired")).isNull();
+		assertThat(store.sessions()).isZero();
+	}
+
+	private MappedConversationStore open() {
+		// Segmentos de 1 MB, retenção de 1 hora, compacta abaixo de 50% de dados vivos
+		return new MappedConversationStore(directory, 1, 1, 0.5, meterRegistry);
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().toList();
+		}
+	}
+
+	/**
+	 * Altera um byte do último registro gravado, como uma escrita interrompida.
+	 */
+	private static void corruptLastRecord(Path segment) throws IOException {
+		byte[] bytes = Files.readAllBytes(segment);
+		int end = bytes.length - 1;
+		while (bytes[end] == 0) {
+			end--;
+		}
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			// Último byte do conteúdo, antes do CRC
+			channel.write(ByteBuffer.wrap(new byte[] {(byte) ~bytes[end - 4]}), end - 4);
+		}
+	}
+}
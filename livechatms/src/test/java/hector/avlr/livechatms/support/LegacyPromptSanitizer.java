@@ -0,0 +1,45 @@
+package hector.avlr.livechatms.support;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.regex.Pattern;
+
+/**
+ * Implementação original de PromptSanitizer.sanitize (escape + duas passadas de regex),
+ * mantida como referência para o teste de equivalência e para o benchmark.
+ */
+public final class LegacyPromptSanitizer {
+
+    private static final Pattern SCRIPT_PATTERN = Pattern.compile(
+        "<script[^>]*>.*?</script>",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL
+    );
+
+    private static final Pattern SQL_INJECTION_PATTERN = Pattern.compile(
+        "('.*(--|;|\\bOR\\b|\\bAND\\b).*')",
+        Pattern.CASE_INSENSITIVE
+    );
+
+    private static final int MAX_LENGTH = 2000;
+
+    private LegacyPromptSanitizer() {
+    }
+
+    public static String sanitize(String input) {
+        if (input == null || input.isBlank()) {
+            return "";
+        }
+
+        String sanitized = input.trim();
+
+        if (sanitized.length() > MAX_LENGTH) {
+            sanitized = sanitized.substring(0, MAX_LENGTH);
+        }
+
+        sanitized = HtmlUtils.htmlEscape(sanitized);
+        sanitized = SCRIPT_PATTERN.matcher(sanitized).replaceAll("");
+        sanitized = SQL_INJECTION_PATTERN.matcher(sanitized).replaceAll("");
+
+        return sanitized;
+    }
+}
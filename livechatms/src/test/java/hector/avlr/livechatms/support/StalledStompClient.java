@@ -0,0 +1,84 @@
+package hector.avlr.livechatms.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cliente STOMP sobre WebSocket que se inscreve em um destino e para de ler o socket,
+ * simulando uma aba travada ou uma rede congestionada: o buffer TCP enche e as escritas
+ * do servidor para esta conexão bloqueiam.
+ */
+public final class StalledStompClient implements AutoCloseable {
+
+    private static final byte[] MASK = {0x12, 0x34, 0x56, 0x78};
+
+    private final Socket socket;
+
+    private StalledStompClient(Socket socket) {
+        this.socket = socket;
+    }
+
+    /**
+     * Conecta ao endpoint STOMP, inscreve-se no destino e deixa de ler.
+     */
+    public static StalledStompClient subscribe(int port, String path, String destination) throws IOException {
+        Socket socket = new Socket();
+        // Buffer de recepção mínimo: o socket enche com poucas mensagens
+        socket.setReceiveBufferSize(1024);
+        socket.connect(new InetSocketAddress("localhost", port));
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + path + " HTTP/1.1\r\n"
+            + "Host: localhost:" + port + "\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+            + "Sec-WebSocket-Version: 13\r\n"
+            + "Sec-WebSocket-Protocol: v12.stomp\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        awaitHandshake(socket.getInputStream());
+
+        writeFrame(out, "CONNECT\naccept-version:1.2\nhost:localhost\nheart-beat:0,0\n\n\0");
+        writeFrame(out, "SUBSCRIBE\nid:0\ndestination:" + destination + "\n\n\0");
+        return new StalledStompClient(socket);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private static void awaitHandshake(InputStream in) throws IOException {
+        // Lê somente a resposta HTTP (até a linha em branco)
+        int matched = 0;
+        byte[] end = {'\r', '\n', '\r', '\n'};
+        while (matched < end.length) {
+            int next = in.read();
+            if (next < 0) {
+                throw new IOException("Conexão encerrada durante o handshake");
+            }
+            matched = next == end[matched] ? matched + 1 : (next == '\r' ? 1 : 0);
+        }
+    }
+
+    // Frame de texto mascarado (obrigatório para frames do cliente)
+    private static void writeFrame(OutputStream out, String text) throws IOException {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        out.write(0x81);
+        if (payload.length < 126) {
+            out.write(0x80 | payload.length);
+        } else {
+            out.write(0x80 | 126);
+            out.write(payload.length >>> 8);
+            out.write(payload.length & 0xFF);
+        }
+        out.write(MASK);
+        for (int i = 0; i < payload.length; i++) {
+            out.write(payload[i] ^ MASK[i % 4]);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,239 @@
+package hector.avlr.livechatms.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.resources.LoopResources;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servidor HTTP local que simula as APIs da OpenAI e do Gemini em testes.
+ * Responde de forma não-bloqueante, com latência e tokens configuráveis,
+ * nos modos completo (JSON) e streaming (SSE).
+ * No modo eco, a resposta OpenAI completa repete a última mensagem do usuário.
+ * Com um status de erro configurado, todas as requisições falham com esse status.
+ * As respostas informam o uso de tokens: PROMPT_TOKENS de entrada e um token por fragmento.
+ */
+public final class StubLLMServer implements AutoCloseable {
+
+    private final DisposableServer server;
+    // Event loop próprio: o stub sobrevive ao encerramento dos recursos globais do Reactor Netty
+    private final LoopResources loops = LoopResources.create("stub-llm");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Tokens do prompt informados no uso de tokens de todas as respostas
+    public static final int PROMPT_TOKENS = 12;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private volatile boolean echo;
+    private volatile int errorStatus;
+    private volatile String lastAcceptEncoding;
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Duration tokenInterval = Duration.ZERO;
+    private volatile List<String> tokens = List.of("Olá", ", ", "mundo", "!");
+
+    private StubLLMServer() {
+        this.server = HttpServer.create()
+            .host("localhost")
+            .port(0)
+            .runOn(loops)
+            .route(routes -> routes
+                .post("/openai", (req, res) -> handle(req, res, false))
+                .post("/gemini", (req, res) -> handle(req, res, true))
+                .post("/gemini-stream", (req, res) -> stream(res, true)))
+            .bindNow();
+    }
+
+    /**
+     * Inicia o stub em uma porta livre.
+     */
+    public static StubLLMServer start() {
+        return new StubLLMServer();
+    }
+
+    /**
+     * URL base do stub (ex.: http://localhost:port).
+     */
+    public String baseUrl() {
+        return "http://localhost:" + server.port();
+    }
+
+    /**
+     * Define o atraso antes do primeiro byte da resposta.
+     */
+    public StubLLMServer latency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Define o intervalo entre tokens no modo streaming.
+     */
+    public StubLLMServer tokenInterval(Duration tokenInterval) {
+        this.tokenInterval = tokenInterval;
+        return this;
+    }
+
+    /**
+     * Define os tokens retornados pelo stub.
+     */
+    public StubLLMServer tokens(List<String> tokens) {
+        this.tokens = List.copyOf(tokens);
+        return this;
+    }
+
+    /**
+     * Ativa o modo eco: a resposta OpenAI completa é a última mensagem do usuário.
+     */
+    public StubLLMServer echo(boolean echo) {
+        this.echo = echo;
+        return this;
+    }
+
+    /**
+     * Faz todas as requisições falharem com o status HTTP informado (0 desativa).
+     */
+    public StubLLMServer errorStatus(int errorStatus) {
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    /**
+     * Maior número de requisições completas atendidas simultaneamente.
+     */
+    public int peakConcurrentRequests() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * Requisições completas em andamento (inclui as abandonadas pelo cliente por timeout).
+     */
+    public int inFlightRequests() {
+        return inFlight.get();
+    }
+
+    /**
+     * Cabeçalho Accept-Encoding da última requisição completa recebida.
+     */
+    public String lastAcceptEncoding() {
+        return lastAcceptEncoding;
+    }
+
+    /**
+     * Número de requisições recebidas desde o início (ou último reset).
+     */
+    public int requestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Restaura configuração padrão e zera contadores.
+     */
+    public void reset() {
+        latency = Duration.ZERO;
+        tokenInterval = Duration.ZERO;
+        tokens = List.of("Olá", ", ", "mundo", "!");
+        echo = false;
+        errorStatus = 0;
+        requests.set(0);
+        peakInFlight.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+        loops.disposeLater().block();
+    }
+
+    private Mono<Void> handle(HttpServerRequest req, HttpServerResponse res, boolean gemini) {
+        return req.receive().aggregate().asString().defaultIfEmpty("").flatMap(body -> {
+            if (errorStatus != 0) {
+                requests.incrementAndGet();
+                return Mono.delay(latency).then(res.status(errorStatus).send().then());
+            }
+            // OpenAI sinaliza streaming no corpo da requisição
+            if (!gemini && body.replace(" ", "").contains("\"stream\":true")) {
+                return stream(res, false).then();
+            }
+            requests.incrementAndGet();
+            lastAcceptEncoding = req.requestHeaders().get(HttpHeaderNames.ACCEPT_ENCODING);
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            String text = json(echo && !gemini ? lastUserMessage(body) : String.join("", tokens));
+            String payload = gemini
+                ? "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":" + text + "}]}}],"
+                    + geminiUsage(tokens.size()) + "}"
+                : "{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":" + text + "}}],"
+                    + openAIUsage(tokens.size()) + "}";
+            // Em andamento até o início da resposta (o cliente só reage depois disso)
+            return Mono.delay(latency)
+                // doOnTerminate roda antes do envio (doFinally rodaria depois)
+                .doOnTerminate(inFlight::decrementAndGet)
+                .doOnCancel(inFlight::decrementAndGet)
+                .then(res.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                    .sendString(Mono.just(payload), StandardCharsets.UTF_8)
+                    .then());
+        });
+    }
+
+    private Mono<Void> stream(HttpServerResponse res, boolean gemini) {
+        requests.incrementAndGet();
+        if (errorStatus != 0) {
+            return Mono.delay(latency).then(res.status(errorStatus).send().then());
+        }
+        // Uso de tokens como nos provedores: acumulado em cada evento (Gemini) ou em um
+        // evento final sem choices (OpenAI com stream_options.include_usage)
+        Flux<String> events = Flux.fromIterable(tokens)
+            .delayElements(tokenInterval.isZero() ? Duration.ofNanos(1) : tokenInterval)
+            .index((i, token) -> gemini
+                ? "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":" + json(token) + "}]}}],"
+                    + geminiUsage(i.intValue() + 1) + "}"
+                : "{\"choices\":[{\"delta\":{\"content\":" + json(token) + "}}]}");
+        if (!gemini) {
+            events = events.concatWith(Flux.just("{\"choices\":[]," + openAIUsage(tokens.size()) + "}", "[DONE]"));
+        }
+        return Mono.delay(latency)
+            .then(res.header(HttpHeaderNames.CONTENT_TYPE, "text/event-stream")
+                .sendString(events.map(data -> "data: " + data + "\n\n"), StandardCharsets.UTF_8)
+                .then());
+    }
+
+    private static String openAIUsage(int completionTokens) {
+        return "\"usage\":{\"prompt_tokens\":" + PROMPT_TOKENS + ",\"completion_tokens\":" + completionTokens
+            + ",\"total_tokens\":" + (PROMPT_TOKENS + completionTokens) + "}";
+    }
+
+    private static String geminiUsage(int candidatesTokens) {
+        return "\"usageMetadata\":{\"promptTokenCount\":" + PROMPT_TOKENS + ",\"candidatesTokenCount\":"
+            + candidatesTokens + ",\"totalTokenCount\":" + (PROMPT_TOKENS + candidatesTokens) + "}";
+    }
+
+    private static String lastUserMessage(String body) {
+        try {
+            String last = "";
+            for (JsonNode message : MAPPER.readTree(body).path("messages")) {
+                if ("user".equals(message.path("role").asText())) {
+                    last = message.path("content").asText();
+                }
+            }
+            return last;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Corpo de requisição inválido", e);
+        }
+    }
+
+    private static String json(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+}
@@ -0,0 +1,170 @@
+package hector.avlr.livechatms.support;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.BufferingStompDecoder;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.NettyInbound;
+import reactor.netty.NettyOutbound;
+import reactor.netty.resources.LoopResources;
+import reactor.netty.tcp.TcpServer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Broker STOMP mínimo em processo, substituto local de um broker externo (RabbitMQ, ActiveMQ)
+ * para testes do modo relay. Suporta CONNECT, SUBSCRIBE, UNSUBSCRIBE, SEND e DISCONNECT,
+ * com entrega em fan-out para todas as assinaturas do destino e repasse dos cabeçalhos
+ * personalizados. Heartbeats são recusados (heart-beat 0,0).
+ */
+public final class StubStompBroker implements AutoCloseable {
+
+    private static final StompEncoder ENCODER = new StompEncoder();
+
+    // Cabeçalhos de protocolo que não são repassados nas mensagens entregues
+    private static final Set<String> FRAME_HEADERS = Set.of(
+        "destination", "receipt", "content-length", "subscription", "message-id", "transaction");
+
+    private final DisposableServer server;
+    // Event loop próprio: o stub sobrevive ao encerramento dos recursos globais do Reactor Netty
+    private final LoopResources loops = LoopResources.create("stub-stomp");
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong messageIds = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private StubStompBroker() {
+        this.server = TcpServer.create()
+            .host("localhost")
+            .port(0)
+            .runOn(loops)
+            .handle(this::session)
+            .bindNow();
+    }
+
+    /**
+     * Inicia o broker em uma porta livre.
+     */
+    public static StubStompBroker start() {
+        return new StubStompBroker();
+    }
+
+    public int port() {
+        return server.port();
+    }
+
+    /**
+     * Número de sessões STOMP (CONNECT) atendidas desde o início.
+     */
+    public int connectionCount() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+        loops.disposeLater().block();
+    }
+
+    private Mono<Void> session(NettyInbound in, NettyOutbound out) {
+        Sinks.Many<byte[]> frames = Sinks.many().unicast().onBackpressureBuffer();
+        BufferingStompDecoder decoder = new BufferingStompDecoder(new StompDecoder(), 1024 * 1024);
+        Set<Subscription> own = ConcurrentHashMap.newKeySet();
+
+        in.withConnection(connection -> connection.onDispose(() -> {
+            own.forEach(subscription -> remove(subscription));
+            frames.tryEmitComplete();
+        }));
+
+        // Copia os bytes: o decoder pode manter fragmentos entre leituras
+        in.receive().asByteArray()
+            .concatMapIterable(bytes -> decoder.decode(ByteBuffer.wrap(bytes)))
+            .subscribe(frame -> handle(frame, frames, own, in));
+
+        return out.sendByteArray(frames.asFlux()).then();
+    }
+
+    private void handle(Message<byte[]> frame, Sinks.Many<byte[]> frames, Set<Subscription> own, NettyInbound in) {
+        StompHeaderAccessor headers = StompHeaderAccessor.wrap(frame);
+        StompCommand command = headers.getCommand();
+        if (command == null) {
+            // Heartbeat
+            return;
+        }
+        switch (command) {
+            case CONNECT, STOMP -> {
+                connections.incrementAndGet();
+                StompHeaderAccessor connected = StompHeaderAccessor.create(StompCommand.CONNECTED);
+                connected.setVersion("1.2");
+                connected.setHeartbeat(0, 0);
+                emit(frames, connected, new byte[0]);
+            }
+            case SUBSCRIBE -> {
+                Subscription subscription = new Subscription(headers.getSubscriptionId(), frames);
+                own.add(subscription);
+                subscriptions.computeIfAbsent(headers.getDestination(), key -> ConcurrentHashMap.newKeySet())
+                    .add(subscription);
+            }
+            case UNSUBSCRIBE -> own.removeIf(subscription -> {
+                if (subscription.id().equals(headers.getSubscriptionId())) {
+                    remove(subscription);
+                    return true;
+                }
+                return false;
+            });
+            case SEND -> deliver(headers, frame.getPayload());
+            case DISCONNECT -> in.withConnection(Connection::dispose);
+            default -> {
+            }
+        }
+        String receipt = headers.getReceipt();
+        if (receipt != null) {
+            StompHeaderAccessor receiptFrame = StompHeaderAccessor.create(StompCommand.RECEIPT);
+            receiptFrame.setReceiptId(receipt);
+            emit(frames, receiptFrame, new byte[0]);
+        }
+    }
+
+    private void deliver(StompHeaderAccessor send, byte[] payload) {
+        String destination = send.getDestination();
+        for (Subscription subscription : subscriptions.getOrDefault(destination, Set.of())) {
+            StompHeaderAccessor message = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            Map<String, List<String>> nativeHeaders = send.toNativeHeaderMap();
+            nativeHeaders.forEach((name, values) -> {
+                if (!FRAME_HEADERS.contains(name)) {
+                    message.setNativeHeaderValues(name, values);
+                }
+            });
+            message.setDestination(destination);
+            message.setSubscriptionId(subscription.id());
+            message.setMessageId(Long.toString(messageIds.incrementAndGet()));
+            emit(subscription.frames(), message, payload);
+        }
+    }
+
+    private void remove(Subscription subscription) {
+        subscriptions.values().forEach(set -> set.remove(subscription));
+    }
+
+    private static void emit(Sinks.Many<byte[]> frames, StompHeaderAccessor headers, byte[] payload) {
+        byte[] encoded = ENCODER.encode(headers.getMessageHeaders(), payload);
+        // Sessões diferentes publicam na mesma fila de saída: serializa as emissões
+        synchronized (frames) {
+            frames.tryEmitNext(encoded);
+        }
+    }
+
+    private record Subscription(String id, Sinks.Many<byte[]> frames) {
+    }
+}